@@ -1,11 +1,23 @@
 package jejusoul.com.github.obd_pids_for_hkmc_evs;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
+import androidx.tracing.Trace;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.prowl.torque.remote.ITorqueService;
 
@@ -14,31 +26,136 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.BundledCatalog;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.BundledPidSeeder;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.CSVDataManager;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.GitHubDownloadManager;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.InstalledCatalog;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.LatencyHistogram;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.MetricsRegistry;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidCatalog;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidData;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.SyncSettings;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TorqueServiceManager;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.VehicleDetector;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.VehicleFilter;
 
+/**
+ * MainViewModel owns the installed PID files, the GitHub sync and the mirrored Torque
+ * connection for the activity's fragments.
+ *
+ * Construction is kept cheap because it sits on the cold start path: the CSV manager and the
+ * download manager (with its HTTP client, preferences and executor) are created on first use,
+ * and the startup revalidation only creates the latter once the installed files are listed.
+ *
+ * The first time Torque connects while no vehicles are subscribed, the car is identified with
+ * VehicleDetector and subscribed to, so only its files are listed and compiled from then on.
+ *
+ * Usage Example:
+ * MainViewModel viewModel = new ViewModelProvider(requireActivity()).get(MainViewModel.class);
+ * viewModel.getInstalledPidFiles().observe(getViewLifecycleOwner(), adapter::setFiles);
+ * viewModel.loadInstalledPidFiles();
+ */
 public class MainViewModel extends AndroidViewModel {
     private static final String TAG = "MainViewModel";
     private final MutableLiveData<List<PidData>> pidData = new MutableLiveData<>();
     private final MutableLiveData<String> error = new MutableLiveData<>();
     private final MutableLiveData<ITorqueService> torqueService = new MutableLiveData<>();
-    private final CSVDataManager csvManager;
-    private final GitHubDownloadManager downloadManager;
+    private final MutableLiveData<List<File>> installedPidFiles = new MutableLiveData<>();
+    private final MutableLiveData<GitHubDownloadManager.DownloadStatus> downloadStatus = new MutableLiveData<>();
+    private final MutableLiveData<VehicleDetector.Result> detectedVehicle = new MutableLiveData<>();
+    private final AtomicBoolean detectionStarted = new AtomicBoolean();
+    private volatile CSVDataManager csvManager;
+    private GitHubDownloadManager downloadManager;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean revalidated;
+    // Set on the main thread once the ViewModel is cleared and ioExecutor shut down
+    private boolean cleared;
+    private volatile ListenableFuture<VehicleDetector.Result> detection;
+    private final LatencyHistogram copyTime = MetricsRegistry.get().histogram("sync.copy");
+    private final MetricsRegistry.Counter copyBytes = MetricsRegistry.get().counter("sync.copy.bytes");
+    private final TorqueServiceManager torqueServiceManager;
+    private final TorqueServiceManager.TorqueConnectionListener torqueConnectionListener =
+            new TorqueServiceManager.TorqueConnectionListener() {
+                @Override
+                public void onTorqueConnected() {
+                    torqueService.postValue(torqueServiceManager.getTorqueService());
+                    if (detectionStarted.compareAndSet(false, true)) {
+                        ioExecutor.execute(MainViewModel.this::detectVehicle);
+                    }
+                }
+
+                @Override
+                public void onTorqueDisconnected() {
+                    torqueService.postValue(null);
+                }
+
+                @Override
+                public void onTorqueError(String message) {
+                    error.postValue(message);
+                }
+
+                @Override
+                public void onTorqueNotInstalled() {
+                    torqueService.postValue(null);
+                }
+            };
+
+    // Installs completed syncs before the fragments see COMPLETED, whether or not one is showing
+    private final Observer<GitHubDownloadManager.DownloadStatus> downloadStatusObserver = status -> {
+        if (status.state == GitHubDownloadManager.DownloadState.COMPLETED) {
+            handleDownloadComplete();
+        }
+        downloadStatus.setValue(status);
+    };
 
     public MainViewModel(Application application) {
         super(application);
-        csvManager = new CSVDataManager(application);
-        downloadManager = new GitHubDownloadManager(application);
-        
-        // Observe download status to manage files
-        downloadManager.getDownloadStatus().observeForever(status -> {
-            if (status.state == GitHubDownloadManager.DownloadState.COMPLETED) {
-                handleDownloadComplete();
+        Trace.beginSection("MainViewModel.init");
+        try {
+            // Mirror the shared Torque connection, so import buttons follow it
+            torqueServiceManager = ((TorquePluginApplication) application).getTorqueServiceManager();
+            torqueService.setValue(torqueServiceManager.getTorqueService());
+            torqueServiceManager.addConnectionListener(torqueConnectionListener);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private CSVDataManager getCsvManager() {
+        CSVDataManager manager = csvManager;
+        if (manager == null) {
+            synchronized (this) {
+                manager = csvManager;
+                if (manager == null) {
+                    // Creating it resolves and creates the external PID files directory
+                    manager = new CSVDataManager(getApplication());
+                    csvManager = manager;
+                }
             }
-        });
+        }
+        return manager;
+    }
+
+    @MainThread
+    private GitHubDownloadManager getDownloadManager() {
+        if (downloadManager == null) {
+            Trace.beginSection("GitHubDownloadManager.init");
+            try {
+                downloadManager = new GitHubDownloadManager(getApplication());
+                downloadManager.getDownloadStatus().observeForever(downloadStatusObserver);
+            } finally {
+                Trace.endSection();
+            }
+        }
+        return downloadManager;
     }
 
     public void setTorqueService(ITorqueService service) {
@@ -49,23 +166,136 @@ public class MainViewModel extends AndroidViewModel {
         return torqueService;
     }
 
+    /**
+     * @return Sync status; empty until the first sync or revalidation creates the download manager
+     */
     public LiveData<GitHubDownloadManager.DownloadStatus> getDownloadStatus() {
-        return downloadManager.getDownloadStatus();
+        return downloadStatus;
     }
 
+    @MainThread
     public LiveData<List<File>> getCsvFiles() {
-        return downloadManager.getCsvFiles();
+        return getDownloadManager().getCsvFiles();
+    }
+
+    /**
+     * @return Vehicle detected from the connected car; set at most once per ViewModel
+     */
+    public LiveData<VehicleDetector.Result> getDetectedVehicle() {
+        return detectedVehicle;
+    }
+
+    /**
+     * @return PID files installed on the device, published by loadInstalledPidFiles()
+     */
+    public LiveData<List<File>> getInstalledPidFiles() {
+        return installedPidFiles;
+    }
+
+    /**
+     * List the installed PID files off the main thread, seeding the bundled ones on a fresh
+     * install, then revalidate against GitHub once per ViewModel. The installed list is shown
+     * right away; newer upstream files replace it when the background sync completes.
+     */
+    @MainThread
+    public void loadInstalledPidFiles() {
+        ioExecutor.execute(() -> {
+            Trace.beginSection("MainViewModel.loadInstalledPidFiles");
+            try {
+                CSVDataManager manager = getCsvManager();
+                SyncSettings settings = new SyncSettings(getApplication());
+                VehicleFilter filter = new VehicleFilter(settings.getSubscribedVehicles());
+                List<File> seeded = new BundledPidSeeder(getApplication().getAssets(), manager.getPidFilesDirectory())
+                        .seedIfEmpty(filter);
+                PidCatalog catalog = BundledCatalog.get(getApplication());
+                if (!seeded.isEmpty() && catalog != null) {
+                    // Seeded files are read from the prebuilt catalog until a sync replaces them
+                    settings.setSeededCatalogChecksum(catalog.getChecksum());
+                }
+                installedPidFiles.postValue(manager.getPidFiles(filter));
+            } finally {
+                Trace.endSection();
+            }
+            // Queued behind the list, so the download manager is created after it is shown
+            mainHandler.post(this::revalidateOnce);
+        });
+    }
+
+    @MainThread
+    private void revalidateOnce() {
+        if (!revalidated) {
+            revalidated = true;
+            getDownloadManager().revalidate();
+        }
+    }
+
+    /**
+     * Identify the car unless the user already picked vehicles or it was detected before.
+     * Only catalogs of two or more vehicles are worth narrowing down.
+     */
+    @WorkerThread
+    private void detectVehicle() {
+        SyncSettings settings = new SyncSettings(getApplication());
+        if (!settings.getSubscribedVehicles().isEmpty() || settings.getDetectedVehicle() != null) {
+            return;
+        }
+        PidCatalog catalog = new InstalledCatalog(getApplication(), getCsvManager()).load();
+        if (catalog == null) {
+            return;
+        }
+        VehicleDetector detector = VehicleDetector.fromCatalog(catalog);
+        if (detector.getVehicles().size() < 2) {
+            return;
+        }
+        ListenableFuture<VehicleDetector.Result> future =
+                torqueServiceManager.detectVehicleAsync(detector, TorqueServiceManager.DETECT_TIMEOUT_MS);
+        detection = future;
+        Futures.addCallback(
+                future,
+                new FutureCallback<VehicleDetector.Result>() {
+                    @Override
+                    public void onSuccess(VehicleDetector.Result result) {
+                        if (result != null) {
+                            applyDetectedVehicle(settings, result);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(@NonNull Throwable t) {
+                        Log.w(TAG, "Vehicle detection failed", t);
+                    }
+                },
+                MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Subscribe to the detected vehicle and reload, so the files and catalog of the other
+     * vehicles are no longer listed or compiled. They are removed from disk by the next sync.
+     */
+    @WorkerThread
+    private void applyDetectedVehicle(SyncSettings settings, VehicleDetector.Result result) {
+        Log.i(TAG, "Detected " + result.vehicle + " from " + result.source);
+        settings.setDetectedVehicle(result.vehicle, result.vin);
+        settings.setSubscribedVehicles(Collections.singleton(result.vehicle));
+        // A seeded catalog holds every bundled vehicle; compile the detected one's files instead
+        settings.clearSeededCatalogChecksum();
+        new InstalledCatalog(getApplication(), getCsvManager()).invalidate();
+        detectedVehicle.postValue(result);
+        // Detection can finish up to DETECT_TIMEOUT_MS later, after onCleared shut ioExecutor down
+        mainHandler.post(() -> {
+            if (!cleared) {
+                loadInstalledPidFiles();
+            }
+        });
     }
 
     /**
      * Start downloading PID files
      */
     public void downloadPidFiles() {
-        // Clear existing files before download
-        csvManager.clearPidFiles();
-        
+        // Existing files stay usable until the new ones have been downloaded
         try {
-            downloadManager.downloadAndExtract();
+            getDownloadManager().downloadAndExtract();
         } catch (Exception e) {
             Log.e(TAG, "Error starting download", e);
             error.setValue("Failed to start download: " + e.getMessage());
@@ -73,16 +303,30 @@ public class MainViewModel extends AndroidViewModel {
     }
 
     private void handleDownloadComplete() {
+        Trace.beginSection("MainViewModel.handleDownloadComplete");
         try {
             // Move files from download directory to PID files directory
             List<File> downloadedFiles = downloadManager.getCsvFiles().getValue();
+            GitHubDownloadManager.SyncDelta delta = downloadManager.getLastSyncDelta();
+            CSVDataManager manager = getCsvManager();
+            File pidFilesDir = manager.getPidFilesDirectory();
+            new SyncSettings(getApplication()).clearSeededCatalogChecksum();
+            new InstalledCatalog(getApplication(), manager).invalidate();
+            if (!delta.incremental) {
+                manager.clearPidFiles();
+            } else {
+                for (String removedPath : delta.removedPaths) {
+                    File removed = new File(pidFilesDir, removedPath);
+                    if (removed.exists() && !removed.delete()) {
+                        Log.w(TAG, "Failed to delete removed file: " + removed.getAbsolutePath());
+                    }
+                }
+            }
             if (downloadedFiles != null) {
-                File pidFilesDir = csvManager.getPidFilesDirectory();
                 for (File sourceFile : downloadedFiles) {
                     try {
-                        // Get just the filename without the path
-                        String fileName = sourceFile.getName();
-                        File destFile = new File(pidFilesDir, fileName);
+                        // Keep the vehicle folder so equal file names of different vehicles don't collide
+                        File destFile = new File(pidFilesDir, delta.relativePathOf(sourceFile));
 
                         // Ensure the destination file doesn't exist
                         if (destFile.exists() && !destFile.delete()) {
@@ -105,6 +349,8 @@ public class MainViewModel extends AndroidViewModel {
         } catch (Exception e) {
             Log.e(TAG, "Error handling download completion", e);
             error.setValue("Failed to process downloaded files: " + e.getMessage());
+        } finally {
+            Trace.endSection();
         }
     }
 
@@ -128,10 +374,17 @@ public class MainViewModel extends AndroidViewModel {
             throw new IOException("Failed to create destination file: " + dest.getAbsolutePath());
         }
 
+        long start = System.nanoTime();
+        Trace.beginSection("MainViewModel.copyFile");
         try (FileChannel sourceChannel = new FileInputStream(source).getChannel();
              FileChannel destChannel = new FileOutputStream(dest).getChannel()) {
-            destChannel.transferFrom(sourceChannel, 0, sourceChannel.size());
+            long size = sourceChannel.size();
+            destChannel.transferFrom(sourceChannel, 0, size);
+            copyBytes.add(size);
+        } finally {
+            Trace.endSection();
         }
+        copyTime.recordSince(start);
     }
 
     public LiveData<String> getError() {
@@ -141,6 +394,19 @@ public class MainViewModel extends AndroidViewModel {
     @Override
     protected void onCleared() {
         super.onCleared();
-        downloadManager.cleanup();
+        torqueServiceManager.removeConnectionListener(torqueConnectionListener);
+        // A listing still in flight must not create the download manager after this
+        revalidated = true;
+        cleared = true;
+        ListenableFuture<VehicleDetector.Result> pending = detection;
+        if (pending != null) {
+            pending.cancel(true);
+        }
+        mainHandler.removeCallbacksAndMessages(null);
+        ioExecutor.shutdown();
+        if (downloadManager != null) {
+            downloadManager.getDownloadStatus().removeObserver(downloadStatusObserver);
+            downloadManager.cleanup();
+        }
     }
 }
\ No newline at end of file
@@ -9,9 +9,11 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
+import jejusoul.com.github.obd_pids_for_hkmc_evs.ui.PidRowDiffer;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidData;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidRow;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidSelection;
 
 /**
  * PidAdapter is a RecyclerView adapter for displaying and managing PID items in the UI.
@@ -24,7 +26,8 @@ import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidData;
  * 
  * Features:
  * - Efficient view recycling
- * - Checkbox selection for each PID
+ * - Row text formatted and diffed in the background (PidRowDiffer)
+ * - Checkbox selection for each PID, kept in a PidSelection bitmap
  * - Display of PID details (name, shortName, etc.)
  * - Selection state persistence
  * 
@@ -34,7 +37,7 @@ import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidData;
  * - Additional PID details (optional)
  * 
  * Key Methods:
- * - getSelectedPids(): Returns list of selected PIDs
+ * - getSelection(): Returns the selected rows of getCurrentList()
  * - onBindViewHolder(): Binds PID data to views
  * 
  * Usage Example:
@@ -45,10 +48,11 @@ import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidData;
  * @see RecyclerView.Adapter
  */
 public class PidAdapter extends RecyclerView.Adapter<PidAdapter.PidViewHolder> {
-    private List<PidData> pidList;
+    private final PidRowDiffer differ = new PidRowDiffer(this, PidRow.DESCRIPTION);
+    private PidSelection selection = new PidSelection(0, false);
 
     public PidAdapter(List<PidData> pidList) {
-        this.pidList = pidList;
+        submitList(pidList);
     }
 
     @NonNull
@@ -61,22 +65,37 @@ public class PidAdapter extends RecyclerView.Adapter<PidAdapter.PidViewHolder> {
 
     @Override
     public void onBindViewHolder(@NonNull PidViewHolder holder, int position) {
-        PidData pid = pidList.get(position);
-        holder.bind(pid);
+        holder.bind(differ.getCurrentList().get(position), selection.isSelected(position));
     }
 
     @Override
     public int getItemCount() {
-        return pidList.size();
+        return differ.getCurrentList().size();
     }
 
-    public List<PidData> getSelectedPids() {
-        return pidList.stream()
-                .filter(PidData::isSelected)
-                .collect(Collectors.toList());
+    /**
+     * Show a new list with no row selected; formatting and diffing run in the background.
+     */
+    public void submitList(List<PidData> pidList) {
+        differ.submitList(pidList, () -> {
+            int size = differ.getCurrentList().size();
+            selection = new PidSelection(size, false);
+            notifyItemRangeChanged(0, size);
+        });
     }
 
-    static class PidViewHolder extends RecyclerView.ViewHolder {
+    public List<PidData> getCurrentList() {
+        return differ.getCurrentPids();
+    }
+
+    /**
+     * @return Live selection over getCurrentList()
+     */
+    public PidSelection getSelection() {
+        return selection;
+    }
+
+    class PidViewHolder extends RecyclerView.ViewHolder {
         private final CheckBox checkBox;
         private final TextView nameText;
         private final TextView descriptionText;
@@ -86,31 +105,26 @@ public class PidAdapter extends RecyclerView.Adapter<PidAdapter.PidViewHolder> {
             checkBox = itemView.findViewById(R.id.pid_checkbox);
             nameText = itemView.findViewById(R.id.pid_name);
             descriptionText = itemView.findViewById(R.id.pid_description);
-        }
-
-        public void bind(PidData pid) {
-            checkBox.setChecked(pid.isSelected());
-            nameText.setText(pid.getName());
-            
-            // Create a detailed description string
-            String description = String.format("Short Name: %s\nMode/PID: %s\nEquation: %s\n" +
-                    "Min: %f, Max: %f\nUnit: %s\nHeader: %s",
-                    pid.getShortName(),
-                    pid.getModeAndPID(),
-                    pid.getEquation(),
-                    pid.getMinValue(),
-                    pid.getMaxValue(),
-                    pid.getUnit(),
-                    pid.getHeader());
-            descriptionText.setText(description);
 
             itemView.setOnClickListener(v -> {
-                pid.setSelected(!pid.isSelected());
-                checkBox.setChecked(pid.isSelected());
+                int position = getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION && position < selection.size()) {
+                    checkBox.setChecked(selection.toggle(position));
+                }
+            });
+
+            checkBox.setOnClickListener(v -> {
+                int position = getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION && position < selection.size()) {
+                    selection.setSelected(position, checkBox.isChecked());
+                }
             });
+        }
 
-            checkBox.setOnCheckedChangeListener((buttonView, isChecked) -> 
-                pid.setSelected(isChecked));
+        public void bind(PidRow row, boolean selected) {
+            checkBox.setChecked(selected);
+            nameText.setText(row.pid.getName());
+            descriptionText.setText(row.text);
         }
     }
 }
@@ -0,0 +1,168 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
+import androidx.lifecycle.ViewModelKt;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.CSVDataManager;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.InstalledCatalog;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidCatalog;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidCatalogPagingSource;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidRow;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidSelection;
+
+/**
+ * PidCatalogViewModel backs the searchable list of every installed PID.
+ *
+ * The list is paged straight out of the memory mapped catalog (see PidCatalogPagingSource),
+ * so neither the ViewModel nor the adapter holds the PIDs as objects. Each change of the
+ * search text or header filter starts a new Pager; the selection is a bitmap over catalog
+ * indexes and survives searches.
+ *
+ * Usage Example:
+ * PidCatalogViewModel viewModel = new ViewModelProvider(this).get(PidCatalogViewModel.class);
+ * viewModel.getPidRows().observe(owner, data -> adapter.submitData(getLifecycle(), data));
+ * viewModel.setQuery("cell volt");
+ */
+public class PidCatalogViewModel extends AndroidViewModel {
+    private static final int PAGE_SIZE = 50;
+    // Pages beyond this many rows are dropped while scrolling
+    private static final int MAX_LOADED_ROWS = 300;
+
+    private final ListeningExecutorService ioExecutor =
+            MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+    private final MutableLiveData<PidCatalog> catalog = new MutableLiveData<>();
+    private final MutableLiveData<List<String>> headers = new MutableLiveData<>();
+    private final MediatorLiveData<Search> search = new MediatorLiveData<>();
+    private final MutableLiveData<String> query = new MutableLiveData<>("");
+    private final MutableLiveData<String> header = new MutableLiveData<>(null);
+    private final LiveData<PagingData<PidRow>> pidRows;
+    private PidSelection selection = new PidSelection(0, false);
+    @Nullable
+    private Integer selectionChecksum;
+    private boolean loaded;
+
+    /**
+     * One search over one catalog.
+     */
+    private static final class Search {
+        final PidCatalog catalog;
+        final String query;
+        final String header;
+
+        Search(PidCatalog catalog, String query, String header) {
+            this.catalog = catalog;
+            this.query = query;
+            this.header = header;
+        }
+    }
+
+    public PidCatalogViewModel(@NonNull Application application) {
+        super(application);
+        search.addSource(catalog, value -> updateSearch());
+        search.addSource(query, value -> updateSearch());
+        search.addSource(header, value -> updateSearch());
+        pidRows = Transformations.switchMap(search, this::page);
+    }
+
+    private void updateSearch() {
+        PidCatalog current = catalog.getValue();
+        if (current != null) {
+            search.setValue(new Search(current, query.getValue(), header.getValue()));
+        }
+    }
+
+    private LiveData<PagingData<PidRow>> page(Search search) {
+        PagingConfig config = new PagingConfig(PAGE_SIZE, PAGE_SIZE, true, PAGE_SIZE * 2, MAX_LOADED_ROWS);
+        Pager<Integer, PidRow> pager = new Pager<>(config,
+                () -> new PidCatalogPagingSource(search.catalog, search.query, search.header, ioExecutor));
+        return PagingLiveData.cachedIn(PagingLiveData.getLiveData(pager), ViewModelKt.getViewModelScope(this));
+    }
+
+    /**
+     * Map (or compile) the catalog of the installed PID files once per ViewModel.
+     */
+    public void loadCatalog() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        ioExecutor.execute(() -> {
+            PidCatalog installed = new InstalledCatalog(getApplication(), new CSVDataManager(getApplication())).load();
+            headers.postValue(installed != null ? installed.getHeaders() : Collections.<String>emptyList());
+            catalog.postValue(installed);
+        });
+    }
+
+    /**
+     * @return Installed catalog, or null until loaded or if no PID files are installed
+     */
+    public LiveData<PidCatalog> getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @return Distinct ECU headers of the catalog, for the header filter
+     */
+    public LiveData<List<String>> getHeaders() {
+        return headers;
+    }
+
+    public LiveData<PagingData<PidRow>> getPidRows() {
+        return pidRows;
+    }
+
+    public void setQuery(String text) {
+        String value = text != null ? text.trim() : "";
+        if (!value.equals(query.getValue())) {
+            query.setValue(value);
+        }
+    }
+
+    /**
+     * @param ecuHeader Header to keep, or null for every header
+     */
+    public void setHeader(@Nullable String ecuHeader) {
+        String current = header.getValue();
+        if (ecuHeader == null ? current != null : !ecuHeader.equals(current)) {
+            header.setValue(ecuHeader);
+        }
+    }
+
+    /**
+     * @param shown Catalog shown, or null while it is loading
+     * @return Selection over catalog indexes, replaced when a catalog with another checksum
+     *         is shown; a catalog of the same size can still hold other PIDs at each index
+     */
+    public PidSelection getSelection(@Nullable PidCatalog shown) {
+        if (shown != null && (selectionChecksum == null || selectionChecksum != shown.getChecksum())) {
+            selection = new PidSelection(shown.getPidCount(), false);
+            selectionChecksum = shown.getChecksum();
+        }
+        return selection;
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        ioExecutor.shutdown();
+    }
+}
@@ -14,19 +14,26 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.prowl.torque.remote.ITorqueService;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
 
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TorqueServiceManager;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidData;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidSelection;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.CSVDataManager;
 
 /**
@@ -57,6 +64,8 @@ public class PidImportActivity extends AppCompatActivity implements TorqueServic
     private TorqueServiceManager serviceManager;
     private CSVDataManager csvDataManager;
     private boolean isRequestingPermissions = false;
+    private boolean torqueAcquired;
+    private ListenableFuture<Boolean> pendingImport;
 
     private final ActivityResultLauncher<Intent> appSettingsLauncher = 
         registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), 
@@ -94,7 +103,9 @@ public class PidImportActivity extends AppCompatActivity implements TorqueServic
 
     private void setupTorqueService() {
         serviceManager = ((TorquePluginApplication) getApplication()).getTorqueServiceManager();
-        serviceManager.setConnectionListener(this);
+        serviceManager.addConnectionListener(this);
+        torqueService = serviceManager.getTorqueService();
+        importButton.setEnabled(torqueService != null);
     }
 
     @Override
@@ -106,9 +117,18 @@ public class PidImportActivity extends AppCompatActivity implements TorqueServic
     }
 
     @Override
-    protected void onPause() {
-        super.onPause();
-        serviceManager.unbindFromTorqueService();
+    protected void onStop() {
+        super.onStop();
+        if (torqueAcquired) {
+            serviceManager.release();
+            torqueAcquired = false;
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        serviceManager.removeConnectionListener(this);
     }
 
     private void checkPermissionsAndConnect() {
@@ -136,7 +156,11 @@ public class PidImportActivity extends AppCompatActivity implements TorqueServic
     }
 
     private void connectToTorque() {
-        if (!serviceManager.bindToTorqueService()) {
+        if (torqueAcquired) {
+            return;
+        }
+        torqueAcquired = serviceManager.acquire();
+        if (!torqueAcquired) {
             Toast.makeText(this, R.string.error_torque_connection, Toast.LENGTH_SHORT).show();
         }
     }
@@ -286,31 +310,35 @@ public class PidImportActivity extends AppCompatActivity implements TorqueServic
      * Imports PIDs into Torque Pro using the connected service.
      * The method:
      * 1. Prepares arrays of PID data (names, equations, units, etc.)
-     * 2. Sends data to Torque Pro via service connection
+     * 2. Sends data to Torque Pro on the binder thread, with a timeout
      * 3. Handles success/failure scenarios
      * 4. Provides user feedback via Toast messages
-     *
-     * @throws RemoteException if communication with Torque service fails
      */
     private void importPids() {
-        List<PidData> selectedPids = pidAdapter.getSelectedPids();
-        if (selectedPids.isEmpty()) {
+        if (pendingImport != null && !pendingImport.isDone()) {
+            return;
+        }
+        List<PidData> rows = pidAdapter.getCurrentList();
+        PidSelection selection = pidAdapter.getSelection();
+        if (selection.isEmpty()) {
             Toast.makeText(this, R.string.error_no_pids_selected, Toast.LENGTH_SHORT).show();
             return;
         }
 
         try {
-            String[] names = new String[selectedPids.size()];
-            String[] shortNames = new String[selectedPids.size()];
-            String[] modeAndPIDs = new String[selectedPids.size()];
-            String[] equations = new String[selectedPids.size()];
-            float[] minValues = new float[selectedPids.size()];
-            float[] maxValues = new float[selectedPids.size()];
-            String[] units = new String[selectedPids.size()];
-            String[] headers = new String[selectedPids.size()];
-
-            for (int i = 0; i < selectedPids.size(); i++) {
-                PidData pid = selectedPids.get(i);
+            int size = selection.getSelectedCount();
+            String[] names = new String[size];
+            String[] shortNames = new String[size];
+            String[] modeAndPIDs = new String[size];
+            String[] equations = new String[size];
+            float[] minValues = new float[size];
+            float[] maxValues = new float[size];
+            String[] units = new String[size];
+            String[] headers = new String[size];
+
+            int i = 0;
+            for (int row = selection.nextSelected(0); row >= 0; row = selection.nextSelected(row + 1), i++) {
+                PidData pid = rows.get(row);
                 names[i] = pid.getName();
                 shortNames[i] = pid.getShortName();
                 modeAndPIDs[i] = pid.getModeAndPID();
@@ -321,8 +349,10 @@ public class PidImportActivity extends AppCompatActivity implements TorqueServic
                 headers[i] = pid.getHeader();
             }
 
-            boolean success = torqueService.sendPIDDataV2(
-                getPackageName(),
+            String packageName = getPackageName();
+            // Sent on the binder thread; the activity only waits for the callback
+            pendingImport = serviceManager.call("sendPIDDataV2", service -> service.sendPIDDataV2(
+                packageName,
                 names,
                 shortNames,
                 modeAndPIDs,
@@ -333,14 +363,32 @@ public class PidImportActivity extends AppCompatActivity implements TorqueServic
                 headers,
                 null,  // No start diagnostic commands
                 null   // No stop diagnostic commands
-            );
+            ), TorqueServiceManager.DEFAULT_TIMEOUT_MS);
+            Futures.addCallback(pendingImport, new FutureCallback<Boolean>() {
+                @Override
+                public void onSuccess(Boolean success) {
+                    if (isFinishing()) {
+                        return;
+                    }
+                    if (Boolean.TRUE.equals(success)) {
+                        Toast.makeText(PidImportActivity.this, R.string.success_pids_imported, Toast.LENGTH_SHORT).show();
+                        finish();
+                    } else {
+                        Toast.makeText(PidImportActivity.this, R.string.error_importing_pids, Toast.LENGTH_SHORT).show();
+                    }
+                }
 
-            if (success) {
-                Toast.makeText(this, R.string.success_pids_imported, Toast.LENGTH_SHORT).show();
-                finish();
-            } else {
-                Toast.makeText(this, R.string.error_importing_pids, Toast.LENGTH_SHORT).show();
-            }
+                @Override
+                public void onFailure(@NonNull Throwable t) {
+                    if (t instanceof CancellationException || isFinishing()) {
+                        return;
+                    }
+                    String error = t instanceof TimeoutException
+                            ? getString(R.string.error_torque_timeout)
+                            : getString(R.string.error_importing_pids_with_reason, t.getMessage());
+                    Toast.makeText(PidImportActivity.this, error, Toast.LENGTH_SHORT).show();
+                }
+            }, ContextCompat.getMainExecutor(this));
         } catch (Exception e) {
             String error = getString(R.string.error_importing_pids_with_reason, e.getMessage());
             Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
@@ -366,7 +414,7 @@ public class PidImportActivity extends AppCompatActivity implements TorqueServic
 
             pidList.clear();
             pidList.addAll(csvDataManager.loadPIDDataFromFile(file));
-            pidAdapter.notifyDataSetChanged();
+            pidAdapter.submitList(pidList);
 
         } catch (IOException e) {
             String errorMessage = getString(R.string.error_loading_pid_file, e.getMessage());
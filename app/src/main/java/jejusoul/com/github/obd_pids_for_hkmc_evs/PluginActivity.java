@@ -1,10 +1,14 @@
 package jejusoul.com.github.obd_pids_for_hkmc_evs;
 
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.navigation.fragment.NavHostFragment;
+import androidx.tracing.Trace;
 
 import org.prowl.torque.remote.ITorqueService;
 
@@ -24,14 +28,14 @@ import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TorqueServiceManager;
  *    - Managing activity lifecycle
  * 
  * 2. Service Connection
- *    - Establishing connection with Torque Pro
+ *    - Holding a reference on the app-wide Torque connection
  *    - Handling connection state changes
  *    - Managing service lifecycle
  * 
  * 3. User Interface
  *    - Providing feedback about connection status
  *    - Handling permission-related UI
- *    - Managing navigation
+ *    - Managing navigation, including the diagnostics screen in the toolbar menu
  * 
  * Lifecycle:
  * 1. Activity starts
@@ -44,6 +48,7 @@ public class PluginActivity extends AppCompatActivity implements TorqueServiceMa
 
     private TorqueServiceManager serviceManager;
     private PermissionManager permissionManager;
+    private boolean torqueAcquired;
 
     /**
      * Initializes the activity.
@@ -56,28 +61,82 @@ public class PluginActivity extends AppCompatActivity implements TorqueServiceMa
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_plugin);
-
-        serviceManager = new TorqueServiceManager(this);
-        serviceManager.setConnectionListener(this);
-        permissionManager = new PermissionManager(this, this);
-
-        if (permissionManager.areStoragePermissionsGranted()) {
-            serviceManager.bindToTorqueService();
-        } else {
-            permissionManager.checkAndRequestStoragePermissions();
+        Trace.beginSection("PluginActivity.onCreate");
+        try {
+            super.onCreate(savedInstanceState);
+            setContentView(R.layout.activity_plugin);
+            setSupportActionBar(findViewById(R.id.toolbar));
+
+            serviceManager = ((TorquePluginApplication) getApplication()).getTorqueServiceManager();
+            serviceManager.addConnectionListener(this);
+            permissionManager = new PermissionManager(this, this);
+
+            if (permissionManager.areStoragePermissionsGranted()) {
+                connectToTorque();
+                permissionManager.requestNotificationPermission();
+            } else {
+                permissionManager.checkAndRequestStoragePermissions();
+            }
+        } finally {
+            Trace.endSection();
         }
     }
 
     /**
      * Cleans up resources when activity is destroyed.
-     * Unbinds from Torque service to prevent leaks.
+     * Releases the shared Torque connection, which unbinds once no other screen uses it.
      */
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        serviceManager.unbindFromTorqueService();
+        serviceManager.removeConnectionListener(this);
+        if (torqueAcquired) {
+            serviceManager.release();
+            torqueAcquired = false;
+        }
+    }
+
+    private void connectToTorque() {
+        if (!torqueAcquired) {
+            torqueAcquired = serviceManager.acquire();
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_plugin, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.action_live_telemetry).setChecked(TelemetryService.isRunning());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    /**
+     * Opens the diagnostics screen, or starts and stops live telemetry, from the toolbar menu.
+     */
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == R.id.action_diagnostics) {
+            NavHostFragment navHost = (NavHostFragment) getSupportFragmentManager()
+                    .findFragmentById(R.id.nav_host_fragment);
+            if (navHost != null) {
+                navHost.getNavController().navigate(R.id.diagnosticsFragment);
+            }
+            return true;
+        }
+        if (item.getItemId() == R.id.action_live_telemetry) {
+            if (TelemetryService.isRunning()) {
+                TelemetryService.stop(this);
+            } else {
+                TelemetryService.start(this);
+            }
+            item.setChecked(!item.isChecked());
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
     }
 
     /**
@@ -128,11 +187,12 @@ public class PluginActivity extends AppCompatActivity implements TorqueServiceMa
 
     /**
      * Callback when permissions are granted.
-     * Binds to Torque service.
+     * Binds to Torque service and asks for the notification permission.
      */
     @Override
     public void onPermissionsGranted() {
-        serviceManager.bindToTorqueService();
+        connectToTorque();
+        permissionManager.requestNotificationPermission();
     }
 
     /**
@@ -0,0 +1,241 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.AlertMonitor;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.AlertNotifier;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.AlertRule;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.AlertRuleStore;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.CSVDataManager;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.CellAnalyzer;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.CellMonitor;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.ChargeSessionMonitor;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.ChargeSessionStore;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.EnergyCheckpointStore;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.EnergyMonitor;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.InstalledCatalog;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.ModuleTemperatureMonitor;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidCatalog;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidPublisher;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.Recording;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.SessionRecorder;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.SyncSettings;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TelemetryPoller;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TelemetryStage;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TorqueServiceManager;
+
+/**
+ * Foreground service that keeps live telemetry running while Torque is in front: it holds a
+ * reference on the Torque connection and runs a TelemetryPoller whose stages publish plugin
+ * PIDs Torque can show on its dashboards:
+ * - CellMonitor: the pack's cell voltage statistics and drifting cells
+ * - ModuleTemperatureMonitor: battery modules warming up apart from the rest
+ * - EnergyMonitor: trip energy used, regenerated and charged
+ * - ChargeSessionMonitor: charging sessions, their curve and efficiency
+ * - SessionRecorder: a Recording of the PIDs above and every cell voltage, for charts
+ * - AlertMonitor: the user's threshold alerts, over catalog PIDs and the PIDs above
+ *
+ * The PIDs each stage reads are looked up in the installed catalog, and stages whose PIDs
+ * the subscribed vehicles lack are left out; with no stages left, the service stops again.
+ *
+ * Usage Example:
+ * TelemetryService.start(context);
+ * TelemetryService.stop(context);
+ */
+public class TelemetryService extends Service {
+    private static final String TAG = TelemetryService.class.getSimpleName();
+    private static final String CHANNEL_ID = "telemetry";
+    private static final int NOTIFICATION_ID = 1002;
+
+    private static volatile boolean running;
+    @Nullable
+    private static volatile Recording recording;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService setupExecutor = Executors.newSingleThreadExecutor();
+    private TorqueServiceManager torque;
+    private TelemetryPoller poller;
+    private boolean torqueAcquired;
+    private boolean destroyed;
+
+    public static void start(Context context) {
+        ContextCompat.startForegroundService(context, new Intent(context, TelemetryService.class));
+    }
+
+    public static void stop(Context context) {
+        context.stopService(new Intent(context, TelemetryService.class));
+    }
+
+    /**
+     * @return true between the service's creation and destruction
+     */
+    public static boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return Recording of the running service or, once it stopped, of its last run; null if
+     *         it never recorded
+     */
+    @Nullable
+    public static Recording getRecording() {
+        return recording;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        running = true;
+        createChannel();
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, buildNotification(),
+                ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE);
+
+        torque = ((TorquePluginApplication) getApplication()).getTorqueServiceManager();
+        torqueAcquired = torque.acquire();
+        if (!torqueAcquired) {
+            Log.w(TAG, "Torque Pro is not available");
+            stopSelf();
+            return;
+        }
+        poller = new TelemetryPoller(torque, TelemetryPoller.DEFAULT_INTERVAL_MS);
+
+        Context context = getApplicationContext();
+        PidPublisher publisher = poller.getPublisher();
+        setupExecutor.execute(() -> {
+            PidCatalog catalog = new InstalledCatalog(context, new CSVDataManager(context)).load();
+            List<TelemetryStage> stages = new ArrayList<>();
+            CellMonitor cells = null;
+            if (catalog != null) {
+                CellAnalyzer analyzer = CellAnalyzer.fromCatalog(catalog);
+                if (analyzer != null) {
+                    cells = new CellMonitor(analyzer, publisher);
+                    stages.add(cells);
+                }
+                ModuleTemperatureMonitor modules = ModuleTemperatureMonitor.fromCatalog(catalog, publisher);
+                if (modules != null) {
+                    stages.add(modules);
+                }
+                EnergyMonitor energy = EnergyMonitor.fromCatalog(catalog, publisher,
+                        new EnergyCheckpointStore(context));
+                if (energy != null) {
+                    stages.add(energy);
+                }
+                ChargeSessionMonitor charging = ChargeSessionMonitor.fromCatalog(catalog, publisher,
+                        new ChargeSessionStore(context), new SyncSettings(context).getDetectedVin());
+                if (charging != null) {
+                    stages.add(charging);
+                }
+            }
+            // After the stages it records, so their plugin PIDs are registered and sampled
+            SessionRecorder recorder = null;
+            if (!stages.isEmpty()) {
+                recorder = new SessionRecorder(publisher, cells);
+                stages.add(recorder);
+            }
+            // Last, so the rules can refer to the plugin PIDs registered above
+            AlertMonitor alerts = AlertMonitor.compile(new AlertRuleStore(context).getRules(), catalog,
+                    publisher, new AlertNotifier(context));
+            if (alerts != null) {
+                for (AlertRule rule : alerts.getSkippedRules()) {
+                    Log.w(TAG, "No PID for alert rule " + rule);
+                }
+                stages.add(alerts);
+            }
+            mainHandler.post(() -> {
+                if (destroyed) {
+                    return;
+                }
+                if (stages.isEmpty()) {
+                    Log.w(TAG, "No battery PIDs installed");
+                    stopSelf();
+                    return;
+                }
+                for (TelemetryStage stage : stages) {
+                    poller.addStage(stage);
+                }
+                if (recorder != null) {
+                    recording = recorder.getRecording();
+                }
+                poller.start();
+            });
+        });
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Polling needs the Torque binding, which does not survive a restart by the system
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        destroyed = true;
+        running = false;
+        mainHandler.removeCallbacksAndMessages(null);
+        setupExecutor.shutdownNow();
+        if (poller != null) {
+            poller.stop();
+        }
+        if (torqueAcquired) {
+            torque.release();
+            torqueAcquired = false;
+        }
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private Notification buildNotification() {
+        Intent intent = new Intent(this, PluginActivity.class)
+                .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_ev_station)
+                .setContentTitle(getString(R.string.notification_telemetry_title))
+                .setContentText(getString(R.string.notification_telemetry_text))
+                .setContentIntent(contentIntent)
+                .setOngoing(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .build();
+    }
+
+    private void createChannel() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                getString(R.string.notification_channel_telemetry),
+                NotificationManager.IMPORTANCE_LOW);
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.createNotificationChannel(channel);
+        }
+    }
+}
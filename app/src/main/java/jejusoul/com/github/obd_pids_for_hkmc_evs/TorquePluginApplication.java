@@ -1,6 +1,11 @@
 package jejusoul.com.github.obd_pids_for_hkmc_evs;
 
 import android.app.Application;
+import android.os.Looper;
+
+import androidx.tracing.Trace;
+
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.NewCommitWorker;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TorqueServiceManager;
 
 /**
@@ -11,6 +16,7 @@ import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TorqueServiceManager;
  * - Singleton instance management
  * - Global state management
  * - Service manager initialization
+ * - Scheduling the background new-commit check
  * 
  * Key Responsibilities:
  * - Initializing TorqueServiceManager
@@ -18,24 +24,57 @@ import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TorqueServiceManager;
  * - Managing application lifecycle
  * 
  * The class follows the Singleton pattern to ensure:
- * - Single instance of TorqueServiceManager
+ * - Single instance of TorqueServiceManager, whose refcounted binding is shared by every screen
  * - Consistent state across the application
  * - Efficient resource management
  * 
+ * Startup work is kept off the launch path: the service manager is created on first use and
+ * the new-commit check is scheduled once the main thread goes idle after the first frame.
+ * Trace sections mark what is left, for Perfetto and the :macrobenchmark startup runs.
+ * 
  * Usage:
  * TorquePluginApplication app = (TorquePluginApplication) getApplication();
  * TorqueServiceManager manager = app.getTorqueServiceManager();
  */
 public class TorquePluginApplication extends Application {
-    private TorqueServiceManager torqueServiceManager;
+    private volatile TorqueServiceManager torqueServiceManager;
 
     @Override
     public void onCreate() {
-        super.onCreate();
-        torqueServiceManager = new TorqueServiceManager(this);
+        Trace.beginSection("TorquePluginApplication.onCreate");
+        try {
+            super.onCreate();
+            // Initialising WorkManager opens its database; nothing on screen needs it yet
+            Looper.myQueue().addIdleHandler(() -> {
+                Trace.beginSection("NewCommitWorker.schedule");
+                try {
+                    NewCommitWorker.schedule(this);
+                } finally {
+                    Trace.endSection();
+                }
+                return false;
+            });
+        } finally {
+            Trace.endSection();
+        }
     }
 
     public TorqueServiceManager getTorqueServiceManager() {
-        return torqueServiceManager;
+        TorqueServiceManager manager = torqueServiceManager;
+        if (manager == null) {
+            synchronized (this) {
+                manager = torqueServiceManager;
+                if (manager == null) {
+                    Trace.beginSection("TorqueServiceManager.init");
+                    try {
+                        manager = new TorqueServiceManager(this);
+                        torqueServiceManager = manager;
+                    } finally {
+                        Trace.endSection();
+                    }
+                }
+            }
+        }
+        return manager;
     }
 }
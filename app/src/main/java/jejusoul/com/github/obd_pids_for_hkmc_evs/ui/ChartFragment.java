@@ -0,0 +1,365 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.ui;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import com.google.android.material.button.MaterialButton;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jejusoul.com.github.obd_pids_for_hkmc_evs.R;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.TelemetryService;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.TorquePluginApplication;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.CSVDataManager;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.ChartStage;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.InstalledCatalog;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.Lttb;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidBlockReader;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidCatalog;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidData;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.Recording;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.SessionRecorder;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.StreamingLttb;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TelemetryPoller;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TorqueServiceManager;
+
+/**
+ * ChartFragment charts up to ChartView.MAX_SERIES catalog PIDs, live or from the session
+ * TelemetryService is recording, with at most one point per pixel either way.
+ *
+ * Live, the PIDs are read by a TelemetryPoller of this screen's own, whose ChartStage feeds
+ * each series through a StreamingLttb; once per frame, series whose version changed are
+ * copied into the chart's buffers. Recorded, the visible range of each column is reduced
+ * with Lttb from the recording's summary pyramid, again after every drag or pinch.
+ *
+ * Usage Example:
+ * Bundle args = new Bundle();
+ * args.putStringArray(ChartFragment.ARG_PID_NAMES, names);
+ * navController.navigate(R.id.action_pidCatalog_to_chart, args);
+ */
+public class ChartFragment extends Fragment {
+    public static final String ARG_PID_NAMES = "pid_names";
+    // Time the live chart spans
+    private static final float WINDOW_SECONDS = 300;
+
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private TorqueServiceManager torqueServiceManager;
+    private boolean torqueAcquired;
+    private ChartView chartView;
+    private TextView legendText;
+    private MaterialButton modeButton;
+    private List<PidData> pids;
+    private PidBlockReader reader;
+    private boolean live = true;
+    private boolean started;
+
+    // Live mode
+    private TelemetryPoller poller;
+    private ChartStage stage;
+    private int[] drawnVersions;
+    private final Runnable frame = this::drawFrame;
+
+    // Recorded mode
+    private Recording recording;
+    private int[] columns;
+    private Lttb lttb;
+    private long fromMs;
+    private long toMs;
+    private boolean reloadPending;
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        torqueServiceManager = ((TorquePluginApplication) requireActivity().getApplication()).getTorqueServiceManager();
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.fragment_chart, container, false);
+        chartView = view.findViewById(R.id.chartView);
+        legendText = view.findViewById(R.id.legendText);
+        modeButton = view.findViewById(R.id.modeButton);
+        modeButton.setOnClickListener(v -> setLive(!live));
+        modeButton.setEnabled(false);
+        chartView.setOnRangeChangeListener(this::onRangeChanged);
+        return view;
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        String[] names = requireArguments().getStringArray(ARG_PID_NAMES);
+        Context context = requireContext().getApplicationContext();
+        ioExecutor.execute(() -> {
+            PidCatalog catalog = new InstalledCatalog(context, new CSVDataManager(context)).load();
+            List<PidData> found = new ArrayList<>();
+            int[] rows = new int[ChartView.MAX_SERIES];
+            if (catalog != null && names != null) {
+                for (String name : names) {
+                    int row = PidBlockReader.findPid(catalog, name);
+                    if (row >= 0 && found.size() < ChartView.MAX_SERIES && resolves(catalog, row)) {
+                        rows[found.size()] = row;
+                        found.add(catalog.getPid(row));
+                    }
+                }
+            }
+            PidBlockReader blockReader;
+            try {
+                // Also reads the PIDs derived ones such as "Battery Power" reference
+                blockReader = found.isEmpty() ? null
+                        : PidBlockReader.fromRows(catalog, Arrays.copyOf(rows, found.size()));
+            } catch (ParseException e) {
+                blockReader = null;
+            }
+            PidBlockReader result = blockReader;
+            // Laid out by the time this runs, so the chart's width is known
+            chartView.post(() -> onPidsLoaded(found, result));
+        });
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        started = true;
+        // Reuses the app-wide binding; only the first screen to start pays for a bind
+        torqueAcquired = torqueServiceManager.acquire();
+        if (!torqueAcquired) {
+            Toast.makeText(requireContext(), R.string.error_torque_connection, Toast.LENGTH_SHORT).show();
+        }
+        if (live && stage != null) {
+            startLive();
+        }
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        started = false;
+        stopLive();
+        if (torqueAcquired) {
+            torqueServiceManager.release();
+            torqueAcquired = false;
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        chartView.removeCallbacks(frame);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        ioExecutor.shutdown();
+    }
+
+    private void onPidsLoaded(List<PidData> found, @Nullable PidBlockReader blockReader) {
+        if (getView() == null) {
+            return;
+        }
+        if (blockReader == null) {
+            legendText.setText(R.string.chart_no_pids);
+            return;
+        }
+        pids = found;
+        reader = blockReader;
+        chartView.setSeriesCount(found.size());
+        showLegend();
+        modeButton.setEnabled(true);
+        int width = chartView.getPointCapacity() - 1;
+        stage = new ChartStage(reader, width, WINDOW_SECONDS);
+        lttb = new Lttb(width);
+        drawnVersions = new int[found.size()];
+        setLive(live);
+    }
+
+    private void showLegend() {
+        SpannableStringBuilder legend = new SpannableStringBuilder();
+        for (int i = 0; i < pids.size(); i++) {
+            if (i > 0) {
+                legend.append("   ");
+            }
+            int start = legend.length();
+            PidData pid = pids.get(i);
+            legend.append("■ ").append(pid.getName());
+            if (pid.getUnit() != null && !pid.getUnit().isEmpty()) {
+                legend.append(" (").append(pid.getUnit()).append(')');
+            }
+            legend.setSpan(new ForegroundColorSpan(ChartView.getColor(i)), start, start + 1,
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        legendText.setText(legend);
+    }
+
+    private void setLive(boolean live) {
+        this.live = live;
+        modeButton.setText(live ? R.string.chart_show_recorded : R.string.chart_show_live);
+        if (live) {
+            if (started) {
+                startLive();
+            }
+        } else {
+            stopLive();
+            showRecording();
+        }
+    }
+
+    private void startLive() {
+        if (poller == null) {
+            poller = new TelemetryPoller(torqueServiceManager, TelemetryPoller.DEFAULT_INTERVAL_MS);
+            poller.addStage(stage);
+        }
+        poller.start();
+        for (int i = 0; i < drawnVersions.length; i++) {
+            drawnVersions[i] = -1;
+        }
+        chartView.postOnAnimation(frame);
+    }
+
+    private void stopLive() {
+        if (poller != null) {
+            poller.stop();
+            poller = null;
+        }
+        if (chartView != null) {
+            chartView.removeCallbacks(frame);
+        }
+    }
+
+    /**
+     * Copy series that changed since the last frame into the chart and schedule the next.
+     */
+    private void drawFrame() {
+        if (!live || !started) {
+            return;
+        }
+        boolean changed = false;
+        for (int i = 0; i < drawnVersions.length; i++) {
+            StreamingLttb series = stage.getSeries(i);
+            int version = series.getVersion();
+            if (version == drawnVersions[i] || series.getMaxPoints() > chartView.getPointCapacity()) {
+                continue;
+            }
+            drawnVersions[i] = version;
+            int count = series.copyTo(chartView.getX(i), chartView.getY(i));
+            chartView.setPointCount(i, count);
+            setYRange(i, chartView.getY(i), count);
+            changed = true;
+        }
+        if (changed) {
+            float now = stage.getElapsedSeconds();
+            chartView.setXRange(now - WINDOW_SECONDS, now);
+            chartView.invalidate();
+        }
+        chartView.postOnAnimation(frame);
+    }
+
+    private void showRecording() {
+        recording = TelemetryService.getRecording();
+        if (recording == null || recording.getRowCount() < 2) {
+            Toast.makeText(requireContext(), R.string.chart_no_recording, Toast.LENGTH_LONG).show();
+            for (int i = 0; i < pids.size(); i++) {
+                chartView.setPointCount(i, 0);
+            }
+            chartView.invalidate();
+            return;
+        }
+        columns = new int[pids.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = recording.findColumn(pids.get(i).getName());
+        }
+        if (recording.isFinished()) {
+            Toast.makeText(requireContext(), getString(R.string.recording_finished, SessionRecorder.MAX_HOURS),
+                    Toast.LENGTH_LONG).show();
+        }
+        fromMs = recording.getStartMs();
+        toMs = recording.getEndMs() + 1;
+        loadRecording();
+    }
+
+    private void onRangeChanged(float fromX, float toX) {
+        if (live || recording == null) {
+            return;
+        }
+        long start = recording.getStartMs();
+        long end = recording.getEndMs() + 1;
+        long newFrom = Math.max(start, fromMs + (long) (fromX * 1000));
+        long newTo = Math.min(end, fromMs + (long) (toX * 1000));
+        if (newTo - newFrom < 1000) {
+            return; // Zoomed in past a second, or dragged off the recording
+        }
+        fromMs = newFrom;
+        toMs = newTo;
+        // Gestures arrive faster than frames; load the range once per frame at most
+        if (!reloadPending) {
+            reloadPending = true;
+            chartView.postOnAnimation(() -> {
+                reloadPending = false;
+                if (!live) {
+                    loadRecording();
+                }
+            });
+        }
+    }
+
+    private void loadRecording() {
+        for (int i = 0; i < columns.length; i++) {
+            int count = columns[i] < 0 ? 0
+                    : lttb.downsample(recording, columns[i], fromMs, toMs, chartView.getX(i), chartView.getY(i));
+            chartView.setPointCount(i, count);
+            setYRange(i, chartView.getY(i), count);
+        }
+        chartView.setXRange(0, (toMs - fromMs) / 1000f);
+        chartView.invalidate();
+    }
+
+    /**
+     * Scale a series to its PID's declared range, or to its data if the PID declares none.
+     */
+    private void setYRange(int series, float[] y, int count) {
+        PidData pid = pids.get(series);
+        float min = pid.getMinValue();
+        float max = pid.getMaxValue();
+        if (max <= min) {
+            min = Float.POSITIVE_INFINITY;
+            max = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                min = Math.min(min, y[i]);
+                max = Math.max(max, y[i]);
+            }
+        }
+        chartView.setYRange(series, min, max);
+    }
+
+    /**
+     * @return true if the row's equation parses and the PIDs it references are in the catalog
+     */
+    private static boolean resolves(PidCatalog catalog, int row) {
+        try {
+            PidBlockReader.fromRows(catalog, row);
+            return true;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.ui;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * ChartView draws up to MAX_SERIES line series over a shared time axis, each scaled to its
+ * own value range, as live or recorded PIDs of different units share one chart.
+ *
+ * Every series has x and y buffers of getPointCapacity() floats, one point per pixel of
+ * width plus one, allocated when the view's size changes. Callers downsample straight into
+ * them, with Lttb or StreamingLttb, set the point count and invalidate(); onDraw() turns each
+ * series into one drawLines() call from a preallocated segment buffer and allocates nothing,
+ * so the renderer never handles more points than there are pixels.
+ *
+ * Dragging and pinching change the visible x range and are reported to an
+ * OnRangeChangeListener, which can load the new range.
+ *
+ * Usage Example:
+ * chart.setSeriesCount(2);
+ * int points = lttb.downsample(recording, column, fromMs, toMs, chart.getX(0), chart.getY(0));
+ * chart.setPointCount(0, points);
+ * chart.invalidate();
+ */
+public class ChartView extends View {
+    public static final int MAX_SERIES = 12;
+    private static final int[] COLORS = {
+            0xFF1E88E5, 0xFFE53935, 0xFF43A047, 0xFFFB8C00, 0xFF8E24AA, 0xFF00ACC1,
+            0xFFFDD835, 0xFF6D4C41, 0xFFD81B60, 0xFF3949AB, 0xFF7CB342, 0xFF546E7A
+    };
+    private static final int GRID_LINES = 4;
+
+    /**
+     * Told when the user drags or pinches the chart.
+     */
+    public interface OnRangeChangeListener {
+        void onRangeChanged(float fromX, float toX);
+    }
+
+    private final Paint[] paints = new Paint[MAX_SERIES];
+    private final Paint gridPaint = new Paint();
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+    private int seriesCount;
+    private float[][] xs = new float[0][];
+    private float[][] ys = new float[0][];
+    private final int[] pointCounts = new int[MAX_SERIES];
+    private final float[] minY = new float[MAX_SERIES];
+    private final float[] maxY = new float[MAX_SERIES];
+    private float[] segments = new float[0];
+    private float fromX;
+    private float toX = 1;
+    @Nullable
+    private OnRangeChangeListener rangeListener;
+
+    public ChartView(Context context) {
+        this(context, null);
+    }
+
+    public ChartView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+        for (int i = 0; i < MAX_SERIES; i++) {
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(COLORS[i]);
+            paint.setStrokeWidth(1.5f * density);
+            paints[i] = paint;
+        }
+        gridPaint.setColor(Color.LTGRAY);
+        gridPaint.setStrokeWidth(density);
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(@NonNull ScaleGestureDetector detector) {
+                float span = (toX - fromX) / detector.getScaleFactor();
+                float focus = fromX + (toX - fromX) * detector.getFocusX() / Math.max(1, getWidth());
+                float focusFraction = (focus - fromX) / (toX - fromX);
+                changeRange(focus - span * focusFraction, focus + span * (1 - focusFraction));
+                return true;
+            }
+        });
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onScroll(@Nullable MotionEvent first, @NonNull MotionEvent event, float distanceX,
+                                    float distanceY) {
+                float shift = distanceX * (toX - fromX) / Math.max(1, getWidth());
+                changeRange(fromX + shift, toX + shift);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return Color of a series, for a legend
+     */
+    public static int getColor(int series) {
+        return COLORS[series];
+    }
+
+    public void setOnRangeChangeListener(@Nullable OnRangeChangeListener listener) {
+        this.rangeListener = listener;
+    }
+
+    /**
+     * Set how many series to draw, at most MAX_SERIES; their buffers are reallocated only if
+     * the number changes.
+     */
+    public void setSeriesCount(int count) {
+        if (count > MAX_SERIES) {
+            throw new IllegalArgumentException("At most " + MAX_SERIES + " series");
+        }
+        if (count != seriesCount) {
+            seriesCount = count;
+            allocate();
+        }
+    }
+
+    public int getSeriesCount() {
+        return seriesCount;
+    }
+
+    /**
+     * @return Points a series can hold: the width in pixels plus one
+     */
+    public int getPointCapacity() {
+        return Math.max(getWidth(), 2) + 1;
+    }
+
+    public float[] getX(int series) {
+        return xs[series];
+    }
+
+    public float[] getY(int series) {
+        return ys[series];
+    }
+
+    public void setPointCount(int series, int count) {
+        pointCounts[series] = count;
+    }
+
+    /**
+     * @param min Value drawn at the bottom
+     * @param max Value drawn at the top
+     */
+    public void setYRange(int series, float min, float max) {
+        minY[series] = min;
+        maxY[series] = max;
+    }
+
+    public void setXRange(float from, float to) {
+        fromX = from;
+        toX = to > from ? to : from + 1;
+    }
+
+    public float getFromX() {
+        return fromX;
+    }
+
+    public float getToX() {
+        return toX;
+    }
+
+    private void changeRange(float from, float to) {
+        setXRange(from, to);
+        if (rangeListener != null) {
+            rangeListener.onRangeChanged(fromX, toX);
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        if (width != oldWidth) {
+            allocate();
+        }
+    }
+
+    private void allocate() {
+        int capacity = getPointCapacity();
+        xs = new float[seriesCount][capacity];
+        ys = new float[seriesCount][capacity];
+        segments = new float[capacity * 4];
+        for (int i = 0; i < MAX_SERIES; i++) {
+            pointCounts[i] = 0;
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleDetector.onTouchEvent(event);
+        handled |= gestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+        float width = getWidth();
+        float height = getHeight();
+        for (int line = 1; line < GRID_LINES; line++) {
+            float y = height * line / GRID_LINES;
+            canvas.drawLine(0, y, width, y, gridPaint);
+        }
+        float scaleX = width / (toX - fromX);
+        for (int series = 0; series < seriesCount; series++) {
+            int count = pointCounts[series];
+            if (count < 2) {
+                continue;
+            }
+            float[] x = xs[series];
+            float[] y = ys[series];
+            float range = maxY[series] - minY[series];
+            float scaleY = range > 0 ? height / range : 0;
+            float bottom = minY[series];
+            int length = 0;
+            float lastX = (x[0] - fromX) * scaleX;
+            float lastY = height - (y[0] - bottom) * scaleY;
+            for (int i = 1; i < count; i++) {
+                float pointX = (x[i] - fromX) * scaleX;
+                float pointY = height - (y[i] - bottom) * scaleY;
+                segments[length++] = lastX;
+                segments[length++] = lastY;
+                segments[length++] = pointX;
+                segments[length++] = pointY;
+                lastX = pointX;
+                lastY = pointY;
+            }
+            canvas.drawLines(segments, 0, length, paints[series]);
+        }
+    }
+}
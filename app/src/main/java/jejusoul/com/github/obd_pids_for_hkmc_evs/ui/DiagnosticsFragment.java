@@ -0,0 +1,248 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.ui;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jejusoul.com.github.obd_pids_for_hkmc_evs.R;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.TelemetryService;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.TorquePluginApplication;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.AlertRuleStore;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.ChargeSession;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.ChargeSessionStore;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.LatencyHistogram;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.MetricsRegistry;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.Recording;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.SessionExporter;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.SessionRecorder;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TorqueServiceManager;
+
+/**
+ * DiagnosticsFragment shows the MetricsRegistry: where time went in CSV parsing, archive
+ * extraction, file copies, HTTP and Torque binder calls since the process started.
+ *
+ * "Save JSON" writes MetricsRegistry.toJson() to metrics.json in the app's external files
+ * directory, which needs no permission and can be pulled from a device in the field with
+ * adb pull /sdcard/Android/data/jejusoul.com.github.obd_pids_for_hkmc_evs/files/metrics.json
+ *
+ * "Export session" writes the session TelemetryService is recording next to it, as
+ * session-<time>.csv.gz and session-<time>.pidc, and reports how fast each was written.
+ *
+ * Above the metrics, the newest charging sessions ChargeSessionStore kept are summarized, and
+ * above those the alert rules can be edited. Rules are validated with AlertRule's syntax when
+ * saved; TelemetryService picks them up the next time it starts.
+ */
+public class DiagnosticsFragment extends Fragment {
+    private static final String JSON_FILE_NAME = "metrics.json";
+    private static final int CHARGE_SESSIONS_SHOWN = 10;
+
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private TextView metricsText;
+    private TextView chargeSessionsText;
+    private EditText alertRulesText;
+    private AlertRuleStore alertRuleStore;
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.fragment_diagnostics, container, false);
+        metricsText = view.findViewById(R.id.metricsText);
+        chargeSessionsText = view.findViewById(R.id.chargeSessionsText);
+        alertRulesText = view.findViewById(R.id.alertRulesText);
+        alertRuleStore = new AlertRuleStore(requireContext());
+        view.findViewById(R.id.saveRulesButton).setOnClickListener(v -> saveRules());
+        view.findViewById(R.id.defaultRulesButton).setOnClickListener(v -> {
+            alertRuleStore.reset();
+            showRules();
+        });
+        if (savedInstanceState == null) {
+            showRules();
+        }
+        view.findViewById(R.id.saveJsonButton).setOnClickListener(v -> saveJson());
+        view.findViewById(R.id.exportSessionButton).setOnClickListener(v -> exportSession());
+        view.findViewById(R.id.resetButton).setOnClickListener(v -> {
+            MetricsRegistry.get().reset();
+            showMetrics();
+        });
+        return view;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        showMetrics();
+        showChargeSessions();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        ioExecutor.shutdown();
+    }
+
+    private void showRules() {
+        alertRulesText.setText(TextUtils.join("\n", alertRuleStore.getRuleTexts()));
+    }
+
+    private void saveRules() {
+        List<String> texts = new ArrayList<>();
+        for (String line : alertRulesText.getText().toString().split("\n")) {
+            if (!line.trim().isEmpty()) {
+                texts.add(line);
+            }
+        }
+        try {
+            alertRuleStore.setRuleTexts(texts);
+            Toast.makeText(requireContext(), R.string.diagnostics_rules_saved, Toast.LENGTH_SHORT).show();
+        } catch (ParseException e) {
+            Toast.makeText(requireContext(), getString(R.string.diagnostics_rule_invalid, e.getMessage()),
+                    Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void showMetrics() {
+        MetricsRegistry metrics = MetricsRegistry.get();
+        TorqueServiceManager torque =
+                ((TorquePluginApplication) requireActivity().getApplication()).getTorqueServiceManager();
+        StringBuilder text = new StringBuilder();
+        text.append(getString(R.string.diagnostics_torque, torque.getState(), torque.getBindCount(),
+                torque.getLastBindLatencyMs())).append("\n\n");
+
+        text.append("Histograms\n");
+        for (Map.Entry<String, LatencyHistogram> entry : metrics.getHistograms().entrySet()) {
+            text.append(entry.getKey()).append('\n')
+                    .append("  ").append(entry.getValue()).append('\n');
+        }
+        text.append("\nCounters\n");
+        for (Map.Entry<String, Long> entry : metrics.getCounters().entrySet()) {
+            text.append(entry.getKey()).append(" = ").append(entry.getValue()).append('\n');
+        }
+        text.append("\nGauges\n");
+        for (Map.Entry<String, Long> entry : metrics.getGauges().entrySet()) {
+            text.append(entry.getKey()).append(" = ").append(entry.getValue()).append('\n');
+        }
+        metricsText.setText(text);
+    }
+
+    /**
+     * Load the newest sessions in the background and list them, newest first.
+     */
+    private void showChargeSessions() {
+        Context context = requireContext().getApplicationContext();
+        ioExecutor.execute(() -> {
+            ChargeSessionStore store = new ChargeSessionStore(context);
+            List<File> files = store.list();
+            DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+            StringBuilder text = new StringBuilder(context.getString(R.string.diagnostics_charge_sessions)).append('\n');
+            if (files.isEmpty()) {
+                text.append(context.getString(R.string.diagnostics_no_charge_sessions)).append('\n');
+            }
+            for (int i = files.size() - 1; i >= Math.max(0, files.size() - CHARGE_SESSIONS_SHOWN); i--) {
+                try {
+                    text.append(describe(context, store.load(files.get(i)), dateFormat)).append('\n');
+                } catch (IOException e) {
+                    text.append(context.getString(R.string.diagnostics_charge_session_unreadable,
+                            files.get(i).getName(), e.getMessage())).append('\n');
+                }
+            }
+            chargeSessionsText.post(() -> chargeSessionsText.setText(text));
+        });
+    }
+
+    private static String describe(Context context, ChargeSession session, DateFormat dateFormat) {
+        String start = dateFormat.format(new Date(session.getStartMillis()));
+        int minutes = session.getDurationSeconds() / 60;
+        float efficiency = session.getEfficiency();
+        if (!session.isRapid() && !Float.isNaN(efficiency)) {
+            return context.getString(R.string.diagnostics_charge_session_ac, start, minutes,
+                    session.getStartSoc(), session.getEndSoc(), session.getDcKwh(), session.getAcKwh(),
+                    efficiency * 100, session.getPeakDcKw());
+        }
+        // Rapid charging, or AC without a charger reading
+        return context.getString(R.string.diagnostics_charge_session_dc, start, session.isRapid() ? "DC" : "AC",
+                minutes, session.getStartSoc(), session.getEndSoc(), session.getDcKwh(), session.getPeakDcKw());
+    }
+
+    private File getExportDirectory() {
+        File directory = requireContext().getExternalFilesDir(null);
+        if (directory == null) {
+            // External storage unavailable; still reachable with adb run-as
+            directory = requireContext().getFilesDir();
+        }
+        return directory;
+    }
+
+    private void saveJson() {
+        File file = new File(getExportDirectory(), JSON_FILE_NAME);
+        String json = MetricsRegistry.get().toJson();
+        Context context = requireContext().getApplicationContext();
+        ioExecutor.execute(() -> {
+            String message;
+            try (OutputStream output = new FileOutputStream(file)) {
+                output.write(json.getBytes(StandardCharsets.UTF_8));
+                message = context.getString(R.string.diagnostics_saved, file.getAbsolutePath());
+            } catch (IOException e) {
+                message = context.getString(R.string.diagnostics_save_failed, e.getMessage());
+            }
+            String result = message;
+            metricsText.post(() -> Toast.makeText(context, result, Toast.LENGTH_LONG).show());
+        });
+    }
+
+    private void exportSession() {
+        Recording recording = TelemetryService.getRecording();
+        Context context = requireContext().getApplicationContext();
+        if (recording == null || recording.getRowCount() == 0) {
+            Toast.makeText(context, R.string.diagnostics_no_session, Toast.LENGTH_LONG).show();
+            return;
+        }
+        String name = "session-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date());
+        File csvFile = new File(getExportDirectory(), name + SessionExporter.CSV_EXTENSION);
+        File columnarFile = new File(getExportDirectory(), name + SessionExporter.COLUMNAR_EXTENSION);
+        ioExecutor.execute(() -> {
+            String message;
+            try (OutputStream csv = new FileOutputStream(csvFile);
+                 OutputStream columnar = new FileOutputStream(columnarFile)) {
+                SessionExporter.Result csvResult = SessionExporter.exportCsv(recording, csv);
+                SessionExporter.Result columnarResult = SessionExporter.exportColumnar(recording, columnar);
+                message = context.getString(R.string.diagnostics_session_exported, csvResult.getRows(),
+                        csvFile.getParent(), csvResult.getMegabytesPerSecond(),
+                        columnarResult.getMegabytesPerSecond());
+                if (recording.isFinished()) {
+                    message += "\n" + context.getString(R.string.recording_finished, SessionRecorder.MAX_HOURS);
+                }
+            } catch (IOException e) {
+                message = context.getString(R.string.diagnostics_export_failed, e.getMessage());
+            }
+            String result = message;
+            metricsText.post(() -> Toast.makeText(context, result, Toast.LENGTH_LONG).show());
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.ui;
+
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.fragment.app.Fragment;
+
+import com.google.common.util.concurrent.FutureCallback;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+
+import jejusoul.com.github.obd_pids_for_hkmc_evs.R;
+
+/**
+ * ImportResultCallback reports the outcome of TorqueServiceManager.importPidsAsync() with a
+ * toast. Results that arrive after the fragment is gone are dropped.
+ */
+final class ImportResultCallback implements FutureCallback<Boolean> {
+    private static final String TAG = "ImportResultCallback";
+
+    private final Fragment fragment;
+
+    ImportResultCallback(Fragment fragment) {
+        this.fragment = fragment;
+    }
+
+    @Override
+    public void onSuccess(Boolean success) {
+        if (!fragment.isAdded()) {
+            return;
+        }
+        if (Boolean.TRUE.equals(success)) {
+            Toast.makeText(fragment.requireContext(), R.string.pids_imported, Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(fragment.requireContext(), R.string.error_importing_pids, Toast.LENGTH_LONG).show();
+        }
+    }
+
+    @Override
+    public void onFailure(@NonNull Throwable t) {
+        if (t instanceof CancellationException) {
+            return;
+        }
+        Log.e(TAG, "Error importing PIDs", t);
+        if (!fragment.isAdded()) {
+            return;
+        }
+        if (t instanceof TimeoutException) {
+            Toast.makeText(fragment.requireContext(), R.string.error_torque_timeout, Toast.LENGTH_LONG).show();
+        } else {
+            Toast.makeText(fragment.requireContext(),
+                    fragment.getString(R.string.error_importing_pids_with_reason, t.getMessage()),
+                    Toast.LENGTH_LONG).show();
+        }
+    }
+}
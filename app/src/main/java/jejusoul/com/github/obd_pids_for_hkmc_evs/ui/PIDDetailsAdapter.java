@@ -9,17 +9,30 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import jejusoul.com.github.obd_pids_for_hkmc_evs.R;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidData;
-
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidRow;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidSelection;
+
+/**
+ * PIDDetailsAdapter shows the PIDs of one file with a checkbox per row.
+ *
+ * New lists are formatted and diffed on a background thread by PidRowDiffer, and the
+ * selection is a PidSelection indexed by row, so select-all flips a bitmap and rebinds only
+ * the checkboxes.
+ *
+ * Usage Example:
+ * PIDDetailsAdapter adapter = new PIDDetailsAdapter();
+ * adapter.submitList(pids);
+ * torqueServiceManager.importPids(adapter.getCurrentList(), adapter.getSelection());
+ */
 public class PIDDetailsAdapter extends RecyclerView.Adapter<PIDDetailsAdapter.ViewHolder> {
-    private List<PidData> pidList = new ArrayList<>();
-    private Set<PidData> selectedPids = new HashSet<>();
+    private static final Object PAYLOAD_SELECTION = new Object();
+
+    private final PidRowDiffer differ = new PidRowDiffer(this, PidRow.DETAILS);
+    private PidSelection selection = new PidSelection(0, false);
 
     @NonNull
     @Override
@@ -31,39 +44,52 @@ public class PIDDetailsAdapter extends RecyclerView.Adapter<PIDDetailsAdapter.Vi
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        PidData pid = pidList.get(position);
-        holder.bind(pid);
+        holder.bind(differ.getCurrentList().get(position), selection.isSelected(position));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_SELECTION)) {
+            holder.checkbox.setChecked(selection.isSelected(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
     }
 
     @Override
     public int getItemCount() {
-        return pidList.size();
+        return differ.getCurrentList().size();
     }
 
+    /**
+     * Show a new list with every row selected. Formatting and diffing run in the background;
+     * the selection is replaced when the new list is committed, so rows and bits always match.
+     */
     public void submitList(List<PidData> newPidList) {
-        if (newPidList == null) {
-            pidList.clear();
-            selectedPids.clear();
-        } else {
-            pidList = new ArrayList<>(newPidList);
-            selectedPids.clear();
-            selectedPids.addAll(newPidList); // Select all by default
-        }
-        notifyDataSetChanged();
+        differ.submitList(newPidList, () -> {
+            int size = differ.getCurrentList().size();
+            selection = new PidSelection(size, true); // Select all by default
+            notifyItemRangeChanged(0, size, PAYLOAD_SELECTION);
+        });
+    }
+
+    /**
+     * @return Rows currently shown, indexed like getSelection()
+     */
+    public List<PidData> getCurrentList() {
+        return differ.getCurrentPids();
     }
 
-    public Set<PidData> getSelectedPids() {
-        return new HashSet<>(selectedPids);
+    /**
+     * @return Live selection over getCurrentList(); read it on the main thread
+     */
+    public PidSelection getSelection() {
+        return selection;
     }
 
     public void toggleSelectAll() {
-        if (selectedPids.size() == pidList.size()) {
-            selectedPids.clear();
-        } else {
-            selectedPids.clear();
-            selectedPids.addAll(pidList);
-        }
-        notifyDataSetChanged();
+        selection.setAll(!selection.isAllSelected());
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
     }
 
     class ViewHolder extends RecyclerView.ViewHolder {
@@ -81,14 +107,9 @@ public class PIDDetailsAdapter extends RecyclerView.Adapter<PIDDetailsAdapter.Vi
 
             View.OnClickListener clickListener = v -> {
                 int position = getAdapterPosition();
-                if (position != RecyclerView.NO_POSITION) {
-                    PidData pid = pidList.get(position);
-                    if (selectedPids.contains(pid)) {
-                        selectedPids.remove(pid);
-                    } else {
-                        selectedPids.add(pid);
-                    }
-                    notifyItemChanged(position);
+                if (position != RecyclerView.NO_POSITION && position < selection.size()) {
+                    selection.toggle(position);
+                    notifyItemChanged(position, PAYLOAD_SELECTION);
                 }
             };
 
@@ -97,17 +118,11 @@ public class PIDDetailsAdapter extends RecyclerView.Adapter<PIDDetailsAdapter.Vi
             checkbox.setOnClickListener(clickListener);
         }
 
-        void bind(PidData pid) {
-            checkbox.setChecked(selectedPids.contains(pid));
-            nameText.setText(pid.getName());
-            shortNameText.setText(pid.getShortName());
-            String details = String.format("Mode: %s\nEquation: %s\nRange: %.2f to %.2f %s",
-                    pid.getModeAndPID(),
-                    pid.getEquation(),
-                    pid.getMinValue(),
-                    pid.getMaxValue(),
-                    pid.getUnit());
-            detailsText.setText(details);
+        void bind(PidRow row, boolean selected) {
+            checkbox.setChecked(selected);
+            nameText.setText(row.pid.getName());
+            shortNameText.setText(row.pid.getShortName());
+            detailsText.setText(row.text);
         }
     }
 }
@@ -8,6 +8,7 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.DividerItemDecoration;
@@ -15,16 +16,17 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.button.MaterialButton;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 import jejusoul.com.github.obd_pids_for_hkmc_evs.MainViewModel;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.R;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidData;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidSelection;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.TorquePluginApplication;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.CSVDataManager;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TorqueServiceManager;
@@ -38,6 +40,8 @@ public class PIDDetailsFragment extends Fragment implements PermissionManager.Pe
     private PIDDetailsAdapter adapter;
     private CSVDataManager csvDataManager;
     private TorqueServiceManager torqueServiceManager;
+    private boolean torqueAcquired;
+    private ListenableFuture<Boolean> pendingImport;
     private PermissionManager permissionManager;
     private MaterialButton importButton;
     private MaterialButton selectAllButton;
@@ -58,25 +62,25 @@ public class PIDDetailsFragment extends Fragment implements PermissionManager.Pe
         torqueServiceManager = ((TorquePluginApplication) requireActivity().getApplication()).getTorqueServiceManager();
         permissionManager = new PermissionManager(requireActivity(), this);
         viewModel = new ViewModelProvider(requireActivity()).get(MainViewModel.class);
-        
-        // Observe Torque service connection
-        viewModel.getTorqueService().observe(this, service -> {
-            importButton.setEnabled(service != null);
-        });
     }
 
     @Override
-    public void onResume() {
-        super.onResume();
-        if (!torqueServiceManager.bindToTorqueService()) {
+    public void onStart() {
+        super.onStart();
+        // Reuses the app-wide binding; only the first screen to start pays for a bind
+        torqueAcquired = torqueServiceManager.acquire();
+        if (!torqueAcquired) {
             Toast.makeText(requireContext(), R.string.error_torque_connection, Toast.LENGTH_SHORT).show();
         }
     }
 
     @Override
-    public void onPause() {
-        super.onPause();
-        torqueServiceManager.unbindFromTorqueService();
+    public void onStop() {
+        super.onStop();
+        if (torqueAcquired) {
+            torqueServiceManager.release();
+            torqueAcquired = false;
+        }
     }
 
     @Nullable
@@ -107,6 +111,10 @@ public class PIDDetailsFragment extends Fragment implements PermissionManager.Pe
         selectAllButton = view.findViewById(R.id.selectAllButton);
         selectAllButton.setOnClickListener(v -> toggleSelectAll());
 
+        // Observe Torque service connection; a binding kept by the previous screen enables the button at once
+        viewModel.getTorqueService().observe(getViewLifecycleOwner(), service ->
+                importButton.setEnabled(service != null));
+
         // Load data if available
         String csvFilePath = getArguments() != null ? getArguments().getString(ARG_CSV_FILE_PATH) : null;
         if (csvFilePath != null) {
@@ -141,24 +149,20 @@ public class PIDDetailsFragment extends Fragment implements PermissionManager.Pe
             return;
         }
 
-        Set<PidData> selectedPids = adapter.getSelectedPids();
-        if (selectedPids.isEmpty()) {
+        PidSelection selection = adapter.getSelection();
+        if (selection.isEmpty()) {
             Toast.makeText(requireContext(), R.string.no_pids_selected, Toast.LENGTH_SHORT).show();
             return;
         }
 
-        try {
-            boolean success = torqueServiceManager.importPids(new ArrayList<>(selectedPids));
-            if (success) {
-                Toast.makeText(requireContext(), R.string.pids_imported, Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(requireContext(), R.string.error_importing_pids, Toast.LENGTH_LONG).show();
-            }
-        } catch (android.os.RemoteException e) {
-            String error = "Error importing PIDs: " + e.getMessage();
-            android.util.Log.e(TAG, error, e);
-            Toast.makeText(requireContext(), error, Toast.LENGTH_LONG).show();
+        if (pendingImport != null && !pendingImport.isDone()) {
+            return; // Still waiting on Torque for the last tap
         }
+        // The binder call runs off the main thread, so a slow Torque can't freeze the list
+        pendingImport = torqueServiceManager.importPidsAsync(adapter.getCurrentList(), selection,
+                TorqueServiceManager.DEFAULT_TIMEOUT_MS);
+        Futures.addCallback(pendingImport, new ImportResultCallback(this),
+                ContextCompat.getMainExecutor(requireContext()));
     }
 
     @Override
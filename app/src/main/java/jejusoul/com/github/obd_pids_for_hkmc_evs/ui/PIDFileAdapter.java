@@ -16,6 +16,7 @@ import jejusoul.com.github.obd_pids_for_hkmc_evs.R;
 
 public class PIDFileAdapter extends ListAdapter<File, PIDFileAdapter.ViewHolder> {
     private OnFileSelectedListener listener;
+    private String rootPath;
 
     public interface OnFileSelectedListener {
         void onFileSelected(File file);
@@ -29,6 +30,21 @@ public class PIDFileAdapter extends ListAdapter<File, PIDFileAdapter.ViewHolder>
         this.listener = listener;
     }
 
+    /**
+     * Files below root are labelled with their relative path, e.g. "Soul EV/x.csv".
+     */
+    public void setRootDirectory(File root) {
+        this.rootPath = root.getAbsolutePath() + File.separator;
+    }
+
+    private String labelOf(File file) {
+        String path = file.getAbsolutePath();
+        if (rootPath != null && path.startsWith(rootPath)) {
+            return path.substring(rootPath.length());
+        }
+        return file.getName();
+    }
+
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -57,7 +73,7 @@ public class PIDFileAdapter extends ListAdapter<File, PIDFileAdapter.ViewHolder>
         }
 
         void bind(File file) {
-            textView.setText(file.getName());
+            textView.setText(labelOf(file));
         }
     }
 
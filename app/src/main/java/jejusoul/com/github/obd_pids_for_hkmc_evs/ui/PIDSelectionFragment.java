@@ -1,10 +1,12 @@
 package jejusoul.com.github.obd_pids_for_hkmc_evs.ui;
 
+import android.app.AlertDialog;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -20,13 +22,17 @@ import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import jejusoul.com.github.obd_pids_for_hkmc_evs.MainViewModel;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.R;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.CSVDataManager;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.GitHubDownloadManager;
 import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PermissionManager;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.SyncSettings;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.VehicleDetector;
 
 public class PIDSelectionFragment extends Fragment implements PermissionManager.PermissionCallback {
     private PIDFileAdapter adapter;
@@ -34,9 +40,13 @@ public class PIDSelectionFragment extends Fragment implements PermissionManager.
     private PermissionManager permissionManager;
     private MainViewModel viewModel;
     private Button updateButton;
+    private Button vehiclesButton;
+    private SyncSettings syncSettings;
     private ProgressBar progressBar;
     private SwipeRefreshLayout swipeRefreshLayout;
     private TextView emptyStateText;
+    // Detection already announced, so a recreated view doesn't repeat the toast
+    private VehicleDetector.Result shownDetection;
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
@@ -44,7 +54,9 @@ public class PIDSelectionFragment extends Fragment implements PermissionManager.
         viewModel = new ViewModelProvider(requireActivity()).get(MainViewModel.class);
         csvDataManager = new CSVDataManager(requireContext());
         permissionManager = new PermissionManager(requireActivity(), this);
+        syncSettings = new SyncSettings(requireContext());
         adapter = new PIDFileAdapter();
+        adapter.setRootDirectory(csvDataManager.getPidFilesDirectory());
     }
 
     @Nullable
@@ -59,6 +71,8 @@ public class PIDSelectionFragment extends Fragment implements PermissionManager.
         progressBar = view.findViewById(R.id.progress_bar);
         swipeRefreshLayout = view.findViewById(R.id.swipeRefreshLayout);
         emptyStateText = view.findViewById(R.id.empty_state_text);
+        CheckBox incrementalSyncCheckbox = view.findViewById(R.id.incremental_sync_checkbox);
+        vehiclesButton = view.findViewById(R.id.vehicles_button);
 
         // Setup RecyclerView
         recyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
@@ -69,9 +83,25 @@ public class PIDSelectionFragment extends Fragment implements PermissionManager.
         });
         recyclerView.setAdapter(adapter);
 
+        // Search across every installed file
+        view.findViewById(R.id.search_button).setOnClickListener(v ->
+                Navigation.findNavController(view).navigate(R.id.action_pidSelection_to_pidCatalog));
+
         // Setup SwipeRefreshLayout
         swipeRefreshLayout.setOnRefreshListener(this::refreshPidFiles);
 
+        // Setup sync mode; incremental git sync is only available where JGit runs
+        if (GitHubDownloadManager.isGitSyncSupported()) {
+            incrementalSyncCheckbox.setVisibility(View.VISIBLE);
+            incrementalSyncCheckbox.setChecked(syncSettings.getSyncMode() == SyncSettings.SyncMode.GIT);
+            incrementalSyncCheckbox.setOnCheckedChangeListener((buttonView, isChecked) ->
+                    syncSettings.setSyncMode(isChecked ? SyncSettings.SyncMode.GIT : SyncSettings.SyncMode.ARCHIVE));
+        }
+
+        // Setup vehicle subscriptions; the vehicle list is known after the first sync
+        vehiclesButton.setOnClickListener(v -> showVehicleDialog());
+        updateVehiclesButton();
+
         // Setup update button
         updateButton.setOnClickListener(v -> refreshPidFiles());
 
@@ -88,7 +118,8 @@ public class PIDSelectionFragment extends Fragment implements PermissionManager.
                     updateButton.setEnabled(true);
                     progressBar.setVisibility(View.GONE);
                     swipeRefreshLayout.setRefreshing(false);
-                    loadPidFiles();
+                    updateVehiclesButton();
+                    viewModel.loadInstalledPidFiles();
                     break;
                 case ERROR:
                     updateButton.setEnabled(true);
@@ -96,21 +127,14 @@ public class PIDSelectionFragment extends Fragment implements PermissionManager.
                     swipeRefreshLayout.setRefreshing(false);
                     Toast.makeText(requireContext(), R.string.error_downloading_files,
                             Toast.LENGTH_SHORT).show();
-                    showEmptyState(R.string.error_downloading_files);
+                    // Files that are already installed stay usable
+                    if (adapter.getItemCount() == 0) {
+                        showEmptyState(R.string.error_downloading_files);
+                    }
                     break;
             }
         });
 
-        // Observe CSV files
-        viewModel.getCsvFiles().observe(getViewLifecycleOwner(), files -> {
-            if (files != null && !files.isEmpty()) {
-                adapter.submitList(files);
-                emptyStateText.setVisibility(View.GONE);
-            } else {
-                showEmptyState(R.string.no_pid_files_found);
-            }
-        });
-
         return view;
     }
 
@@ -118,15 +142,18 @@ public class PIDSelectionFragment extends Fragment implements PermissionManager.
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        // Load initial data only if we have permissions
-        if (permissionManager.areStoragePermissionsGranted()) {
-            List<File> existingFiles = csvDataManager.getPidFiles();
-            if (!existingFiles.isEmpty()) {
-                adapter.submitList(existingFiles);
-                emptyStateText.setVisibility(View.GONE);
-            } else {
-                showEmptyState(R.string.no_pid_files_found);
+        // Installed (or, on a fresh install, bundled) files are listed at once;
+        // the ViewModel revalidates them against GitHub in the background
+        viewModel.getInstalledPidFiles().observe(getViewLifecycleOwner(), this::showPidFiles);
+        viewModel.getDetectedVehicle().observe(getViewLifecycleOwner(), result -> {
+            if (result != shownDetection) {
+                shownDetection = result;
+                Toast.makeText(requireContext(), getString(R.string.vehicle_detected, result.vehicle),
+                        Toast.LENGTH_LONG).show();
             }
+        });
+        if (permissionManager.areStoragePermissionsGranted()) {
+            viewModel.loadInstalledPidFiles();
         } else {
             showEmptyState(R.string.storage_permission_required);
             permissionManager.checkAndRequestStoragePermissions();
@@ -140,6 +167,43 @@ public class PIDSelectionFragment extends Fragment implements PermissionManager.
         swipeRefreshLayout.setRefreshing(false);
     }
 
+    private void updateVehiclesButton() {
+        vehiclesButton.setVisibility(syncSettings.getKnownVehicles().isEmpty() ? View.GONE : View.VISIBLE);
+    }
+
+    /**
+     * Let the user pick the vehicle folders to sync, then sync the new selection.
+     */
+    private void showVehicleDialog() {
+        List<String> vehicles = new ArrayList<>(syncSettings.getKnownVehicles());
+        Set<String> subscribed = syncSettings.getSubscribedVehicles();
+        String[] items = vehicles.toArray(new String[0]);
+        boolean[] checked = new boolean[items.length];
+        for (int i = 0; i < items.length; i++) {
+            checked[i] = subscribed.contains(items[i]);
+        }
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle(R.string.select_vehicles_title)
+                .setMultiChoiceItems(items, checked, (dialog, which, isChecked) -> checked[which] = isChecked)
+                .setPositiveButton(R.string.dialog_ok, (dialog, which) -> {
+                    List<String> selection = new ArrayList<>();
+                    for (int i = 0; i < items.length; i++) {
+                        if (checked[i]) {
+                            selection.add(items[i]);
+                        }
+                    }
+                    syncSettings.setSubscribedVehicles(selection);
+                    refreshPidFiles();
+                })
+                .setNeutralButton(R.string.all_vehicles, (dialog, which) -> {
+                    syncSettings.setSubscribedVehicles(new ArrayList<>());
+                    refreshPidFiles();
+                })
+                .setNegativeButton(R.string.dialog_cancel, null)
+                .show();
+    }
+
     private void refreshPidFiles() {
         if (!permissionManager.areStoragePermissionsGranted()) {
             permissionManager.checkAndRequestStoragePermissions();
@@ -152,8 +216,7 @@ public class PIDSelectionFragment extends Fragment implements PermissionManager.
         viewModel.downloadPidFiles();
     }
 
-    private void loadPidFiles() {
-        List<File> pidFiles = csvDataManager.getPidFiles();
+    private void showPidFiles(List<File> pidFiles) {
         adapter.submitList(pidFiles);
         if (pidFiles.isEmpty()) {
             showEmptyState(R.string.no_pid_files_found);
@@ -164,7 +227,7 @@ public class PIDSelectionFragment extends Fragment implements PermissionManager.
 
     @Override
     public void onPermissionsGranted() {
-        loadPidFiles();
+        viewModel.loadInstalledPidFiles();
     }
 
     @Override
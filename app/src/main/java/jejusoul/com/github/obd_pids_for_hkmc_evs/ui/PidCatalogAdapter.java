@@ -0,0 +1,137 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.ui;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CheckBox;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+
+import jejusoul.com.github.obd_pids_for_hkmc_evs.R;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidRow;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidSelection;
+
+/**
+ * PidCatalogAdapter shows pages of catalog PIDs with a checkbox per row.
+ *
+ * Rows are loaded by PidCatalogPagingSource; positions not loaded yet are null and bound as
+ * empty placeholders. The selection is indexed by catalog index rather than position, so it
+ * is kept while the search or header filter changes.
+ *
+ * Usage Example:
+ * PidCatalogAdapter adapter = new PidCatalogAdapter(viewModel.getSelection(catalog));
+ * viewModel.getPidRows().observe(owner, data -> adapter.submitData(getLifecycle(), data));
+ */
+public class PidCatalogAdapter extends PagingDataAdapter<PidRow, PidCatalogAdapter.ViewHolder> {
+    private static final Object PAYLOAD_SELECTION = new Object();
+
+    private static final DiffUtil.ItemCallback<PidRow> DIFF_CALLBACK = new DiffUtil.ItemCallback<PidRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull PidRow oldItem, @NonNull PidRow newItem) {
+            return oldItem.index == newItem.index;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull PidRow oldItem, @NonNull PidRow newItem) {
+            return oldItem.text.equals(newItem.text);
+        }
+    };
+
+    private PidSelection selection;
+
+    public PidCatalogAdapter(PidSelection selection) {
+        super(DIFF_CALLBACK);
+        this.selection = selection;
+    }
+
+    /**
+     * Replace the selection, e.g. after the catalog was recompiled.
+     */
+    public void setSelection(PidSelection selection) {
+        this.selection = selection;
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
+    }
+
+    public PidSelection getSelection() {
+        return selection;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_pid_detail, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        holder.bind(getItem(position));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_SELECTION)) {
+            // peek() reads the loaded row without triggering a page load
+            PidRow row = peek(position);
+            holder.checkbox.setChecked(row != null && isSelected(row));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    private boolean isSelected(PidRow row) {
+        return row.index < selection.size() && selection.isSelected(row.index);
+    }
+
+    class ViewHolder extends RecyclerView.ViewHolder {
+        private final CheckBox checkbox;
+        private final TextView nameText;
+        private final TextView shortNameText;
+        private final TextView detailsText;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            checkbox = itemView.findViewById(R.id.pidCheckbox);
+            nameText = itemView.findViewById(R.id.pidName);
+            shortNameText = itemView.findViewById(R.id.pidShortName);
+            detailsText = itemView.findViewById(R.id.pidDetails);
+
+            View.OnClickListener clickListener = v -> {
+                int position = getBindingAdapterPosition();
+                PidRow row = position != RecyclerView.NO_POSITION ? peek(position) : null;
+                if (row != null && row.index < selection.size()) {
+                    selection.toggle(row.index);
+                    notifyItemChanged(position, PAYLOAD_SELECTION);
+                } else {
+                    // Placeholder: nothing to select yet
+                    checkbox.setChecked(false);
+                }
+            };
+
+            // Make the whole item clickable
+            itemView.setOnClickListener(clickListener);
+            checkbox.setOnClickListener(clickListener);
+        }
+
+        void bind(PidRow row) {
+            if (row == null) {
+                checkbox.setChecked(false);
+                nameText.setText(null);
+                shortNameText.setText(null);
+                detailsText.setText(null);
+                return;
+            }
+            checkbox.setChecked(isSelected(row));
+            nameText.setText(row.pid.getName());
+            shortNameText.setText(row.pid.getShortName());
+            detailsText.setText(row.text);
+        }
+    }
+}
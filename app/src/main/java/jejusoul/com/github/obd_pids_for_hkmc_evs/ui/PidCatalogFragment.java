@@ -0,0 +1,228 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.ui;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.Spinner;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.navigation.Navigation;
+import androidx.paging.LoadState;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.google.android.material.button.MaterialButton;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jejusoul.com.github.obd_pids_for_hkmc_evs.MainViewModel;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.PidCatalogViewModel;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.R;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.TorquePluginApplication;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidCatalog;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidSelection;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.TorqueServiceManager;
+
+/**
+ * PidCatalogFragment lists every installed PID, across all files, with search and an ECU
+ * header filter. Rows are paged out of the catalog, so the list stays cheap however many
+ * vehicles are synced. Selected rows can be imported into Torque or opened in a chart.
+ */
+public class PidCatalogFragment extends Fragment {
+    // Wait for a pause in typing before starting a new search
+    private static final long SEARCH_DEBOUNCE_MS = 250;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private PidCatalogViewModel catalogViewModel;
+    private TorqueServiceManager torqueServiceManager;
+    private boolean torqueAcquired;
+    private ListenableFuture<Boolean> pendingImport;
+    private PidCatalogAdapter adapter;
+    private MaterialButton importButton;
+    private TextView emptyStateText;
+    private Runnable pendingSearch;
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        catalogViewModel = new ViewModelProvider(this).get(PidCatalogViewModel.class);
+        torqueServiceManager = ((TorquePluginApplication) requireActivity().getApplication()).getTorqueServiceManager();
+        catalogViewModel.loadCatalog();
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        // Reuses the app-wide binding; only the first screen to start pays for a bind
+        torqueAcquired = torqueServiceManager.acquire();
+        if (!torqueAcquired) {
+            Toast.makeText(requireContext(), R.string.error_torque_connection, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        if (torqueAcquired) {
+            torqueServiceManager.release();
+            torqueAcquired = false;
+        }
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.fragment_pid_catalog, container, false);
+
+        // Set up RecyclerView
+        RecyclerView recyclerView = view.findViewById(R.id.pidCatalogRecyclerView);
+        recyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
+        recyclerView.setHasFixedSize(true);
+        adapter = new PidCatalogAdapter(catalogViewModel.getSelection(null));
+        recyclerView.setAdapter(adapter);
+
+        emptyStateText = view.findViewById(R.id.emptyStateText);
+        adapter.addLoadStateListener(states -> {
+            boolean empty = states.getRefresh() instanceof LoadState.NotLoading && adapter.getItemCount() == 0;
+            emptyStateText.setVisibility(empty ? View.VISIBLE : View.GONE);
+            return kotlin.Unit.INSTANCE;
+        });
+
+        importButton = view.findViewById(R.id.importButton);
+        importButton.setOnClickListener(v -> importSelectedPids());
+        view.findViewById(R.id.chartButton).setOnClickListener(this::chartSelectedPids);
+        MainViewModel mainViewModel = new ViewModelProvider(requireActivity()).get(MainViewModel.class);
+        mainViewModel.getTorqueService().observe(getViewLifecycleOwner(), service ->
+                importButton.setEnabled(service != null));
+
+        EditText searchText = view.findViewById(R.id.searchText);
+        searchText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                String query = s.toString();
+                handler.removeCallbacks(pendingSearch);
+                pendingSearch = () -> catalogViewModel.setQuery(query);
+                handler.postDelayed(pendingSearch, SEARCH_DEBOUNCE_MS);
+            }
+        });
+
+        Spinner headerSpinner = view.findViewById(R.id.headerSpinner);
+        catalogViewModel.getHeaders().observe(getViewLifecycleOwner(), headers ->
+                showHeaders(headerSpinner, headers));
+
+        return view;
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        catalogViewModel.getCatalog().observe(getViewLifecycleOwner(), catalog -> {
+            adapter.setSelection(catalogViewModel.getSelection(catalog));
+            if (catalog == null) {
+                emptyStateText.setVisibility(View.VISIBLE);
+            }
+        });
+        catalogViewModel.getPidRows().observe(getViewLifecycleOwner(), data ->
+                adapter.submitData(getViewLifecycleOwner().getLifecycle(), data));
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        handler.removeCallbacks(pendingSearch);
+    }
+
+    private void showHeaders(Spinner spinner, List<String> headers) {
+        List<String> items = new ArrayList<>(headers.size() + 1);
+        items.add(getString(R.string.all_headers));
+        items.addAll(headers);
+        ArrayAdapter<String> headerAdapter = new ArrayAdapter<>(requireContext(),
+                android.R.layout.simple_spinner_item, items);
+        headerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinner.setAdapter(headerAdapter);
+        spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                catalogViewModel.setHeader(position == 0 ? null : items.get(position));
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                catalogViewModel.setHeader(null);
+            }
+        });
+    }
+
+    private void importSelectedPids() {
+        if (!torqueServiceManager.isTorqueInstalled()) {
+            Toast.makeText(requireContext(), R.string.torque_not_installed, Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        PidCatalog catalog = catalogViewModel.getCatalog().getValue();
+        PidSelection selection = adapter.getSelection();
+        if (catalog == null || selection.isEmpty()) {
+            Toast.makeText(requireContext(), R.string.no_pids_selected, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        if (pendingImport != null && !pendingImport.isDone()) {
+            return; // Still waiting on Torque for the last tap
+        }
+        // Only the selected rows are decoded from the catalog, on the binder thread
+        pendingImport = torqueServiceManager.importPidsAsync(catalog.asList(), selection,
+                TorqueServiceManager.DEFAULT_TIMEOUT_MS);
+        Futures.addCallback(pendingImport, new ImportResultCallback(this),
+                ContextCompat.getMainExecutor(requireContext()));
+    }
+
+    private void chartSelectedPids(View view) {
+        PidCatalog catalog = catalogViewModel.getCatalog().getValue();
+        PidSelection selection = adapter.getSelection();
+        if (catalog == null || selection.isEmpty()) {
+            Toast.makeText(requireContext(), R.string.no_pids_selected, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (selection.getSelectedCount() > ChartView.MAX_SERIES) {
+            Toast.makeText(requireContext(), getString(R.string.chart_too_many, ChartView.MAX_SERIES),
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        String[] names = new String[selection.getSelectedCount()];
+        int count = 0;
+        for (int row = selection.nextSelected(0); row >= 0; row = selection.nextSelected(row + 1)) {
+            names[count++] = catalog.getName(row);
+        }
+        Bundle args = new Bundle();
+        args.putStringArray(ChartFragment.ARG_PID_NAMES, names);
+        Navigation.findNavController(view).navigate(R.id.action_pidCatalog_to_chart, args);
+    }
+}
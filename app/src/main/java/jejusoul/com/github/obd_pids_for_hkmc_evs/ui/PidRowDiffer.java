@@ -0,0 +1,94 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.ui;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidData;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidRow;
+
+/**
+ * PidRowDiffer feeds PID lists to an adapter with their row text precomputed.
+ *
+ * A submitted list is formatted into PidRows on a background thread, then diffed in the
+ * background by AsyncListDiffer, so neither step runs on the main thread and onBindViewHolder
+ * only assigns prebuilt strings.
+ *
+ * Usage Example:
+ * PidRowDiffer differ = new PidRowDiffer(this, PidRow.DETAILS);
+ * differ.submitList(pids, () -> notifyItemRangeChanged(0, differ.getCurrentList().size()));
+ */
+public class PidRowDiffer {
+    private static final Executor FORMAT_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    static final DiffUtil.ItemCallback<PidRow> DIFF_CALLBACK = new DiffUtil.ItemCallback<PidRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull PidRow oldItem, @NonNull PidRow newItem) {
+            return oldItem.pid.getName().equals(newItem.pid.getName())
+                    && oldItem.pid.getHeader().equals(newItem.pid.getHeader());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull PidRow oldItem, @NonNull PidRow newItem) {
+            return oldItem.pid.getShortName().equals(newItem.pid.getShortName())
+                    && oldItem.text.equals(newItem.text);
+        }
+    };
+
+    private final AsyncListDiffer<PidRow> differ;
+    private final PidRow.Formatter formatter;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private int generation;
+
+    public PidRowDiffer(RecyclerView.Adapter<?> adapter, PidRow.Formatter formatter) {
+        this.differ = new AsyncListDiffer<>(adapter, DIFF_CALLBACK);
+        this.formatter = formatter;
+    }
+
+    /**
+     * Format and show a new list. Lists submitted while an older one is still being
+     * formatted replace it, so only the newest list is diffed.
+     * @param pids           New list, or null for an empty list
+     * @param commitCallback Run on the main thread once the list is shown
+     */
+    @MainThread
+    public void submitList(List<PidData> pids, Runnable commitCallback) {
+        int submitted = ++generation;
+        if (pids == null || pids.isEmpty()) {
+            differ.submitList(Collections.<PidRow>emptyList(), commitCallback);
+            return;
+        }
+        // Callers may keep mutating their list; format a snapshot of it
+        List<PidData> snapshot = new ArrayList<>(pids);
+        FORMAT_EXECUTOR.execute(() -> {
+            List<PidRow> rows = PidRow.format(snapshot, formatter);
+            mainHandler.post(() -> {
+                if (submitted == generation) {
+                    differ.submitList(rows, commitCallback);
+                }
+            });
+        });
+    }
+
+    public List<PidRow> getCurrentList() {
+        return differ.getCurrentList();
+    }
+
+    /**
+     * @return PIDs of getCurrentList(), as a view
+     */
+    public List<PidData> getCurrentPids() {
+        return PidRow.pidsOf(differ.getCurrentList());
+    }
+}
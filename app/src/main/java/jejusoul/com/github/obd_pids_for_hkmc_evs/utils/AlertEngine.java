@@ -0,0 +1,156 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.util.List;
+
+/**
+ * AlertEngine evaluates compiled AlertRules against a snapshot of live values.
+ *
+ * Each rule is compiled once into two conditions over the snapshot, a double[] indexed by
+ * signal: one that raises the alert and one, offset by the hysteresis, that clears it. The
+ * threshold, index and comparison are captured in the condition, so evaluate() does no
+ * parsing, boxing or map lookups; a tick over hundreds of rules is a few array reads and
+ * comparisons each. A rule fires only after its condition has held for its debounce time,
+ * and a NaN value, a PID that could not be read, leaves the rule as it was: it neither
+ * raises nor clears an alert, nor restarts a debounce in progress.
+ *
+ * Usage Example:
+ * AlertEngine engine = new AlertEngine(rules, signals);
+ * engine.evaluate(snapshot, System.nanoTime(), listener);
+ */
+public final class AlertEngine {
+    /**
+     * A compiled comparison of one snapshot value.
+     */
+    interface Condition {
+        boolean test(double[] values);
+    }
+
+    /**
+     * Told when an alert is raised or cleared; called on the evaluating thread.
+     */
+    public interface Listener {
+        void onAlert(AlertRule rule, double value, boolean active);
+    }
+
+    private final AlertRule[] rules;
+    private final int[] signals;
+    private final Condition[] raise;
+    private final Condition[] clear;
+    private final long[] debounceNanos;
+    private final boolean[] active;
+    private final boolean[] pending;
+    private final long[] pendingSince;
+
+    /**
+     * @param rules   Rules to evaluate
+     * @param signals Snapshot index of each rule's value
+     */
+    public AlertEngine(List<AlertRule> rules, int[] signals) {
+        if (rules.size() != signals.length) {
+            throw new IllegalArgumentException("One signal per rule required");
+        }
+        int count = rules.size();
+        this.rules = rules.toArray(new AlertRule[0]);
+        this.signals = signals.clone();
+        raise = new Condition[count];
+        clear = new Condition[count];
+        debounceNanos = new long[count];
+        active = new boolean[count];
+        pending = new boolean[count];
+        pendingSince = new long[count];
+        for (int i = 0; i < count; i++) {
+            AlertRule rule = this.rules[i];
+            raise[i] = compileRaise(rule, signals[i]);
+            clear[i] = compileClear(rule, signals[i]);
+            debounceNanos[i] = rule.getDebounceMs() * 1_000_000L;
+        }
+    }
+
+    private static Condition compileRaise(AlertRule rule, int index) {
+        double threshold = rule.getThreshold();
+        switch (rule.getOperator()) {
+            case ABOVE:
+                return values -> values[index] > threshold;
+            case AT_LEAST:
+                return values -> values[index] >= threshold;
+            case BELOW:
+                return values -> values[index] < threshold;
+            case AT_MOST:
+            default:
+                return values -> values[index] <= threshold;
+        }
+    }
+
+    /**
+     * The negation of the raise condition, moved back by the hysteresis.
+     */
+    private static Condition compileClear(AlertRule rule, int index) {
+        double hysteresis = rule.getHysteresis();
+        double below = rule.getThreshold() - hysteresis;
+        double above = rule.getThreshold() + hysteresis;
+        switch (rule.getOperator()) {
+            case ABOVE:
+                return values -> values[index] <= below;
+            case AT_LEAST:
+                return values -> values[index] < below;
+            case BELOW:
+                return values -> values[index] >= above;
+            case AT_MOST:
+            default:
+                return values -> values[index] > above;
+        }
+    }
+
+    public int getRuleCount() {
+        return rules.length;
+    }
+
+    public AlertRule getRule(int index) {
+        return rules[index];
+    }
+
+    public boolean isActive(int index) {
+        return active[index];
+    }
+
+    /**
+     * Evaluate every rule against the snapshot.
+     *
+     * @param values Snapshot, indexed by the signals given to the constructor
+     * @param now    System.nanoTime() of the snapshot
+     * @return Number of active alerts
+     */
+    public int evaluate(double[] values, long now, Listener listener) {
+        int activeCount = 0;
+        for (int i = 0; i < rules.length; i++) {
+            if (Double.isNaN(values[signals[i]])) {
+                if (active[i]) {
+                    activeCount++;
+                }
+                continue;
+            }
+            if (!active[i]) {
+                if (!raise[i].test(values)) {
+                    pending[i] = false;
+                    continue;
+                }
+                if (!pending[i]) {
+                    pending[i] = true;
+                    pendingSince[i] = now;
+                }
+                if (now - pendingSince[i] >= debounceNanos[i]) {
+                    active[i] = true;
+                    pending[i] = false;
+                    listener.onAlert(rules[i], values[signals[i]], true);
+                }
+            } else if (clear[i].test(values)) {
+                active[i] = false;
+                listener.onAlert(rules[i], values[signals[i]], false);
+            }
+            if (active[i]) {
+                activeCount++;
+            }
+        }
+        return activeCount;
+    }
+}
@@ -0,0 +1,181 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.os.RemoteException;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * AlertMonitor is the telemetry stage that evaluates the user's AlertRules every tick.
+ *
+ * Rules are resolved once, when the monitor is built. A rule's PID is either a plugin PID
+ * another stage publishes, such as "Cell Voltage Delta", or a catalog PID found by name or
+ * short name, such as "Aux Batt Volts". All values are gathered into one snapshot array:
+ * catalog PIDs first, read through a PidBlockReader every READ_INTERVAL_MS so rules on the
+ * same block share one request, then the plugin PIDs, copied from the PidPublisher on every
+ * tick. The reader also reads the PIDs that catalog PIDs such as "Battery Power" reference
+ * with val{}, without giving them a place in the snapshot. The compiled AlertEngine then
+ * runs over the snapshot. Rules whose PID, or a PID it references, cannot be found are
+ * skipped and reported by getSkippedRules().
+ *
+ * Build it after the other stages, so their plugin PIDs are registered.
+ *
+ * Usage Example:
+ * AlertMonitor alerts = AlertMonitor.compile(store.getRules(), catalog, publisher, notifier);
+ * if (alerts != null) poller.addStage(alerts);
+ */
+public class AlertMonitor implements TelemetryStage {
+    static final long READ_INTERVAL_MS = 1_000;
+
+    @Nullable
+    private final PidBlockReader reader;
+    private final int readerCount;
+    private final PidPublisher publisher;
+    private final int[] slots;
+    private final AlertEngine engine;
+    private final AlertEngine.Listener listener;
+    private final List<AlertRule> skipped;
+    private final double[] snapshot;
+    private final long readIntervalNanos;
+    private final MetricsRegistry.Counter fired = MetricsRegistry.get().counter("alerts.fired");
+    private long readAt;
+    private boolean read;
+
+    private AlertMonitor(@Nullable PidBlockReader reader, int readerCount, PidPublisher publisher,
+                         int[] slots, AlertEngine engine, AlertEngine.Listener listener,
+                         List<AlertRule> skipped, long readIntervalMs) {
+        this.reader = reader;
+        this.readerCount = readerCount;
+        this.publisher = publisher;
+        this.slots = slots;
+        this.engine = engine;
+        this.listener = (rule, value, active) -> {
+            if (active) {
+                fired.increment();
+            }
+            listener.onAlert(rule, value, active);
+        };
+        this.skipped = skipped;
+        this.snapshot = new double[readerCount + slots.length];
+        this.readIntervalNanos = readIntervalMs * 1_000_000L;
+        Arrays.fill(snapshot, Double.NaN);
+    }
+
+    /**
+     * @param catalog  Catalog to look up PIDs the publisher does not know, or null
+     * @param listener Told when an alert is raised or cleared, on the polling thread
+     * @return Monitor, or null if no rule's PID could be found
+     */
+    @Nullable
+    public static AlertMonitor compile(List<AlertRule> rules, @Nullable PidCatalog catalog,
+                                       PidPublisher publisher, AlertEngine.Listener listener) {
+        return compile(rules, catalog, publisher, listener, READ_INTERVAL_MS);
+    }
+
+    @Nullable
+    static AlertMonitor compile(List<AlertRule> rules, @Nullable PidCatalog catalog,
+                                PidPublisher publisher, AlertEngine.Listener listener,
+                                long readIntervalMs) {
+        List<AlertRule> resolved = new ArrayList<>();
+        List<AlertRule> skipped = new ArrayList<>();
+        // Per resolved rule: catalog row, or -(slot + 1) for a plugin PID
+        List<Integer> sources = new ArrayList<>();
+        List<Integer> rows = new ArrayList<>();
+        List<Integer> slotList = new ArrayList<>();
+        for (AlertRule rule : rules) {
+            int slot = publisher.findSlot(rule.getSignal());
+            if (slot >= 0) {
+                if (!slotList.contains(slot)) {
+                    slotList.add(slot);
+                }
+                resolved.add(rule);
+                sources.add(-(slot + 1));
+                continue;
+            }
+            int row = catalog != null ? PidBlockReader.findPid(catalog, rule.getSignal()) : -1;
+            if (row < 0 || !resolves(catalog, row)) {
+                skipped.add(rule);
+                continue;
+            }
+            if (!rows.contains(row)) {
+                rows.add(row);
+            }
+            resolved.add(rule);
+            sources.add(row);
+        }
+        if (resolved.isEmpty()) {
+            return null;
+        }
+
+        PidBlockReader reader = null;
+        if (!rows.isEmpty()) {
+            int[] readerRows = new int[rows.size()];
+            for (int i = 0; i < readerRows.length; i++) {
+                readerRows[i] = rows.get(i);
+            }
+            try {
+                reader = PidBlockReader.fromRows(catalog, readerRows);
+            } catch (ParseException e) {
+                // Every row was checked above
+                throw new IllegalStateException(e);
+            }
+        }
+        int[] slots = new int[slotList.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = slotList.get(i);
+        }
+        int[] signals = new int[resolved.size()];
+        for (int i = 0; i < signals.length; i++) {
+            int source = sources.get(i);
+            signals[i] = source >= 0 ? rows.indexOf(source) : rows.size() + slotList.indexOf(-source - 1);
+        }
+        return new AlertMonitor(reader, rows.size(), publisher, slots, new AlertEngine(resolved, signals),
+                listener, skipped, readIntervalMs);
+    }
+
+    /**
+     * @return true if the row's equation parses and every PID it references is in the catalog
+     */
+    private static boolean resolves(PidCatalog catalog, int row) {
+        try {
+            PidBlockReader.fromRows(catalog, row);
+            return true;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    @Override
+    @WorkerThread
+    public void poll(TorqueLink link) throws RemoteException {
+        long now = System.nanoTime();
+        if (reader != null && (!read || now - readAt >= readIntervalNanos)) {
+            read = true;
+            readAt = now;
+            reader.read(link);
+            for (int i = 0; i < readerCount; i++) {
+                snapshot[i] = reader.getValue(i);
+            }
+        }
+        publisher.copyValues(slots, snapshot, readerCount);
+        engine.evaluate(snapshot, now, listener);
+    }
+
+    public AlertEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return Rules left out because their PID is neither published nor in the catalog, or
+     *         its equation does not parse or references a PID the catalog lacks
+     */
+    public List<AlertRule> getSkippedRules() {
+        return Collections.unmodifiableList(skipped);
+    }
+}
@@ -0,0 +1,82 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.Manifest;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.content.ContextCompat;
+
+import jejusoul.com.github.obd_pids_for_hkmc_evs.PluginActivity;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.R;
+
+/**
+ * AlertNotifier shows an AlertEngine's alerts as notifications on a high importance channel,
+ * one per rule, and removes a rule's notification when its alert clears.
+ *
+ * Usage Example:
+ * AlertMonitor.compile(rules, catalog, publisher, new AlertNotifier(context));
+ */
+public class AlertNotifier implements AlertEngine.Listener {
+    private static final String TAG = "AlertNotifier";
+    private static final String CHANNEL_ID = "alerts";
+    private static final int NOTIFICATION_ID = 1003;
+
+    private final Context context;
+    private final PendingIntent contentIntent;
+
+    public AlertNotifier(Context context) {
+        this.context = context.getApplicationContext();
+        Intent intent = new Intent(this.context, PluginActivity.class)
+                .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        this.contentIntent = PendingIntent.getActivity(this.context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        createChannel(this.context);
+    }
+
+    @Override
+    public void onAlert(AlertRule rule, double value, boolean active) {
+        NotificationManagerCompat manager = NotificationManagerCompat.from(context);
+        // The rule text tags the notification, so each rule has its own
+        if (!active) {
+            manager.cancel(rule.getText(), NOTIFICATION_ID);
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.d(TAG, "Alert " + rule + ", but notifications are not permitted");
+            return;
+        }
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_ev_station)
+                .setContentTitle(rule.getText())
+                .setContentText(context.getString(R.string.notification_alert_text, rule.getSignal(),
+                        value, rule.getUnit()))
+                .setContentIntent(contentIntent)
+                .setOnlyAlertOnce(true)
+                .setCategory(NotificationCompat.CATEGORY_STATUS)
+                .setPriority(NotificationCompat.PRIORITY_HIGH);
+        manager.notify(rule.getText(), NOTIFICATION_ID, builder.build());
+    }
+
+    private static void createChannel(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                context.getString(R.string.notification_channel_alerts),
+                NotificationManager.IMPORTANCE_HIGH);
+        NotificationManager manager = context.getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.createNotificationChannel(channel);
+        }
+    }
+}
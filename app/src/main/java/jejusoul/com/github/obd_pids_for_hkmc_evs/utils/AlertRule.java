@@ -0,0 +1,138 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import androidx.annotation.NonNull;
+
+import java.text.ParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * AlertRule is one user-defined threshold alert, parsed from text such as
+ * "Cell Voltage Delta > 40 mV" or "Aux Batt Volts < 11.8 V +-0.2 for 10s".
+ *
+ * Syntax: PID operator threshold [unit] [+-hysteresis] [for N s]
+ * - PID: name or short name of a catalog PID, or of a plugin PID such as "Cell Voltage Delta"
+ * - Operator: &gt;, &gt;=, &lt; or &lt;=
+ * - Unit: informational only; thresholds are in the PID's own unit
+ * - Hysteresis: how far back past the threshold the value must go to clear the alert;
+ *   defaults to 2 % of the threshold
+ * - Debounce: how long the condition must hold before the alert fires; defaults to 3 s
+ *
+ * Usage Example:
+ * AlertRule rule = AlertRule.parse("Battery Max Temperature > 45 C");
+ */
+public final class AlertRule {
+    static final long DEFAULT_DEBOUNCE_MS = 3_000;
+    private static final double DEFAULT_HYSTERESIS_FRACTION = 0.02;
+    private static final String NUMBER = "(-?\\d+(?:\\.\\d+)?)";
+    private static final Pattern SYNTAX = Pattern.compile(
+            "\\s*(.+?)\\s*(>=|<=|>|<)\\s*" + NUMBER
+                    + "\\s*(?!for\\b)([^\\s\\d+±-][^\\s]*)?"
+                    + "\\s*(?:(?:\\+-|±)\\s*(\\d+(?:\\.\\d+)?))?"
+                    + "\\s*(?:for\\s+(\\d+(?:\\.\\d+)?)\\s*s)?\\s*",
+            Pattern.CASE_INSENSITIVE);
+
+    public enum Operator {
+        ABOVE(">"),
+        AT_LEAST(">="),
+        BELOW("<"),
+        AT_MOST("<=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        static Operator of(String symbol) {
+            for (Operator operator : values()) {
+                if (operator.symbol.equals(symbol)) {
+                    return operator;
+                }
+            }
+            throw new IllegalArgumentException(symbol);
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+    }
+
+    private final String text;
+    private final String signal;
+    private final Operator operator;
+    private final double threshold;
+    private final String unit;
+    private final double hysteresis;
+    private final long debounceMs;
+
+    private AlertRule(String text, String signal, Operator operator, double threshold, String unit,
+                      double hysteresis, long debounceMs) {
+        this.text = text;
+        this.signal = signal;
+        this.operator = operator;
+        this.threshold = threshold;
+        this.unit = unit;
+        this.hysteresis = hysteresis;
+        this.debounceMs = debounceMs;
+    }
+
+    /**
+     * @throws ParseException if the text does not follow the rule syntax
+     */
+    @NonNull
+    public static AlertRule parse(String text) throws ParseException {
+        Matcher matcher = SYNTAX.matcher(text);
+        if (!matcher.matches()) {
+            throw new ParseException("Expected \"PID > value\": " + text, 0);
+        }
+        double threshold = Double.parseDouble(matcher.group(3));
+        double hysteresis = matcher.group(5) != null
+                ? Double.parseDouble(matcher.group(5))
+                : Math.abs(threshold) * DEFAULT_HYSTERESIS_FRACTION;
+        long debounceMs = matcher.group(6) != null
+                ? Math.round(Double.parseDouble(matcher.group(6)) * 1000)
+                : DEFAULT_DEBOUNCE_MS;
+        return new AlertRule(text.trim(), matcher.group(1), Operator.of(matcher.group(2)), threshold,
+                matcher.group(4) != null ? matcher.group(4) : "", hysteresis, debounceMs);
+    }
+
+    /**
+     * @return The rule as the user wrote it
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return Name or short name of the PID the rule watches
+     */
+    public String getSignal() {
+        return signal;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public double getHysteresis() {
+        return hysteresis;
+    }
+
+    public long getDebounceMs() {
+        return debounceMs;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,86 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * AlertRuleStore keeps the user's alert rules, one rule text per line, in SharedPreferences.
+ *
+ * Until rules are saved, DEFAULT_RULES apply: a cell imbalance, a hot pack, a weak 12 V
+ * battery, and a cell or module drifting away from the rest of the pack. Texts are validated
+ * when saved, so getRules() only skips a rule if the syntax changed since.
+ *
+ * Usage Example:
+ * AlertRuleStore store = new AlertRuleStore(context);
+ * store.setRuleTexts(Arrays.asList("Cell Voltage Delta > 40 mV", "Aux Batt Volts < 11.8 V"));
+ * List<AlertRule> rules = store.getRules();
+ */
+public class AlertRuleStore {
+    private static final String TAG = "AlertRuleStore";
+    private static final String PREFS_NAME = "alerts";
+    private static final String KEY_RULES = "rules";
+    static final List<String> DEFAULT_RULES = Arrays.asList(
+            "Cell Voltage Delta > 40 mV",
+            "Battery Max Temperature > 45 C",
+            "Aux Batt Volts < 11.8 V",
+            "Drifting Cell > 0 for 60s",
+            "Drifting Module > 0 for 60s");
+
+    private final SharedPreferences preferences;
+
+    public AlertRuleStore(Context context) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public List<String> getRuleTexts() {
+        String stored = preferences.getString(KEY_RULES, null);
+        if (stored == null) {
+            return DEFAULT_RULES;
+        }
+        List<String> texts = new ArrayList<>();
+        for (String line : stored.split("\n")) {
+            if (!line.trim().isEmpty()) {
+                texts.add(line.trim());
+            }
+        }
+        return texts;
+    }
+
+    /**
+     * @throws ParseException for the first text that is not a valid rule; nothing is saved
+     */
+    public void setRuleTexts(List<String> texts) throws ParseException {
+        StringBuilder joined = new StringBuilder();
+        for (String text : texts) {
+            AlertRule.parse(text);
+            joined.append(text.trim()).append('\n');
+        }
+        preferences.edit().putString(KEY_RULES, joined.toString()).apply();
+    }
+
+    public List<AlertRule> getRules() {
+        List<String> texts = getRuleTexts();
+        List<AlertRule> rules = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            try {
+                rules.add(AlertRule.parse(text));
+            } catch (ParseException e) {
+                Log.w(TAG, "Skipping alert rule", e);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Go back to DEFAULT_RULES.
+     */
+    public void reset() {
+        preferences.edit().remove(KEY_RULES).apply();
+    }
+}
@@ -0,0 +1,105 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.util.Arrays;
+
+/**
+ * BucketSummary receives the result of a Recording range query: the time range cut into
+ * equal buckets, each with the minimum, maximum, mean and number of the samples in it.
+ *
+ * The arrays are allocated once for a capacity, typically the chart's width in pixels, and
+ * refilled by every query, so panning and zooming allocate nothing.
+ *
+ * Usage Example:
+ * BucketSummary buckets = new BucketSummary(800);
+ * recording.query(column, fromMs, toMs, 800, buckets);
+ * float low = buckets.getMin(0);
+ */
+public final class BucketSummary {
+    private final float[] min;
+    private final float[] max;
+    private final double[] sum;
+    private final int[] count;
+    private int size;
+    private long fromMs;
+    private double bucketMs;
+
+    public BucketSummary(int capacity) {
+        min = new float[capacity];
+        max = new float[capacity];
+        sum = new double[capacity];
+        count = new int[capacity];
+    }
+
+    public int getCapacity() {
+        return min.length;
+    }
+
+    void reset(int size, long fromMs, double bucketMs) {
+        if (size > min.length) {
+            throw new IllegalArgumentException(size + " buckets exceed the capacity of " + min.length);
+        }
+        this.size = size;
+        this.fromMs = fromMs;
+        this.bucketMs = bucketMs;
+        Arrays.fill(min, 0, size, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, 0, size, Float.NEGATIVE_INFINITY);
+        Arrays.fill(sum, 0, size, 0);
+        Arrays.fill(count, 0, size, 0);
+    }
+
+    void add(int bucket, float bucketMin, float bucketMax, double bucketSum, int bucketCount) {
+        if (bucketCount == 0) {
+            return;
+        }
+        min[bucket] = Math.min(min[bucket], bucketMin);
+        max[bucket] = Math.max(max[bucket], bucketMax);
+        sum[bucket] += bucketSum;
+        count[bucket] += bucketCount;
+    }
+
+    /**
+     * @return Number of buckets the last query filled
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Start of the bucket, in milliseconds since the epoch
+     */
+    public long getStartMs(int bucket) {
+        return fromMs + (long) (bucket * bucketMs);
+    }
+
+    public double getBucketMs() {
+        return bucketMs;
+    }
+
+    /**
+     * @return Number of samples in the bucket with a value
+     */
+    public int getCount(int bucket) {
+        return count[bucket];
+    }
+
+    /**
+     * @return Smallest value in the bucket, NaN if it is empty
+     */
+    public float getMin(int bucket) {
+        return count[bucket] > 0 ? min[bucket] : Float.NaN;
+    }
+
+    /**
+     * @return Largest value in the bucket, NaN if it is empty
+     */
+    public float getMax(int bucket) {
+        return count[bucket] > 0 ? max[bucket] : Float.NaN;
+    }
+
+    /**
+     * @return Mean of the bucket, NaN if it is empty
+     */
+    public float getMean(int bucket) {
+        return count[bucket] > 0 ? (float) (sum[bucket] / count[bucket]) : Float.NaN;
+    }
+}
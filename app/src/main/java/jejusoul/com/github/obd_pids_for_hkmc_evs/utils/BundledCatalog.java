@@ -0,0 +1,66 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.tracing.Trace;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * BundledCatalog gives access to the PID catalog compiled from the asset CSVs at build time.
+ *
+ * The catalog asset is stored uncompressed in the APK (see noCompress in app/build.gradle),
+ * so it is memory mapped straight from the APK file without copying or parsing.
+ *
+ * Usage Example:
+ * PidCatalog catalog = BundledCatalog.get(context);
+ * if (catalog != null) { ... }
+ */
+public final class BundledCatalog {
+    private static final String TAG = "BundledCatalog";
+    public static final String ASSET_NAME = "pid_catalog.bin";
+
+    private static volatile PidCatalog instance;
+    private static volatile boolean unavailable;
+
+    private BundledCatalog() {
+    }
+
+    /**
+     * Map the bundled catalog on first use.
+     * @param context Any context
+     * @return Catalog, or null if the APK has none or it cannot be mapped
+     */
+    @Nullable
+    public static PidCatalog get(Context context) {
+        PidCatalog catalog = instance;
+        if (catalog != null || unavailable) {
+            return catalog;
+        }
+        synchronized (BundledCatalog.class) {
+            if (instance == null && !unavailable) {
+                long start = System.nanoTime();
+                Trace.beginSection("BundledCatalog.map");
+                try (AssetFileDescriptor descriptor = context.getApplicationContext().getAssets().openFd(ASSET_NAME);
+                     FileInputStream input = new FileInputStream(descriptor.getFileDescriptor());
+                     FileChannel channel = input.getChannel()) {
+                    instance = PidCatalog.wrap(channel.map(FileChannel.MapMode.READ_ONLY,
+                            descriptor.getStartOffset(), descriptor.getLength()));
+                    Log.d(TAG, "Mapped " + instance.getPidCount() + " PIDs in "
+                            + (System.nanoTime() - start) / 1000 + "us");
+                } catch (IOException e) {
+                    Log.w(TAG, "Bundled catalog unavailable", e);
+                    unavailable = true;
+                } finally {
+                    Trace.endSection();
+                }
+            }
+            return instance;
+        }
+    }
+}
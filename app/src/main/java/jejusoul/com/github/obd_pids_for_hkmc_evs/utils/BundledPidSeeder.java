@@ -0,0 +1,113 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+import androidx.tracing.Trace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BundledPidSeeder installs the PID files shipped in the APK when no PID files are installed yet.
+ *
+ * The assets use the repository layout ("Soul EV/Kia_Soul_EV_BMS_data.csv"), so the seeded
+ * files are indistinguishable from synced ones and the first sync simply replaces them.
+ * Copying the bundled CSVs takes a few milliseconds, which lets a fresh install show a usable
+ * PID list at once instead of waiting for the first download.
+ *
+ * Usage Example:
+ * BundledPidSeeder seeder = new BundledPidSeeder(context.getAssets(), csvManager.getPidFilesDirectory());
+ * List<File> seeded = seeder.seedIfEmpty(filter);
+ */
+public class BundledPidSeeder {
+    private static final String TAG = "BundledPidSeeder";
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final AssetManager assets;
+    private final File pidFilesDirectory;
+
+    public BundledPidSeeder(AssetManager assets, File pidFilesDirectory) {
+        this.assets = assets;
+        this.pidFilesDirectory = pidFilesDirectory;
+    }
+
+    /**
+     * Copy the bundled CSVs of the subscribed vehicles unless PID files are already installed.
+     * @param filter Vehicle subscriptions
+     * @return Seeded files, empty if nothing was seeded
+     */
+    @NonNull
+    @WorkerThread
+    public List<File> seedIfEmpty(VehicleFilter filter) {
+        List<File> seeded = new ArrayList<>();
+        if (hasCsvFiles(pidFilesDirectory)) {
+            return seeded;
+        }
+
+        long start = System.nanoTime();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        Trace.beginSection("BundledPidSeeder.seedIfEmpty");
+        try {
+            String[] vehicles = assets.list("");
+            if (vehicles == null) {
+                return seeded;
+            }
+            for (String vehicle : vehicles) {
+                String[] files = assets.list(vehicle);
+                if (files == null) {
+                    continue;
+                }
+                for (String fileName : files) {
+                    String relativePath = vehicle + "/" + fileName;
+                    if (filter.matches(relativePath)) {
+                        seeded.add(copy(relativePath, buffer));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to seed bundled PID files", e);
+        } finally {
+            Trace.endSection();
+        }
+        Log.d(TAG, "Seeded " + seeded.size() + " bundled PID files in "
+                + (System.nanoTime() - start) / 1_000_000L + "ms");
+        return seeded;
+    }
+
+    private File copy(String relativePath, byte[] buffer) throws IOException {
+        File outputFile = new File(pidFilesDirectory, relativePath);
+        File parentDir = outputFile.getParentFile();
+        if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + parentDir.getAbsolutePath());
+        }
+        try (InputStream input = assets.open(relativePath);
+             OutputStream output = new FileOutputStream(outputFile)) {
+            int len;
+            while ((len = input.read(buffer)) > 0) {
+                output.write(buffer, 0, len);
+            }
+        }
+        return outputFile;
+    }
+
+    private static boolean hasCsvFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return false;
+        }
+        for (File file : files) {
+            if (file.isDirectory() ? hasCsvFiles(file) : VehicleFilter.isCsv(file.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -3,14 +3,14 @@ package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
 import android.content.Context;
 import android.util.Log;
 
-import com.opencsv.CSVReader;
-import com.opencsv.exceptions.CsvValidationException;
+import androidx.tracing.Trace;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -27,7 +27,7 @@ import java.util.List;
  * scenarios.
  * 
  * CSV File Format Expected:
- * - Header row with column names
+ * - Optional header row with column names
  * - Columns: Name, ShortName, ModeAndPID, Equation, MinValue, MaxValue, Unit, Header
  * - All numeric values (MinValue, MaxValue) must be valid floating-point numbers
  * 
@@ -37,6 +37,9 @@ import java.util.List;
  * - Support for different CSV formats
  * - Context-aware file management
  * 
+ * Files seeded from the APK are read from the prebuilt BundledCatalog; other files are
+ * parsed with PidCsvParser, the parser the build uses to validate the bundled CSVs.
+ * 
  * Usage Example:
  * CSVDataManager manager = new CSVDataManager(context);
  * List<PidData> pids = manager.loadPidsFromFile(filePath);
@@ -66,113 +69,64 @@ public class CSVDataManager {
      * @throws IOException If there's an error reading the file
      */
     public List<PidData> loadPIDData(String fileName) throws IOException {
-        List<PidData> pidList = new ArrayList<>();
-        File file = new File(pidFilesDirectory, fileName);
-        
-        if (!file.exists()) {
-            Log.e(TAG, "File does not exist: " + fileName);
-            return pidList;
-        }
-
-        try (CSVReader reader = new CSVReader(new FileReader(file))) {
-            String[] line;
-            boolean isFirstLine = true;
-            while ((line = reader.readNext()) != null) {
-                // Skip header line
-                if (isFirstLine) {
-                    isFirstLine = false;
-                    continue;
-                }
-                PidData pid = parsePIDLine(line);
-                if (pid != null) {
-                    pidList.add(pid);
-                }
-            }
-        } catch (CsvValidationException e) {
-            Log.e(TAG, "Error validating CSV: " + fileName, e);
-            throw new IOException("Error validating CSV file", e);
-        }
-
-        return pidList;
+        return loadPIDDataFromFile(new File(pidFilesDirectory, fileName));
     }
 
     /**
      * Load PID data from a specific file
      * @param file File to load
      * @return List of PID data
-     * @throws IOException If there's an error reading the file
+     * @throws IOException If the file does not exist or there's an error reading it
      */
     public List<PidData> loadPIDDataFromFile(File file) throws IOException {
-        List<PidData> pidList = new ArrayList<>();
-        
         if (!file.exists()) {
-            Log.e(TAG, "File does not exist: " + file.getAbsolutePath());
-            return pidList;
+            throw new FileNotFoundException("File does not exist: " + file.getAbsolutePath());
         }
 
-        try (CSVReader reader = new CSVReader(new FileReader(file))) {
-            String[] line;
-            boolean isFirstLine = true;
-            while ((line = reader.readNext()) != null) {
-                // Skip header line
-                if (isFirstLine) {
-                    isFirstLine = false;
-                    continue;
-                }
-                PidData pid = parsePIDLine(line);
-                if (pid != null) {
-                    pidList.add(pid);
-                }
+        long start = System.nanoTime();
+        Trace.beginSection("CSVDataManager.loadPIDDataFromFile");
+        try {
+            List<PidData> bundled = loadFromBundledCatalog(file);
+            if (bundled != null) {
+                MetricsRegistry.get().histogram("csv.catalog_read").recordSince(start);
+                return bundled;
             }
-        } catch (CsvValidationException e) {
-            Log.e(TAG, "Error validating CSV: " + file.getName(), e);
-            throw new IOException("Error validating CSV file", e);
-        }
 
-        return pidList;
+            PidCsvParser.Result result = new PidCsvParser(false).parse(new FileReader(file), file.getName());
+            for (String error : result.errors) {
+                Log.w(TAG, "Skipped invalid CSV line " + error);
+            }
+            MetricsRegistry metrics = MetricsRegistry.get();
+            metrics.histogram("csv.parse").recordSince(start);
+            metrics.counter("csv.pids").add(result.pids.size());
+            metrics.counter("csv.errors").add(result.errors.size());
+            return new ArrayList<>(result.pids);
+        } finally {
+            Trace.endSection();
+        }
     }
 
     /**
-     * Parse a line from the CSV file into a PidData object
-     * @param line Array of strings from CSV line
-     * @return PidData object or null if parsing fails
+     * Read a seeded file from the catalog compiled at build time instead of parsing it.
+     * @return Rows of the file, or null if the file did not come from the bundled catalog
      */
-    private PidData parsePIDLine(String[] line) {
-        if (line == null || line.length < 8) {
-            Log.w(TAG, "Invalid CSV line: " + Arrays.toString(line));
+    private List<PidData> loadFromBundledCatalog(File file) {
+        Integer seededChecksum = new SyncSettings(context).getSeededCatalogChecksum();
+        if (seededChecksum == null) {
             return null;
         }
-
-        try {
-            // Trim values and validate
-            String name = line[0].trim();
-            String shortName = line[1].trim();
-            String modeAndPID = line[2].trim();
-            String equation = line[3].trim();
-            float minValue = Float.parseFloat(line[4].trim());
-            float maxValue = Float.parseFloat(line[5].trim());
-            String unit = line[6].trim();
-            String header = line[7].trim();
-
-            // Basic validation
-            if (name.isEmpty() || shortName.isEmpty() || modeAndPID.isEmpty()) {
-                Log.w(TAG, "Required fields are empty in CSV line: " + Arrays.toString(line));
-                return null;
-            }
-
-            return new PidData(name, shortName, modeAndPID, equation, minValue, maxValue, unit, header);
-        } catch (NumberFormatException e) {
-            Log.e(TAG, "Error parsing numeric values in CSV line: " + Arrays.toString(line), e);
-            return null;
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected error parsing CSV line: " + Arrays.toString(line), e);
+        PidCatalog catalog = BundledCatalog.get(context);
+        if (catalog == null || catalog.getChecksum() != seededChecksum) {
             return null;
         }
+        String relativePath = pidFilesDirectory.toURI().relativize(file.toURI()).getPath();
+        int index = catalog.findFile(relativePath);
+        return index >= 0 ? catalog.getPids(index) : null;
     }
 
     /**
-     * Get list of PID files in the PID files directory
-     * @return List of CSV files
+     * Get list of PID files in the PID files directory, including the vehicle subdirectories
+     * @return List of CSV files, sorted by path
      */
     public List<File> getPidFiles() {
         List<File> pidFiles = new ArrayList<>();
@@ -181,18 +135,47 @@ public class CSVDataManager {
             return pidFiles;
         }
 
-        File[] files = pidFilesDirectory.listFiles((dir, name) -> 
-            name.toLowerCase().endsWith(".csv"));
-        
-        if (files != null) {
-            pidFiles.addAll(Arrays.asList(files));
-        } else {
-            Log.w(TAG, "Failed to list files in PID directory");
-        }
+        collectCsvFiles(pidFilesDirectory, pidFiles);
+        Collections.sort(pidFiles);
+        return pidFiles;
+    }
 
+    /**
+     * Get the PID files of the filter's vehicles. Only their folders are listed, so the cost
+     * follows the subscribed vehicles rather than everything installed.
+     * @param filter Vehicles to list
+     * @return List of CSV files, sorted by path
+     */
+    public List<File> getPidFiles(VehicleFilter filter) {
+        if (filter.isAll()) {
+            return getPidFiles();
+        }
+        List<File> pidFiles = new ArrayList<>();
+        for (String vehicle : filter.getVehicles()) {
+            File directory = new File(pidFilesDirectory, vehicle);
+            if (directory.isDirectory()) {
+                collectCsvFiles(directory, pidFiles);
+            }
+        }
+        Collections.sort(pidFiles);
         return pidFiles;
     }
 
+    private void collectCsvFiles(File directory, List<File> pidFiles) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            Log.w(TAG, "Failed to list files in " + directory.getAbsolutePath());
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectCsvFiles(file, pidFiles);
+            } else if (file.getName().toLowerCase().endsWith(".csv")) {
+                pidFiles.add(file);
+            }
+        }
+    }
+
     /**
      * Get the PID files directory
      * @return File object representing the PID files directory
@@ -210,10 +193,17 @@ public class CSVDataManager {
             return false;
         }
 
+        return deleteChildren(pidFilesDirectory);
+    }
+
+    private boolean deleteChildren(File directory) {
         boolean allDeleted = true;
-        File[] files = pidFilesDirectory.listFiles();
+        File[] files = directory.listFiles();
         if (files != null) {
             for (File file : files) {
+                if (file.isDirectory()) {
+                    allDeleted &= deleteChildren(file);
+                }
                 if (!file.delete()) {
                     Log.e(TAG, "Failed to delete file: " + file.getName());
                     allDeleted = false;
@@ -0,0 +1,234 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * CellAnalyzer decodes the cell voltage PIDs of a vehicle from the raw ECU responses that
+ * carry them, a whole block at a time, into one float[] per sample.
+ *
+ * Torque evaluates every "Cell Voltage NN" row as a separate PID. Here the rows are grouped
+ * into blocks by (header, mode and PID), so each block is requested once per sample; the
+ * Soul EV's 96 cells come in three blocks of 32 (2102, 2103 and 2104 on 7E4). Equations of
+ * the form "byte / constant", which is all the cell files use, are decoded directly from
+ * the payload; anything else falls back to PidEquation.
+ *
+ * Usage Example:
+ * CellAnalyzer analyzer = CellAnalyzer.fromCatalog(catalog);
+ * int length = ObdResponse.parse(response, payload);
+ * if (analyzer.decodeBlock(block, payload, length, cells)) stats.update(cells, analyzer.getCellCount());
+ */
+public final class CellAnalyzer {
+    private static final Pattern CELL_NAME = Pattern.compile("Cell Voltage\\s*(\\d+)$");
+    // e.g. "e/50" or "AJ / 50.0"
+    private static final Pattern SCALED_BYTE =
+            Pattern.compile("\\s*([A-Za-z]{1,2})\\s*/\\s*(\\d+(?:\\.\\d+)?)\\s*");
+
+    private final String[] blockHeaders;
+    private final String[] blockCommands;
+    // Cells of block b are blockCells[blockStart[b] .. blockStart[b + 1])
+    private final int[] blockStart;
+    private final int[] blockCells;
+    private final int[] cellNumbers;
+    private final String[] cellUnits;
+    private final int[] cellBytes;
+    private final float[] cellDivisors;
+    // Null for cells decoded directly
+    private final PidEquation[] cellEquations;
+    private final PayloadContext context = new PayloadContext();
+
+    private CellAnalyzer(List<PidData> cells) throws ParseException {
+        int count = cells.size();
+        cellNumbers = new int[count];
+        cellUnits = new String[count];
+        cellBytes = new int[count];
+        cellDivisors = new float[count];
+        cellEquations = new PidEquation[count];
+
+        List<String> headers = new ArrayList<>();
+        List<String> commands = new ArrayList<>();
+        int[] cellBlock = new int[count];
+        for (int i = 0; i < count; i++) {
+            PidData cell = cells.get(i);
+            Matcher name = CELL_NAME.matcher(cell.getName());
+            cellNumbers[i] = name.find() ? Integer.parseInt(name.group(1)) : i + 1;
+            cellUnits[i] = cell.getUnit();
+
+            Matcher scaled = SCALED_BYTE.matcher(cell.getEquation());
+            if (scaled.matches() && Float.parseFloat(scaled.group(2)) != 0) {
+                cellBytes[i] = PidEquation.byteIndex(scaled.group(1));
+                cellDivisors[i] = Float.parseFloat(scaled.group(2));
+            } else {
+                cellEquations[i] = PidEquation.parse(cell.getEquation());
+            }
+
+            int block = 0;
+            while (block < headers.size() && !(headers.get(block).equalsIgnoreCase(cell.getHeader())
+                    && commands.get(block).equalsIgnoreCase(cell.getModeAndPID()))) {
+                block++;
+            }
+            if (block == headers.size()) {
+                headers.add(cell.getHeader());
+                commands.add(cell.getModeAndPID());
+            }
+            cellBlock[i] = block;
+        }
+
+        blockHeaders = headers.toArray(new String[0]);
+        blockCommands = commands.toArray(new String[0]);
+        blockStart = new int[blockHeaders.length + 1];
+        blockCells = new int[count];
+        int next = 0;
+        for (int block = 0; block < blockHeaders.length; block++) {
+            blockStart[block] = next;
+            for (int i = 0; i < count; i++) {
+                if (cellBlock[i] == block) {
+                    blockCells[next++] = i;
+                }
+            }
+        }
+        blockStart[blockHeaders.length] = next;
+    }
+
+    /**
+     * @param cells Cell voltage rows, in cell order
+     * @throws ParseException if a row's equation is invalid
+     */
+    @NonNull
+    public static CellAnalyzer fromPids(List<PidData> cells) throws ParseException {
+        return new CellAnalyzer(cells);
+    }
+
+    /**
+     * Build an analyzer over the cell voltage rows of the first file that has any.
+     * @return Analyzer, or null if the catalog has no cell voltages or they do not parse
+     */
+    @Nullable
+    public static CellAnalyzer fromCatalog(PidCatalog catalog) {
+        for (int file = 0; file < catalog.getFileCount(); file++) {
+            int first = catalog.getFirstPid(file);
+            int end = first + catalog.getPidCount(file);
+            List<PidData> cells = new ArrayList<>();
+            for (int pid = first; pid < end; pid++) {
+                if (isCellVoltage(catalog.getName(pid)) && !catalog.getHeader(pid).isEmpty()) {
+                    cells.add(catalog.getPid(pid));
+                }
+            }
+            if (cells.isEmpty()) {
+                continue;
+            }
+            try {
+                return new CellAnalyzer(cells);
+            } catch (ParseException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    static boolean isCellVoltage(String name) {
+        return CELL_NAME.matcher(name).find();
+    }
+
+    public int getCellCount() {
+        return cellNumbers.length;
+    }
+
+    /**
+     * @param cell Index into the decoded float[]
+     * @return Cell number from the PID name, e.g. 7 for "Cell Voltage 07"
+     */
+    public int getCellNumber(int cell) {
+        return cellNumbers[cell];
+    }
+
+    /**
+     * @return Unit of the cell's PID, normally "V"
+     */
+    public String getCellUnit(int cell) {
+        return cellUnits[cell];
+    }
+
+    public int getBlockCount() {
+        return blockHeaders.length;
+    }
+
+    public String getBlockHeader(int block) {
+        return blockHeaders[block];
+    }
+
+    public String getBlockCommand(int block) {
+        return blockCommands[block];
+    }
+
+    /**
+     * Decode the cells of one block from its response payload into cells[]. Other entries of
+     * cells[] are left alone, so the blocks of a sample can be decoded one after the other.
+     *
+     * @param payload Payload from ObdResponse.parse()
+     * @param length  Payload length from ObdResponse.parse()
+     * @return false if the payload does not answer the block or is too short; cells[] may
+     *         then hold a partial update
+     */
+    public boolean decodeBlock(int block, byte[] payload, int length, float[] cells) {
+        int offset = ObdResponse.dataOffset(payload, length, blockCommands[block]);
+        if (offset < 0) {
+            return false;
+        }
+        context.set(payload, offset, length);
+        for (int i = blockStart[block]; i < blockStart[block + 1]; i++) {
+            int cell = blockCells[i];
+            PidEquation equation = cellEquations[cell];
+            if (equation == null) {
+                int index = offset + cellBytes[cell];
+                if (index >= length) {
+                    return false;
+                }
+                cells[cell] = (payload[index] & 0xFF) / cellDivisors[cell];
+            } else {
+                if (offset + equation.getMaxByteIndex() >= length) {
+                    return false;
+                }
+                cells[cell] = (float) equation.evaluate(context);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Response bytes for the PidEquation fallback, reused for every evaluation.
+     */
+    private static final class PayloadContext implements PidEquation.Context {
+        private byte[] payload;
+        private int offset;
+        private int length;
+
+        void set(byte[] payload, int offset, int length) {
+            this.payload = payload;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int byteAt(int index) {
+            int position = offset + index;
+            return position < length ? payload[position] & 0xFF : 0;
+        }
+
+        @Override
+        public double valueOf(String name) {
+            return Double.NaN; // Cells never refer to other PIDs
+        }
+
+        @Override
+        public double average(int slot, int window, double sample) {
+            return sample;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.os.RemoteException;
+
+import androidx.annotation.WorkerThread;
+
+import java.util.Arrays;
+
+/**
+ * CellMonitor is the telemetry stage that reads every cell voltage block, computes the pack
+ * statistics and hands them to a PidPublisher, which pushes them to Torque as plugin PIDs:
+ * - Cell Voltage Min, Max and Mean (V)
+ * - Cell Voltage Delta and Std Dev (mV)
+ * - Weakest Cell, the number of the lowest cell
+ * - Cell Drift Z and Drifting Cell: the largest |z| a DriftDetector gives a cell, and that
+ *   cell's number while it is flagged, 0 otherwise
+ *
+ * A sample sends one request per block rather than one per cell, at most once per
+ * SAMPLE_INTERVAL_MS however fast the poller ticks, since cell voltages move slowly and the
+ * blocks are long. The payload buffer, the cell array and the statistics are allocated
+ * once, so a sample allocates nothing beyond the response strings the binder hands back. A
+ * sample with a block missing is dropped whole rather than mixing cells from different
+ * samples.
+ *
+ * Usage Example:
+ * CellMonitor monitor = new CellMonitor(CellAnalyzer.fromCatalog(catalog), poller.getPublisher());
+ * poller.addStage(monitor);
+ */
+public class CellMonitor implements TelemetryStage {
+    public static final String PID_MIN = "Cell Voltage Min";
+    public static final String PID_MAX = "Cell Voltage Max";
+    public static final String PID_DELTA = "Cell Voltage Delta";
+    public static final String PID_MEAN = "Cell Voltage Mean";
+    public static final String PID_STD_DEV = "Cell Voltage Std Dev";
+    public static final String PID_WEAKEST = "Weakest Cell";
+    public static final String PID_DRIFT_Z = "Cell Drift Z";
+    public static final String PID_DRIFTING = "Drifting Cell";
+
+    static final long SAMPLE_INTERVAL_MS = 1_000;
+    private static final float MAX_VOLTAGE = 5f;
+    // Cell voltages come in 20 mV steps, so any real change clears these
+    private static final float VOLTAGE_DEADBAND = 0.005f;
+    private static final float MILLIVOLT_DEADBAND = 1f;
+    // Averages about 100 samples, so drift finer than the 20 mV steps shows in the average
+    private static final float DRIFT_ALPHA = 0.02f;
+    // A cell 8 mV off a perfectly balanced pack is flagged, well before Cell Voltage Delta alerts
+    private static final float DRIFT_MIN_SPREAD = 0.002f;
+    static final float DRIFT_THRESHOLD = 4f;
+
+    private final CellAnalyzer analyzer;
+    private final PidPublisher publisher;
+    private final long sampleIntervalNanos;
+    private final int minSlot;
+    private final int maxSlot;
+    private final int deltaSlot;
+    private final int meanSlot;
+    private final int stdDevSlot;
+    private final int weakestSlot;
+    private final int driftZSlot;
+    private final int driftingSlot;
+    private final byte[] payload = new byte[ObdResponse.MAX_PAYLOAD];
+    private final float[] cells;
+    private final CellStats stats = new CellStats();
+    private final DriftDetector drift;
+    private final MetricsRegistry.Counter samples = MetricsRegistry.get().counter("cells.samples");
+    private final MetricsRegistry.Counter failures = MetricsRegistry.get().counter("cells.failures");
+    private final LatencyHistogram analyzeLatency = MetricsRegistry.get().histogram("cells.analyze");
+    private long sampledAt;
+    private boolean sampled;
+
+    public CellMonitor(CellAnalyzer analyzer, PidPublisher publisher) {
+        this(analyzer, publisher, SAMPLE_INTERVAL_MS);
+    }
+
+    CellMonitor(CellAnalyzer analyzer, PidPublisher publisher, long sampleIntervalMs) {
+        this.analyzer = analyzer;
+        this.publisher = publisher;
+        this.sampleIntervalNanos = sampleIntervalMs * 1_000_000L;
+        this.cells = new float[analyzer.getCellCount()];
+        this.drift = new DriftDetector(cells.length, DRIFT_ALPHA, DRIFT_MIN_SPREAD, DRIFT_THRESHOLD);
+        minSlot = publisher.register(PID_MIN, "Cell Min", "V", 0, MAX_VOLTAGE, VOLTAGE_DEADBAND);
+        maxSlot = publisher.register(PID_MAX, "Cell Max", "V", 0, MAX_VOLTAGE, VOLTAGE_DEADBAND);
+        deltaSlot = publisher.register(PID_DELTA, "Cell Delta", "mV", 0, 1000, MILLIVOLT_DEADBAND);
+        meanSlot = publisher.register(PID_MEAN, "Cell Mean", "V", 0, MAX_VOLTAGE, VOLTAGE_DEADBAND);
+        stdDevSlot = publisher.register(PID_STD_DEV, "Cell SD", "mV", 0, 500, MILLIVOLT_DEADBAND);
+        weakestSlot = publisher.register(PID_WEAKEST, "Weakest", "", 1, analyzer.getCellCount(), 0);
+        driftZSlot = publisher.register(PID_DRIFT_Z, "Cell Drift", "", 0, 20, 0.1f);
+        driftingSlot = publisher.register(PID_DRIFTING, "Drift Cell", "", 0, analyzer.getCellCount(), 0);
+    }
+
+    @Override
+    @WorkerThread
+    public void poll(TorqueLink link) throws RemoteException {
+        long now = System.nanoTime();
+        if (sampled && now - sampledAt < sampleIntervalNanos) {
+            return;
+        }
+        sampled = true;
+        sampledAt = now;
+        if (!sample(link)) {
+            failures.increment();
+            return;
+        }
+        samples.increment();
+        int weakest = stats.getMinIndex();
+        publisher.set(minSlot, stats.getMin());
+        publisher.set(maxSlot, stats.getMax());
+        publisher.set(deltaSlot, stats.getDelta() * 1000);
+        publisher.set(meanSlot, stats.getMean());
+        publisher.set(stdDevSlot, stats.getStdDev() * 1000);
+        publisher.set(weakestSlot, weakest >= 0 ? analyzer.getCellNumber(weakest) : Float.NaN);
+        if (drift.update(cells, cells.length)) {
+            int drifting = drift.getMaxIndex();
+            publisher.set(driftZSlot, Math.abs(drift.getMaxZScore()));
+            publisher.set(driftingSlot, drift.isFlagged(drifting) ? analyzer.getCellNumber(drifting) : 0);
+        }
+    }
+
+    /**
+     * Read and decode every block, then update the statistics.
+     * @return false if a block did not answer
+     */
+    boolean sample(TorqueLink link) throws RemoteException {
+        Arrays.fill(cells, Float.NaN);
+        for (int block = 0; block < analyzer.getBlockCount(); block++) {
+            String[] response = link.sendCommand(analyzer.getBlockHeader(block),
+                    analyzer.getBlockCommand(block));
+            long start = System.nanoTime();
+            int length = ObdResponse.parse(response, payload);
+            boolean decoded = analyzer.decodeBlock(block, payload, length, cells);
+            analyzeLatency.record(System.nanoTime() - start);
+            if (!decoded) {
+                return false;
+            }
+        }
+        stats.update(cells, cells.length);
+        return stats.getCount() > 0;
+    }
+
+    /**
+     * @return Statistics of the last complete sample; only valid on the polling thread
+     */
+    public CellStats getStats() {
+        return stats;
+    }
+
+    public CellAnalyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     * @return Cell voltages of the last sample, NaN where it failed, by index into the
+     *         analyzer's cells; only valid on the polling thread
+     */
+    public float[] getCells() {
+        return cells;
+    }
+
+    /**
+     * @return Drift of each cell, by index into the analyzer's cells; only valid on the
+     *         polling thread
+     */
+    public DriftDetector getDrift() {
+        return drift;
+    }
+}
@@ -0,0 +1,109 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+/**
+ * CellStats holds the pack level figures of one sample of cell voltages: min, max, delta,
+ * mean, standard deviation and which cells are the weakest and strongest.
+ *
+ * update() makes a single pass over the samples with Welford's algorithm and allocates
+ * nothing, so one instance is reused for every poll. Not thread safe.
+ *
+ * Usage Example:
+ * CellStats stats = new CellStats();
+ * stats.update(cells, analyzer.getCellCount());
+ * float deltaMv = stats.getDelta() * 1000;
+ */
+public final class CellStats {
+    private int count;
+    private float min;
+    private float max;
+    private int minIndex = -1;
+    private int maxIndex = -1;
+    private double mean;
+    private double m2;
+
+    /**
+     * Replace the statistics with those of cells[0..count). NaN samples, cells that could not
+     * be decoded, are skipped.
+     */
+    public void update(float[] cells, int count) {
+        int n = 0;
+        float low = Float.POSITIVE_INFINITY;
+        float high = Float.NEGATIVE_INFINITY;
+        int lowIndex = -1;
+        int highIndex = -1;
+        double runningMean = 0;
+        double runningM2 = 0;
+        for (int i = 0; i < count; i++) {
+            float value = cells[i];
+            if (Float.isNaN(value)) {
+                continue;
+            }
+            n++;
+            if (value < low) {
+                low = value;
+                lowIndex = i;
+            }
+            if (value > high) {
+                high = value;
+                highIndex = i;
+            }
+            double delta = value - runningMean;
+            runningMean += delta / n;
+            runningM2 += delta * (value - runningMean);
+        }
+        this.count = n;
+        this.min = n > 0 ? low : Float.NaN;
+        this.max = n > 0 ? high : Float.NaN;
+        this.minIndex = lowIndex;
+        this.maxIndex = highIndex;
+        this.mean = n > 0 ? runningMean : Double.NaN;
+        this.m2 = runningM2;
+    }
+
+    /**
+     * @return Number of cells that went into the statistics
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public float getMin() {
+        return min;
+    }
+
+    public float getMax() {
+        return max;
+    }
+
+    /**
+     * @return max - min, the imbalance of the pack
+     */
+    public float getDelta() {
+        return max - min;
+    }
+
+    public float getMean() {
+        return (float) mean;
+    }
+
+    /**
+     * @return Population standard deviation; every cell of the pack is sampled
+     */
+    public float getStdDev() {
+        return count > 0 ? (float) Math.sqrt(m2 / count) : Float.NaN;
+    }
+
+    /**
+     * @return Index of the lowest cell, the weakest one, or -1 if there were no samples
+     */
+    public int getMinIndex() {
+        return minIndex;
+    }
+
+    /**
+     * @return Index of the highest cell, or -1 if there were no samples
+     */
+    public int getMaxIndex() {
+        return maxIndex;
+    }
+}
@@ -0,0 +1,200 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * ChargeCurve is the time series of one charging session: DC power into the pack, AC power
+ * into the charger, SOC and battery and charger temperatures.
+ *
+ * Samples are quantized into parallel primitive arrays, 11 bytes each: seconds since the
+ * start, power in 10 W steps, SOC in 0.5 % steps and temperatures in whole degrees. When the
+ * arrays are full, every other sample is dropped and only every second sample is kept from
+ * then on, so a session of any length fits the capacity, at a resolution that halves each
+ * time. With the default capacity a curve takes 44 KB, in memory and written out when full;
+ * a 10 hour session sampled every 10 s is 3600 samples and keeps all of them.
+ *
+ * Usage Example:
+ * ChargeCurve curve = new ChargeCurve(ChargeCurve.DEFAULT_CAPACITY);
+ * curve.add(elapsedSeconds, 6.4f, 7.1f, 55.5f, 24, 38);
+ * curve.writeTo(output);
+ */
+public final class ChargeCurve {
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final int FORMAT_VERSION = 1;
+    private static final short NO_POWER = Short.MIN_VALUE;
+    private static final byte NO_BYTE = Byte.MIN_VALUE;
+    // SOC is stored unsigned, 0..200
+    private static final byte NO_SOC = (byte) 0xFF;
+
+    private final int capacity;
+    private final int[] seconds;
+    private final short[] dcPower;
+    private final short[] acPower;
+    private final byte[] soc;
+    private final byte[] batteryTemp;
+    private final byte[] chargerTemp;
+    private int size;
+    private int stride = 1;
+    private int offered;
+
+    /**
+     * @param capacity Samples to hold before halving the resolution; even and at least 2
+     */
+    public ChargeCurve(int capacity) {
+        if (capacity < 2 || capacity % 2 != 0) {
+            throw new IllegalArgumentException("capacity must be even and at least 2");
+        }
+        this.capacity = capacity;
+        seconds = new int[capacity];
+        dcPower = new short[capacity];
+        acPower = new short[capacity];
+        soc = new byte[capacity];
+        batteryTemp = new byte[capacity];
+        chargerTemp = new byte[capacity];
+    }
+
+    /**
+     * Offer a sample; only every getStride()-th one is stored. NaN marks a missing value.
+     *
+     * @param elapsedSeconds Seconds since the session started
+     * @param dcKw           Power into the pack
+     * @param acKw           Power into the on-board charger
+     * @param socPercent     State of charge
+     * @param batteryTempC   Highest battery module temperature
+     * @param chargerTempC   On-board charger temperature
+     */
+    public void add(int elapsedSeconds, float dcKw, float acKw, float socPercent, float batteryTempC,
+                    float chargerTempC) {
+        if (offered++ % stride != 0) {
+            return;
+        }
+        if (size == capacity) {
+            decimate();
+        }
+        seconds[size] = elapsedSeconds;
+        dcPower[size] = quantizePower(dcKw);
+        acPower[size] = quantizePower(acKw);
+        soc[size] = Float.isNaN(socPercent) ? NO_SOC : (byte) clamp(Math.round(socPercent * 2), 0, 200);
+        batteryTemp[size] = quantizeTemperature(batteryTempC);
+        chargerTemp[size] = quantizeTemperature(chargerTempC);
+        size++;
+    }
+
+    private void decimate() {
+        int kept = 0;
+        for (int i = 0; i < size; i += 2) {
+            seconds[kept] = seconds[i];
+            dcPower[kept] = dcPower[i];
+            acPower[kept] = acPower[i];
+            soc[kept] = soc[i];
+            batteryTemp[kept] = batteryTemp[i];
+            chargerTemp[kept] = chargerTemp[i];
+            kept++;
+        }
+        size = kept;
+        stride *= 2;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Incoming samples per stored one
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    public int getSeconds(int index) {
+        return seconds[index];
+    }
+
+    public float getDcKw(int index) {
+        return powerKw(dcPower[index]);
+    }
+
+    public float getAcKw(int index) {
+        return powerKw(acPower[index]);
+    }
+
+    public float getSoc(int index) {
+        return soc[index] == NO_SOC ? Float.NaN : (soc[index] & 0xFF) / 2f;
+    }
+
+    public float getBatteryTemp(int index) {
+        return batteryTemp[index] == NO_BYTE ? Float.NaN : batteryTemp[index];
+    }
+
+    public float getChargerTemp(int index) {
+        return chargerTemp[index] == NO_BYTE ? Float.NaN : chargerTemp[index];
+    }
+
+    public void writeTo(DataOutputStream output) throws IOException {
+        output.writeByte(FORMAT_VERSION);
+        output.writeInt(stride);
+        output.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            output.writeInt(seconds[i]);
+            output.writeShort(dcPower[i]);
+            output.writeShort(acPower[i]);
+            output.writeByte(soc[i]);
+            output.writeByte(batteryTemp[i]);
+            output.writeByte(chargerTemp[i]);
+        }
+    }
+
+    /**
+     * @throws IOException if the data is truncated, of an unknown version, or has a stride
+     *                     or size add() could not have produced
+     */
+    public static ChargeCurve readFrom(DataInputStream input) throws IOException {
+        int version = input.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown charge curve version " + version);
+        }
+        int stride = input.readInt();
+        // Starts at 1 and only ever doubles
+        if (stride <= 0 || (stride & (stride - 1)) != 0) {
+            throw new IOException("Bad charge curve stride " + stride);
+        }
+        int size = input.readInt();
+        if (size < 0 || size > DEFAULT_CAPACITY) {
+            throw new IOException("Bad charge curve size " + size);
+        }
+        ChargeCurve curve = new ChargeCurve(DEFAULT_CAPACITY);
+        for (int i = 0; i < size; i++) {
+            curve.seconds[i] = input.readInt();
+            curve.dcPower[i] = input.readShort();
+            curve.acPower[i] = input.readShort();
+            curve.soc[i] = input.readByte();
+            curve.batteryTemp[i] = input.readByte();
+            curve.chargerTemp[i] = input.readByte();
+        }
+        curve.size = size;
+        curve.stride = stride;
+        return curve;
+    }
+
+    private static short quantizePower(float kw) {
+        if (Float.isNaN(kw)) {
+            return NO_POWER;
+        }
+        // 10 W steps cover +-327 kW, beyond any charger
+        return (short) clamp(Math.round(kw * 100), Short.MIN_VALUE + 1, Short.MAX_VALUE);
+    }
+
+    private static float powerKw(short value) {
+        return value == NO_POWER ? Float.NaN : value / 100f;
+    }
+
+    private static byte quantizeTemperature(float celsius) {
+        return Float.isNaN(celsius) ? NO_BYTE : (byte) clamp(Math.round(celsius), Byte.MIN_VALUE + 1, Byte.MAX_VALUE);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
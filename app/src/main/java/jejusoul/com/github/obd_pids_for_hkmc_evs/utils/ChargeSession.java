@@ -0,0 +1,179 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * ChargeSession accumulates one plug-in to unplug charging session: the energy delivered
+ * into the pack (DC) and drawn by the on-board charger (AC), their ratio as the charging
+ * efficiency, and the ChargeCurve of the session.
+ *
+ * Both energies are EnergyIntegrator running totals, so the efficiency is up to date after
+ * every sample without revisiting the curve. Rapid (DC) sessions bypass the on-board
+ * charger and have no AC side or efficiency.
+ *
+ * Usage Example:
+ * ChargeSession session = new ChargeSession(System.currentTimeMillis(), System.nanoTime(), false);
+ * session.add(System.nanoTime(), dcKw, acKw, soc, batteryTemp, chargerTemp);
+ * float efficiency = session.getEfficiency();
+ */
+public final class ChargeSession {
+    private static final int MAGIC = 0x43485253; // "CHRS"
+    private static final int FORMAT_VERSION = 1;
+    // Samples come every few seconds; a minute without one is an outage, not a slow poll
+    private static final long MAX_GAP_MS = 60_000;
+    // Below this the AC side is noise and the ratio meaningless
+    private static final double MIN_AC_KWH = 0.01;
+
+    private final long startMillis;
+    private final long startNanos;
+    private final boolean rapid;
+    private final ChargeCurve curve;
+    private final EnergyIntegrator dc = new EnergyIntegrator(MAX_GAP_MS);
+    private final EnergyIntegrator ac = new EnergyIntegrator(MAX_GAP_MS);
+    private int durationSeconds;
+    private float startSoc = Float.NaN;
+    private float endSoc = Float.NaN;
+    private float peakDcKw;
+    // Totals of a session read back from storage
+    private double storedDcKwh = Double.NaN;
+    private double storedAcKwh = Double.NaN;
+
+    /**
+     * @param startMillis Wall clock start, to tell sessions apart
+     * @param startNanos  System.nanoTime() at the start; sample times count from it
+     * @param rapid       true for a DC rapid charge
+     */
+    public ChargeSession(long startMillis, long startNanos, boolean rapid) {
+        this(startMillis, startNanos, rapid, new ChargeCurve(ChargeCurve.DEFAULT_CAPACITY));
+    }
+
+    private ChargeSession(long startMillis, long startNanos, boolean rapid, ChargeCurve curve) {
+        this.startMillis = startMillis;
+        this.startNanos = startNanos;
+        this.rapid = rapid;
+        this.curve = curve;
+    }
+
+    /**
+     * @param timeNanos   System.nanoTime() of the sample
+     * @param dcKw        Power into the pack; NaN if unknown
+     * @param acKw        Power drawn by the on-board charger; NaN if unknown
+     * @param soc         State of charge in %
+     * @param batteryTemp Highest battery temperature in degrees C
+     * @param chargerTemp On-board charger temperature in degrees C
+     */
+    public void add(long timeNanos, float dcKw, float acKw, float soc, float batteryTemp, float chargerTemp) {
+        int elapsed = (int) ((timeNanos - startNanos) / 1_000_000_000L);
+        durationSeconds = Math.max(durationSeconds, elapsed);
+        // The integrators count positive power; here that is power flowing into the pack
+        dc.add(timeNanos, dcKw * 1000.0, false);
+        ac.add(timeNanos, acKw * 1000.0, false);
+        if (!Float.isNaN(soc)) {
+            if (Float.isNaN(startSoc)) {
+                startSoc = soc;
+            }
+            endSoc = soc;
+        }
+        if (dcKw > peakDcKw) {
+            peakDcKw = dcKw;
+        }
+        curve.add(elapsed, dcKw, acKw, soc, batteryTemp, chargerTemp);
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public boolean isRapid() {
+        return rapid;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * @return kWh delivered into the pack
+     */
+    public double getDcKwh() {
+        return Double.isNaN(storedDcKwh) ? dc.getDischargedKwh() : storedDcKwh;
+    }
+
+    /**
+     * @return kWh drawn from the AC supply by the on-board charger
+     */
+    public double getAcKwh() {
+        return Double.isNaN(storedAcKwh) ? ac.getDischargedKwh() : storedAcKwh;
+    }
+
+    /**
+     * @return DC into the pack over AC drawn, 0..1, or NaN until enough AC energy has been
+     *         measured
+     */
+    public float getEfficiency() {
+        double acKwh = getAcKwh();
+        return acKwh < MIN_AC_KWH ? Float.NaN : (float) (getDcKwh() / acKwh);
+    }
+
+    public float getStartSoc() {
+        return startSoc;
+    }
+
+    public float getEndSoc() {
+        return endSoc;
+    }
+
+    public float getPeakDcKw() {
+        return peakDcKw;
+    }
+
+    public ChargeCurve getCurve() {
+        return curve;
+    }
+
+    public void writeTo(DataOutputStream output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeByte(FORMAT_VERSION);
+        output.writeLong(startMillis);
+        output.writeBoolean(rapid);
+        output.writeInt(durationSeconds);
+        output.writeDouble(getDcKwh());
+        output.writeDouble(getAcKwh());
+        output.writeFloat(startSoc);
+        output.writeFloat(endSoc);
+        output.writeFloat(peakDcKw);
+        curve.writeTo(output);
+    }
+
+    /**
+     * @return Session with its totals and curve; it takes no further samples
+     * @throws IOException if the data is not a session of a known version
+     */
+    public static ChargeSession readFrom(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a charge session");
+        }
+        int version = input.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown charge session version " + version);
+        }
+        long startMillis = input.readLong();
+        boolean rapid = input.readBoolean();
+        int durationSeconds = input.readInt();
+        double dcKwh = input.readDouble();
+        double acKwh = input.readDouble();
+        float startSoc = input.readFloat();
+        float endSoc = input.readFloat();
+        float peakDcKw = input.readFloat();
+        ChargeSession session = new ChargeSession(startMillis, 0, rapid, ChargeCurve.readFrom(input));
+        session.durationSeconds = durationSeconds;
+        session.storedDcKwh = dcKwh;
+        session.storedAcKwh = acKwh;
+        session.startSoc = startSoc;
+        session.endSoc = endSoc;
+        session.peakDcKw = peakDcKw;
+        return session;
+    }
+}
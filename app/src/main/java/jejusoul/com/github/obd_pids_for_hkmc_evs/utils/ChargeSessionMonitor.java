@@ -0,0 +1,297 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.os.RemoteException;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ChargeSessionMonitor is the telemetry stage that records charging sessions.
+ *
+ * While idle it checks the BMS's charge port flags every IDLE_INTERVAL_MS. Once a port is
+ * plugged in it starts a ChargeSession and samples the BMS (2101 on 7E4) and, for AC
+ * charging, the on-board charger (2102 on 794) every CHARGE_INTERVAL_MS: charging changes
+ * over minutes, so a sample every 10 s costs two requests while keeping the curve smooth.
+ * The session ends when both ports are unplugged, after MAX_MISSED_SAMPLES unanswered
+ * samples or when the poller stops, and is handed to the ChargeSessionStore.
+ *
+ * Model years decode the charger differently: the Soul EV's OBC2015 and OBC2016 files read
+ * the AC current from different bytes. With several charger files installed, the one for
+ * the car's model year is used, taken from the VIN vehicle detection found or else read
+ * from the car at the first AC sample. Until the model year is known, sessions have no AC
+ * side rather than a wrong one.
+ *
+ * Published plugin PIDs:
+ * - Charge Session Energy: kWh into the pack
+ * - Charge Session AC Energy: kWh drawn by the on-board charger
+ * - Charge Efficiency: DC over AC, in %
+ *
+ * Usage Example:
+ * ChargeSessionMonitor monitor = ChargeSessionMonitor.fromCatalog(catalog, poller.getPublisher(), store,
+ *         settings.getDetectedVin());
+ * if (monitor != null) poller.addStage(monitor);
+ */
+public class ChargeSessionMonitor implements TelemetryStage {
+    public static final String PID_ENERGY = "Charge Session Energy";
+    public static final String PID_AC_ENERGY = "Charge Session AC Energy";
+    public static final String PID_EFFICIENCY = "Charge Efficiency";
+
+    static final String[] BMS_PIDS = {"Normal Charge Port", "Rapid Charge Port", "Battery Current",
+            "Battery DC Voltage", "State of Charge BMS", "Battery Max Temperature"};
+    private static final int NORMAL_PORT = 0;
+    private static final int RAPID_PORT = 1;
+    private static final int CURRENT = 2;
+    private static final int VOLTAGE = 3;
+    private static final int SOC = 4;
+    private static final int MAX_TEMPERATURE = 5;
+    static final String[] OBC_PIDS = {"OBC_Charging_Voltage", "OBC_Charging_Current", "OBC Temp 1"};
+    private static final int AC_VOLTAGE = 0;
+    private static final int AC_CURRENT = 1;
+    private static final int OBC_TEMPERATURE = 2;
+
+    static final long IDLE_INTERVAL_MS = 5_000;
+    static final long CHARGE_INTERVAL_MS = 10_000;
+    static final int MAX_MISSED_SAMPLES = 6;
+    private static final float MAX_KWH = 100f;
+    private static final float KWH_DEADBAND = 0.01f;
+
+    private final PidBlockReader bms;
+    @Nullable
+    private PidBlockReader obc;
+    // Charger files to pick from by model year, until one is picked
+    @Nullable
+    private ChargerFiles chargers;
+    @Nullable
+    private final ChargeSessionStore store;
+    private final PidPublisher publisher;
+    private final long idleIntervalNanos;
+    private final long chargeIntervalNanos;
+    private final int energySlot;
+    private final int acEnergySlot;
+    private final int efficiencySlot;
+    private final MetricsRegistry.Counter sessions = MetricsRegistry.get().counter("charge.sessions");
+    private final MetricsRegistry.Counter samples = MetricsRegistry.get().counter("charge.samples");
+    private ChargeSession session;
+    private ChargeSession lastSession;
+    private int missed;
+    private long sampledAt;
+    private boolean sampled;
+
+    ChargeSessionMonitor(PidBlockReader bms, @Nullable PidBlockReader obc, PidPublisher publisher,
+                         @Nullable ChargeSessionStore store, long idleIntervalMs, long chargeIntervalMs) {
+        this(bms, obc, null, publisher, store, idleIntervalMs, chargeIntervalMs);
+    }
+
+    ChargeSessionMonitor(PidBlockReader bms, @Nullable PidBlockReader obc, @Nullable ChargerFiles chargers,
+                         PidPublisher publisher, @Nullable ChargeSessionStore store, long idleIntervalMs,
+                         long chargeIntervalMs) {
+        this.bms = bms;
+        this.obc = obc;
+        this.chargers = chargers;
+        this.publisher = publisher;
+        this.store = store;
+        this.idleIntervalNanos = idleIntervalMs * 1_000_000L;
+        this.chargeIntervalNanos = chargeIntervalMs * 1_000_000L;
+        energySlot = publisher.register(PID_ENERGY, "Chg Energy", "kWh", 0, MAX_KWH, KWH_DEADBAND);
+        acEnergySlot = publisher.register(PID_AC_ENERGY, "Chg AC", "kWh", 0, MAX_KWH, KWH_DEADBAND);
+        efficiencySlot = publisher.register(PID_EFFICIENCY, "Chg Eff", "%", 0, 100, 0.1f);
+    }
+
+    /**
+     * @param store Where finished sessions go, or null to keep only the last one in memory
+     * @param vin   The car's VIN if known, to pick the charger file of its model year
+     * @return Monitor, or null if the catalog lacks the BMS charge port PIDs; without the
+     *         on-board charger PIDs sessions have no AC side
+     */
+    @Nullable
+    public static ChargeSessionMonitor fromCatalog(PidCatalog catalog, PidPublisher publisher,
+                                                   @Nullable ChargeSessionStore store, @Nullable String vin) {
+        PidBlockReader bms = PidBlockReader.fromCatalog(catalog, BMS_PIDS);
+        if (bms == null) {
+            return null;
+        }
+        ChargerFiles chargers = ChargerFiles.fromCatalog(catalog);
+        PidBlockReader obc = null;
+        if (chargers != null && (chargers.size() == 1 || vin != null)) {
+            obc = chargers.size() == 1 ? chargers.get(0) : chargers.forModelYear(VehicleDetector.getModelYear(vin));
+            chargers = null;
+        }
+        return new ChargeSessionMonitor(bms, obc, chargers, publisher, store, IDLE_INTERVAL_MS, CHARGE_INTERVAL_MS);
+    }
+
+    @Override
+    @WorkerThread
+    public void poll(TorqueLink link) throws RemoteException {
+        long now = System.nanoTime();
+        long interval = session != null ? chargeIntervalNanos : idleIntervalNanos;
+        if (sampled && now - sampledAt < interval) {
+            return;
+        }
+        sampled = true;
+        sampledAt = now;
+
+        if (!bms.read(link)) {
+            if (session != null && ++missed >= MAX_MISSED_SAMPLES) {
+                finish();
+            }
+            return;
+        }
+        missed = 0;
+        boolean normal = bms.getValue(NORMAL_PORT) != 0;
+        boolean rapid = bms.getValue(RAPID_PORT) != 0;
+        if (!normal && !rapid) {
+            if (session != null) {
+                finish();
+            }
+            return;
+        }
+        if (session == null) {
+            session = new ChargeSession(System.currentTimeMillis(), now, rapid);
+            sessions.increment();
+        }
+
+        // The BMS reports discharge as positive current
+        float dcKw = (float) (-bms.getValue(CURRENT) * bms.getValue(VOLTAGE) / 1000);
+        float acKw = Float.NaN;
+        float chargerTemp = Float.NaN;
+        if (obc == null && chargers != null && !session.isRapid()) {
+            obc = chargers.readModelYear(link);
+            chargers = null;
+        }
+        if (obc != null && !session.isRapid()) {
+            obc.read(link);
+            acKw = (float) (obc.getValue(AC_VOLTAGE) * obc.getValue(AC_CURRENT) / 1000);
+            chargerTemp = (float) obc.getValue(OBC_TEMPERATURE);
+        }
+        session.add(System.nanoTime(), dcKw, acKw, (float) bms.getValue(SOC),
+                (float) bms.getValue(MAX_TEMPERATURE), chargerTemp);
+        samples.increment();
+
+        publisher.set(energySlot, (float) session.getDcKwh());
+        publisher.set(acEnergySlot, session.isRapid() || obc == null ? Float.NaN : (float) session.getAcKwh());
+        publisher.set(efficiencySlot, session.getEfficiency() * 100);
+    }
+
+    /**
+     * Save the session in progress, cut short, and let the store's thread end.
+     */
+    @Override
+    @WorkerThread
+    public void onStop() {
+        if (session != null) {
+            finish();
+        }
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private void finish() {
+        if (store != null && session.getCurve().size() > 0) {
+            store.saveAsync(session);
+        }
+        lastSession = session;
+        session = null;
+        missed = 0;
+    }
+
+    /**
+     * @return Session in progress, or null; only use it on the polling thread
+     */
+    @Nullable
+    public ChargeSession getSession() {
+        return session;
+    }
+
+    /**
+     * @return Most recently finished session, or null
+     */
+    @Nullable
+    public ChargeSession getLastSession() {
+        return lastSession;
+    }
+
+    /**
+     * The catalog's on-board charger files, each read with its own rows, by the model year in
+     * its name: files named without one count as older than any.
+     */
+    static final class ChargerFiles {
+        private static final Pattern YEAR = Pattern.compile("(19|20)\\d\\d");
+
+        private final List<PidBlockReader> readers = new ArrayList<>();
+        private final List<Integer> years = new ArrayList<>();
+        @Nullable
+        private String vinHeader;
+
+        /**
+         * @return Charger files, or null if no file has all of OBC_PIDS
+         */
+        @Nullable
+        static ChargerFiles fromCatalog(PidCatalog catalog) {
+            ChargerFiles chargers = new ChargerFiles();
+            for (int file = 0; file < catalog.getFileCount(); file++) {
+                PidBlockReader reader = PidBlockReader.fromFile(catalog, file, OBC_PIDS);
+                if (reader != null) {
+                    chargers.readers.add(reader);
+                    chargers.years.add(yearOf(catalog.getFilePath(file)));
+                }
+            }
+            if (chargers.readers.isEmpty()) {
+                return null;
+            }
+            for (int pid = 0; pid < catalog.getPidCount() && chargers.vinHeader == null; pid++) {
+                if (VehicleDetector.VIN_COMMAND.equalsIgnoreCase(catalog.getModeAndPid(pid))
+                        && !catalog.getHeader(pid).isEmpty()) {
+                    chargers.vinHeader = catalog.getHeader(pid);
+                }
+            }
+            return chargers;
+        }
+
+        static int yearOf(String path) {
+            Matcher matcher = YEAR.matcher(path.substring(path.lastIndexOf('/') + 1));
+            return matcher.find() ? Integer.parseInt(matcher.group()) : 0;
+        }
+
+        int size() {
+            return readers.size();
+        }
+
+        PidBlockReader get(int index) {
+            return readers.get(index);
+        }
+
+        /**
+         * @return Reader of the newest file not newer than the model year, or null
+         */
+        @Nullable
+        PidBlockReader forModelYear(int modelYear) {
+            int best = -1;
+            for (int i = 0; i < years.size(); i++) {
+                if (years.get(i) <= modelYear && (best < 0 || years.get(i) > years.get(best))) {
+                    best = i;
+                }
+            }
+            return best >= 0 ? readers.get(best) : null;
+        }
+
+        /**
+         * Read the VIN from the car and pick the file of its model year.
+         * @return Reader, or null if the catalog has no VIN PID or the car gave no VIN
+         */
+        @Nullable
+        @WorkerThread
+        PidBlockReader readModelYear(TorqueLink link) throws RemoteException {
+            if (vinHeader == null) {
+                return null;
+            }
+            String vin = VehicleDetector.parseVin(link.sendCommand(vinHeader, VehicleDetector.VIN_COMMAND));
+            return forModelYear(VehicleDetector.getModelYear(vin));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChargeSessionStore keeps finished charging sessions, one small binary file each, in the
+ * charge_sessions directory of the app's files.
+ *
+ * Files are named after the session start, so listing them in name order is chronological.
+ * Only the newest MAX_SESSIONS are kept. Saving runs on the store's own thread, so a
+ * telemetry stage can hand a finished session over without blocking the binder thread; the
+ * thread is started by the first save and ends with close().
+ *
+ * Usage Example:
+ * ChargeSessionStore store = new ChargeSessionStore(context);
+ * store.saveAsync(session);
+ * List<File> sessions = store.list();
+ */
+public class ChargeSessionStore {
+    private static final String TAG = "ChargeSessionStore";
+    private static final String DIRECTORY = "charge_sessions";
+    private static final String SUFFIX = ".bin";
+    static final int MAX_SESSIONS = 50;
+    private static final long CLOSE_TIMEOUT_MS = 5_000;
+
+    private final File directory;
+    private ExecutorService ioExecutor;
+
+    public ChargeSessionStore(Context context) {
+        this(new File(context.getApplicationContext().getFilesDir(), DIRECTORY));
+    }
+
+    ChargeSessionStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Save a finished session in the background; it must not take samples any more.
+     */
+    public synchronized void saveAsync(ChargeSession session) {
+        if (ioExecutor == null) {
+            ioExecutor = Executors.newSingleThreadExecutor();
+        }
+        ioExecutor.execute(() -> {
+            try {
+                save(session);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to save charge session", e);
+            }
+        });
+    }
+
+    /**
+     * Wait up to CLOSE_TIMEOUT_MS for the sessions handed over to be saved and let the
+     * store's thread end. A later save starts a new one.
+     */
+    @WorkerThread
+    public synchronized void close() {
+        if (ioExecutor == null) {
+            return;
+        }
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Charge session still saving after " + CLOSE_TIMEOUT_MS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ioExecutor = null;
+    }
+
+    @WorkerThread
+    void save(ChargeSession session) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = new File(directory, String.format(Locale.ROOT, "session_%013d%s", session.getStartMillis(), SUFFIX));
+        File temp = new File(directory, file.getName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            session.writeTo(output);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot rename " + temp);
+        }
+        prune();
+    }
+
+    /**
+     * @return Saved session files, oldest first
+     */
+    @NonNull
+    public List<File> list() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    @WorkerThread
+    public ChargeSession load(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return ChargeSession.readFrom(input);
+        }
+    }
+
+    private void prune() {
+        List<File> files = list();
+        for (int i = 0; i < files.size() - MAX_SESSIONS; i++) {
+            if (!files.get(i).delete()) {
+                Log.w(TAG, "Failed to delete " + files.get(i));
+            }
+        }
+    }
+}
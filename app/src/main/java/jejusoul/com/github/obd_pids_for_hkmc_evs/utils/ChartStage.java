@@ -0,0 +1,61 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.os.RemoteException;
+
+import androidx.annotation.WorkerThread;
+
+/**
+ * ChartStage is the telemetry stage behind a live chart: on every tick it reads a set of
+ * catalog PIDs through a PidBlockReader, one request per block however many of them are
+ * charted, and feeds each value into its series' StreamingLttb.
+ *
+ * Usage Example:
+ * ChartStage stage = new ChartStage(PidBlockReader.fromPids(pids), width, 300);
+ * poller.addStage(stage);
+ * int points = stage.getSeries(0).copyTo(xs, ys);
+ */
+public class ChartStage implements TelemetryStage {
+    private final PidBlockReader reader;
+    private final StreamingLttb[] series;
+    private final long startedAt = System.nanoTime();
+
+    /**
+     * @param width         Points across the chart
+     * @param windowSeconds Time the chart spans
+     */
+    public ChartStage(PidBlockReader reader, int width, float windowSeconds) {
+        this.reader = reader;
+        series = new StreamingLttb[reader.getPidCount()];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = new StreamingLttb(width, windowSeconds);
+        }
+    }
+
+    @Override
+    @WorkerThread
+    public void poll(TorqueLink link) throws RemoteException {
+        reader.read(link);
+        float seconds = (System.nanoTime() - startedAt) / 1e9f;
+        for (int i = 0; i < series.length; i++) {
+            series[i].add(seconds, (float) reader.getValue(i));
+        }
+    }
+
+    public int getSeriesCount() {
+        return series.length;
+    }
+
+    /**
+     * @param index Position of the PID in the reader
+     */
+    public StreamingLttb getSeries(int index) {
+        return series[index];
+    }
+
+    /**
+     * @return Seconds since the stage was created, the x of a point read now
+     */
+    public float getElapsedSeconds() {
+        return (System.nanoTime() - startedAt) / 1e9f;
+    }
+}
@@ -0,0 +1,227 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ColumnarSessionReader reads a session written by SessionExporter.exportColumnar() one row
+ * group at a time, so like the export it needs the same memory for any length of session.
+ * See SessionExporter for the layout.
+ *
+ * Usage Example:
+ * ColumnarSessionReader reader = new ColumnarSessionReader(new FileInputStream(file));
+ * for (int rows = reader.nextGroup(); rows > 0; rows = reader.nextGroup()) {
+ *     for (int row = 0; row < rows; row++) plot(reader.getTime(row), reader.getValue(column, row));
+ * }
+ */
+public final class ColumnarSessionReader {
+    private final DataInputStream input;
+    private final String[] names;
+    private final String[] units;
+    private final long[] times = new long[SessionExporter.GROUP_ROWS];
+    private final float[][] values;
+    private byte[] scratch = new byte[SessionExporter.GROUP_ROWS * 6];
+    private int scratchPosition;
+    private int scratchLength;
+
+    /**
+     * Read the file's header.
+     *
+     * @throws IOException if the stream is not a columnar session
+     */
+    public ColumnarSessionReader(InputStream stream) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(stream));
+        byte[] magic = new byte[SessionExporter.MAGIC.length];
+        input.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != SessionExporter.MAGIC[i]) {
+                throw new IOException("Not a columnar session file");
+            }
+        }
+        int version = input.readUnsignedByte();
+        if (version != SessionExporter.VERSION) {
+            throw new IOException("Unsupported columnar session version " + version);
+        }
+        int columnCount = (int) readVarint();
+        names = new String[columnCount];
+        units = new String[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            names[column] = readString();
+            units[column] = readString();
+        }
+        values = new float[columnCount][SessionExporter.GROUP_ROWS];
+    }
+
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    public String getColumnName(int column) {
+        return names[column];
+    }
+
+    public String getColumnUnit(int column) {
+        return units[column];
+    }
+
+    /**
+     * Read the next row group.
+     *
+     * @return Rows in the group, 0 at the end of the file
+     */
+    public int nextGroup() throws IOException {
+        int rows = (int) readVarint();
+        if (rows < 0 || rows > SessionExporter.GROUP_ROWS) {
+            throw new IOException("Invalid row group of " + rows + " rows");
+        }
+        if (rows == 0) {
+            return 0;
+        }
+        readLength();
+        long time = 0;
+        long delta = 0;
+        for (int row = 0; row < rows; row++) {
+            long value = nextVarint();
+            long decoded = (value >>> 1) ^ -(value & 1);
+            if (row == 0) {
+                time = decoded;
+            } else {
+                delta += decoded;
+                time += delta;
+            }
+            times[row] = time;
+        }
+        for (int column = 0; column < names.length; column++) {
+            readColumn(values[column], rows);
+        }
+        return rows;
+    }
+
+    /**
+     * @param row Row within the current group
+     * @return Time of the row, in milliseconds since the epoch
+     */
+    public long getTime(int row) {
+        return times[row];
+    }
+
+    /**
+     * @param row Row within the current group
+     */
+    public float getValue(int column, int row) {
+        return values[column][row];
+    }
+
+    private void readColumn(float[] output, int rows) throws IOException {
+        int encoding = input.readUnsignedByte();
+        int length = readLength();
+        switch (encoding) {
+            case SessionExporter.ENCODING_RUNS: {
+                int bits = 0;
+                int row = 0;
+                while (row < rows) {
+                    int runLength = (int) nextVarint();
+                    bits += nextZigZag();
+                    if (runLength <= 0 || runLength > rows - row) {
+                        throw new IOException("Invalid run of " + runLength + " rows");
+                    }
+                    float value = Float.intBitsToFloat(bits);
+                    for (int end = row + runLength; row < end; row++) {
+                        output[row] = value;
+                    }
+                }
+                break;
+            }
+            case SessionExporter.ENCODING_DELTA: {
+                int bits = 0;
+                for (int row = 0; row < rows; row++) {
+                    bits += nextZigZag();
+                    output[row] = Float.intBitsToFloat(bits);
+                }
+                break;
+            }
+            case SessionExporter.ENCODING_RAW:
+                if (length < rows * 4) {
+                    throw new IOException("Truncated column");
+                }
+                for (int row = 0; row < rows; row++) {
+                    output[row] = Float.intBitsToFloat(intAt(row * 4));
+                }
+                break;
+            default:
+                throw new IOException("Unknown column encoding " + encoding);
+        }
+    }
+
+    /**
+     * @return Next varint in the scratch buffer
+     */
+    private long nextVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (scratchPosition == scratchLength) {
+                throw new IOException("Truncated row group");
+            }
+            byte next = scratch[scratchPosition++];
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    /**
+     * @return Next 32 bit zigzag varint in the scratch buffer
+     */
+    private int nextZigZag() throws IOException {
+        int value = (int) nextVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Read a length and that many bytes into the scratch buffer.
+     */
+    private int readLength() throws IOException {
+        long length = readVarint();
+        if (length < 0 || length > Integer.MAX_VALUE / 2) {
+            throw new IOException("Invalid length " + length);
+        }
+        if (length > scratch.length) {
+            scratch = new byte[(int) length];
+        }
+        input.readFully(scratch, 0, (int) length);
+        scratchPosition = 0;
+        scratchLength = (int) length;
+        return scratchLength;
+    }
+
+    private int intAt(int position) {
+        return (scratch[position] & 0xFF) | (scratch[position + 1] & 0xFF) << 8
+                | (scratch[position + 2] & 0xFF) << 16 | (scratch[position + 3] & 0xFF) << 24;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int next = input.read();
+            if (next < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    private String readString() throws IOException {
+        int length = readLength();
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,253 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.util.Arrays;
+
+/**
+ * DriftDetector flags channels of a pack, such as cell voltages or module temperatures, that
+ * slowly move away from the rest long before they reach a hard limit.
+ *
+ * Each sample, every channel's offset from the pack median is folded into an exponentially
+ * weighted mean and variance, so a channel costs the same few numbers however long the
+ * detector runs, and an update is O(channels) with no allocation. Subtracting the median
+ * removes what the whole pack does together, such as sagging under load or warming up while
+ * charging; what remains is the channel's own behaviour.
+ *
+ * A channel's z-score compares its smoothed offset with the other channels' offsets, robustly:
+ * the center is their median and the spread 1.4826 times their median absolute deviation,
+ * which equals the standard deviation for normal data but ignores the drifting channels
+ * themselves. The spread is floored at minSpread, the sensor's resolution, and widened by the
+ * channel's own noise, so a healthy pack where all cells agree does not turn quantisation
+ * noise into large scores. Channels beyond the threshold are flagged once the averages have
+ * warmed up. Not thread safe.
+ *
+ * Usage Example:
+ * DriftDetector drift = new DriftDetector(96, 0.02f, 0.002f, 4f);
+ * drift.update(cells, cells.length);
+ * if (drift.isFlagged(drift.getMaxIndex())) Log.w(TAG, "Cell " + drift.getMaxIndex() + " drifts");
+ */
+public final class DriftDetector {
+    // Makes the median absolute deviation match the standard deviation for normal data
+    private static final float MAD_TO_SIGMA = 1.4826f;
+
+    private final int channels;
+    private final float alpha;
+    private final float minSpread;
+    private final float threshold;
+    private final int warmupSamples;
+    // EWMA of each channel's offset from the pack median, and of its variance
+    private final float[] means;
+    private final float[] variances;
+    private final int[] sampleCounts;
+    private final float[] zScores;
+    private final float[] scratch;
+    private int maxIndex = -1;
+    private int flaggedCount;
+
+    /**
+     * @param alpha     Weight of a new sample; about 2 / alpha samples make up the average
+     * @param minSpread Smallest pack spread to divide by, in the channels' unit
+     * @param threshold |z| beyond which a channel is flagged
+     */
+    public DriftDetector(int channels, float alpha, float minSpread, float threshold) {
+        if (alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("alpha must be in (0, 1]");
+        }
+        this.channels = channels;
+        this.alpha = alpha;
+        this.minSpread = minSpread;
+        this.threshold = threshold;
+        this.warmupSamples = (int) Math.ceil(2 / alpha);
+        means = new float[channels];
+        variances = new float[channels];
+        sampleCounts = new int[channels];
+        zScores = new float[channels];
+        scratch = new float[channels];
+        Arrays.fill(zScores, Float.NaN);
+    }
+
+    /**
+     * Fold one sample in and recompute the z-scores. NaN values are skipped; their channel
+     * keeps its averages.
+     *
+     * @return false if fewer than three channels had a value, which leaves everything unchanged
+     */
+    public boolean update(float[] values, int count) {
+        int n = Math.min(count, channels);
+        int finite = 0;
+        for (int i = 0; i < n; i++) {
+            if (!Float.isNaN(values[i])) {
+                scratch[finite++] = values[i];
+            }
+        }
+        if (finite < 3) {
+            return false;
+        }
+        float median = median(scratch, finite);
+        for (int i = 0; i < n; i++) {
+            float value = values[i];
+            if (Float.isNaN(value)) {
+                continue;
+            }
+            float offset = value - median;
+            if (sampleCounts[i]++ == 0) {
+                means[i] = offset;
+                variances[i] = 0;
+                continue;
+            }
+            // West's incremental EWMA of mean and variance
+            float diff = offset - means[i];
+            float increment = alpha * diff;
+            means[i] += increment;
+            variances[i] = (1 - alpha) * (variances[i] + diff * increment);
+        }
+        score();
+        return true;
+    }
+
+    private void score() {
+        int used = 0;
+        for (int i = 0; i < channels; i++) {
+            if (sampleCounts[i] > 0) {
+                scratch[used++] = means[i];
+            }
+        }
+        float center = median(scratch, used);
+        used = 0;
+        for (int i = 0; i < channels; i++) {
+            if (sampleCounts[i] > 0) {
+                scratch[used++] = Math.abs(means[i] - center);
+            }
+        }
+        float spread = Math.max(MAD_TO_SIGMA * median(scratch, used), minSpread);
+        float spreadSquared = spread * spread;
+        // Variance of an EWMA of independent samples
+        float meanVarianceFactor = alpha / (2 - alpha);
+
+        maxIndex = -1;
+        flaggedCount = 0;
+        float maxAbs = -1;
+        for (int i = 0; i < channels; i++) {
+            if (sampleCounts[i] == 0) {
+                zScores[i] = Float.NaN;
+                continue;
+            }
+            float z = (means[i] - center)
+                    / (float) Math.sqrt(spreadSquared + variances[i] * meanVarianceFactor);
+            zScores[i] = z;
+            if (Math.abs(z) > maxAbs) {
+                maxAbs = Math.abs(z);
+                maxIndex = i;
+            }
+            if (sampleCounts[i] >= warmupSamples && Math.abs(z) > threshold) {
+                flaggedCount++;
+            }
+        }
+    }
+
+    /**
+     * Median of the first count values, by quickselect; reorders them.
+     */
+    static float median(float[] values, int count) {
+        int k = count / 2;
+        select(values, count, k);
+        float upper = values[k];
+        if (count % 2 != 0) {
+            return upper;
+        }
+        // After selection everything before k is no larger than values[k]
+        float lower = values[0];
+        for (int i = 1; i < k; i++) {
+            lower = Math.max(lower, values[i]);
+        }
+        return (lower + upper) / 2;
+    }
+
+    private static void select(float[] values, int count, int k) {
+        int left = 0;
+        int right = count - 1;
+        while (left < right) {
+            float pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    float swap = values[i];
+                    values[i] = values[j];
+                    values[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    public int getChannelCount() {
+        return channels;
+    }
+
+    /**
+     * @return Smoothed offset of the channel from the pack median
+     */
+    public float getMean(int channel) {
+        return means[channel];
+    }
+
+    /**
+     * @return Smoothed standard deviation of the channel's offset, its own noise
+     */
+    public float getStdDev(int channel) {
+        return (float) Math.sqrt(variances[channel]);
+    }
+
+    /**
+     * @return Robust z-score of the channel's offset, NaN before its first value
+     */
+    public float getZScore(int channel) {
+        return zScores[channel];
+    }
+
+    /**
+     * @return Channel with the largest |z|, -1 before the first update
+     */
+    public int getMaxIndex() {
+        return maxIndex;
+    }
+
+    /**
+     * @return z-score of getMaxIndex(), NaN before the first update
+     */
+    public float getMaxZScore() {
+        return maxIndex >= 0 ? zScores[maxIndex] : Float.NaN;
+    }
+
+    public boolean isFlagged(int channel) {
+        return sampleCounts[channel] >= warmupSamples && Math.abs(zScores[channel]) > threshold;
+    }
+
+    /**
+     * @return Number of warmed up channels beyond the threshold
+     */
+    public int getFlaggedCount() {
+        return flaggedCount;
+    }
+
+    public void reset() {
+        Arrays.fill(sampleCounts, 0);
+        Arrays.fill(zScores, Float.NaN);
+        maxIndex = -1;
+        flaggedCount = 0;
+    }
+}
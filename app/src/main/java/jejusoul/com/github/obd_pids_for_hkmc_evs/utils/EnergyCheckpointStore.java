@@ -0,0 +1,64 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * EnergyCheckpointStore keeps the trip energy counters of an EnergyIntegrator across process
+ * restarts.
+ *
+ * A checkpoint is three doubles and a timestamp written with SharedPreferences.apply(), so
+ * saving costs the caller a map update; the disk write happens in the background. A
+ * checkpoint older than TRIP_TIMEOUT_MS belongs to a previous trip and is not restored.
+ *
+ * Usage Example:
+ * EnergyCheckpointStore store = new EnergyCheckpointStore(context);
+ * store.restore(integrator);
+ * store.save(integrator);
+ */
+public class EnergyCheckpointStore {
+    private static final String PREFS_NAME = "energy_trip";
+    private static final String KEY_DISCHARGED = "discharged_kwh";
+    private static final String KEY_REGEN = "regen_kwh";
+    private static final String KEY_CHARGED = "charged_kwh";
+    private static final String KEY_SAVED_AT = "saved_at";
+    // Parked longer than this, the next drive is a new trip
+    static final long TRIP_TIMEOUT_MS = 2 * 60 * 60 * 1000L;
+
+    private final SharedPreferences preferences;
+
+    public EnergyCheckpointStore(Context context) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Load the last checkpoint into the integrator, or reset it if there is none from this trip.
+     * @return true if a checkpoint was restored
+     */
+    public boolean restore(EnergyIntegrator integrator) {
+        long savedAt = preferences.getLong(KEY_SAVED_AT, 0);
+        if (savedAt == 0 || System.currentTimeMillis() - savedAt > TRIP_TIMEOUT_MS) {
+            integrator.reset();
+            return false;
+        }
+        integrator.restore(getDouble(KEY_DISCHARGED), getDouble(KEY_REGEN), getDouble(KEY_CHARGED));
+        return true;
+    }
+
+    public void save(EnergyIntegrator integrator) {
+        preferences.edit()
+                .putLong(KEY_DISCHARGED, Double.doubleToRawLongBits(integrator.getDischargedKwh()))
+                .putLong(KEY_REGEN, Double.doubleToRawLongBits(integrator.getRegenKwh()))
+                .putLong(KEY_CHARGED, Double.doubleToRawLongBits(integrator.getChargedKwh()))
+                .putLong(KEY_SAVED_AT, System.currentTimeMillis())
+                .apply();
+    }
+
+    public void clear() {
+        preferences.edit().clear().apply();
+    }
+
+    private double getDouble(String key) {
+        return Double.longBitsToDouble(preferences.getLong(key, Double.doubleToRawLongBits(0)));
+    }
+}
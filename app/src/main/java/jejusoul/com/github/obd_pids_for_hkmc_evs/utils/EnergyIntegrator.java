@@ -0,0 +1,116 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+/**
+ * EnergyIntegrator turns timestamped battery power samples into energy: kWh discharged,
+ * recovered by regenerative braking, and charged from a charger.
+ *
+ * Samples are integrated with the trapezoidal rule, so uneven poll intervals cost no
+ * accuracy beyond the curvature between samples. An interval in which the power changes
+ * sign is split at the interpolated zero crossing, so a discharge to regen transition is
+ * not netted out. Intervals longer than the maximum gap (MAX_GAP_MS unless given), e.g.
+ * while the adapter was not answering, are not bridged: the next sample starts a new
+ * segment. State is a few doubles, so add() is O(1) and allocation free.
+ *
+ * Power is positive while the battery discharges, as the Kia and Hyundai BMS report current.
+ *
+ * Usage Example:
+ * EnergyIntegrator trip = new EnergyIntegrator();
+ * trip.add(System.nanoTime(), volts * amps, false);
+ * double usedKwh = trip.getDischargedKwh();
+ */
+public final class EnergyIntegrator {
+    static final long MAX_GAP_MS = 5_000;
+    private static final double JOULES_PER_KWH = 3_600_000.0;
+
+    private final long maxGapNanos;
+    private boolean hasLast;
+    private long lastTime;
+    private double lastWatts;
+    private double dischargedJoules;
+    private double regenJoules;
+    private double chargedJoules;
+
+    public EnergyIntegrator() {
+        this(MAX_GAP_MS);
+    }
+
+    /**
+     * @param maxGapMs Longest interval to integrate across; a few sample intervals
+     */
+    public EnergyIntegrator(long maxGapMs) {
+        this.maxGapNanos = maxGapMs * 1_000_000L;
+    }
+
+    /**
+     * @param timeNanos Monotonic sample time, e.g. System.nanoTime()
+     * @param watts     Battery power, positive when discharging; NaN breaks the segment
+     * @param charging  true if energy flowing into the battery comes from a charger rather
+     *                  than regenerative braking
+     */
+    public void add(long timeNanos, double watts, boolean charging) {
+        if (Double.isNaN(watts)) {
+            hasLast = false;
+            return;
+        }
+        long elapsed = timeNanos - lastTime;
+        if (hasLast && elapsed > 0 && elapsed <= maxGapNanos) {
+            double seconds = elapsed / 1e9;
+            if ((lastWatts >= 0) == (watts >= 0)) {
+                accumulate((lastWatts + watts) / 2 * seconds, charging);
+            } else {
+                // Split at the zero crossing so each side lands in its own accumulator
+                double crossing = seconds * lastWatts / (lastWatts - watts);
+                accumulate(lastWatts / 2 * crossing, charging);
+                accumulate(watts / 2 * (seconds - crossing), charging);
+            }
+        }
+        if (!hasLast || elapsed > 0) {
+            hasLast = true;
+            lastTime = timeNanos;
+            lastWatts = watts;
+        }
+    }
+
+    private void accumulate(double joules, boolean charging) {
+        if (joules >= 0) {
+            dischargedJoules += joules;
+        } else if (charging) {
+            chargedJoules -= joules;
+        } else {
+            regenJoules -= joules;
+        }
+    }
+
+    public double getDischargedKwh() {
+        return dischargedJoules / JOULES_PER_KWH;
+    }
+
+    public double getRegenKwh() {
+        return regenJoules / JOULES_PER_KWH;
+    }
+
+    public double getChargedKwh() {
+        return chargedJoules / JOULES_PER_KWH;
+    }
+
+    /**
+     * @return Energy taken out of the battery minus energy put back, in kWh
+     */
+    public double getNetKwh() {
+        return getDischargedKwh() - getRegenKwh() - getChargedKwh();
+    }
+
+    /**
+     * Continue from a checkpoint; the next sample starts a new segment.
+     */
+    public void restore(double dischargedKwh, double regenKwh, double chargedKwh) {
+        dischargedJoules = dischargedKwh * JOULES_PER_KWH;
+        regenJoules = regenKwh * JOULES_PER_KWH;
+        chargedJoules = chargedKwh * JOULES_PER_KWH;
+        hasLast = false;
+    }
+
+    public void reset() {
+        restore(0, 0, 0);
+    }
+}
@@ -0,0 +1,134 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.os.RemoteException;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * EnergyMonitor is the telemetry stage that integrates battery power from the BMS into trip
+ * energy and publishes it as plugin PIDs:
+ * - Trip Energy Used: kWh taken out of the battery
+ * - Trip Energy Regen: kWh put back by regenerative braking
+ * - Trip Energy Charged: kWh put back by a charger
+ * - Trip Net Energy: used minus regen and charged
+ *
+ * Battery current, DC voltage and motor speed all come from the BMS's 2101 block, so a
+ * sample is one request. Energy flowing into the battery while the motor stands still is
+ * counted as charging, otherwise as regen. The counters are checkpointed every
+ * CHECKPOINT_INTERVAL_MS, and once more when the poller stops.
+ *
+ * Usage Example:
+ * EnergyMonitor monitor = EnergyMonitor.fromCatalog(catalog, poller.getPublisher(), store);
+ * if (monitor != null) poller.addStage(monitor);
+ */
+public class EnergyMonitor implements TelemetryStage {
+    public static final String PID_USED = "Trip Energy Used";
+    public static final String PID_REGEN = "Trip Energy Regen";
+    public static final String PID_CHARGED = "Trip Energy Charged";
+    public static final String PID_NET = "Trip Net Energy";
+
+    static final String[] BMS_PIDS = {"Battery Current", "Battery DC Voltage", "Drive Motor Speed 1"};
+    private static final int CURRENT = 0;
+    private static final int VOLTAGE = 1;
+    private static final int MOTOR_SPEED = 2;
+
+    static final long SAMPLE_INTERVAL_MS = 500;
+    static final long CHECKPOINT_INTERVAL_MS = 30_000;
+    private static final float MAX_KWH = 100f;
+    private static final float KWH_DEADBAND = 0.001f;
+
+    private final PidBlockReader bms;
+    private final PidPublisher publisher;
+    @Nullable
+    private final EnergyCheckpointStore store;
+    private final EnergyIntegrator integrator = new EnergyIntegrator();
+    private final long sampleIntervalNanos;
+    private final int usedSlot;
+    private final int regenSlot;
+    private final int chargedSlot;
+    private final int netSlot;
+    private final MetricsRegistry.Counter samples = MetricsRegistry.get().counter("energy.samples");
+    private final MetricsRegistry.Counter failures = MetricsRegistry.get().counter("energy.failures");
+    private long sampledAt;
+    private boolean sampled;
+    private long checkpointedAt;
+
+    EnergyMonitor(PidBlockReader bms, PidPublisher publisher, @Nullable EnergyCheckpointStore store,
+                  long sampleIntervalMs) {
+        this.bms = bms;
+        this.publisher = publisher;
+        this.store = store;
+        this.sampleIntervalNanos = sampleIntervalMs * 1_000_000L;
+        if (store != null) {
+            store.restore(integrator);
+        }
+        usedSlot = publisher.register(PID_USED, "Trip Used", "kWh", 0, MAX_KWH, KWH_DEADBAND);
+        regenSlot = publisher.register(PID_REGEN, "Trip Regen", "kWh", 0, MAX_KWH, KWH_DEADBAND);
+        chargedSlot = publisher.register(PID_CHARGED, "Trip Charged", "kWh", 0, MAX_KWH, KWH_DEADBAND);
+        netSlot = publisher.register(PID_NET, "Trip Net", "kWh", -MAX_KWH, MAX_KWH, KWH_DEADBAND);
+        publishTotals();
+    }
+
+    /**
+     * @param store Checkpoints to continue from and save to, or null to start from zero
+     * @return Monitor, or null if the catalog lacks the BMS PIDs
+     */
+    @Nullable
+    public static EnergyMonitor fromCatalog(PidCatalog catalog, PidPublisher publisher,
+                                            @Nullable EnergyCheckpointStore store) {
+        PidBlockReader bms = PidBlockReader.fromCatalog(catalog, BMS_PIDS);
+        return bms != null ? new EnergyMonitor(bms, publisher, store, SAMPLE_INTERVAL_MS) : null;
+    }
+
+    @Override
+    @WorkerThread
+    public void poll(TorqueLink link) throws RemoteException {
+        long now = System.nanoTime();
+        if (sampled && now - sampledAt < sampleIntervalNanos) {
+            return;
+        }
+        sampled = true;
+        sampledAt = now;
+        boolean complete = bms.read(link);
+        // Stamp the sample when the response arrived, not when it was requested
+        long time = System.nanoTime();
+        if (!complete) {
+            failures.increment();
+            integrator.add(time, Double.NaN, false);
+            return;
+        }
+        samples.increment();
+        double amps = bms.getValue(CURRENT);
+        boolean charging = amps < 0 && bms.getValue(MOTOR_SPEED) == 0;
+        integrator.add(time, amps * bms.getValue(VOLTAGE), charging);
+        publishTotals();
+
+        if (store != null && time - checkpointedAt >= CHECKPOINT_INTERVAL_MS * 1_000_000L) {
+            store.save(integrator);
+            checkpointedAt = time;
+        }
+    }
+
+    @Override
+    @WorkerThread
+    public void onStop() {
+        if (store != null && sampled) {
+            store.save(integrator);
+        }
+    }
+
+    private void publishTotals() {
+        publisher.set(usedSlot, (float) integrator.getDischargedKwh());
+        publisher.set(regenSlot, (float) integrator.getRegenKwh());
+        publisher.set(chargedSlot, (float) integrator.getChargedKwh());
+        publisher.set(netSlot, (float) integrator.getNetKwh());
+    }
+
+    /**
+     * @return Counters of this trip; only read them on the polling thread
+     */
+    public EnergyIntegrator getIntegrator() {
+        return integrator;
+    }
+}
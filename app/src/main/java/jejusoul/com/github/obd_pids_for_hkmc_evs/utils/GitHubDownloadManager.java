@@ -1,24 +1,23 @@
 package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
 
 import android.content.Context;
+import android.os.Build;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.tracing.Trace;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 /**
  * GitHubDownloadManager handles downloading and extracting PID definition files from GitHub.
@@ -28,6 +27,18 @@ import java.util.zip.ZipInputStream;
  * - Managing download progress and status
  * - Extracting downloaded files
  * - Handling network operations and file system interactions
+ *
+ * All requests go through the shared SyncHttpClient (connection pool, disk cache, timeouts).
+ *
+ * When SyncSettings selects SyncMode.GIT (API 33+), the archive is replaced by an incremental
+ * fetch into a shallow clone (see GitPidRepository) and only the changed CSVs are published.
+ * If JGit still hits a JDK API the device lacks, that sync falls back to the archive.
+ *
+ * Only the folders of the vehicles subscribed in SyncSettings are extracted (see
+ * PidArchiveExtractor), keeping their repository layout.
+ *
+ * The commit SHA of every completed sync is stored in SyncSettings (GitHub writes it as the
+ * archive's zip comment), so NewCommitWorker can tell when the remote branch has moved on.
  * 
  * The class implements a complete download workflow:
  * 1. Initiating download from GitHub URL
@@ -37,7 +48,9 @@ import java.util.zip.ZipInputStream;
  * 
  * Key Features:
  * - Asynchronous download operations
- * - Progress tracking and status updates
+ * - Stale-while-revalidate: revalidate() only syncs when the remote head SHA changed
+ * - Resumable downloads (HTTP Range) that survive dropped connections
+ * - Byte-accurate progress and throughput tracking
  * - Error handling for network and file operations
  * - Support for different GitHub repository structures
  * 
@@ -55,15 +68,22 @@ import java.util.zip.ZipInputStream;
 public class GitHubDownloadManager {
     private static final String TAG = "GitHubDownloadManager";
     private static final String GITHUB_REPO_URL = "https://github.com/JejuSoul/OBD-PIDs-for-HKMC-EVs/archive/refs/heads/master.zip";
-    private static final int BUFFER_SIZE = 4096;
-    private static final String CSV_EXTENSION = ".csv";
+    private static final int MAX_DOWNLOAD_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MS = 2000;
     private static final String REPO_BASE_NAME = "OBD-PIDs-for-HKMC-EVs-master";
+    private static final String ZIP_FILE_NAME = "master.zip";
+    private static final String GIT_REPO_DIR = "pid_repo";
 
     private final Context context;
     private final ExecutorService executorService;
     private final MutableLiveData<DownloadStatus> downloadStatus;
     private final MutableLiveData<List<File>> csvFiles;
     private final File downloadDir;
+    private final ResumableDownloader downloader;
+    private final SyncSettings syncSettings;
+    private final GitPidRepository gitRepository;
+    private final RemoteHeadChecker headChecker;
+    private volatile SyncDelta lastSyncDelta = SyncDelta.FULL;
 
     public enum DownloadState {
         IDLE,
@@ -73,15 +93,70 @@ public class GitHubDownloadManager {
         ERROR
     }
 
+    /**
+     * Snapshot of the download. progress is a percentage, or -1 while the total size is unknown.
+     * bytesPerSecond is the throughput over the last reporting window.
+     */
     public static class DownloadStatus {
         public final DownloadState state;
         public final int progress;
         public final String message;
+        public final long bytesDownloaded;
+        public final long totalBytes;
+        public final long bytesPerSecond;
 
         public DownloadStatus(DownloadState state, int progress, String message) {
+            this(state, progress, message, 0, -1, 0);
+        }
+
+        public DownloadStatus(DownloadState state, int progress, String message,
+                              long bytesDownloaded, long totalBytes, long bytesPerSecond) {
             this.state = state;
             this.progress = progress;
             this.message = message;
+            this.bytesDownloaded = bytesDownloaded;
+            this.totalBytes = totalBytes;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+    }
+
+    /**
+     * Describes how the files published by the last sync relate to the installed PID files.
+     * A full sync replaces every file; an incremental sync only lists changed files and
+     * names the files that were removed upstream.
+     *
+     * Published files live under sourceRoot with their repository layout ("Soul EV/x.csv"),
+     * which the installed copy keeps so equal file names of different vehicles cannot collide.
+     */
+    public static class SyncDelta {
+        static final SyncDelta FULL = full(null);
+
+        public final boolean incremental;
+        public final File sourceRoot;
+        public final List<String> removedPaths;
+
+        SyncDelta(boolean incremental, File sourceRoot, List<String> removedPaths) {
+            this.incremental = incremental;
+            this.sourceRoot = sourceRoot;
+            this.removedPaths = removedPaths;
+        }
+
+        static SyncDelta full(File sourceRoot) {
+            return new SyncDelta(false, sourceRoot, new ArrayList<>());
+        }
+
+        /**
+         * @return Path of a published file relative to the repository root
+         */
+        public String relativePathOf(File file) {
+            if (sourceRoot != null) {
+                String root = sourceRoot.getAbsolutePath() + File.separator;
+                String path = file.getAbsolutePath();
+                if (path.startsWith(root)) {
+                    return path.substring(root.length()).replace(File.separatorChar, '/');
+                }
+            }
+            return file.getName();
         }
     }
 
@@ -91,6 +166,11 @@ public class GitHubDownloadManager {
         this.downloadStatus = new MutableLiveData<>(new DownloadStatus(DownloadState.IDLE, 0, ""));
         this.csvFiles = new MutableLiveData<>(new ArrayList<>());
         this.downloadDir = new File(context.getFilesDir(), "downloads");
+        this.downloader = new ResumableDownloader(SyncHttpClient.get(context), MAX_DOWNLOAD_ATTEMPTS, RETRY_DELAY_MS);
+        this.syncSettings = new SyncSettings(context);
+        this.gitRepository = new GitPidRepository(new File(context.getFilesDir(), GIT_REPO_DIR),
+                GitPidRepository.REMOTE_URL, GitPidRepository.DEFAULT_BRANCH);
+        this.headChecker = new RemoteHeadChecker(SyncHttpClient.get(context), RemoteHeadChecker.API_URL);
         if (!downloadDir.exists() && !downloadDir.mkdirs()) {
             Log.e(TAG, "Failed to create download directory");
         }
@@ -104,6 +184,21 @@ public class GitHubDownloadManager {
         return csvFiles;
     }
 
+    /**
+     * @return Delta of the last completed sync; valid once COMPLETED has been observed
+     */
+    public SyncDelta getLastSyncDelta() {
+        return lastSyncDelta;
+    }
+
+    /**
+     * Incremental git sync relies on JGit 6, which is built for Java 11; Android's core
+     * libraries only cover the Java 11 APIs it uses from API 33.
+     */
+    public static boolean isGitSyncSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU;
+    }
+
     private void clearDownloadDirectory() {
         deleteRecursive(downloadDir);
         if (!downloadDir.exists() && !downloadDir.mkdirs()) {
@@ -111,6 +206,20 @@ public class GitHubDownloadManager {
         }
     }
 
+    /**
+     * Remove previously extracted files but keep any partial archive so it can be resumed.
+     */
+    private void clearExtractedFiles() {
+        File[] children = downloadDir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (!child.getName().startsWith(ZIP_FILE_NAME)) {
+                    deleteRecursive(child);
+                }
+            }
+        }
+    }
+
     private void deleteRecursive(File fileOrDirectory) {
         if (fileOrDirectory.isDirectory()) {
             File[] children = fileOrDirectory.listFiles();
@@ -127,99 +236,169 @@ public class GitHubDownloadManager {
 
     @NonNull
     private File downloadZipFile() throws IOException {
-        File zipFile = new File(downloadDir, "master.zip");
-        URL url = new URL(GITHUB_REPO_URL);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        
-        try (InputStream input = connection.getInputStream();
-             FileOutputStream output = new FileOutputStream(zipFile)) {
-            
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int bytesRead;
-            while ((bytesRead = input.read(buffer)) != -1) {
-                output.write(buffer, 0, bytesRead);
-            }
-        } finally {
-            connection.disconnect();
-        }
-        
-        return zipFile;
+        File zipFile = new File(downloadDir, ZIP_FILE_NAME);
+        return downloader.download(GITHUB_REPO_URL, zipFile, (bytesDownloaded, totalBytes, bytesPerSecond) -> {
+            int progress = totalBytes > 0 ? (int) (bytesDownloaded * 100 / totalBytes) : -1;
+            updateStatus(DownloadState.DOWNLOADING, progress, "Downloading...",
+                    bytesDownloaded, totalBytes, bytesPerSecond);
+        });
     }
 
     @NonNull
-    private List<File> extractZipFile(File zipFile) throws IOException {
-        List<File> csvFiles = new ArrayList<>();
+    private PidArchiveExtractor.Result extractZipFile(File zipFile, VehicleFilter filter) throws IOException {
         File extractDir = new File(downloadDir, REPO_BASE_NAME);
         if (!extractDir.exists() && !extractDir.mkdirs()) {
             Log.e(TAG, "Failed to create extraction directory");
         }
-        
-        try (ZipInputStream zis = new ZipInputStream(new java.io.FileInputStream(zipFile))) {
-            ZipEntry entry;
-            byte[] buffer = new byte[BUFFER_SIZE];
-            
-            while ((entry = zis.getNextEntry()) != null) {
-                String entryName = entry.getName();
-                
-                // Skip directories and non-CSV files
-                if (entry.isDirectory() || !entryName.toLowerCase().endsWith(CSV_EXTENSION)) {
-                    continue;
-                }
-
-                // Create the full path for the output file
-                File outputFile = new File(downloadDir, entryName);
-                File parentDir = outputFile.getParentFile();
-                
-                if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
-                    Log.e(TAG, "Failed to create directory: " + parentDir.getAbsolutePath());
-                    continue;
-                }
-
-                try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-                    int len;
-                    while ((len = zis.read(buffer)) > 0) {
-                        fos.write(buffer, 0, len);
-                    }
-                    csvFiles.add(outputFile);
-                    Log.d(TAG, "Extracted: " + outputFile.getAbsolutePath());
-                } catch (IOException e) {
-                    Log.e(TAG, "Failed to extract file: " + entryName, e);
-                }
-                
-                zis.closeEntry();
-            }
-        }
-        
-        return csvFiles;
+        return new PidArchiveExtractor(filter).extract(zipFile, extractDir);
     }
 
     private void updateStatus(DownloadState state, int progress, String message) {
         downloadStatus.postValue(new DownloadStatus(state, progress, message));
     }
 
+    private void updateStatus(DownloadState state, int progress, String message,
+                              long bytesDownloaded, long totalBytes, long bytesPerSecond) {
+        // postValue() conflates: only the latest pending status reaches observers
+        downloadStatus.postValue(new DownloadStatus(state, progress, message,
+                bytesDownloaded, totalBytes, bytesPerSecond));
+    }
+
     public void downloadAndExtract() {
+        executorService.execute(this::sync);
+    }
+
+    /**
+     * Sync in the background only if the remote branch moved past the installed commit.
+     * Installed (or bundled) files stay in use meanwhile; a failed check is only logged.
+     */
+    public void revalidate() {
         executorService.execute(() -> {
-            File zipFile = null;
+            String installedSha = syncSettings.getLastSyncedSha();
             try {
-                clearDownloadDirectory();
-                updateStatus(DownloadState.DOWNLOADING, 0, "Starting download...");
+                String remoteSha = headChecker.fetchHeadSha();
+                if (remoteSha.equals(installedSha)) {
+                    Log.d(TAG, "Installed PID files are current at " + remoteSha);
+                    return;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Revalidation skipped: " + e.getMessage());
+                return;
+            }
+            sync();
+        });
+    }
+
+    private void sync() {
+        Trace.beginSection("GitHubDownloadManager.sync");
+        try {
+            if (syncSettings.getSyncMode() == SyncSettings.SyncMode.GIT && isGitSyncSupported()) {
+                try {
+                    fetchFromGit();
+                    return;
+                } catch (LinkageError e) {
+                    Log.e(TAG, "Git sync needs an API this device lacks, downloading the archive", e);
+                }
+            }
+            downloadArchive();
+        } finally {
+            Trace.endSection();
+        }
+    }
 
-                zipFile = downloadZipFile();
-                updateStatus(DownloadState.EXTRACTING, 50, "Extracting files...");
+    private void downloadArchive() {
+        File zipFile = null;
+        try {
+            clearExtractedFiles();
+            updateStatus(DownloadState.DOWNLOADING, 0, "Starting download...");
 
-                List<File> extractedFiles = extractZipFile(zipFile);
-                csvFiles.postValue(extractedFiles);
+            zipFile = downloadZipFile();
+            updateStatus(DownloadState.EXTRACTING, 100, "Extracting files...",
+                    zipFile.length(), zipFile.length(), 0);
 
-                updateStatus(DownloadState.COMPLETED, 100, "Download completed");
-            } catch (IOException e) {
-                Log.e(TAG, "Error during download/extract", e);
-                updateStatus(DownloadState.ERROR, 0, "Error: " + e.getMessage());
-            } finally {
-                if (zipFile != null && zipFile.exists()) {
-                    zipFile.delete();
+            VehicleFilter filter = new VehicleFilter(syncSettings.getSubscribedVehicles());
+            PidArchiveExtractor.Result extracted = extractZipFile(zipFile, filter);
+            recordSyncedSha(readArchiveSha(zipFile));
+            syncSettings.setKnownVehicles(extracted.vehicles);
+            syncSettings.clearSubscriptionsChanged();
+            lastSyncDelta = SyncDelta.full(new File(downloadDir, REPO_BASE_NAME));
+            csvFiles.postValue(extracted.files);
+
+            updateStatus(DownloadState.COMPLETED, 100, "Download completed");
+        } catch (IOException e) {
+            // Any partial archive is kept so the next attempt resumes instead of restarting
+            Log.e(TAG, "Error during download/extract", e);
+            updateStatus(DownloadState.ERROR, 0, "Error: " + e.getMessage());
+        } finally {
+            if (zipFile != null && zipFile.exists()) {
+                zipFile.delete();
+            }
+        }
+    }
+
+    private void fetchFromGit() {
+        try {
+            updateStatus(DownloadState.DOWNLOADING, -1, "Fetching changes...");
+            GitPidRepository.SyncResult result = gitRepository.sync();
+            VehicleFilter filter = new VehicleFilter(syncSettings.getSubscribedVehicles());
+            File workTree = gitRepository.getWorkTree();
+
+            // JGit has no partial clone, so the clone holds every vehicle; only the
+            // subscribed ones are published
+            List<String> allPaths = gitRepository.listCsvPaths();
+            boolean full = result.fullClone || syncSettings.haveSubscriptionsChanged();
+            List<File> changedFiles = new ArrayList<>();
+            for (String path : full ? allPaths : result.changedPaths) {
+                if (filter.matches(path)) {
+                    changedFiles.add(new File(workTree, path));
                 }
             }
-        });
+            List<String> removedPaths = new ArrayList<>();
+            for (String path : result.deletedPaths) {
+                if (filter.matches(path)) {
+                    removedPaths.add(path);
+                }
+            }
+            Set<String> vehicles = new TreeSet<>();
+            for (String path : allPaths) {
+                String vehicle = VehicleFilter.vehicleOf(path);
+                if (vehicle != null) {
+                    vehicles.add(vehicle);
+                }
+            }
+
+            recordSyncedSha(result.newHead);
+            syncSettings.setKnownVehicles(vehicles);
+            syncSettings.clearSubscriptionsChanged();
+            lastSyncDelta = full ? SyncDelta.full(workTree) : new SyncDelta(true, workTree, removedPaths);
+            csvFiles.postValue(changedFiles);
+            updateStatus(DownloadState.COMPLETED, 100,
+                    result.isUpToDate() && !full ? "Already up to date" : "Sync completed");
+        } catch (IOException e) {
+            Log.e(TAG, "Error during git sync", e);
+            updateStatus(DownloadState.ERROR, 0, "Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * GitHub stores the commit SHA of a branch archive as the zip file comment.
+     * @return SHA, or null if the archive has no usable comment
+     */
+    private static String readArchiveSha(File zipFile) {
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            String comment = zip.getComment();
+            String sha = comment != null ? comment.trim().toLowerCase() : null;
+            return RemoteHeadChecker.isSha(sha) ? sha : null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read archive comment", e);
+            return null;
+        }
+    }
+
+    private void recordSyncedSha(String sha) {
+        if (sha != null) {
+            syncSettings.setLastSyncedSha(sha);
+        }
     }
 
     public void cleanup() {
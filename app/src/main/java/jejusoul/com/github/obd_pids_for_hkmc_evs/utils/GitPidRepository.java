@@ -0,0 +1,240 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * GitPidRepository keeps a shallow local clone of the PID repository and updates it incrementally.
+ *
+ * The first sync clones only the tip commit of the branch (depth 1). Every later sync runs a
+ * depth-1 fetch: the client advertises the commit it already has, so the server only sends
+ * the objects that changed since then. For a repository that mostly sees small edits to a
+ * few CSVs that is a few KB instead of the full archive.
+ *
+ * The changed paths are read from the diff between the old and new HEAD trees, and the work
+ * tree is then hard-reset to the fetched commit.
+ *
+ * Usage Example:
+ * GitPidRepository repository = new GitPidRepository(dir, GitPidRepository.REMOTE_URL, "master");
+ * GitPidRepository.SyncResult result = repository.sync();
+ */
+public class GitPidRepository {
+    private static final String TAG = "GitPidRepository";
+    public static final String REMOTE_URL = "https://github.com/JejuSoul/OBD-PIDs-for-HKMC-EVs.git";
+    public static final String DEFAULT_BRANCH = "master";
+    private static final String REMOTE_NAME = "origin";
+    private static final String CSV_EXTENSION = ".csv";
+
+    private final File workTree;
+    private final String remoteUrl;
+    private final String branch;
+
+    /**
+     * Result of a sync. Paths are relative to the work tree and use '/' as separator.
+     */
+    public static class SyncResult {
+        public final String oldHead;
+        public final String newHead;
+        public final boolean fullClone;
+        public final List<String> changedPaths;
+        public final List<String> deletedPaths;
+
+        SyncResult(String oldHead, String newHead, boolean fullClone,
+                   List<String> changedPaths, List<String> deletedPaths) {
+            this.oldHead = oldHead;
+            this.newHead = newHead;
+            this.fullClone = fullClone;
+            this.changedPaths = Collections.unmodifiableList(changedPaths);
+            this.deletedPaths = Collections.unmodifiableList(deletedPaths);
+        }
+
+        public boolean isUpToDate() {
+            return !fullClone && newHead.equals(oldHead);
+        }
+    }
+
+    public GitPidRepository(File workTree, String remoteUrl, String branch) {
+        this.workTree = workTree;
+        this.remoteUrl = remoteUrl;
+        this.branch = branch;
+    }
+
+    public File getWorkTree() {
+        return workTree;
+    }
+
+    /**
+     * Clone the repository on first use, otherwise fetch and fast-forward to the remote branch.
+     * @return Changed and deleted CSV paths
+     * @throws IOException If the clone, fetch or checkout fails
+     */
+    @NonNull
+    public SyncResult sync() throws IOException {
+        try {
+            if (!new File(workTree, ".git").isDirectory()) {
+                return cloneShallow();
+            }
+            return fetchIncremental();
+        } catch (GitAPIException e) {
+            throw new IOException("Git sync failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * List every CSV in the checked out commit, e.g. to publish a new vehicle selection
+     * without fetching.
+     * @return CSV paths at HEAD
+     * @throws IOException If the local clone cannot be read
+     */
+    @NonNull
+    public List<String> listCsvPaths() throws IOException {
+        try (Git git = Git.open(workTree)) {
+            Repository repository = git.getRepository();
+            ObjectId head = repository.resolve("HEAD");
+            if (head == null) {
+                throw new IOException("Local clone has no HEAD");
+            }
+            return listCsvPaths(repository, head);
+        }
+    }
+
+    private SyncResult cloneShallow() throws GitAPIException, IOException {
+        if (workTree.exists()) {
+            // Leftover from an interrupted clone
+            deleteRecursive(workTree);
+        }
+        String branchRef = "refs/heads/" + branch;
+        try (Git git = Git.cloneRepository()
+                .setURI(remoteUrl)
+                .setDirectory(workTree)
+                .setBranch(branchRef)
+                .setBranchesToClone(Collections.singletonList(branchRef))
+                .setCloneAllBranches(false)
+                .setDepth(1)
+                .call()) {
+            Repository repository = git.getRepository();
+            ObjectId head = repository.resolve("HEAD");
+            List<String> paths = listCsvPaths(repository, head);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Cloned " + remoteUrl + " at " + head.name() + " with " + paths.size() + " CSV files");
+            }
+            return new SyncResult(null, head.name(), true, paths, new ArrayList<>());
+        }
+    }
+
+    private SyncResult fetchIncremental() throws GitAPIException, IOException {
+        String remoteRef = "refs/remotes/" + REMOTE_NAME + "/" + branch;
+        try (Git git = Git.open(workTree)) {
+            Repository repository = git.getRepository();
+            ObjectId oldHead = repository.resolve("HEAD");
+            if (oldHead == null) {
+                Log.w(TAG, "Local clone has no HEAD, cloning again");
+                git.close();
+                return cloneShallow();
+            }
+
+            git.fetch()
+                    .setRemote(REMOTE_NAME)
+                    .setRefSpecs(new RefSpec("+refs/heads/" + branch + ":" + remoteRef))
+                    .setDepth(1)
+                    .call();
+
+            ObjectId newHead = repository.resolve(remoteRef);
+            if (newHead == null) {
+                throw new IOException("Remote branch not found: " + branch);
+            }
+            if (newHead.equals(oldHead)) {
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Already up to date at " + newHead.name());
+                }
+                return new SyncResult(oldHead.name(), newHead.name(), false, new ArrayList<>(), new ArrayList<>());
+            }
+
+            List<String> changed = new ArrayList<>();
+            List<String> deleted = new ArrayList<>();
+            diffCsvPaths(repository, oldHead, newHead, changed, deleted);
+
+            git.reset().setMode(ResetCommand.ResetType.HARD).setRef(newHead.name()).call();
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Fetched " + oldHead.name() + ".." + newHead.name()
+                        + ": " + changed.size() + " changed, " + deleted.size() + " deleted");
+            }
+            return new SyncResult(oldHead.name(), newHead.name(), false, changed, deleted);
+        }
+    }
+
+    private static void diffCsvPaths(Repository repository, ObjectId oldHead, ObjectId newHead,
+                                     List<String> changed, List<String> deleted) throws IOException {
+        try (RevWalk revWalk = new RevWalk(repository);
+             DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            RevCommit oldCommit = revWalk.parseCommit(oldHead);
+            RevCommit newCommit = revWalk.parseCommit(newHead);
+            formatter.setRepository(repository);
+            for (DiffEntry entry : formatter.scan(oldCommit.getTree(), newCommit.getTree())) {
+                switch (entry.getChangeType()) {
+                    case DELETE:
+                        addIfCsv(deleted, entry.getOldPath());
+                        break;
+                    case RENAME:
+                        addIfCsv(deleted, entry.getOldPath());
+                        addIfCsv(changed, entry.getNewPath());
+                        break;
+                    default:
+                        addIfCsv(changed, entry.getNewPath());
+                        break;
+                }
+            }
+        }
+    }
+
+    private static List<String> listCsvPaths(Repository repository, ObjectId head) throws IOException {
+        List<String> paths = new ArrayList<>();
+        try (RevWalk revWalk = new RevWalk(repository);
+             TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(revWalk.parseCommit(head).getTree());
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                addIfCsv(paths, treeWalk.getPathString());
+            }
+        }
+        return paths;
+    }
+
+    private static void addIfCsv(List<String> paths, String path) {
+        if (path != null && path.toLowerCase().endsWith(CSV_EXTENSION)) {
+            paths.add(path);
+        }
+    }
+
+    private static void deleteRecursive(File fileOrDirectory) {
+        File[] children = fileOrDirectory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursive(child);
+            }
+        }
+        if (!fileOrDirectory.delete() && fileOrDirectory.exists()) {
+            Log.w(TAG, "Failed to delete: " + fileOrDirectory.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+/**
+ * HttpTimingListener measures the phases of a single OkHttp call.
+ *
+ * One instance is created per call by FACTORY. When the call ends it logs:
+ * - dns:     DNS lookup time (0 when the connection was pooled)
+ * - connect: TCP connect time, including TLS
+ * - tls:     TLS handshake time
+ * - ttfb:    Time from call start to the first response header byte
+ * - total:   Time from call start to call end
+ * - cache:   hit, conditional (revalidated with 304) or miss
+ *
+ * Total time and time to first byte also go to the "http.total" and "http.ttfb" histograms
+ * of the MetricsRegistry. The log line is only built when debug logging is enabled for the
+ * tag, e.g. with adb shell setprop log.tag.HttpTiming DEBUG.
+ */
+public class HttpTimingListener extends EventListener {
+    private static final String TAG = "HttpTiming";
+
+    public static final Factory FACTORY = call -> new HttpTimingListener();
+
+    private long callStartNanos;
+    private long dnsStartNanos;
+    private long dnsNanos;
+    private long connectStartNanos;
+    private long connectNanos;
+    private long tlsStartNanos;
+    private long tlsNanos;
+    private long ttfbNanos = -1;
+    private boolean newConnection;
+    private boolean connectionAcquired;
+    private String cacheResult = "miss";
+
+    @Override
+    public void callStart(@NonNull Call call) {
+        callStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+        dnsStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> inetAddressList) {
+        dnsNanos += System.nanoTime() - dnsStartNanos;
+    }
+
+    @Override
+    public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy) {
+        connectStartNanos = System.nanoTime();
+        newConnection = true;
+    }
+
+    @Override
+    public void secureConnectStart(@NonNull Call call) {
+        tlsStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(@NonNull Call call, Handshake handshake) {
+        tlsNanos += System.nanoTime() - tlsStartNanos;
+    }
+
+    @Override
+    public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+                           @NonNull Proxy proxy, Protocol protocol) {
+        connectNanos += System.nanoTime() - connectStartNanos;
+    }
+
+    @Override
+    public void connectFailed(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+                              @NonNull Proxy proxy, Protocol protocol, @NonNull IOException ioe) {
+        connectNanos += System.nanoTime() - connectStartNanos;
+    }
+
+    @Override
+    public void connectionAcquired(@NonNull Call call, @NonNull Connection connection) {
+        connectionAcquired = true;
+    }
+
+    @Override
+    public void responseHeadersStart(@NonNull Call call) {
+        if (ttfbNanos < 0) {
+            ttfbNanos = System.nanoTime() - callStartNanos;
+        }
+    }
+
+    @Override
+    public void cacheHit(@NonNull Call call, @NonNull Response response) {
+        cacheResult = "hit";
+    }
+
+    @Override
+    public void cacheConditionalHit(@NonNull Call call, @NonNull Response cachedResponse) {
+        cacheResult = "conditional";
+    }
+
+    @Override
+    public void callEnd(@NonNull Call call) {
+        log(call, "ok");
+    }
+
+    @Override
+    public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+        MetricsRegistry.get().counter("http.failures").increment();
+        log(call, "failed: " + ioe.getMessage());
+    }
+
+    private void log(Call call, String outcome) {
+        long totalNanos = System.nanoTime() - callStartNanos;
+        MetricsRegistry metrics = MetricsRegistry.get();
+        metrics.histogram("http.total").record(totalNanos);
+        if (ttfbNanos >= 0) {
+            metrics.histogram("http.ttfb").record(ttfbNanos);
+        }
+        metrics.counter("http.calls").increment();
+        if (connectionAcquired && !newConnection) {
+            metrics.counter("http.reused_connections").increment();
+        }
+        metrics.counter("http.cache." + cacheResult).increment();
+        if (!Log.isLoggable(TAG, Log.DEBUG)) {
+            return;
+        }
+        Log.d(TAG, call.request().method() + " " + call.request().url().encodedPath()
+                + " " + outcome
+                + " dns=" + toMillis(dnsNanos) + "ms"
+                + " connect=" + toMillis(connectNanos) + "ms"
+                + " tls=" + toMillis(tlsNanos) + "ms"
+                + " ttfb=" + (ttfbNanos >= 0 ? toMillis(ttfbNanos) + "ms" : "n/a")
+                + " total=" + toMillis(totalNanos) + "ms"
+                + " reused=" + (connectionAcquired && !newConnection)
+                + " cache=" + cacheResult);
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000L;
+    }
+}
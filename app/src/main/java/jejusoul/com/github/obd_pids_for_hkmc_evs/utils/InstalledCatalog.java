@@ -0,0 +1,145 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.tracing.Trace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * InstalledCatalog provides a PidCatalog over the installed PID files of the subscribed
+ * vehicles.
+ *
+ * While the installed files are the bundled ones, the catalog compiled at build time is used
+ * as is. After a sync the installed CSVs are compiled once into pid_catalog.bin in the app's
+ * files directory, which is then memory mapped like the bundled one. invalidate() drops the
+ * compiled file whenever the installed files or the subscriptions change. Loads from any
+ * thread take turns, so a catalog is compiled once and never read while it is written.
+ *
+ * Usage Example:
+ * PidCatalog catalog = new InstalledCatalog(context, csvManager).load();
+ * int[] matches = catalog.search("cell", "7E4");
+ */
+public class InstalledCatalog {
+    private static final String TAG = "InstalledCatalog";
+    private static final String FILE_NAME = "pid_catalog.bin";
+    // Guards pid_catalog.bin across every instance in the process
+    private static final Object LOCK = new Object();
+
+    private final Context context;
+    private final CSVDataManager csvManager;
+    private final File catalogFile;
+
+    public InstalledCatalog(Context context, CSVDataManager csvManager) {
+        this.context = context.getApplicationContext();
+        this.csvManager = csvManager;
+        this.catalogFile = new File(this.context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Map the catalog of the installed files, compiling it first if needed.
+     * @return Catalog, or null if no PID files are installed or it cannot be built
+     */
+    @Nullable
+    @WorkerThread
+    public PidCatalog load() {
+        PidCatalog bundled = BundledCatalog.get(context);
+        Integer seededChecksum = new SyncSettings(context).getSeededCatalogChecksum();
+        if (bundled != null && seededChecksum != null && bundled.getChecksum() == seededChecksum) {
+            return bundled;
+        }
+
+        synchronized (LOCK) {
+            return loadCompiled();
+        }
+    }
+
+    @Nullable
+    private PidCatalog loadCompiled() {
+        if (catalogFile.exists()) {
+            try {
+                PidCatalog catalog = PidCatalog.open(catalogFile);
+                // The file is written by this app, but a torn write must not crash a search
+                if (catalog.verify()) {
+                    return catalog;
+                }
+                Log.w(TAG, "Discarding corrupt catalog");
+            } catch (IOException e) {
+                Log.w(TAG, "Discarding unreadable catalog", e);
+            }
+        }
+        return compile();
+    }
+
+    /**
+     * Forget the compiled catalog; the next load() compiles the installed files again.
+     */
+    public void invalidate() {
+        synchronized (LOCK) {
+            if (catalogFile.exists() && !catalogFile.delete()) {
+                Log.w(TAG, "Failed to delete " + catalogFile.getAbsolutePath());
+            }
+        }
+    }
+
+    @Nullable
+    private PidCatalog compile() {
+        long start = System.nanoTime();
+        Trace.beginSection("InstalledCatalog.compile");
+        try {
+            File pidFilesDirectory = csvManager.getPidFilesDirectory();
+            VehicleFilter filter = new VehicleFilter(new SyncSettings(context).getSubscribedVehicles());
+            List<File> files = csvManager.getPidFiles(filter);
+            if (files.isEmpty()) {
+                return null;
+            }
+
+            PidCatalogWriter writer = new PidCatalogWriter();
+            PidCsvParser parser = new PidCsvParser(false);
+            for (File file : files) {
+                String path = pidFilesDirectory.toURI().relativize(file.toURI()).getPath();
+                try {
+                    writer.addFile(path, parser.parse(new FileReader(file), path).pids);
+                } catch (IOException e) {
+                    Log.w(TAG, "Skipping unreadable PID file " + path, e);
+                }
+            }
+
+            // Write to a temporary file and rename, so a crash never leaves a partial catalog
+            File temporary = null;
+            try {
+                temporary = File.createTempFile(FILE_NAME, ".tmp", catalogFile.getParentFile());
+                try (OutputStream output = new FileOutputStream(temporary)) {
+                    writer.write(output);
+                }
+                if (!temporary.renameTo(catalogFile)) {
+                    throw new IOException("Failed to rename " + temporary + " to " + catalogFile);
+                }
+                PidCatalog catalog = PidCatalog.open(catalogFile);
+                if (!catalog.verify()) {
+                    throw new IOException("Compiled catalog failed verification");
+                }
+                MetricsRegistry.get().histogram("catalog.compile").recordSince(start);
+                Log.d(TAG, "Compiled " + catalog.getPidCount() + " PIDs from " + files.size() + " files in "
+                        + (System.nanoTime() - start) / 1_000_000L + "ms");
+                return catalog;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to compile PID catalog", e);
+                if (temporary != null) {
+                    temporary.delete();
+                }
+                return null;
+            }
+        } finally {
+            Trace.endSection();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+/**
+ * Lttb downsamples a series to at most a chart's width in points with Largest-Triangle-Three-
+ * Buckets (Steinarsson, 2013): the first and last points are kept, the rest is cut into equal
+ * buckets, and from each bucket the point that spans the largest triangle with the point kept
+ * before it and the average of the next bucket is kept. Unlike averaging, that keeps the
+ * peaks and dips a chart is read for.
+ *
+ * The static downsample() works on caller-owned arrays. An instance adds downsampling of a
+ * Recording column, with its input buffers allocated once for the chart's width: a range of
+ * up to PYRAMID_FACTOR points per pixel is read raw; longer ones are first reduced to half
+ * that many buckets from the recording's summary pyramid, each contributing its minimum and
+ * maximum, so a range costs the same however many hours it spans and still keeps its peaks.
+ * The pyramid does not say which extreme came first, so the one nearer the previous bucket's
+ * last point is placed first.
+ *
+ * Usage Example:
+ * Lttb lttb = new Lttb(width);
+ * int points = lttb.downsample(recording, column, fromMs, toMs, xs, ys);
+ */
+public final class Lttb {
+    static final int PYRAMID_FACTOR = 8;
+
+    private final int width;
+    private final float[] inputX;
+    private final float[] inputY;
+    private final BucketSummary buckets;
+
+    /**
+     * @param width Most points to produce; output arrays need at least this many
+     */
+    public Lttb(int width) {
+        if (width < 3) {
+            throw new IllegalArgumentException("width must be at least 3");
+        }
+        this.width = width;
+        inputX = new float[width * PYRAMID_FACTOR];
+        inputY = new float[width * PYRAMID_FACTOR];
+        buckets = new BucketSummary(width * PYRAMID_FACTOR);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Downsample a recorded column over [fromMs, toMs).
+     *
+     * @param outputX Receives seconds since fromMs
+     * @param outputY Receives values
+     * @return Number of points written, at most getWidth()
+     */
+    public int downsample(Recording recording, int column, long fromMs, long toMs, float[] outputX,
+                          float[] outputY) {
+        int count;
+        int fromRow = recording.rowAt(fromMs);
+        int toRow = recording.rowAt(toMs);
+        if (toRow - fromRow <= inputX.length) {
+            count = recording.copyRows(column, fromRow, toRow, fromMs, inputX, inputY);
+        } else {
+            recording.query(column, fromMs, toMs, inputX.length / 2, buckets);
+            count = 0;
+            for (int bucket = 0; bucket < buckets.size(); bucket++) {
+                if (buckets.getCount(bucket) == 0) {
+                    continue;
+                }
+                float min = buckets.getMin(bucket);
+                float max = buckets.getMax(bucket);
+                if (min == max) {
+                    inputX[count] = (float) ((bucket + 0.5) * buckets.getBucketMs() / 1000);
+                    inputY[count] = min;
+                    count++;
+                    continue;
+                }
+                boolean minFirst = count > 0
+                        && Math.abs(min - inputY[count - 1]) < Math.abs(max - inputY[count - 1]);
+                inputX[count] = (float) ((bucket + 0.25) * buckets.getBucketMs() / 1000);
+                inputY[count] = minFirst ? min : max;
+                count++;
+                inputX[count] = (float) ((bucket + 0.75) * buckets.getBucketMs() / 1000);
+                inputY[count] = minFirst ? max : min;
+                count++;
+            }
+        }
+        return downsample(inputX, inputY, count, width, outputX, outputY);
+    }
+
+    /**
+     * Downsample count points with increasing x and no NaN.
+     *
+     * @param threshold Most points to produce, at least 3
+     * @return Number of points written to the outputs
+     */
+    public static int downsample(float[] x, float[] y, int count, int threshold, float[] outputX,
+                                 float[] outputY) {
+        if (count <= threshold) {
+            System.arraycopy(x, 0, outputX, 0, count);
+            System.arraycopy(y, 0, outputY, 0, count);
+            return count;
+        }
+        // Buckets between the fixed first and last points
+        double bucketSize = (double) (count - 2) / (threshold - 2);
+        int selected = 0;
+        outputX[0] = x[0];
+        outputY[0] = y[0];
+        int previous = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+
+            // Average of the next bucket, or the last point after the final bucket
+            int nextStart = end;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, count - 1);
+            if (bucket == threshold - 3) {
+                // Rounding must not lose the final bucket's last point
+                end = count - 1;
+                nextStart = count - 1;
+                nextEnd = count;
+            }
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            float previousX = x[previous];
+            float previousY = y[previous];
+            double maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                // Twice the triangle's area; the factor does not change the choice
+                double area = Math.abs((previousX - averageX) * (y[i] - previousY)
+                        - (previousX - x[i]) * (averageY - previousY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            selected++;
+            outputX[selected] = x[chosen];
+            outputY[selected] = y[chosen];
+            previous = chosen;
+        }
+        selected++;
+        outputX[selected] = x[count - 1];
+        outputY[selected] = y[count - 1];
+        return selected + 1;
+    }
+}
@@ -0,0 +1,212 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MetricsRegistry holds the process's counters, gauges and latency histograms by name.
+ *
+ * Metrics are created on first use and live for the process. Looking one up is a
+ * ConcurrentHashMap read and recording is a lock free atomic update, so hot paths can
+ * record every call; keep the metric in a field where a path records in a loop.
+ *
+ * Names are dotted, subsystem first, e.g. "csv.parse" or "torque.sendPIDDataPrivate".
+ * Durations are recorded in nanoseconds and reported in microseconds.
+ *
+ * Usage Example:
+ * long start = System.nanoTime();
+ * List<PidData> pids = parser.parse(reader, name).pids;
+ * MetricsRegistry.get().histogram("csv.parse").recordSince(start);
+ * MetricsRegistry.get().counter("csv.pids").add(pids.size());
+ */
+public final class MetricsRegistry {
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * A count that only goes up, e.g. bytes copied or calls made.
+     */
+    public static final class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * The latest value of something, e.g. the number of installed PIDs.
+     */
+    public static final class Gauge {
+        private final AtomicLong value = new AtomicLong();
+
+        public void set(long newValue) {
+            value.set(newValue);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * @return The process-wide registry
+     */
+    public static MetricsRegistry get() {
+        return INSTANCE;
+    }
+
+    MetricsRegistry() {
+    }
+
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    public Gauge gauge(String name) {
+        Gauge gauge = gauges.get(name);
+        if (gauge == null) {
+            Gauge created = new Gauge();
+            gauge = gauges.putIfAbsent(name, created);
+            if (gauge == null) {
+                gauge = created;
+            }
+        }
+        return gauge;
+    }
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * @return Snapshot of the counters, sorted by name
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        return values;
+    }
+
+    /**
+     * @return Snapshot of the gauges, sorted by name
+     */
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        return values;
+    }
+
+    /**
+     * @return Live histograms, sorted by name
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    /**
+     * Clear every metric, keeping the objects so fields holding them stay valid.
+     */
+    public void reset() {
+        for (Counter counter : counters.values()) {
+            counter.value.set(0);
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * @return Every metric as a JSON object:
+     *         {"counters":{..},"gauges":{..},"histograms":{"name":{"count":..,"mean_us":..,
+     *         "p50_us":..,"p90_us":..,"p99_us":..,"max_us":..}}}
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"counters\":");
+        appendValues(json, getCounters());
+        json.append(",\"gauges\":");
+        appendValues(json, getGauges());
+        json.append(",\"histograms\":{");
+        boolean first = true;
+        for (Map.Entry<String, LatencyHistogram> entry : getHistograms().entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, entry.getKey());
+            json.append(String.format(Locale.US,
+                    ":{\"count\":%d,\"mean_us\":%d,\"p50_us\":%d,\"p90_us\":%d,\"p99_us\":%d,\"max_us\":%d}",
+                    histogram.getCount(), histogram.getMeanMicros(), histogram.getPercentileMicros(50),
+                    histogram.getPercentileMicros(90), histogram.getPercentileMicros(99),
+                    histogram.getMaxMicros()));
+        }
+        json.append("}}");
+        return json.toString();
+    }
+
+    private static void appendValues(StringBuilder json, Map<String, Long> values) {
+        json.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, entry.getKey());
+            json.append(':').append(entry.getValue());
+        }
+        json.append('}');
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,111 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.os.RemoteException;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * ModuleTemperatureMonitor is the telemetry stage that watches the battery module
+ * temperatures for a module warming up apart from the rest, and publishes plugin PIDs:
+ * - Module Temp Drift Z: the largest |z| a DriftDetector gives a module
+ * - Drifting Module: that module's number while it is flagged, 0 otherwise
+ *
+ * The modules are the catalog's "Battery Module N Temperature" PIDs, which the BMS reports
+ * in 2101 and, on packs with more modules, 2105; the PidBlockReader sends one request per
+ * block. Temperatures change over minutes, so a sample every SAMPLE_INTERVAL_MS is plenty.
+ *
+ * Usage Example:
+ * ModuleTemperatureMonitor monitor = ModuleTemperatureMonitor.fromCatalog(catalog, poller.getPublisher());
+ * if (monitor != null) poller.addStage(monitor);
+ */
+public class ModuleTemperatureMonitor implements TelemetryStage {
+    public static final String PID_DRIFT_Z = "Module Temp Drift Z";
+    public static final String PID_DRIFTING = "Drifting Module";
+
+    private static final String MODULE_PID = "Battery Module %d Temperature";
+    private static final int MAX_MODULES = 32;
+    static final long SAMPLE_INTERVAL_MS = 5_000;
+    // Averages about 40 samples, a little over three minutes
+    private static final float DRIFT_ALPHA = 0.05f;
+    // Temperatures come in whole degrees
+    private static final float DRIFT_MIN_SPREAD = 0.5f;
+    static final float DRIFT_THRESHOLD = 4f;
+
+    private final PidBlockReader modules;
+    private final PidPublisher publisher;
+    private final long sampleIntervalNanos;
+    private final float[] temperatures;
+    private final DriftDetector drift;
+    private final int driftZSlot;
+    private final int driftingSlot;
+    private final MetricsRegistry.Counter failures = MetricsRegistry.get().counter("modules.failures");
+    private long sampledAt;
+    private boolean sampled;
+
+    ModuleTemperatureMonitor(PidBlockReader modules, PidPublisher publisher, long sampleIntervalMs) {
+        this.modules = modules;
+        this.publisher = publisher;
+        this.sampleIntervalNanos = sampleIntervalMs * 1_000_000L;
+        this.temperatures = new float[modules.getPidCount()];
+        this.drift = new DriftDetector(temperatures.length, DRIFT_ALPHA, DRIFT_MIN_SPREAD, DRIFT_THRESHOLD);
+        driftZSlot = publisher.register(PID_DRIFT_Z, "Module Drift", "", 0, 20, 0.1f);
+        driftingSlot = publisher.register(PID_DRIFTING, "Drift Module", "", 0, temperatures.length, 0);
+    }
+
+    /**
+     * @return Monitor over modules 1, 2, ... for as long as the catalog has them, or null if it
+     *         has fewer than three, too few for a median to mean anything
+     */
+    @Nullable
+    public static ModuleTemperatureMonitor fromCatalog(PidCatalog catalog, PidPublisher publisher) {
+        List<String> names = new ArrayList<>();
+        for (int module = 1; module <= MAX_MODULES; module++) {
+            String name = String.format(Locale.ROOT, MODULE_PID, module);
+            if (PidBlockReader.findPid(catalog, name) < 0) {
+                break;
+            }
+            names.add(name);
+        }
+        if (names.size() < 3) {
+            return null;
+        }
+        PidBlockReader modules = PidBlockReader.fromCatalog(catalog, names.toArray(new String[0]));
+        return modules != null ? new ModuleTemperatureMonitor(modules, publisher, SAMPLE_INTERVAL_MS) : null;
+    }
+
+    @Override
+    @WorkerThread
+    public void poll(TorqueLink link) throws RemoteException {
+        long now = System.nanoTime();
+        if (sampled && now - sampledAt < sampleIntervalNanos) {
+            return;
+        }
+        sampled = true;
+        sampledAt = now;
+        // A block that did not answer leaves its modules NaN, which the detector skips
+        if (!modules.read(link)) {
+            failures.increment();
+        }
+        for (int i = 0; i < temperatures.length; i++) {
+            temperatures[i] = (float) modules.getValue(i);
+        }
+        if (drift.update(temperatures, temperatures.length)) {
+            int drifting = drift.getMaxIndex();
+            publisher.set(driftZSlot, Math.abs(drift.getMaxZScore()));
+            // Modules were read in order from 1
+            publisher.set(driftingSlot, drift.isFlagged(drifting) ? drifting + 1 : 0);
+        }
+    }
+
+    /**
+     * @return Drift of each module, module N at index N - 1; only valid on the polling thread
+     */
+    public DriftDetector getDrift() {
+        return drift;
+    }
+}
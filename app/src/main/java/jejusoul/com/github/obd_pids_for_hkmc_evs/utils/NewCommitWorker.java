@@ -0,0 +1,142 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.Manifest;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.content.ContextCompat;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import jejusoul.com.github.obd_pids_for_hkmc_evs.PluginActivity;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.R;
+
+/**
+ * NewCommitWorker periodically checks whether the PID repository has new commits.
+ *
+ * Each run only asks for the remote head SHA (see RemoteHeadChecker), which is a conditional
+ * request answered with a 304 while nothing changed. Nothing is downloaded. A notification is
+ * shown when the remote head differs from the commit the installed PID files came from, once
+ * per new commit.
+ *
+ * The work is unique and periodic, only runs with a network connection, and is scheduled from
+ * TorquePluginApplication with KEEP so app restarts do not reset the period.
+ *
+ * Usage Example:
+ * NewCommitWorker.schedule(context);
+ */
+public class NewCommitWorker extends Worker {
+    private static final String TAG = "NewCommitWorker";
+    private static final String WORK_NAME = "pid_new_commit_check";
+    private static final long CHECK_INTERVAL_HOURS = 6;
+    private static final String CHANNEL_ID = "pid_updates";
+    private static final int NOTIFICATION_ID = 1001;
+
+    public NewCommitWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedule the periodic check, keeping an existing schedule.
+     * @param context Any context
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                NewCommitWorker.class, CHECK_INTERVAL_HOURS, TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context.getApplicationContext())
+                .enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        SyncSettings settings = new SyncSettings(context);
+        RemoteHeadChecker checker = new RemoteHeadChecker(SyncHttpClient.get(context), RemoteHeadChecker.API_URL);
+
+        String remoteSha;
+        try {
+            remoteSha = checker.fetchHeadSha();
+        } catch (IOException e) {
+            // Not worth a retry with backoff; the next period checks again
+            Log.w(TAG, "Remote head check failed: " + e.getMessage());
+            return Result.success();
+        }
+
+        if (shouldNotify(remoteSha, settings.getLastSyncedSha(), settings.getLastNotifiedSha())) {
+            if (showNotification(context)) {
+                settings.setLastNotifiedSha(remoteSha);
+            }
+        }
+        return Result.success();
+    }
+
+    /**
+     * @return true if remoteSha is neither installed nor already announced
+     */
+    @VisibleForTesting
+    static boolean shouldNotify(String remoteSha, String syncedSha, String notifiedSha) {
+        return remoteSha != null && !remoteSha.equals(syncedSha) && !remoteSha.equals(notifiedSha);
+    }
+
+    private static boolean showNotification(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.d(TAG, "New PIDs available, but notifications are not permitted");
+            return false;
+        }
+        createChannel(context);
+
+        Intent intent = new Intent(context, PluginActivity.class)
+                .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        PendingIntent contentIntent = PendingIntent.getActivity(context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_update)
+                .setContentTitle(context.getString(R.string.notification_new_pids_title))
+                .setContentText(context.getString(R.string.notification_new_pids_text))
+                .setContentIntent(contentIntent)
+                .setAutoCancel(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW);
+        NotificationManagerCompat.from(context).notify(NOTIFICATION_ID, builder.build());
+        return true;
+    }
+
+    private static void createChannel(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                context.getString(R.string.notification_channel_pid_updates),
+                NotificationManager.IMPORTANCE_LOW);
+        NotificationManager manager = context.getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.createNotificationChannel(channel);
+        }
+    }
+}
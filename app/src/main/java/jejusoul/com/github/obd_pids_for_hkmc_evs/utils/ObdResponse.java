@@ -0,0 +1,178 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import androidx.annotation.Nullable;
+
+/**
+ * ObdResponse reassembles the ISO-TP payload of an ELM327 response, as returned line by line
+ * by ITorqueService.sendCommandGetResponse().
+ *
+ * Handles output with or without CAN headers (11 or 29 bit) and with or without CAN
+ * auto-formatting, where the adapter prints a length line and "0:", "1:" frame numbers
+ * instead of the PCI bytes. Frame PCI bytes are stripped and the payload is cut to the
+ * announced message length, dropping the padding of the last frame; it starts with the
+ * positive response echo, e.g. 61 02 for a 2102 request.
+ *
+ * Parsing writes into a caller supplied buffer, so a poller can reuse one buffer per block,
+ * and scans the lines in place instead of trimming and splitting them, so it allocates nothing.
+ *
+ * Usage Example:
+ * byte[] payload = new byte[ObdResponse.MAX_PAYLOAD];
+ * int length = ObdResponse.parse(service.sendCommandGetResponse("7E4", "2102"), payload);
+ * int data = ObdResponse.dataOffset(payload, length, "2102");
+ */
+public final class ObdResponse {
+    /** Largest ISO-TP payload. */
+    public static final int MAX_PAYLOAD = 4095;
+
+    private static final String[] ERRORS = {"NO DATA", "ERROR", "UNABLE", "STOPPED", "?"};
+
+    private ObdResponse() {
+    }
+
+    /**
+     * @param lines  Response lines, or null
+     * @param output Buffer for the payload; bytes that do not fit are dropped
+     * @return Payload length, or -1 if the adapter reported an error or sent nothing
+     */
+    public static int parse(@Nullable String[] lines, byte[] output) {
+        if (lines == null) {
+            return -1;
+        }
+        int length = 0;
+        // Message length announced by the first or single frame, or by the length line
+        int declared = -1;
+        for (String line : lines) {
+            if (line == null) {
+                continue;
+            }
+            int end = line.length();
+            while (end > 0 && isSpace(line.charAt(end - 1))) {
+                end--;
+            }
+            int start = skipSpaces(line, 0, end);
+            if (start == end || line.startsWith("SEARCHING", start)) {
+                continue;
+            }
+            if (isError(line, start, end)) {
+                return -1;
+            }
+            int firstEnd = tokenEnd(line, start, end);
+            // Start of the first payload byte
+            int position;
+            if (line.charAt(firstEnd - 1) == ':') {
+                // Auto-formatted frame; the adapter already removed the PCI byte
+                position = firstEnd;
+            } else if (firstEnd - start == 3 && firstEnd == end) {
+                // Auto-formatted message length line, e.g. "014"
+                declared = parseHex(line, start, firstEnd);
+                continue;
+            } else {
+                position = start;
+                if (firstEnd - start == 3 || firstEnd - start == 8) {
+                    position = firstEnd; // 11 or 29 bit CAN header
+                }
+                int pciStart = skipSpaces(line, position, end);
+                int pciEnd = tokenEnd(line, pciStart, end);
+                int pci = pciStart < end ? parseByte(line, pciStart, pciEnd) : -1;
+                int nextStart = skipSpaces(line, pciEnd, end);
+                if (pci >= 0x10 && pci <= 0x1F && nextStart < end) {
+                    // First frame: PCI and 12 bit length
+                    int nextEnd = tokenEnd(line, nextStart, end);
+                    declared = ((pci & 0x0F) << 8) | Math.max(parseByte(line, nextStart, nextEnd), 0);
+                    position = nextEnd;
+                } else if (pci >= 0 && pci <= 0x0F) {
+                    declared = pci; // Single frame
+                    position = pciEnd;
+                } else if (pci >= 0x20 && pci <= 0x2F) {
+                    position = pciEnd; // Consecutive frame
+                }
+            }
+            while (length < output.length) {
+                int tokenStart = skipSpaces(line, position, end);
+                if (tokenStart == end) {
+                    break;
+                }
+                position = tokenEnd(line, tokenStart, end);
+                int value = parseByte(line, tokenStart, position);
+                if (value >= 0) {
+                    output[length++] = (byte) value;
+                }
+            }
+        }
+        // Drop the padding of the last frame
+        if (declared > 0 && declared < length) {
+            length = declared;
+        }
+        return length > 0 ? length : -1;
+    }
+
+    /**
+     * @param command Request, e.g. "2102" or "22B002"
+     * @return Offset of the first data byte (Torque's A) after the positive response echo,
+     *         or -1 if the payload does not answer the command
+     */
+    public static int dataOffset(byte[] payload, int length, String command) {
+        int echoLength = command.length() / 2;
+        if (echoLength == 0 || length < echoLength) {
+            return -1;
+        }
+        for (int i = 0; i < echoLength; i++) {
+            int expected = parseHex(command, i * 2, i * 2 + 2);
+            if (expected < 0) {
+                return -1;
+            }
+            if (i == 0) {
+                expected += 0x40; // Positive response to the service
+            }
+            if ((payload[i] & 0xFF) != expected) {
+                return -1;
+            }
+        }
+        return echoLength;
+    }
+
+    private static boolean isError(String line, int start, int end) {
+        for (String error : ERRORS) {
+            for (int i = start; i + error.length() <= end; i++) {
+                if (line.regionMatches(true, i, error, 0, error.length())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSpace(char c) {
+        return c <= ' ';
+    }
+
+    private static int skipSpaces(String line, int position, int end) {
+        while (position < end && isSpace(line.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int tokenEnd(String line, int position, int end) {
+        while (position < end && !isSpace(line.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int parseByte(String line, int start, int end) {
+        return end - start == 2 ? parseHex(line, start, end) : -1;
+    }
+
+    private static int parseHex(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(text.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+}
@@ -76,6 +76,7 @@ import jejusoul.com.github.obd_pids_for_hkmc_evs.R;
  */
 public class PermissionManager {
     private static final int PERMISSION_REQUEST_CODE = 123;
+    private static final int NOTIFICATION_PERMISSION_REQUEST_CODE = 124;
     private static final String TORQUE_PERMISSION = "org.prowl.torque.permission.HANDSHAKE";
     
     private static final Map<String, Integer> PERMISSION_DESCRIPTIONS = new HashMap<String, Integer>() {{
@@ -196,6 +197,20 @@ public class PermissionManager {
         }
     }
 
+    /**
+     * Requests the notification permission (Android 13+) used for new PID notifications.
+     * The result is not reported to the callback; declining only disables the notifications.
+     */
+    public void requestNotificationPermission() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(activity, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(activity,
+                    new String[] { Manifest.permission.POST_NOTIFICATIONS },
+                    NOTIFICATION_PERMISSION_REQUEST_CODE);
+        }
+    }
+
     public void requestTorquePermission() {
         if (!isTorquePermissionGranted()) {
             List<String> permissions = new ArrayList<>();
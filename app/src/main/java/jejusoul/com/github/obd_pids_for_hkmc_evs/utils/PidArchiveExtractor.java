@@ -0,0 +1,200 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.tracing.Trace;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * PidArchiveExtractor extracts the PID files of the subscribed vehicles from a repository archive.
+ *
+ * GitHub branch archives put every file under a single root folder
+ * ("OBD-PIDs-for-HKMC-EVs-master/Soul EV/..."). That folder is stripped, and every extracted
+ * file keeps its path relative to the repository root, so files with the same name from
+ * different vehicles do not collide.
+ *
+ * Extraction Strategies:
+ * - Central directory: the archive is opened with ZipFile, the entry list is read from the
+ *   central directory at the end of the file, and only matching entries are inflated.
+ *   Entries of other vehicles are never read.
+ * - Streaming: used when the central directory cannot be read (e.g. a truncated archive).
+ *   Entries are visited in order and non-matching entries are skipped without being written.
+ *
+ * Both strategies also report every vehicle folder found in the archive, so the user can
+ * subscribe to vehicles that are not installed yet.
+ *
+ * Usage Example:
+ * PidArchiveExtractor.Result result = new PidArchiveExtractor(filter).extract(zipFile, outputDir);
+ */
+public class PidArchiveExtractor {
+    private static final String TAG = "PidArchiveExtractor";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final VehicleFilter filter;
+
+    /**
+     * Files written by one extraction, and the vehicle folders present in the archive.
+     */
+    public static class Result {
+        public final List<File> files;
+        public final Set<String> vehicles;
+
+        Result(List<File> files, Set<String> vehicles) {
+            this.files = Collections.unmodifiableList(files);
+            this.vehicles = Collections.unmodifiableSet(vehicles);
+        }
+    }
+
+    public PidArchiveExtractor(VehicleFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Extract the matching CSV files of zipFile into outputDir.
+     * @param zipFile   Repository archive
+     * @param outputDir Repository root for the extracted files
+     * @return Extracted files and the vehicles found in the archive
+     * @throws IOException If the archive cannot be read at all
+     */
+    @NonNull
+    public Result extract(File zipFile, File outputDir) throws IOException {
+        long start = System.nanoTime();
+        Trace.beginSection("PidArchiveExtractor.extract");
+        try {
+            Result result;
+            try {
+                result = extractFromCentralDirectory(zipFile, outputDir);
+            } catch (ZipException e) {
+                Log.w(TAG, "Central directory unreadable, streaming instead: " + e.getMessage());
+                MetricsRegistry.get().counter("sync.extract.streamed").increment();
+                try (InputStream input = new FileInputStream(zipFile)) {
+                    result = extractStreaming(input, outputDir);
+                }
+            }
+            MetricsRegistry metrics = MetricsRegistry.get();
+            metrics.histogram("sync.extract").recordSince(start);
+            metrics.counter("sync.extract.files").add(result.files.size());
+            return result;
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    @NonNull
+    Result extractFromCentralDirectory(File zipFile, File outputDir) throws IOException {
+        List<File> files = new ArrayList<>();
+        Set<String> vehicles = new TreeSet<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String relativePath = accept(entry, vehicles);
+                if (relativePath == null) {
+                    continue;
+                }
+                try (InputStream input = zip.getInputStream(entry)) {
+                    File outputFile = write(input, outputDir, relativePath, buffer);
+                    if (outputFile != null) {
+                        files.add(outputFile);
+                    }
+                }
+            }
+        }
+        return new Result(files, vehicles);
+    }
+
+    @NonNull
+    Result extractStreaming(InputStream input, File outputDir) throws IOException {
+        List<File> files = new ArrayList<>();
+        Set<String> vehicles = new TreeSet<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (ZipInputStream zis = new ZipInputStream(input)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                String relativePath = accept(entry, vehicles);
+                if (relativePath != null) {
+                    File outputFile = write(zis, outputDir, relativePath, buffer);
+                    if (outputFile != null) {
+                        files.add(outputFile);
+                    }
+                }
+                // getNextEntry() skips whatever is left of a non-matching entry
+                zis.closeEntry();
+            }
+        }
+        return new Result(files, vehicles);
+    }
+
+    /**
+     * Record the entry's vehicle and decide whether to extract it.
+     * @return Path relative to the repository root, or null to skip the entry
+     */
+    private String accept(ZipEntry entry, Set<String> vehicles) {
+        if (entry.isDirectory()) {
+            return null;
+        }
+        String relativePath = stripArchiveRoot(entry.getName());
+        if (relativePath == null || !VehicleFilter.isCsv(relativePath)) {
+            return null;
+        }
+        String vehicle = VehicleFilter.vehicleOf(relativePath);
+        if (vehicle != null) {
+            vehicles.add(vehicle);
+        }
+        return filter.matches(relativePath) ? relativePath : null;
+    }
+
+    private static File write(InputStream input, File outputDir, String relativePath, byte[] buffer)
+            throws IOException {
+        File outputFile = new File(outputDir, relativePath);
+        if (!outputFile.getCanonicalPath().startsWith(outputDir.getCanonicalPath() + File.separator)) {
+            Log.w(TAG, "Skipping entry outside the output directory: " + relativePath);
+            return null;
+        }
+        File parentDir = outputFile.getParentFile();
+        if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + parentDir.getAbsolutePath());
+        }
+        try (OutputStream output = new FileOutputStream(outputFile)) {
+            int len;
+            while ((len = input.read(buffer)) > 0) {
+                output.write(buffer, 0, len);
+            }
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Extracted: " + relativePath);
+        }
+        return outputFile;
+    }
+
+    /**
+     * @return Entry name without the archive's root folder, or null for the root itself
+     */
+    static String stripArchiveRoot(String entryName) {
+        int slash = entryName.indexOf('/');
+        if (slash < 0 || slash == entryName.length() - 1) {
+            return null;
+        }
+        return entryName.substring(slash + 1);
+    }
+}
@@ -0,0 +1,398 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.os.RemoteException;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PidBlockReader reads a handful of named catalog PIDs straight from the ECU, one request
+ * per (header, mode and PID) block however many of the PIDs the block carries, and
+ * evaluates their equations over the response.
+ *
+ * PIDs are looked up by the name Torque shows, so "Battery Current" finds the catalog's
+ * "000_Battery Current", or by their short name. Equations are evaluated once every block
+ * has answered, each after the PIDs it references, so val{} resolves to any other PID of
+ * the reader, as "Battery Power" needs "Battery Current" and "Battery DC Voltage". Readers
+ * built from the catalog add the PIDs referenced that way as hidden PIDs, which are read
+ * but not counted by getPidCount(). A PID that only references others reads no bytes and
+ * costs no request. AVG(n:x) averages x over the last n reads in which it had a value.
+ * Buffers are allocated once; read() allocates nothing beyond the binder's response strings.
+ * Not thread safe.
+ *
+ * Usage Example:
+ * PidBlockReader bms = PidBlockReader.fromCatalog(catalog, "Battery Current", "Battery DC Voltage");
+ * if (bms != null && bms.read(link)) double amps = bms.getValue(0);
+ */
+public final class PidBlockReader {
+    // PIDs from index pidCount on are hidden dependencies of the others
+    private final int pidCount;
+    private final String[] names;
+    private final PidEquation[] equations;
+    // Block of each PID, -1 for one that reads no bytes
+    private final int[] pidBlock;
+    // PIDs in evaluation order, each after the PIDs it references
+    private final int[] order;
+    private final String[] blockHeaders;
+    private final String[] blockCommands;
+    private final byte[][] payloads;
+    private final int[] payloadLengths;
+    private final int[] dataOffsets;
+    private final MovingAverage[][] averages;
+    private final double[] values;
+    private final EvaluationContext context = new EvaluationContext();
+
+    private PidBlockReader(List<PidData> pids, int pidCount) throws ParseException {
+        this.pidCount = pidCount;
+        int count = pids.size();
+        names = new String[count];
+        equations = new PidEquation[count];
+        pidBlock = new int[count];
+        averages = new MovingAverage[count][];
+        values = new double[count];
+        List<String> headers = new ArrayList<>();
+        List<String> commands = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            PidData pid = pids.get(i);
+            names[i] = pid.getName();
+            equations[i] = PidEquation.parse(pid.getEquation());
+            averages[i] = new MovingAverage[equations[i].getAverageSlots()];
+            for (int slot = 0; slot < averages[i].length; slot++) {
+                averages[i][slot] = new MovingAverage();
+            }
+            if (equations[i].getMaxByteIndex() < 0) {
+                pidBlock[i] = -1;
+                continue;
+            }
+            int block = 0;
+            while (block < headers.size() && !(headers.get(block).equalsIgnoreCase(pid.getHeader())
+                    && commands.get(block).equalsIgnoreCase(pid.getModeAndPID()))) {
+                block++;
+            }
+            if (block == headers.size()) {
+                headers.add(pid.getHeader());
+                commands.add(pid.getModeAndPID());
+            }
+            pidBlock[i] = block;
+        }
+        blockHeaders = headers.toArray(new String[0]);
+        blockCommands = commands.toArray(new String[0]);
+        payloads = new byte[blockHeaders.length][ObdResponse.MAX_PAYLOAD];
+        payloadLengths = new int[blockHeaders.length];
+        dataOffsets = new int[blockHeaders.length];
+        order = evaluationOrder();
+        Arrays.fill(values, Double.NaN);
+    }
+
+    /**
+     * Sort the PIDs so each comes after the PIDs of this reader it references.
+     * @throws ParseException if references go round in a circle
+     */
+    private int[] evaluationOrder() throws ParseException {
+        int[] sorted = new int[names.length];
+        // 0 unvisited, 1 being visited, 2 sorted
+        int[] state = new int[names.length];
+        int next = 0;
+        for (int i = 0; i < names.length; i++) {
+            next = visit(i, state, sorted, next);
+        }
+        return sorted;
+    }
+
+    private int visit(int pid, int[] state, int[] sorted, int next) throws ParseException {
+        if (state[pid] == 2) {
+            return next;
+        }
+        if (state[pid] == 1) {
+            throw new ParseException("Circular val{} reference to " + names[pid], 0);
+        }
+        state[pid] = 1;
+        for (String reference : equations[pid].getReferences()) {
+            int referenced = indexOf(reference);
+            if (referenced >= 0) {
+                next = visit(referenced, state, sorted, next);
+            }
+        }
+        state[pid] = 2;
+        sorted[next] = pid;
+        return next + 1;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (matchesName(names[i], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param pids Rows to read; each needs a header. val{} references to PIDs that are not
+     *             among them evaluate to NaN.
+     * @throws ParseException if an equation is invalid or references go round in a circle
+     */
+    public static PidBlockReader fromPids(List<PidData> pids) throws ParseException {
+        return new PidBlockReader(pids, pids.size());
+    }
+
+    /**
+     * Build a reader over catalog rows plus, as hidden PIDs, the rows their val{} references
+     * need, and the rows those need in turn. A reference is looked for in the file of the PID
+     * that makes it first, then in the whole catalog.
+     *
+     * @param rows Rows to read; each needs a header
+     * @throws ParseException if an equation is invalid, a reference matches no PID with a
+     *                        header, or references go round in a circle
+     */
+    public static PidBlockReader fromRows(PidCatalog catalog, int... rows) throws ParseException {
+        List<PidData> pids = new ArrayList<>(rows.length);
+        List<Integer> files = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            pids.add(catalog.getPid(row));
+            files.add(fileOf(catalog, row));
+        }
+        // pids grows while it is walked, so the dependencies of dependencies are added too
+        for (int i = 0; i < pids.size(); i++) {
+            for (String reference : PidEquation.parse(pids.get(i).getEquation()).getReferences()) {
+                if (contains(pids, reference)) {
+                    continue;
+                }
+                int first = catalog.getFirstPid(files.get(i));
+                int row = findPid(catalog, reference, first, first + catalog.getPidCount(files.get(i)));
+                if (row < 0) {
+                    row = findPid(catalog, reference);
+                }
+                if (row < 0) {
+                    throw new ParseException("No PID for val{" + reference + "} of "
+                            + pids.get(i).getName(), 0);
+                }
+                pids.add(catalog.getPid(row));
+                files.add(fileOf(catalog, row));
+            }
+        }
+        return new PidBlockReader(pids, rows.length);
+    }
+
+    private static boolean contains(List<PidData> pids, String name) {
+        for (PidData pid : pids) {
+            if (matchesName(pid.getName(), name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int fileOf(PidCatalog catalog, int row) {
+        int file = catalog.getFileCount() - 1;
+        while (file > 0 && catalog.getFirstPid(file) > row) {
+            file--;
+        }
+        return file;
+    }
+
+    /**
+     * Find each name's first row in the catalog and build a reader over them with
+     * fromRows().
+     * @return Reader with the PIDs in the order of names, or null if one is missing, has no
+     *         header, does not parse or references a PID the catalog lacks
+     */
+    @Nullable
+    public static PidBlockReader fromCatalog(PidCatalog catalog, String... names) {
+        return fromRange(catalog, 0, catalog.getPidCount(), names);
+    }
+
+    /**
+     * Like fromCatalog(), but only looks for the names in one file of the catalog, for PIDs
+     * that files of different model years decode differently.
+     */
+    @Nullable
+    public static PidBlockReader fromFile(PidCatalog catalog, int file, String... names) {
+        int first = catalog.getFirstPid(file);
+        return fromRange(catalog, first, first + catalog.getPidCount(file), names);
+    }
+
+    @Nullable
+    private static PidBlockReader fromRange(PidCatalog catalog, int from, int to, String... names) {
+        int[] rows = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            rows[i] = findPid(catalog, names[i], from, to);
+            if (rows[i] < 0) {
+                return null;
+            }
+        }
+        try {
+            return fromRows(catalog, rows);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Index of the first PID with a header called name, with or without a sort prefix
+     *         such as "000_", or failing that the first with that short name; -1 if none
+     */
+    public static int findPid(PidCatalog catalog, String name) {
+        return findPid(catalog, name, 0, catalog.getPidCount());
+    }
+
+    /**
+     * findPid() over the PIDs from index from up to, not including, to. Only the PIDs the
+     * catalog's token index finds for name are decoded: every word of a matching name or
+     * short name is a word of the PID's, so the index never misses one.
+     */
+    static int findPid(PidCatalog catalog, String name, int from, int to) {
+        int byShortName = -1;
+        for (int pid : catalog.search(name)) {
+            if (pid < from) {
+                continue;
+            }
+            if (pid >= to) {
+                break;
+            }
+            if (catalog.getHeader(pid).isEmpty()) {
+                continue;
+            }
+            if (matchesName(catalog.getName(pid), name)) {
+                return pid;
+            }
+            if (byShortName < 0 && catalog.getShortName(pid).equalsIgnoreCase(name)) {
+                byShortName = pid;
+            }
+        }
+        return byShortName;
+    }
+
+    static boolean matchesName(String pidName, String name) {
+        if (pidName.equalsIgnoreCase(name)) {
+            return true;
+        }
+        int prefixEnd = pidName.length() - name.length() - 1;
+        return prefixEnd > 0 && pidName.charAt(prefixEnd) == '_'
+                && pidName.regionMatches(true, prefixEnd + 1, name, 0, name.length());
+    }
+
+    /**
+     * @return Number of PIDs the reader was built with, not counting hidden dependencies
+     */
+    public int getPidCount() {
+        return pidCount;
+    }
+
+    public int getBlockCount() {
+        return blockHeaders.length;
+    }
+
+    /**
+     * Request every block once, then evaluate all PIDs. PIDs of a block that did not answer,
+     * or whose bytes the response is too short for, become NaN, as do PIDs referencing them.
+     *
+     * @return true if every PID has a value
+     */
+    @WorkerThread
+    public boolean read(TorqueLink link) throws RemoteException {
+        for (int block = 0; block < blockHeaders.length; block++) {
+            byte[] payload = payloads[block];
+            int length = ObdResponse.parse(link.sendCommand(blockHeaders[block], blockCommands[block]), payload);
+            payloadLengths[block] = length;
+            dataOffsets[block] = ObdResponse.dataOffset(payload, length, blockCommands[block]);
+        }
+        boolean complete = true;
+        Arrays.fill(values, Double.NaN);
+        for (int i : order) {
+            int block = pidBlock[i];
+            if (block >= 0) {
+                int offset = dataOffsets[block];
+                if (offset < 0 || offset + equations[i].getMaxByteIndex() >= payloadLengths[block]) {
+                    complete = false;
+                    continue;
+                }
+                context.set(i, payloads[block], offset, payloadLengths[block]);
+            } else {
+                context.set(i, null, 0, 0);
+            }
+            values[i] = equations[i].evaluate(context);
+            if (Double.isNaN(values[i])) {
+                complete = false;
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * @param index Position of the PID in the names or rows the reader was built from
+     * @return Value from the last read(), NaN if it could not be read
+     */
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Response bytes and other values of this reader, reused for every evaluation.
+     */
+    private final class EvaluationContext implements PidEquation.Context {
+        private int pid;
+        private byte[] payload;
+        private int offset;
+        private int length;
+
+        void set(int pid, byte[] payload, int offset, int length) {
+            this.pid = pid;
+            this.payload = payload;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int byteAt(int index) {
+            int position = offset + index;
+            return position < length ? payload[position] & 0xFF : 0;
+        }
+
+        @Override
+        public double valueOf(String name) {
+            int index = indexOf(name);
+            return index >= 0 ? values[index] : Double.NaN;
+        }
+
+        @Override
+        public double average(int slot, int window, double sample) {
+            return averages[pid][slot].add(window, sample);
+        }
+    }
+
+    /**
+     * Ring of the last samples of one AVG() call.
+     */
+    private static final class MovingAverage {
+        private double[] samples;
+        private int next;
+        private int count;
+
+        /**
+         * @return Mean of the last window samples, NaN if sample is NaN
+         */
+        double add(int window, double sample) {
+            if (Double.isNaN(sample)) {
+                return Double.NaN; // Missed reads don't count towards the window
+            }
+            if (samples == null) {
+                // The window is a constant of the equation, so this happens once
+                samples = new double[window];
+            }
+            samples[next] = sample;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            double sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += samples[i];
+            }
+            return sum / count;
+        }
+    }
+}
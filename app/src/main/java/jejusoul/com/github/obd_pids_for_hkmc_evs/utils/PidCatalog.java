@@ -0,0 +1,437 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * PidCatalog reads the binary PID catalog written by PidCatalogWriter.
+ *
+ * The catalog is designed to be memory mapped: every section is addressed by offset, records
+ * have a fixed size, and strings are decoded only when a row is read. Opening a catalog costs
+ * one mmap and a header check, independent of the number of PIDs.
+ *
+ * Layout (big endian, all offsets from the start of the buffer):
+ * - Header: magic, version, CRC32 of everything after the header, total length, and the
+ *   offsets of the sections below
+ * - Strings: count, count + 1 offsets into a UTF-8 blob, blob
+ * - Files: count, then (path string, first PID, PID count) per file
+ * - PIDs: count, then (name, short name, mode, equation, unit, header strings, min, max)
+ * - Tokens: count, then (token string, first posting, posting count), sorted by token
+ * - Postings: count, then PID indexes, ascending per token
+ * - Commands: count, then PID indexes sorted by header, then mode and PID, ignoring case
+ *
+ * The token index holds the lower case words of every PID's name and short name, so a
+ * search is a binary search per query word followed by a bitmap intersection. The command
+ * index makes finding every PID of one ECU, or of one request to it, two binary searches.
+ *
+ * Nothing is decoded ahead of time or cached, so a mapped catalog costs the same heap
+ * whether it holds a hundred PIDs or a hundred thousand.
+ *
+ * Usage Example:
+ * PidCatalog catalog = PidCatalog.open(file);
+ * int[] matches = catalog.search("cell volt");
+ * int[] cells = catalog.findByCommand("7E4", "2102");
+ */
+public final class PidCatalog {
+    static final int MAGIC = 0x50494443; // "PIDC"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 10 * 4;
+    static final int FILE_RECORD_SIZE = 3 * 4;
+    static final int PID_RECORD_SIZE = 8 * 4;
+    static final int TOKEN_RECORD_SIZE = 3 * 4;
+
+    private final ByteBuffer buffer;
+    private final int checksum;
+    private final int stringCount;
+    private final int stringOffsetsStart;
+    private final int blobStart;
+    private final int fileCount;
+    private final int filesStart;
+    private final int pidCount;
+    private final int pidsStart;
+    private final int tokenCount;
+    private final int tokensStart;
+    private final int postingsStart;
+    private final int commandCount;
+    private final int commandsStart;
+    private volatile List<String> headers;
+
+    private PidCatalog(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a PID catalog");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported PID catalog version " + buffer.getInt(4));
+        }
+        if (buffer.getInt(12) != buffer.capacity()) {
+            throw new IOException("Truncated PID catalog: " + buffer.capacity() + " of " + buffer.getInt(12) + " bytes");
+        }
+        checksum = buffer.getInt(8);
+        int stringsOffset = buffer.getInt(16);
+        int filesOffset = buffer.getInt(20);
+        int pidsOffset = buffer.getInt(24);
+        int tokensOffset = buffer.getInt(28);
+        int postingsOffset = buffer.getInt(32);
+        int commandsOffset = buffer.getInt(36);
+
+        stringCount = buffer.getInt(stringsOffset);
+        stringOffsetsStart = stringsOffset + 4;
+        blobStart = stringOffsetsStart + (stringCount + 1) * 4;
+        fileCount = buffer.getInt(filesOffset);
+        filesStart = filesOffset + 4;
+        pidCount = buffer.getInt(pidsOffset);
+        pidsStart = pidsOffset + 4;
+        tokenCount = buffer.getInt(tokensOffset);
+        tokensStart = tokensOffset + 4;
+        postingsStart = postingsOffset + 4;
+        commandCount = buffer.getInt(commandsOffset);
+        commandsStart = commandsOffset + 4;
+    }
+
+    /**
+     * Memory map a catalog file.
+     * @param file Catalog file
+     * @return Catalog backed by the mapping
+     * @throws IOException If the file cannot be mapped or is not a catalog
+     */
+    public static PidCatalog open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @param buffer Catalog bytes; position and limit are ignored
+     * @return Catalog backed by buffer
+     * @throws IOException If buffer does not hold a catalog
+     */
+    public static PidCatalog wrap(ByteBuffer buffer) throws IOException {
+        return new PidCatalog(buffer.duplicate().order(ByteOrder.BIG_ENDIAN));
+    }
+
+    /**
+     * @return CRC32 of the catalog body, identifying the catalog's content
+     */
+    public int getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Recompute the checksum; only needed for catalogs from untrusted storage.
+     */
+    public boolean verify() {
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(HEADER_SIZE);
+        byte[] chunk = new byte[8192];
+        while (body.hasRemaining()) {
+            int length = Math.min(chunk.length, body.remaining());
+            body.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return (int) crc.getValue() == checksum;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public String getFilePath(int file) {
+        return getString(buffer.getInt(filesStart + file * FILE_RECORD_SIZE));
+    }
+
+    /**
+     * @param path Path relative to the repository root, '/' separated
+     * @return File index, or -1 if the catalog has no such file
+     */
+    public int findFile(String path) {
+        for (int i = 0; i < fileCount; i++) {
+            if (getFilePath(i).equals(path)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getFirstPid(int file) {
+        return buffer.getInt(filesStart + file * FILE_RECORD_SIZE + 4);
+    }
+
+    public int getPidCount(int file) {
+        return buffer.getInt(filesStart + file * FILE_RECORD_SIZE + 8);
+    }
+
+    public int getPidCount() {
+        return pidCount;
+    }
+
+    /**
+     * @return Rows of one file, in file order
+     */
+    public List<PidData> getPids(int file) {
+        int first = getFirstPid(file);
+        int count = getPidCount(file);
+        List<PidData> pids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pids.add(getPid(first + i));
+        }
+        return pids;
+    }
+
+    public PidData getPid(int index) {
+        int record = pidsStart + index * PID_RECORD_SIZE;
+        return new PidData(
+                getString(buffer.getInt(record)),
+                getString(buffer.getInt(record + 4)),
+                getString(buffer.getInt(record + 8)),
+                getString(buffer.getInt(record + 12)),
+                buffer.getFloat(record + 24),
+                buffer.getFloat(record + 28),
+                getString(buffer.getInt(record + 16)),
+                getString(buffer.getInt(record + 20)));
+    }
+
+    public String getName(int index) {
+        return getString(buffer.getInt(pidsStart + index * PID_RECORD_SIZE));
+    }
+
+    public String getShortName(int index) {
+        return getString(buffer.getInt(pidsStart + index * PID_RECORD_SIZE + 4));
+    }
+
+    public String getHeader(int index) {
+        return getString(getHeaderId(index));
+    }
+
+    public String getModeAndPid(int index) {
+        return getString(buffer.getInt(pidsStart + index * PID_RECORD_SIZE + 8));
+    }
+
+    /**
+     * Find PIDs whose name or short name has a word starting with every word of the query.
+     * @param query Free text, e.g. "cell volt"
+     * @return Matching PID indexes in catalog order; every PID for a blank query
+     */
+    public int[] search(String query) {
+        List<String> words = tokenize(query);
+        BitSet result = null;
+        for (String word : words) {
+            BitSet matches = new BitSet(pidCount);
+            for (int token = lowerBound(word); token < tokenCount; token++) {
+                int record = tokensStart + token * TOKEN_RECORD_SIZE;
+                if (!getString(buffer.getInt(record)).startsWith(word)) {
+                    break;
+                }
+                int start = buffer.getInt(record + 4);
+                int count = buffer.getInt(record + 8);
+                for (int i = 0; i < count; i++) {
+                    matches.set(buffer.getInt(postingsStart + (start + i) * 4));
+                }
+            }
+            if (result == null) {
+                result = matches;
+            } else {
+                result.and(matches);
+            }
+        }
+        if (result == null) {
+            result = new BitSet(pidCount);
+            result.set(0, pidCount);
+        }
+        int[] indexes = new int[result.cardinality()];
+        int n = 0;
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+            indexes[n++] = i;
+        }
+        return indexes;
+    }
+
+    /**
+     * Search, then keep only PIDs sent to one ECU header.
+     * @param query  Free text, see search(String)
+     * @param header ECU header such as "7E4", or null for every header
+     * @return Matching PID indexes in catalog order
+     */
+    public int[] search(String query, String header) {
+        if (header == null) {
+            return search(query);
+        }
+        int[] onHeader = findByHeader(header);
+        if (tokenize(query).isEmpty()) {
+            return onHeader;
+        }
+        // Both are in catalog order, so they intersect in one merge
+        int[] matches = search(query);
+        int n = 0;
+        int j = 0;
+        for (int index : matches) {
+            while (j < onHeader.length && onHeader[j] < index) {
+                j++;
+            }
+            if (j < onHeader.length && onHeader[j] == index) {
+                matches[n++] = index;
+            }
+        }
+        return Arrays.copyOf(matches, n);
+    }
+
+    /**
+     * Find every PID sent to one ECU header.
+     * @param header ECU header such as "7E4", ignoring case
+     * @return Matching PID indexes in catalog order
+     */
+    public int[] findByHeader(String header) {
+        return findCommand(header, null);
+    }
+
+    /**
+     * Find every PID decoded from one request, such as the cells in 2102 on 7E4.
+     * @param header     ECU header, ignoring case
+     * @param modeAndPid Mode and PID, ignoring case
+     * @return Matching PID indexes in catalog order
+     */
+    public int[] findByCommand(String header, String modeAndPid) {
+        return findCommand(header, modeAndPid);
+    }
+
+    private int[] findCommand(String header, String modeAndPid) {
+        int from = commandBound(header, modeAndPid, false);
+        int to = commandBound(header, modeAndPid, true);
+        int[] indexes = new int[to - from];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = getCommandPid(from + i);
+        }
+        Arrays.sort(indexes);
+        return indexes;
+    }
+
+    /**
+     * @param upper false for the first position in the command index not before the key,
+     *              true for the first position after it
+     */
+    private int commandBound(String header, String modeAndPid, boolean upper) {
+        int low = 0;
+        int high = commandCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int pid = getCommandPid(mid);
+            int order = String.CASE_INSENSITIVE_ORDER.compare(getHeader(pid), header);
+            if (order == 0 && modeAndPid != null) {
+                order = String.CASE_INSENSITIVE_ORDER.compare(getModeAndPid(pid), modeAndPid);
+            }
+            if (order < 0 || (upper && order == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int getCommandPid(int position) {
+        return buffer.getInt(commandsStart + position * 4);
+    }
+
+    /**
+     * @return Distinct ECU headers of all PIDs, sorted, ignoring case
+     */
+    public List<String> getHeaders() {
+        List<String> distinct = headers;
+        if (distinct == null) {
+            // Skips through the command index a header at a time: a binary search per ECU
+            distinct = new ArrayList<>();
+            int position = 0;
+            while (position < commandCount) {
+                String header = getHeader(getCommandPid(position));
+                distinct.add(header);
+                position = commandBound(header, null, true);
+            }
+            headers = distinct;
+        }
+        return new ArrayList<>(distinct);
+    }
+
+    /**
+     * @return Read-only view of all PIDs; rows are decoded on access
+     */
+    public List<PidData> asList() {
+        return new AbstractList<PidData>() {
+            @Override
+            public PidData get(int index) {
+                return getPid(index);
+            }
+
+            @Override
+            public int size() {
+                return pidCount;
+            }
+        };
+    }
+
+    private int getHeaderId(int index) {
+        return buffer.getInt(pidsStart + index * PID_RECORD_SIZE + 20);
+    }
+
+    private int lowerBound(String word) {
+        int low = 0;
+        int high = tokenCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            String token = getString(buffer.getInt(tokensStart + mid * TOKEN_RECORD_SIZE));
+            if (token.compareTo(word) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    String getString(int id) {
+        // Strings are decoded on every read, not cached, so memory use doesn't grow with the rows visited
+        int start = buffer.getInt(stringOffsetsStart + id * 4);
+        int end = buffer.getInt(stringOffsetsStart + (id + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(blobStart + start);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Split text into lower case words for the search index.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder word = new StringBuilder();
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i <= lower.length(); i++) {
+            char c = i < lower.length() ? lower.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                tokens.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,100 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.ListenableFuturePagingSource;
+import androidx.paging.PagingState;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PidCatalogPagingSource pages the PIDs matching a search out of a memory mapped PidCatalog.
+ *
+ * Only the matching catalog indexes are held (4 bytes per match); rows are decoded and
+ * formatted one page at a time on the executor, and Paging drops pages that scroll far out
+ * of view, so memory use stays flat however large the catalog is.
+ *
+ * Keys are positions in the match list, which lets the list show placeholders for every
+ * match and jump straight to any position when the scrollbar is dragged.
+ *
+ * Usage Example:
+ * Pager<Integer, PidRow> pager = new Pager<>(config,
+ *         () -> new PidCatalogPagingSource(catalog, "cell volt", "7E4", executor));
+ */
+public class PidCatalogPagingSource extends ListenableFuturePagingSource<Integer, PidRow> {
+    private final PidCatalog catalog;
+    private final String query;
+    private final String header;
+    private final ListeningExecutorService executor;
+    private int[] matches;
+
+    /**
+     * @param catalog  Catalog to read rows from
+     * @param query    Search text, blank for every PID
+     * @param header   ECU header to keep, or null for every header
+     * @param executor Single thread executor the search runs and rows are decoded on
+     */
+    public PidCatalogPagingSource(PidCatalog catalog, String query, @Nullable String header,
+                                  ListeningExecutorService executor) {
+        this.catalog = catalog;
+        this.query = query;
+        this.header = header;
+        this.executor = executor;
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<LoadResult<Integer, PidRow>> loadFuture(@NonNull LoadParams<Integer> params) {
+        return executor.submit(() -> loadPage(params));
+    }
+
+    private LoadResult<Integer, PidRow> loadPage(LoadParams<Integer> params) {
+        if (matches == null) {
+            // Searched on the first load rather than in the constructor, which Paging may call on the main thread
+            matches = catalog.search(query, header);
+        }
+        int total = matches.length;
+        int key = params.getKey() != null ? params.getKey() : 0;
+        int loadSize = params.getLoadSize();
+        int start;
+        int end;
+        if (params instanceof LoadParams.Prepend) {
+            end = Math.min(key, total);
+            start = Math.max(0, end - loadSize);
+        } else if (params instanceof LoadParams.Append) {
+            start = Math.min(key, total);
+            end = Math.min(total, start + loadSize);
+        } else {
+            // Refresh: center the first page on the key, e.g. the position scrolled to
+            start = Math.max(0, Math.min(key - loadSize / 2, total - loadSize));
+            end = Math.min(total, start + loadSize);
+        }
+
+        List<PidRow> rows = new ArrayList<>(end - start);
+        for (int position = start; position < end; position++) {
+            int index = matches[position];
+            PidData pid = catalog.getPid(index);
+            rows.add(new PidRow(index, pid, PidRow.DETAILS.format(pid)));
+        }
+        return new LoadResult.Page<>(rows,
+                start > 0 ? start : null,
+                end < total ? end : null,
+                start,
+                total - end);
+    }
+
+    @Nullable
+    @Override
+    public Integer getRefreshKey(@NonNull PagingState<Integer, PidRow> state) {
+        return state.getAnchorPosition();
+    }
+
+    @Override
+    public boolean getJumpingSupported() {
+        return true;
+    }
+}
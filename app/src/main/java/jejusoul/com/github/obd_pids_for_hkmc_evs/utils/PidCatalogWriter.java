@@ -0,0 +1,253 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * PidCatalogWriter serializes parsed PID files into the binary format read by PidCatalog.
+ *
+ * Used by CompilePidCatalogTask at build time, so it must stay free of Android dependencies.
+ * Output is deterministic: files are ordered by path and strings are deduplicated in order
+ * of first use, so unchanged CSVs produce a byte-identical catalog.
+ *
+ * Usage Example:
+ * PidCatalogWriter writer = new PidCatalogWriter();
+ * writer.addFile("Soul EV/Kia_Soul_EV_BMS_data.csv", pids);
+ * writer.write(outputStream);
+ */
+public class PidCatalogWriter {
+    private final Map<String, List<PidData>> files = new TreeMap<>();
+
+    /**
+     * @param path Path relative to the repository root, '/' separated
+     * @param pids Rows of the file, in file order
+     */
+    public void addFile(String path, List<PidData> pids) {
+        files.put(path, new ArrayList<>(pids));
+    }
+
+    public void write(OutputStream output) throws IOException {
+        output.write(toByteArray());
+    }
+
+    public byte[] toByteArray() {
+        StringTable strings = new StringTable();
+        List<int[]> fileRecords = new ArrayList<>();
+        List<PidData> allPids = new ArrayList<>();
+        for (Map.Entry<String, List<PidData>> file : files.entrySet()) {
+            fileRecords.add(new int[] { strings.id(file.getKey()), allPids.size(), file.getValue().size() });
+            allPids.addAll(file.getValue());
+        }
+
+        int[][] pidStrings = new int[allPids.size()][];
+        // Hashed while collecting, then sorted once, rather than a tree insert per token
+        Map<String, List<Integer>> postingsByToken = new HashMap<>();
+        for (int i = 0; i < allPids.size(); i++) {
+            PidData pid = allPids.get(i);
+            pidStrings[i] = new int[] {
+                    strings.id(pid.getName()), strings.id(pid.getShortName()),
+                    strings.id(pid.getModeAndPID()), strings.id(pid.getEquation()),
+                    strings.id(pid.getUnit()), strings.id(pid.getHeader()),
+            };
+            for (String token : PidCatalog.tokenize(pid.getName() + " " + pid.getShortName())) {
+                List<Integer> list = postingsByToken.get(token);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    postingsByToken.put(token, list);
+                }
+                if (list.isEmpty() || list.get(list.size() - 1) != i) {
+                    list.add(i);
+                }
+            }
+        }
+        TreeMap<String, List<Integer>> postings = new TreeMap<>(postingsByToken);
+        int[] tokenIds = new int[postings.size()];
+        int t = 0;
+        for (String token : postings.keySet()) {
+            tokenIds[t++] = strings.id(token);
+        }
+
+        byte[] blob = strings.blob();
+        int stringsOffset = PidCatalog.HEADER_SIZE;
+        int blobStart = stringsOffset + 4 + (strings.size() + 1) * 4;
+        int filesOffset = align(blobStart + blob.length);
+        int pidsOffset = filesOffset + 4 + fileRecords.size() * PidCatalog.FILE_RECORD_SIZE;
+        int tokensOffset = pidsOffset + 4 + allPids.size() * PidCatalog.PID_RECORD_SIZE;
+        int postingsOffset = tokensOffset + 4 + postings.size() * PidCatalog.TOKEN_RECORD_SIZE;
+        int postingCount = 0;
+        for (List<Integer> list : postings.values()) {
+            postingCount += list.size();
+        }
+        int commandsOffset = postingsOffset + 4 + postingCount * 4;
+        int totalLength = commandsOffset + 4 + allPids.size() * 4;
+
+        ByteBuffer buffer = ByteBuffer.allocate(totalLength);
+        buffer.putInt(PidCatalog.MAGIC);
+        buffer.putInt(PidCatalog.VERSION);
+        buffer.putInt(0); // checksum, filled in below
+        buffer.putInt(totalLength);
+        buffer.putInt(stringsOffset);
+        buffer.putInt(filesOffset);
+        buffer.putInt(pidsOffset);
+        buffer.putInt(tokensOffset);
+        buffer.putInt(postingsOffset);
+        buffer.putInt(commandsOffset);
+
+        buffer.position(stringsOffset);
+        buffer.putInt(strings.size());
+        for (int offset : strings.offsets()) {
+            buffer.putInt(offset);
+        }
+        buffer.put(blob);
+
+        buffer.position(filesOffset);
+        buffer.putInt(fileRecords.size());
+        for (int[] record : fileRecords) {
+            buffer.putInt(record[0]).putInt(record[1]).putInt(record[2]);
+        }
+
+        buffer.putInt(allPids.size());
+        for (int i = 0; i < allPids.size(); i++) {
+            for (int id : pidStrings[i]) {
+                buffer.putInt(id);
+            }
+            buffer.putFloat(allPids.get(i).getMinValue());
+            buffer.putFloat(allPids.get(i).getMaxValue());
+        }
+
+        buffer.putInt(postings.size());
+        int postingStart = 0;
+        t = 0;
+        for (List<Integer> list : postings.values()) {
+            buffer.putInt(tokenIds[t++]).putInt(postingStart).putInt(list.size());
+            postingStart += list.size();
+        }
+        buffer.putInt(postingCount);
+        for (List<Integer> list : postings.values()) {
+            for (int pidIndex : list) {
+                buffer.putInt(pidIndex);
+            }
+        }
+
+        buffer.putInt(allPids.size());
+        for (int pidIndex : sortByCommand(pidStrings, strings)) {
+            buffer.putInt(pidIndex);
+        }
+
+        byte[] bytes = buffer.array();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, PidCatalog.HEADER_SIZE, bytes.length - PidCatalog.HEADER_SIZE);
+        ByteBuffer.wrap(bytes).putInt(8, (int) crc.getValue());
+        return bytes;
+    }
+
+    /**
+     * @return PID indexes ordered by header, then mode and PID, ignoring case, then index
+     */
+    private static int[] sortByCommand(int[][] pidStrings, StringTable strings) {
+        // Rank the few distinct (header, mode and PID) pairs, then sort the PIDs as primitives
+        Map<Long, Integer> pairIds = new HashMap<>();
+        List<int[]> pairs = new ArrayList<>();
+        int[] pidPairs = new int[pidStrings.length];
+        for (int i = 0; i < pidStrings.length; i++) {
+            int header = pidStrings[i][5];
+            int mode = pidStrings[i][2];
+            Long key = (long) header << 32 | mode;
+            Integer pair = pairIds.get(key);
+            if (pair == null) {
+                pair = pairs.size();
+                pairIds.put(key, pair);
+                pairs.add(new int[] { header, mode });
+            }
+            pidPairs[i] = pair;
+        }
+        Comparator<int[]> byCommand = (a, b) -> {
+            int result = String.CASE_INSENSITIVE_ORDER.compare(strings.get(a[0]), strings.get(b[0]));
+            return result != 0 ? result : String.CASE_INSENSITIVE_ORDER.compare(strings.get(a[1]), strings.get(b[1]));
+        };
+        List<int[]> sortedPairs = new ArrayList<>(pairs);
+        Collections.sort(sortedPairs, byCommand);
+        Map<int[], Integer> ranks = new IdentityHashMap<>();
+        int rank = 0;
+        for (int k = 0; k < sortedPairs.size(); k++) {
+            // Pairs differing only in case share a rank, as the reader cannot tell them apart
+            if (k > 0 && byCommand.compare(sortedPairs.get(k - 1), sortedPairs.get(k)) != 0) {
+                rank++;
+            }
+            ranks.put(sortedPairs.get(k), rank);
+        }
+
+        long[] keys = new long[pidStrings.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (long) ranks.get(pairs.get(pidPairs[i])) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+
+    /**
+     * Deduplicated UTF-8 strings addressed by id.
+     */
+    private static class StringTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private final List<byte[]> encoded = new ArrayList<>();
+
+        int id(String value) {
+            String key = value != null ? value : "";
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = encoded.size();
+                ids.put(key, id);
+                values.add(key);
+                encoded.add(key.getBytes(StandardCharsets.UTF_8));
+            }
+            return id;
+        }
+
+        String get(int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return encoded.size();
+        }
+
+        int[] offsets() {
+            int[] offsets = new int[encoded.size() + 1];
+            for (int i = 0; i < encoded.size(); i++) {
+                offsets[i + 1] = offsets[i] + encoded.get(i).length;
+            }
+            return offsets;
+        }
+
+        byte[] blob() {
+            int[] offsets = offsets();
+            byte[] blob = new byte[offsets[encoded.size()]];
+            for (int i = 0; i < encoded.size(); i++) {
+                System.arraycopy(encoded.get(i), 0, blob, offsets[i], encoded.get(i).length);
+            }
+            return blob;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PidCsvParser turns the rows of a Torque PID CSV file into PidData objects.
+ *
+ * It is shared by CSVDataManager on the device and by CompilePidCatalogTask at build time,
+ * so it must stay free of Android dependencies.
+ *
+ * CSV Format:
+ * - Columns: Name, ShortName, ModeAndPID, Equation, MinValue, MaxValue, Unit, Header
+ * - An optional header row is recognised by its non-numeric MinValue/MaxValue and skipped
+ *   (the upstream files have no header row)
+ *
+ * Modes:
+ * - Lenient (runtime): malformed rows are reported and skipped
+ * - Strict (build): the equation of every row must also parse (see PidEquation)
+ *
+ * Usage Example:
+ * PidCsvParser.Result result = new PidCsvParser(false).parse(reader, "Kia_Soul_EV_BMS_data.csv");
+ * List<PidData> pids = result.pids;
+ */
+public class PidCsvParser {
+    private static final int COLUMN_COUNT = 8;
+
+    private final boolean strict;
+
+    /**
+     * Parsed rows and one message per rejected row.
+     */
+    public static class Result {
+        public final List<PidData> pids;
+        public final List<String> errors;
+
+        Result(List<PidData> pids, List<String> errors) {
+            this.pids = Collections.unmodifiableList(pids);
+            this.errors = Collections.unmodifiableList(errors);
+        }
+    }
+
+    /**
+     * @param strict true to also validate every equation
+     */
+    public PidCsvParser(boolean strict) {
+        this.strict = strict;
+    }
+
+    /**
+     * Parse a whole CSV file.
+     * @param reader     CSV content; closed when done
+     * @param sourceName File name used in error messages
+     * @return Valid rows and errors for the rejected ones
+     * @throws IOException If the content cannot be read or is not valid CSV
+     */
+    public Result parse(Reader reader, String sourceName) throws IOException {
+        List<PidData> pids = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+
+        try (CSVReader csvReader = new CSVReader(reader)) {
+            String[] line;
+            boolean firstRow = true;
+            while ((line = csvReader.readNext()) != null) {
+                boolean headerCandidate = firstRow;
+                firstRow = false;
+                if (isBlank(line) || (headerCandidate && isHeader(line))) {
+                    continue;
+                }
+                try {
+                    pids.add(parseRow(line));
+                } catch (ParseException e) {
+                    errors.add(sourceName + ":" + csvReader.getLinesRead() + ": " + e.getMessage());
+                }
+            }
+        } catch (CsvValidationException e) {
+            throw new IOException("Error validating CSV file " + sourceName, e);
+        }
+        return new Result(pids, errors);
+    }
+
+    /**
+     * Parse one CSV row.
+     * @param line Fields of the row
+     * @return PID definition
+     * @throws ParseException If a field is missing or malformed
+     */
+    public PidData parseRow(String[] line) throws ParseException {
+        if (line == null || line.length < COLUMN_COUNT) {
+            throw new ParseException("Expected " + COLUMN_COUNT + " columns: " + Arrays.toString(line), 0);
+        }
+
+        String name = line[0].trim();
+        String shortName = line[1].trim();
+        String modeAndPID = line[2].trim();
+        String equation = line[3].trim();
+        float minValue = parseFloat(line[4], "MinValue");
+        float maxValue = parseFloat(line[5], "MaxValue");
+        String unit = line[6].trim();
+        String header = line[7].trim();
+
+        if (name.isEmpty() || shortName.isEmpty() || modeAndPID.isEmpty()) {
+            throw new ParseException("Required fields are empty: " + Arrays.toString(line), 0);
+        }
+        if (strict) {
+            if (!modeAndPID.matches("[0-9A-Fa-f]+") || modeAndPID.length() % 2 != 0) {
+                throw new ParseException("ModeAndPID is not a hex request: " + modeAndPID, 0);
+            }
+            if (!header.isEmpty() && !header.matches("[0-9A-Fa-f]+")) {
+                throw new ParseException("Header is not hex: " + header, 0);
+            }
+            if (minValue > maxValue) {
+                throw new ParseException("MinValue " + minValue + " is above MaxValue " + maxValue, 0);
+            }
+            PidEquation.parse(equation);
+        }
+
+        return new PidData(name, shortName, modeAndPID, equation, minValue, maxValue, unit, header);
+    }
+
+    private static float parseFloat(String value, String column) throws ParseException {
+        try {
+            return Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ParseException(column + " is not a number: '" + value.trim() + "'", 0);
+        }
+    }
+
+    private static boolean isHeader(String[] line) {
+        if (line.length < COLUMN_COUNT) {
+            return false;
+        }
+        try {
+            Float.parseFloat(line[4].trim());
+            Float.parseFloat(line[5].trim());
+            return false;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static boolean isBlank(String[] line) {
+        for (String field : line) {
+            if (!field.trim().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
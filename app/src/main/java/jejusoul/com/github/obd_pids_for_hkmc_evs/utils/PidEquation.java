@@ -0,0 +1,423 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * PidEquation parses a Torque PID equation into an expression tree.
+ *
+ * Parsing validates the equation, so the same code checks CSV rows at build time (see
+ * CompilePidCatalogTask) and at runtime. This class must stay free of Android dependencies
+ * because the build compiles it as well.
+ *
+ * Supported Syntax:
+ * - Response bytes: A..Z, AA..ZZ (case-insensitive, A is the first data byte)
+ * - Numbers: 256, 0.1
+ * - Operators: + - * / and & | ; '<' and '>' are left and right shifts
+ * - Functions: Signed(x) (8 bit two's complement), ABS(x), AVG(n:x) (moving average)
+ * - Bits: {J:5} is bit 5 of byte J
+ * - References: val{Other PID name} is the current value of another PID
+ *
+ * Operator precedence follows C: unary, then * /, then + -, then shifts, then &, then |.
+ *
+ * Usage Example:
+ * PidEquation equation = PidEquation.parse("((Signed(K)*256)+L)/10");
+ * double current = equation.evaluate(context);
+ */
+public final class PidEquation {
+    /** Highest byte reference that fits in two letters (ZZ). */
+    public static final int MAX_BYTE_INDEX = 26 + 26 * 26 - 1;
+
+    /**
+     * Supplies response bytes and other PID values during evaluation.
+     */
+    public interface Context {
+        /**
+         * @param index Zero based data byte index (A = 0)
+         * @return Unsigned byte value
+         */
+        int byteAt(int index);
+
+        /**
+         * @param name Full PID name referenced with val{name}
+         * @return Current value of that PID
+         */
+        double valueOf(String name);
+
+        /**
+         * Feed one sample into the moving average of an AVG() call.
+         * @param slot   Index of the AVG() call within the equation
+         * @param window Number of samples to average
+         * @param sample Newest sample
+         * @return Current average
+         */
+        double average(int slot, int window, double sample);
+    }
+
+    private final String source;
+    private final Node root;
+    private final int maxByteIndex;
+    private final Set<String> references;
+    private final int averageSlots;
+
+    private PidEquation(String source, Node root, int maxByteIndex, Set<String> references, int averageSlots) {
+        this.source = source;
+        this.root = root;
+        this.maxByteIndex = maxByteIndex;
+        this.references = Collections.unmodifiableSet(references);
+        this.averageSlots = averageSlots;
+    }
+
+    /**
+     * Parse and validate an equation.
+     * @param equation Equation text as found in the CSV
+     * @return Parsed equation
+     * @throws ParseException If the equation is malformed; getErrorOffset() points at the problem
+     */
+    public static PidEquation parse(String equation) throws ParseException {
+        if (equation == null || equation.trim().isEmpty()) {
+            throw new ParseException("Empty equation", 0);
+        }
+        Parser parser = new Parser(equation);
+        Node root = parser.parseExpression();
+        parser.skipWhitespace();
+        if (parser.position < equation.length()) {
+            throw parser.error("Unexpected '" + equation.charAt(parser.position) + "'");
+        }
+        return new PidEquation(equation, root, parser.maxByteIndex, parser.references, parser.averageSlots);
+    }
+
+    public double evaluate(Context context) {
+        return root.evaluate(context);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return Highest response byte index used, or -1 if the equation reads no bytes
+     */
+    public int getMaxByteIndex() {
+        return maxByteIndex;
+    }
+
+    /**
+     * @return Names of the PIDs referenced with val{}, in order of appearance
+     */
+    public Set<String> getReferences() {
+        return references;
+    }
+
+    public int getAverageSlots() {
+        return averageSlots;
+    }
+
+    /**
+     * @param letters One or two letters, case-insensitive
+     * @return Zero based byte index (A = 0, Z = 25, AA = 26)
+     */
+    public static int byteIndex(String letters) {
+        String upper = letters.toUpperCase();
+        if (upper.length() == 1) {
+            return upper.charAt(0) - 'A';
+        }
+        return 26 + (upper.charAt(0) - 'A') * 26 + (upper.charAt(1) - 'A');
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private interface Node {
+        double evaluate(Context context);
+    }
+
+    /**
+     * Recursive descent parser, one method per precedence level.
+     */
+    private static final class Parser {
+        private final String text;
+        private int position;
+        private int maxByteIndex = -1;
+        private final Set<String> references = new LinkedHashSet<>();
+        private int averageSlots;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Node parseExpression() throws ParseException {
+            return parseOr();
+        }
+
+        private Node parseOr() throws ParseException {
+            Node left = parseAnd();
+            while (accept('|')) {
+                Node l = left;
+                Node r = parseAnd();
+                left = context -> (double) ((long) l.evaluate(context) | (long) r.evaluate(context));
+            }
+            return left;
+        }
+
+        private Node parseAnd() throws ParseException {
+            Node left = parseShift();
+            while (accept('&')) {
+                Node l = left;
+                Node r = parseShift();
+                left = context -> (double) ((long) l.evaluate(context) & (long) r.evaluate(context));
+            }
+            return left;
+        }
+
+        private Node parseShift() throws ParseException {
+            Node left = parseAdditive();
+            while (true) {
+                Node l = left;
+                if (accept('<')) {
+                    Node r = parseAdditive();
+                    left = context -> (double) ((long) l.evaluate(context) << (int) r.evaluate(context));
+                } else if (accept('>')) {
+                    Node r = parseAdditive();
+                    left = context -> (double) ((long) l.evaluate(context) >> (int) r.evaluate(context));
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private Node parseAdditive() throws ParseException {
+            Node left = parseMultiplicative();
+            while (true) {
+                Node l = left;
+                if (accept('+')) {
+                    Node r = parseMultiplicative();
+                    left = context -> l.evaluate(context) + r.evaluate(context);
+                } else if (accept('-')) {
+                    Node r = parseMultiplicative();
+                    left = context -> l.evaluate(context) - r.evaluate(context);
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private Node parseMultiplicative() throws ParseException {
+            Node left = parseUnary();
+            while (true) {
+                Node l = left;
+                if (accept('*')) {
+                    Node r = parseUnary();
+                    left = context -> l.evaluate(context) * r.evaluate(context);
+                } else if (accept('/')) {
+                    Node r = parseUnary();
+                    left = context -> l.evaluate(context) / r.evaluate(context);
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private Node parseUnary() throws ParseException {
+            if (accept('-')) {
+                Node operand = parseUnary();
+                return context -> -operand.evaluate(context);
+            }
+            if (accept('+')) {
+                return parseUnary();
+            }
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() throws ParseException {
+            skipWhitespace();
+            if (position >= text.length()) {
+                throw error("Unexpected end of equation");
+            }
+            char c = text.charAt(position);
+            if (c == '(') {
+                position++;
+                Node inner = parseExpression();
+                expect(')');
+                return inner;
+            }
+            if (c == '{') {
+                return parseBit();
+            }
+            if (isDigit(c) || c == '.') {
+                double value = parseNumber();
+                return context -> value;
+            }
+            if (isLetter(c)) {
+                return parseIdentifier();
+            }
+            throw error("Unexpected '" + c + "'");
+        }
+
+        /**
+         * {X:n}: bit n of byte X.
+         */
+        private Node parseBit() throws ParseException {
+            expect('{');
+            skipWhitespace();
+            int start = position;
+            String letters = readLetters();
+            if (letters.isEmpty() || letters.length() > 2) {
+                position = start;
+                throw error("Expected a byte reference in bit expression");
+            }
+            int index = useByte(letters);
+            expect(':');
+            skipWhitespace();
+            int bitStart = position;
+            double bit = parseNumber();
+            if (bit != Math.floor(bit) || bit < 0 || bit > 7) {
+                position = bitStart;
+                throw error("Bit number must be 0..7");
+            }
+            expect('}');
+            int shift = (int) bit;
+            return context -> (context.byteAt(index) >> shift) & 1;
+        }
+
+        private Node parseIdentifier() throws ParseException {
+            int start = position;
+            String name = readLetters();
+            skipWhitespace();
+            boolean call = position < text.length() && text.charAt(position) == '(';
+
+            if (name.equalsIgnoreCase("val") && position < text.length() && text.charAt(position) == '{') {
+                position++;
+                int close = text.indexOf('}', position);
+                if (close < 0) {
+                    throw error("Unterminated val{}");
+                }
+                String reference = text.substring(position, close).trim();
+                if (reference.isEmpty()) {
+                    throw error("Empty val{} reference");
+                }
+                position = close + 1;
+                references.add(reference);
+                return context -> context.valueOf(reference);
+            }
+            if (call && name.equalsIgnoreCase("Signed")) {
+                Node operand = parseArgument();
+                return context -> {
+                    double value = operand.evaluate(context);
+                    return value > 127 ? value - 256 : value;
+                };
+            }
+            if (call && name.equalsIgnoreCase("ABS")) {
+                Node operand = parseArgument();
+                return context -> Math.abs(operand.evaluate(context));
+            }
+            if (call && name.equalsIgnoreCase("AVG")) {
+                return parseAverage();
+            }
+            if (name.length() <= 2) {
+                int index = useByte(name);
+                return context -> context.byteAt(index);
+            }
+            position = start;
+            throw error("Unknown identifier '" + name + "'");
+        }
+
+        private Node parseArgument() throws ParseException {
+            expect('(');
+            Node operand = parseExpression();
+            expect(')');
+            return operand;
+        }
+
+        /**
+         * AVG(n:expression)
+         */
+        private Node parseAverage() throws ParseException {
+            expect('(');
+            skipWhitespace();
+            int windowStart = position;
+            double window = parseNumber();
+            if (window != Math.floor(window) || window < 1) {
+                position = windowStart;
+                throw error("AVG window must be a positive integer");
+            }
+            expect(':');
+            Node sample = parseExpression();
+            expect(')');
+            int slot = averageSlots++;
+            int samples = (int) window;
+            return context -> context.average(slot, samples, sample.evaluate(context));
+        }
+
+        private double parseNumber() throws ParseException {
+            int start = position;
+            boolean dot = false;
+            while (position < text.length()) {
+                char c = text.charAt(position);
+                if (c == '.' && !dot) {
+                    dot = true;
+                } else if (!isDigit(c)) {
+                    break;
+                }
+                position++;
+            }
+            if (position == start || (position == start + 1 && dot)) {
+                throw error("Expected a number");
+            }
+            return Double.parseDouble(text.substring(start, position));
+        }
+
+        private String readLetters() {
+            int start = position;
+            while (position < text.length() && isLetter(text.charAt(position))) {
+                position++;
+            }
+            return text.substring(start, position);
+        }
+
+        private int useByte(String letters) {
+            int index = byteIndex(letters);
+            maxByteIndex = Math.max(maxByteIndex, index);
+            return index;
+        }
+
+        private boolean accept(char expected) {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char expected) throws ParseException {
+            if (!accept(expected)) {
+                throw error(position < text.length()
+                        ? "Expected '" + expected + "' but found '" + text.charAt(position) + "'"
+                        : "Expected '" + expected + "' at end of equation");
+            }
+        }
+
+        void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        ParseException error(String message) {
+            return new ParseException(message + " at " + position + " in \"" + text + "\"", position);
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static boolean isLetter(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        }
+    }
+}
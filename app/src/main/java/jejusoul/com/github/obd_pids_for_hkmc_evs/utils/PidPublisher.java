@@ -0,0 +1,218 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.os.RemoteException;
+
+import androidx.annotation.WorkerThread;
+
+import java.util.Arrays;
+
+/**
+ * PidPublisher batches the values telemetry stages compute and pushes them to Torque as
+ * plugin PIDs with setPIDInformation, once per TelemetryPoller tick.
+ *
+ * Each PID is registered once and gets a slot; set() only stores the value, so stages can
+ * update gauges as often as they like. flush() then makes one binder call per slot whose
+ * value moved by more than the slot's deadband since it was last published, plus one every
+ * REFRESH_MS for unchanged values, in case Torque was restarted and forgot the PID. A token
+ * bucket caps the calls per second; slots that miss out stay pending, and the next flush
+ * starts where this one stopped, so no gauge starves.
+ *
+ * Usage Example:
+ * int slot = publisher.register("Cell Voltage Min", "Cell Min", "V", 0, 5, 0.01f);
+ * publisher.set(slot, stats.getMin());
+ * publisher.flush(link);
+ */
+public class PidPublisher {
+    /** Budget that leaves Torque's binder thread room for its own clients. */
+    public static final int DEFAULT_MAX_CALLS_PER_SECOND = 20;
+    static final long REFRESH_MS = 5_000;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final int maxCallsPerSecond;
+    private final MetricsRegistry.Counter calls = MetricsRegistry.get().counter("publisher.calls");
+    private final MetricsRegistry.Counter suppressed = MetricsRegistry.get().counter("publisher.suppressed");
+    private final MetricsRegistry.Counter deferred = MetricsRegistry.get().counter("publisher.deferred");
+
+    private int count;
+    private String[] names = new String[8];
+    private String[] shortNames = new String[8];
+    private String[] units = new String[8];
+    private float[] minValues = new float[8];
+    private float[] maxValues = new float[8];
+    private float[] deadbands = new float[8];
+    private float[] values = new float[8];
+    private float[] published = new float[8];
+    // Time of the last publish, 0 if never published
+    private long[] publishedAt = new long[8];
+    private int cursor;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param maxCallsPerSecond Cap on setPIDInformation calls, averaged over a second
+     */
+    public PidPublisher(int maxCallsPerSecond) {
+        if (maxCallsPerSecond <= 0) {
+            throw new IllegalArgumentException("maxCallsPerSecond must be positive");
+        }
+        this.maxCallsPerSecond = maxCallsPerSecond;
+        this.tokens = maxCallsPerSecond;
+    }
+
+    /**
+     * Add a PID to publish. Registering a name twice returns the existing slot.
+     *
+     * @param deadband Smallest change worth a binder call, in the PID's unit
+     * @return Slot to pass to set()
+     */
+    public synchronized int register(String name, String shortName, String unit, float min, float max,
+                                     float deadband) {
+        for (int slot = 0; slot < count; slot++) {
+            if (names[slot].equals(name)) {
+                return slot;
+            }
+        }
+        if (count == names.length) {
+            grow(count * 2);
+        }
+        names[count] = name;
+        shortNames[count] = shortName;
+        units[count] = unit;
+        minValues[count] = min;
+        maxValues[count] = max;
+        deadbands[count] = deadband;
+        values[count] = Float.NaN;
+        published[count] = Float.NaN;
+        publishedAt[count] = 0;
+        return count++;
+    }
+
+    /**
+     * Store a slot's latest value for the next flush(). NaN means no valid value; the last
+     * published one stays on Torque's display.
+     */
+    public synchronized void set(int slot, float value) {
+        if (slot < 0 || slot >= count) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " of " + count);
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * @return The value last stored with set(), NaN if none
+     */
+    public synchronized float get(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * @return Slot registered under name, or -1
+     */
+    public synchronized int findSlot(String name) {
+        for (int slot = 0; slot < count; slot++) {
+            if (names[slot].equalsIgnoreCase(name) || shortNames[slot].equalsIgnoreCase(name)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copy the latest values of several slots under one lock.
+     * @param output Receives values[slots[i]] at offset + i
+     */
+    public synchronized void copyValues(int[] slots, double[] output, int offset) {
+        for (int i = 0; i < slots.length; i++) {
+            output[offset + i] = values[slots[i]];
+        }
+    }
+
+    /**
+     * Copy the latest values of the first count slots under one lock.
+     * @param output Receives the value of slot i at offset + i
+     */
+    public synchronized void copyValues(int count, float[] output, int offset) {
+        System.arraycopy(values, 0, output, offset, Math.min(count, this.count));
+    }
+
+    public synchronized int getSlotCount() {
+        return count;
+    }
+
+    public synchronized String getName(int slot) {
+        return names[slot];
+    }
+
+    public synchronized String getUnit(int slot) {
+        return units[slot];
+    }
+
+    @WorkerThread
+    public int flush(TorqueLink link) throws RemoteException {
+        return flush(link, System.nanoTime());
+    }
+
+    /**
+     * Publish the slots that changed beyond their deadband or are due for a refresh, within
+     * the call budget.
+     *
+     * @param now System.nanoTime() of the tick
+     * @return Number of binder calls made
+     */
+    @WorkerThread
+    synchronized int flush(TorqueLink link, long now) throws RemoteException {
+        refill(now);
+        int made = 0;
+        int start = cursor;
+        for (int i = 0; i < count; i++) {
+            int slot = (start + i) % count;
+            float value = values[slot];
+            if (Float.isNaN(value)) {
+                continue;
+            }
+            boolean due = publishedAt[slot] == 0
+                    || now - publishedAt[slot] >= REFRESH_MS * 1_000_000L
+                    || Math.abs(value - published[slot]) > deadbands[slot];
+            if (!due) {
+                if (value != published[slot]) {
+                    suppressed.increment();
+                }
+                continue;
+            }
+            if (tokens < 1) {
+                // Out of budget; resume from this slot next time
+                cursor = slot;
+                deferred.increment();
+                return made;
+            }
+            tokens--;
+            link.setPidInformation(names[slot], shortNames[slot], units[slot], maxValues[slot],
+                    minValues[slot], value);
+            published[slot] = value;
+            publishedAt[slot] = now;
+            made++;
+            calls.increment();
+        }
+        return made;
+    }
+
+    private void refill(long now) {
+        if (refilledAt != 0) {
+            tokens = Math.min(maxCallsPerSecond,
+                    tokens + (double) (now - refilledAt) * maxCallsPerSecond / NANOS_PER_SECOND);
+        }
+        refilledAt = now;
+    }
+
+    private void grow(int capacity) {
+        names = Arrays.copyOf(names, capacity);
+        shortNames = Arrays.copyOf(shortNames, capacity);
+        units = Arrays.copyOf(units, capacity);
+        minValues = Arrays.copyOf(minValues, capacity);
+        maxValues = Arrays.copyOf(maxValues, capacity);
+        deadbands = Arrays.copyOf(deadbands, capacity);
+        values = Arrays.copyOf(values, capacity);
+        published = Arrays.copyOf(published, capacity);
+        publishedAt = Arrays.copyOf(publishedAt, capacity);
+    }
+}
@@ -0,0 +1,86 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * PidRow pairs a PID with the display text of its list row.
+ *
+ * The text is formatted once, off the main thread, when a list is submitted to an adapter,
+ * so binding a row only assigns prebuilt strings. Formatting with String.format on every
+ * bind allocated a Formatter and several boxed floats per row while scrolling.
+ *
+ * Usage Example:
+ * List<PidRow> rows = PidRow.format(pids, PidRow.DETAILS);
+ * textView.setText(rows.get(position).text);
+ */
+public final class PidRow {
+    /**
+     * Builds the display text of one PID.
+     */
+    public interface Formatter {
+        String format(PidData pid);
+    }
+
+    /** Text of PIDDetailsAdapter rows. */
+    public static final Formatter DETAILS = pid -> String.format(Locale.getDefault(),
+            "Mode: %s\nEquation: %s\nRange: %.2f to %.2f %s",
+            pid.getModeAndPID(),
+            pid.getEquation(),
+            pid.getMinValue(),
+            pid.getMaxValue(),
+            pid.getUnit());
+
+    /** Text of PidAdapter rows. */
+    public static final Formatter DESCRIPTION = pid -> String.format(Locale.getDefault(),
+            "Short Name: %s\nMode/PID: %s\nEquation: %s\nMin: %f, Max: %f\nUnit: %s\nHeader: %s",
+            pid.getShortName(),
+            pid.getModeAndPID(),
+            pid.getEquation(),
+            pid.getMinValue(),
+            pid.getMaxValue(),
+            pid.getUnit(),
+            pid.getHeader());
+
+    /** Position of the PID in the list or catalog it was read from. */
+    public final int index;
+    public final PidData pid;
+    public final String text;
+
+    public PidRow(int index, PidData pid, String text) {
+        this.index = index;
+        this.pid = pid;
+        this.text = text;
+    }
+
+    /**
+     * Format every PID of a list; call it on a background thread for long lists.
+     */
+    public static List<PidRow> format(List<PidData> pids, Formatter formatter) {
+        List<PidRow> rows = new ArrayList<>(pids.size());
+        for (int i = 0; i < pids.size(); i++) {
+            PidData pid = pids.get(i);
+            rows.add(new PidRow(i, pid, formatter.format(pid)));
+        }
+        return rows;
+    }
+
+    /**
+     * @return Read-only view of the PIDs of rows, without copying
+     */
+    public static List<PidData> pidsOf(List<PidRow> rows) {
+        return new AbstractList<PidData>() {
+            @Override
+            public PidData get(int index) {
+                return rows.get(index).pid;
+            }
+
+            @Override
+            public int size() {
+                return rows.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,102 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.util.BitSet;
+
+/**
+ * PidSelection tracks which rows of a PID list are selected, one bit per row.
+ *
+ * Rows are addressed by their index in the list the selection was created for, so toggling
+ * a row is O(1), selecting or clearing every row is O(n/64), and iterating the selection
+ * with nextSelected() visits only selected rows without copying anything.
+ *
+ * Usage Example:
+ * PidSelection selection = new PidSelection(pids.size(), true);
+ * selection.toggle(position);
+ * for (int row = selection.nextSelected(0); row >= 0; row = selection.nextSelected(row + 1)) {
+ *     PidData pid = pids.get(row);
+ * }
+ */
+public class PidSelection {
+    private final BitSet bits;
+    private final int size;
+
+    /**
+     * @param size     Number of rows
+     * @param selected Initial state of every row
+     */
+    public PidSelection(int size, boolean selected) {
+        this.size = size;
+        this.bits = new BitSet(size);
+        if (selected) {
+            bits.set(0, size);
+        }
+    }
+
+    private PidSelection(PidSelection other) {
+        this.size = other.size;
+        this.bits = (BitSet) other.bits.clone();
+    }
+
+    /**
+     * @return Independent copy, e.g. to hand to a background thread
+     */
+    public PidSelection copy() {
+        return new PidSelection(this);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isSelected(int row) {
+        return bits.get(row);
+    }
+
+    public void setSelected(int row, boolean selected) {
+        checkRow(row);
+        bits.set(row, selected);
+    }
+
+    /**
+     * @return New state of the row
+     */
+    public boolean toggle(int row) {
+        checkRow(row);
+        bits.flip(row);
+        return bits.get(row);
+    }
+
+    public void setAll(boolean selected) {
+        if (selected) {
+            bits.set(0, size);
+        } else {
+            bits.clear();
+        }
+    }
+
+    public int getSelectedCount() {
+        return bits.cardinality();
+    }
+
+    public boolean isAllSelected() {
+        return getSelectedCount() == size;
+    }
+
+    public boolean isEmpty() {
+        return bits.isEmpty();
+    }
+
+    /**
+     * @param fromRow First row to look at
+     * @return First selected row at or after fromRow, or -1 if there is none
+     */
+    public int nextSelected(int fromRow) {
+        return bits.nextSetBit(fromRow);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Recording is a columnar time series of telemetry: one timestamp per row and one float
+ * column per recorded value, such as each cell voltage or a plugin PID.
+ *
+ * Next to its raw values every column keeps a pyramid of block summaries, the minimum,
+ * maximum, sum and count of values in a block. Level 0 summarises BLOCK_ROWS rows and each
+ * level above FANOUT entries of the one below, so the pyramid is about 1/BLOCK_ROWS of the
+ * raw data, and it is built as rows are appended. A range query cuts the time range into
+ * buckets and aggregates each bucket from the coarsest summaries that fit inside it, falling
+ * back to finer levels and finally raw values only at its edges. A bucket costs at most
+ * about 2 * FANOUT summaries per level plus 2 * BLOCK_ROWS raw values however many rows it
+ * spans, so charting a six hour session at screen width takes the same few milliseconds as
+ * charting five minutes.
+ *
+ * Raw values live in chunks of CHUNK_ROWS rows, so appending never copies what is already
+ * recorded. Timestamps must not decrease; an earlier one is recorded as the previous row's.
+ * Once finish() is called the recording is complete and appending fails.
+ * All methods are synchronized, so the polling thread can append while the UI queries.
+ *
+ * Usage Example:
+ * Recording recording = new Recording(new String[] {"Cell Voltage 01", "Cell Voltage 02"});
+ * recording.append(System.currentTimeMillis(), cells);
+ * recording.query(recording.findColumn("Cell Voltage 02"), fromMs, toMs, 800, buckets);
+ */
+public final class Recording {
+    static final int BLOCK_ROWS = 64;
+    static final int FANOUT = 16;
+    private static final int CHUNK_SHIFT = 12;
+    static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+    private final String[] names;
+    private final String[] units;
+    private final Column[] columns;
+    private final List<long[]> timeChunks = new ArrayList<>();
+    private int rows;
+    private boolean finished;
+
+    public Recording(String[] columnNames) {
+        this(columnNames, new String[columnNames.length]);
+    }
+
+    /**
+     * @param columnUnits Unit of each column, e.g. "V"; null entries for none
+     */
+    public Recording(String[] columnNames, String[] columnUnits) {
+        if (columnUnits.length != columnNames.length) {
+            throw new IllegalArgumentException("Expected " + columnNames.length + " units, got " + columnUnits.length);
+        }
+        names = columnNames.clone();
+        units = new String[names.length];
+        for (int i = 0; i < units.length; i++) {
+            units[i] = columnUnits[i] != null ? columnUnits[i] : "";
+        }
+        columns = new Column[names.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Column();
+        }
+    }
+
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    public String getColumnName(int column) {
+        return names[column];
+    }
+
+    /**
+     * @return Unit of a column, empty if it has none
+     */
+    public String getColumnUnit(int column) {
+        return units[column];
+    }
+
+    /**
+     * @param name Column name, or a catalog PID name such as "000_Cell Voltage 37"
+     * @return Index of the column called name, ignoring case and sort prefixes, or -1
+     */
+    public int findColumn(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (PidBlockReader.matchesName(name, names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add a row.
+     *
+     * @param timeMs Time of the row, in milliseconds since the epoch
+     * @param values One value per column; NaN for a value that could not be read
+     */
+    public synchronized void append(long timeMs, float[] values) {
+        if (finished) {
+            throw new IllegalStateException("Recording is finished");
+        }
+        if (values.length < columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values, got " + values.length);
+        }
+        int offset = rows & CHUNK_MASK;
+        if (offset == 0) {
+            timeChunks.add(new long[CHUNK_ROWS]);
+        }
+        timeChunks.get(timeChunks.size() - 1)[offset] = rows > 0 ? Math.max(timeMs, getTime(rows - 1)) : timeMs;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].append(offset, values[i]);
+        }
+        rows++;
+    }
+
+    /**
+     * Mark the recording complete; no more rows can be appended.
+     */
+    public synchronized void finish() {
+        finished = true;
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    public synchronized int getRowCount() {
+        return rows;
+    }
+
+    public synchronized long getTime(int row) {
+        return timeChunks.get(row >>> CHUNK_SHIFT)[row & CHUNK_MASK];
+    }
+
+    public synchronized float getValue(int column, int row) {
+        return columns[column].chunks.get(row >>> CHUNK_SHIFT)[row & CHUNK_MASK];
+    }
+
+    /**
+     * Copy a column's values with a value over rows [fromRow, toRow), skipping NaN.
+     *
+     * @param baseMs Time the copied x values count from
+     * @param x      Receives seconds since baseMs
+     * @param y      Receives the values
+     * @return Number of values copied
+     */
+    public synchronized int copyRows(int column, int fromRow, int toRow, long baseMs, float[] x, float[] y) {
+        List<float[]> chunks = columns[column].chunks;
+        int count = 0;
+        for (int row = fromRow; row < toRow; row++) {
+            float value = chunks.get(row >>> CHUNK_SHIFT)[row & CHUNK_MASK];
+            if (value == value) {
+                x[count] = (getTime(row) - baseMs) / 1000f;
+                y[count] = value;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copy the timestamps of rows [fromRow, toRow).
+     */
+    public synchronized void copyTimes(int fromRow, int toRow, long[] output, int offset) {
+        int row = fromRow;
+        while (row < toRow) {
+            int start = row & CHUNK_MASK;
+            int length = Math.min(CHUNK_ROWS - start, toRow - row);
+            System.arraycopy(timeChunks.get(row >>> CHUNK_SHIFT), start, output, offset + row - fromRow, length);
+            row += length;
+        }
+    }
+
+    /**
+     * Copy a column's values over rows [fromRow, toRow), NaN included.
+     */
+    public synchronized void copyValues(int column, int fromRow, int toRow, float[] output, int offset) {
+        List<float[]> chunks = columns[column].chunks;
+        int row = fromRow;
+        while (row < toRow) {
+            int start = row & CHUNK_MASK;
+            int length = Math.min(CHUNK_ROWS - start, toRow - row);
+            System.arraycopy(chunks.get(row >>> CHUNK_SHIFT), start, output, offset + row - fromRow, length);
+            row += length;
+        }
+    }
+
+    /**
+     * @return Time of the first row, 0 if there is none
+     */
+    public synchronized long getStartMs() {
+        return rows > 0 ? getTime(0) : 0;
+    }
+
+    /**
+     * @return Time of the last row, 0 if there is none
+     */
+    public synchronized long getEndMs() {
+        return rows > 0 ? getTime(rows - 1) : 0;
+    }
+
+    /**
+     * @return First row at or after timeMs, getRowCount() if there is none
+     */
+    public synchronized int rowAt(long timeMs) {
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getTime(middle) < timeMs) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Summarise a column over [fromMs, toMs) in equal buckets.
+     *
+     * @param buckets Number of buckets, at most the output's capacity
+     */
+    public synchronized void query(int column, long fromMs, long toMs, int buckets, BucketSummary output) {
+        if (buckets <= 0 || toMs <= fromMs) {
+            output.reset(0, fromMs, 0);
+            return;
+        }
+        double bucketMs = (double) (toMs - fromMs) / buckets;
+        output.reset(buckets, fromMs, bucketMs);
+        Column data = columns[column];
+        int start = rowAt(fromMs);
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int end = bucket == buckets - 1 ? rowAt(toMs) : rowAt(fromMs + (long) Math.ceil((bucket + 1) * bucketMs));
+            aggregate(data, data.levels.size() - 1, start, end, output, bucket);
+            start = end;
+        }
+    }
+
+    /**
+     * Add rows [from, to) of a column to a bucket, using summaries of the given level and
+     * below.
+     */
+    private void aggregate(Column column, int level, int from, int to, BucketSummary output, int bucket) {
+        if (from >= to) {
+            return;
+        }
+        if (level < 0) {
+            aggregateRaw(column, from, to, output, bucket);
+            return;
+        }
+        Level summaries = column.levels.get(level);
+        int span = summaries.rowsPerEntry;
+        int first = (from + span - 1) / span;
+        int last = Math.min(to / span, summaries.size);
+        if (first >= last) {
+            aggregate(column, level - 1, from, to, output, bucket);
+            return;
+        }
+        aggregate(column, level - 1, from, first * span, output, bucket);
+        for (int entry = first; entry < last; entry++) {
+            output.add(bucket, summaries.min[entry], summaries.max[entry], summaries.sum[entry],
+                    summaries.count[entry]);
+        }
+        aggregate(column, level - 1, last * span, to, output, bucket);
+    }
+
+    private void aggregateRaw(Column column, int from, int to, BucketSummary output, int bucket) {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        double sum = 0;
+        int count = 0;
+        int row = from;
+        while (row < to) {
+            float[] chunk = column.chunks.get(row >>> CHUNK_SHIFT);
+            int offset = row & CHUNK_MASK;
+            int end = Math.min(CHUNK_ROWS, offset + to - row);
+            for (int i = offset; i < end; i++) {
+                float value = chunk[i];
+                if (value == value) {
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                    sum += value;
+                    count++;
+                }
+            }
+            row += end - offset;
+        }
+        output.add(bucket, min, max, sum, count);
+    }
+
+    /**
+     * @return Number of summary levels a column has so far
+     */
+    synchronized int getLevelCount(int column) {
+        return columns[column].levels.size();
+    }
+
+    private static final class Column {
+        final List<float[]> chunks = new ArrayList<>();
+        final List<Level> levels = new ArrayList<>();
+
+        void append(int offset, float value) {
+            if (offset == 0) {
+                chunks.add(new float[CHUNK_ROWS]);
+            }
+            chunks.get(chunks.size() - 1)[offset] = value;
+            boolean valid = value == value;
+            if (levels.isEmpty()) {
+                levels.add(new Level(BLOCK_ROWS, BLOCK_ROWS));
+            }
+            // Each completed entry is an input to the level above
+            int level = 0;
+            boolean completed = levels.get(0).add(valid ? value : Float.POSITIVE_INFINITY,
+                    valid ? value : Float.NEGATIVE_INFINITY, valid ? value : 0, valid ? 1 : 0);
+            while (completed) {
+                Level below = levels.get(level);
+                int entry = below.size - 1;
+                if (++level == levels.size()) {
+                    levels.add(new Level(FANOUT, below.rowsPerEntry * FANOUT));
+                }
+                completed = levels.get(level).add(below.min[entry], below.max[entry], below.sum[entry],
+                        below.count[entry]);
+            }
+        }
+    }
+
+    /**
+     * One level of a column's pyramid, with the entry being filled kept apart until complete.
+     */
+    private static final class Level {
+        final int inputsPerEntry;
+        final int rowsPerEntry;
+        float[] min = new float[16];
+        float[] max = new float[16];
+        double[] sum = new double[16];
+        int[] count = new int[16];
+        int size;
+        private float pendingMin = Float.POSITIVE_INFINITY;
+        private float pendingMax = Float.NEGATIVE_INFINITY;
+        private double pendingSum;
+        private int pendingCount;
+        private int pendingInputs;
+
+        Level(int inputsPerEntry, int rowsPerEntry) {
+            this.inputsPerEntry = inputsPerEntry;
+            this.rowsPerEntry = rowsPerEntry;
+        }
+
+        /**
+         * @return true if the input completed an entry
+         */
+        boolean add(float inputMin, float inputMax, double inputSum, int inputCount) {
+            pendingMin = Math.min(pendingMin, inputMin);
+            pendingMax = Math.max(pendingMax, inputMax);
+            pendingSum += inputSum;
+            pendingCount += inputCount;
+            if (++pendingInputs < inputsPerEntry) {
+                return false;
+            }
+            if (size == min.length) {
+                int capacity = size * 2;
+                min = Arrays.copyOf(min, capacity);
+                max = Arrays.copyOf(max, capacity);
+                sum = Arrays.copyOf(sum, capacity);
+                count = Arrays.copyOf(count, capacity);
+            }
+            min[size] = pendingMin;
+            max[size] = pendingMax;
+            sum[size] = pendingSum;
+            count[size] = pendingCount;
+            size++;
+            pendingMin = Float.POSITIVE_INFINITY;
+            pendingMax = Float.NEGATIVE_INFINITY;
+            pendingSum = 0;
+            pendingCount = 0;
+            pendingInputs = 0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CacheControl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * RemoteHeadChecker asks GitHub for the commit SHA at the tip of the PID repository branch.
+ *
+ * The request uses the "application/vnd.github.sha" media type, so the response body is the
+ * bare 40 character SHA instead of the commit JSON. The response carries an ETag, which the
+ * SyncHttpClient disk cache stores; every later check is sent as a conditional request and an
+ * unchanged branch is answered with an empty 304. A check therefore costs a few hundred bytes
+ * of headers and no parsing beyond a single string.
+ *
+ * Usage Example:
+ * RemoteHeadChecker checker = new RemoteHeadChecker(SyncHttpClient.get(context), RemoteHeadChecker.API_URL);
+ * String sha = checker.fetchHeadSha();
+ */
+public class RemoteHeadChecker {
+    private static final String TAG = "RemoteHeadChecker";
+    public static final String API_URL =
+            "https://api.github.com/repos/JejuSoul/OBD-PIDs-for-HKMC-EVs/commits/" + GitPidRepository.DEFAULT_BRANCH;
+    static final String SHA_MEDIA_TYPE = "application/vnd.github.sha";
+    private static final int SHA_LENGTH = 40;
+
+    // Treat the cached head as stale so it is always revalidated; an unchanged head comes back
+    // as a 304. no-cache would skip the cache entirely and never send If-None-Match.
+    private static final CacheControl REVALIDATE =
+            new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build();
+
+    private final OkHttpClient client;
+    private final String url;
+
+    /**
+     * @param client HTTP client; should have a cache so repeated checks are conditional
+     * @param url    Commit endpoint of the branch to watch
+     */
+    public RemoteHeadChecker(OkHttpClient client, String url) {
+        this.client = client;
+        this.url = url;
+    }
+
+    /**
+     * Fetch the SHA of the branch head.
+     * @return Lower case 40 character commit SHA
+     * @throws IOException If the request fails or the response is not a SHA
+     */
+    @NonNull
+    public String fetchHeadSha() throws IOException {
+        Request request = new Request.Builder()
+                .url(url)
+                .header("Accept", SHA_MEDIA_TYPE)
+                .cacheControl(REVALIDATE)
+                .build();
+
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Unexpected HTTP response " + response.code() + " for " + url);
+            }
+            ResponseBody body = response.body();
+            if (body == null) {
+                throw new IOException("Empty response body for " + url);
+            }
+            String sha = body.string().trim().toLowerCase();
+            if (!isSha(sha)) {
+                throw new IOException("Response is not a commit SHA: " + abbreviate(sha));
+            }
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Remote head " + sha + (response.networkResponse() != null
+                        && response.networkResponse().code() == 304 ? " (not modified)" : ""));
+            }
+            return sha;
+        }
+    }
+
+    static boolean isSha(String value) {
+        if (value == null || value.length() != SHA_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < SHA_LENGTH; i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String abbreviate(String value) {
+        return value.length() > SHA_LENGTH ? value.substring(0, SHA_LENGTH) + "..." : value;
+    }
+}
@@ -0,0 +1,284 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * ResumableDownloader transfers a single HTTP resource to disk and survives dropped connections.
+ *
+ * The body is written to a "<target>.part" file. When the connection fails mid-transfer the
+ * next attempt sends a Range request starting at the size of the partial file, guarded by
+ * If-Range with the ETag (or Last-Modified) of the first response, so the server either
+ * continues the same entity (206) or sends it again from the start (200). The partial file is
+ * kept between calls, so a download that gave up can still be resumed by a later call.
+ *
+ * Progress is reported in bytes, computed from Content-Length / Content-Range, together with
+ * the current throughput. Reports are conflated to at most one per PROGRESS_INTERVAL_MS, plus
+ * a final report when the transfer completes.
+ *
+ * Usage Example:
+ * ResumableDownloader downloader = new ResumableDownloader(SyncHttpClient.get(context), 3, 1000);
+ * File zip = downloader.download(url, new File(dir, "master.zip"), listener);
+ */
+public class ResumableDownloader {
+    private static final String TAG = "ResumableDownloader";
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final long PROGRESS_INTERVAL_MS = 250;
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_PARTIAL = 206;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final String PART_SUFFIX = ".part";
+    private static final String VALIDATOR_SUFFIX = ".validator";
+
+    private final OkHttpClient client;
+    private final int maxAttempts;
+    private final long retryDelayMs;
+
+    /**
+     * Receives byte-accurate progress updates.
+     * totalBytes is -1 when the server did not announce a length.
+     */
+    public interface ProgressListener {
+        void onProgress(long bytesDownloaded, long totalBytes, long bytesPerSecond);
+    }
+
+    /**
+     * @param client       HTTP client; timeouts and connection reuse come from its configuration
+     * @param maxAttempts  Number of requests to try before giving up (at least 1)
+     * @param retryDelayMs Base delay between attempts, multiplied by the attempt number
+     */
+    public ResumableDownloader(OkHttpClient client, int maxAttempts, long retryDelayMs) {
+        this.client = client;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMs = Math.max(0, retryDelayMs);
+    }
+
+    /**
+     * Download url into target, resuming from any partial file left by a previous attempt.
+     * @param url      Resource to download
+     * @param target   Final file; replaced once the transfer is complete
+     * @param listener Optional progress listener
+     * @return target
+     * @throws IOException If every attempt failed; the partial file is kept for the next call
+     */
+    @NonNull
+    public File download(String url, File target, ProgressListener listener) throws IOException {
+        File partFile = new File(target.getPath() + PART_SUFFIX);
+        File validatorFile = new File(target.getPath() + VALIDATOR_SUFFIX);
+        ThroughputMeter meter = new ThroughputMeter();
+        IOException lastError = null;
+
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                if (transfer(url, partFile, validatorFile, meter, listener)) {
+                    if (target.exists() && !target.delete()) {
+                        throw new IOException("Failed to replace " + target.getAbsolutePath());
+                    }
+                    if (!partFile.renameTo(target)) {
+                        throw new IOException("Failed to move " + partFile.getName() + " to " + target.getName());
+                    }
+                    validatorFile.delete();
+                    return target;
+                }
+            } catch (IOException e) {
+                lastError = e;
+                Log.w(TAG, "Attempt " + attempt + " of " + maxAttempts + " failed after "
+                        + partFile.length() + " bytes: " + e.getMessage());
+            }
+
+            if (attempt < maxAttempts) {
+                try {
+                    Thread.sleep(retryDelayMs * attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Download interrupted", e);
+                }
+            }
+        }
+
+        throw lastError != null ? lastError : new IOException("Download failed: " + url);
+    }
+
+    /**
+     * Run one request, appending to partFile.
+     * @return true if the entity is complete, false if the attempt should be retried
+     */
+    private boolean transfer(String url, File partFile, File validatorFile, ThroughputMeter meter,
+                             ProgressListener listener) throws IOException {
+        long offset = partFile.exists() ? partFile.length() : 0;
+        String validator = offset > 0 ? readValidator(validatorFile) : null;
+        if (offset > 0 && validator == null) {
+            // Without a validator we cannot prove the partial bytes belong to the same entity
+            offset = 0;
+        }
+
+        Request.Builder request = new Request.Builder().url(url);
+        if (offset > 0) {
+            // OkHttp leaves Range requests in the identity encoding, so offsets stay valid
+            request.header("Range", "bytes=" + offset + "-");
+            request.header("If-Range", validator);
+        }
+
+        try (Response response = client.newCall(request.build()).execute()) {
+            int code = response.code();
+            ResponseBody body = response.body();
+            long totalBytes;
+            boolean append;
+
+            if (code == HTTP_PARTIAL && offset > 0) {
+                long rangeStart = parseContentRangeStart(response.header("Content-Range"));
+                if (rangeStart != offset) {
+                    throw new IOException("Server resumed at " + rangeStart + " instead of " + offset);
+                }
+                totalBytes = parseContentRangeTotal(response.header("Content-Range"));
+                append = true;
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Resuming " + url + " at byte " + offset);
+                }
+            } else if (code == HTTP_OK) {
+                // contentLength() is -1 when the body was transparently gunzipped
+                totalBytes = body != null ? body.contentLength() : -1;
+                offset = 0;
+                append = false;
+                writeValidator(validatorFile, response);
+            } else if (code == HTTP_RANGE_NOT_SATISFIABLE && offset > 0) {
+                // The partial file is not a prefix of the current entity; start over
+                partFile.delete();
+                validatorFile.delete();
+                return false;
+            } else {
+                throw new IOException("Unexpected HTTP response " + code + " for " + url);
+            }
+            if (body == null) {
+                throw new IOException("Empty response body for " + url);
+            }
+
+            meter.start(offset);
+            long downloaded = offset;
+            try (InputStream input = body.byteStream();
+                 FileOutputStream output = new FileOutputStream(partFile, append)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int bytesRead;
+                while ((bytesRead = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, bytesRead);
+                    downloaded += bytesRead;
+                    if (listener != null && meter.update(downloaded)) {
+                        listener.onProgress(downloaded, totalBytes, meter.bytesPerSecond());
+                    }
+                }
+            }
+
+            if (totalBytes >= 0 && downloaded < totalBytes) {
+                throw new IOException("Connection closed at " + downloaded + " of " + totalBytes + " bytes");
+            }
+            if (listener != null) {
+                meter.update(downloaded);
+                listener.onProgress(downloaded, totalBytes >= 0 ? totalBytes : downloaded, meter.bytesPerSecond());
+            }
+            return true;
+        }
+    }
+
+    static long parseContentRangeStart(String contentRange) throws IOException {
+        // Format: "bytes <start>-<end>/<total or *>"
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            throw new IOException("Missing Content-Range in partial response");
+        }
+        int dash = contentRange.indexOf('-');
+        try {
+            return Long.parseLong(contentRange.substring(6, dash).trim());
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed Content-Range: " + contentRange, e);
+        }
+    }
+
+    static long parseContentRangeTotal(String contentRange) {
+        int slash = contentRange != null ? contentRange.indexOf('/') : -1;
+        if (slash < 0) {
+            return -1;
+        }
+        String total = contentRange.substring(slash + 1).trim();
+        try {
+            return "*".equals(total) ? -1 : Long.parseLong(total);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void writeValidator(File validatorFile, Response response) {
+        String etag = response.header("ETag");
+        String validator = etag != null && !etag.startsWith("W/") ? etag : response.header("Last-Modified");
+        if (validator == null) {
+            validatorFile.delete();
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(validatorFile), StandardCharsets.UTF_8)) {
+            writer.write(validator);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to store resume validator", e);
+        }
+    }
+
+    private static String readValidator(File validatorFile) {
+        if (!validatorFile.exists()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(validatorFile), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            return line == null || line.isEmpty() ? null : line;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Throughput over the last reporting window, also used to conflate progress reports.
+     */
+    static class ThroughputMeter {
+        private long windowStartNanos;
+        private long windowStartBytes;
+        private long bytesPerSecond;
+
+        void start(long bytes) {
+            windowStartNanos = System.nanoTime();
+            windowStartBytes = bytes;
+        }
+
+        /**
+         * @return true if a reporting window has elapsed since the last report
+         */
+        boolean update(long bytes) {
+            long now = System.nanoTime();
+            long elapsedNanos = now - windowStartNanos;
+            if (elapsedNanos < PROGRESS_INTERVAL_MS * 1_000_000L) {
+                return false;
+            }
+            bytesPerSecond = (bytes - windowStartBytes) * 1_000_000_000L / elapsedNanos;
+            windowStartNanos = now;
+            windowStartBytes = bytes;
+            return true;
+        }
+
+        long bytesPerSecond() {
+            return bytesPerSecond;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * SessionExporter streams a Recording to a file that can be analysed off the phone, in one
+ * of two formats:
+ *
+ * - CSV, gzip'd: a "Time (ms)" column of epoch milliseconds, then one column per recorded
+ *   value headed by its PID name and unit, e.g. "Cell Voltage 01 (V)". Unreadable values
+ *   are empty fields.
+ * - Columnar (COLUMNAR_EXTENSION): the magic "PIDS", a version byte, the column count and
+ *   each column's name and unit, then row groups of up to GROUP_ROWS rows and a 0 row count
+ *   at the end. A group holds its timestamps as delta-of-delta varints and then every
+ *   column as an encoding byte, a byte length and the encoded values, so a reader can skip
+ *   the columns it does not need. Values are compared as float bit patterns, whose
+ *   difference is small for a slowly changing value, and each column is encoded per group
+ *   as the smallest of RUNS (varint run lengths, each followed by the zigzag varint
+ *   difference from the previous run's value; a constant column is one run), DELTA (a
+ *   zigzag varint difference per value) and RAW (little endian floats).
+ *   ColumnarSessionReader reads it back.
+ *
+ * Rows are copied out of the recording a group at a time into buffers of a fixed size, so
+ * memory use does not depend on the length of the session, and the output is written as it
+ * is produced. Rows appended while an export runs are left for the next one. The output
+ * stream is not closed.
+ *
+ * Usage Example:
+ * try (OutputStream output = new FileOutputStream(file)) {
+ *     SessionExporter.Result result = SessionExporter.exportCsv(recording, output);
+ *     Log.i(TAG, "Exported " + result);
+ * }
+ */
+public final class SessionExporter {
+    public static final String CSV_EXTENSION = ".csv.gz";
+    public static final String COLUMNAR_EXTENSION = ".pidc";
+
+    static final byte[] MAGIC = {'P', 'I', 'D', 'S'};
+    static final int VERSION = 1;
+    static final int GROUP_ROWS = 4096;
+    static final int ENCODING_RUNS = 0;
+    static final int ENCODING_DELTA = 1;
+    static final int ENCODING_RAW = 2;
+    // Rows formatted per copy out of the recording; CSV needs every column of a row at once
+    private static final int CSV_ROWS = 256;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private SessionExporter() {
+    }
+
+    /**
+     * What an export wrote and how fast.
+     */
+    public static final class Result {
+        private final int rows;
+        private final long sourceBytes;
+        private final long bytesWritten;
+        private final long elapsedNanos;
+
+        Result(int rows, int columns, long bytesWritten, long elapsedNanos) {
+            this.rows = rows;
+            // A timestamp and a float per column, as the recording holds them
+            this.sourceBytes = rows * (8L + 4L * columns);
+            this.bytesWritten = bytesWritten;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getElapsedMs() {
+            return elapsedNanos / 1_000_000L;
+        }
+
+        /**
+         * @return Recorded data exported per second, in MB, whatever the output's size
+         */
+        public double getMegabytesPerSecond() {
+            return elapsedNanos > 0 ? sourceBytes * 1e3 / elapsedNanos : 0;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d rows, %.2f MB to %.2f MB in %d ms, %.1f MB/s", rows,
+                    sourceBytes / 1e6, bytesWritten / 1e6, getElapsedMs(), getMegabytesPerSecond());
+        }
+    }
+
+    /**
+     * Write the recording as gzip'd CSV.
+     */
+    @WorkerThread
+    public static Result exportCsv(Recording recording, OutputStream output) throws IOException {
+        long start = System.nanoTime();
+        int rows = recording.getRowCount();
+        int columnCount = recording.getColumnCount();
+        CountingOutputStream counter = new CountingOutputStream(output);
+        GZIPOutputStream gzip = new GZIPOutputStream(counter, BUFFER_SIZE) {
+            {
+                // Numbers compress well enough at the fastest level, which is several times quicker
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        };
+        ByteSink sink = new ByteSink(gzip);
+
+        StringBuilder line = new StringBuilder();
+        line.append("Time (ms)");
+        for (int column = 0; column < columnCount; column++) {
+            String unit = recording.getColumnUnit(column);
+            line.append(',');
+            appendCsvField(line, unit.isEmpty() ? recording.getColumnName(column)
+                    : recording.getColumnName(column) + " (" + unit + ")");
+        }
+        line.append('\n');
+        sink.write(line.toString().getBytes(StandardCharsets.UTF_8));
+
+        long[] times = new long[CSV_ROWS];
+        float[][] values = new float[columnCount][CSV_ROWS];
+        for (int first = 0; first < rows; first += CSV_ROWS) {
+            int count = Math.min(CSV_ROWS, rows - first);
+            recording.copyTimes(first, first + count, times, 0);
+            for (int column = 0; column < columnCount; column++) {
+                recording.copyValues(column, first, first + count, values[column], 0);
+            }
+            for (int row = 0; row < count; row++) {
+                line.setLength(0);
+                line.append(times[row]);
+                for (int column = 0; column < columnCount; column++) {
+                    line.append(',');
+                    float value = values[column][row];
+                    if (value == value) {
+                        line.append(value);
+                    }
+                }
+                line.append('\n');
+                sink.writeAscii(line);
+            }
+        }
+        sink.flush();
+        gzip.finish();
+        return finish("export.csv", start, rows, columnCount, counter.count);
+    }
+
+    /**
+     * Write the recording in the columnar format.
+     */
+    @WorkerThread
+    public static Result exportColumnar(Recording recording, OutputStream output) throws IOException {
+        long start = System.nanoTime();
+        int rows = recording.getRowCount();
+        int columnCount = recording.getColumnCount();
+        CountingOutputStream counter = new CountingOutputStream(output);
+        ByteSink sink = new ByteSink(counter);
+
+        sink.write(MAGIC);
+        sink.write(VERSION);
+        sink.writeVarint(columnCount);
+        for (int column = 0; column < columnCount; column++) {
+            sink.writeString(recording.getColumnName(column));
+            sink.writeString(recording.getColumnUnit(column));
+        }
+
+        long[] times = new long[GROUP_ROWS];
+        float[] values = new float[GROUP_ROWS];
+        // Large enough for a group of timestamps at up to ten bytes each, and for a column
+        // encoded as deltas, up to five bytes each, next to runs, up to six
+        byte[] scratch = new byte[GROUP_ROWS * 11];
+        for (int first = 0; first < rows; first += GROUP_ROWS) {
+            int count = Math.min(GROUP_ROWS, rows - first);
+            sink.writeVarint(count);
+            recording.copyTimes(first, first + count, times, 0);
+            int length = encodeTimes(times, count, scratch);
+            sink.writeVarint(length);
+            sink.write(scratch, 0, length);
+            for (int column = 0; column < columnCount; column++) {
+                recording.copyValues(column, first, first + count, values, 0);
+                writeColumn(values, count, scratch, sink);
+            }
+        }
+        sink.writeVarint(0);
+        sink.flush();
+        return finish("export.columnar", start, rows, columnCount, counter.count);
+    }
+
+    private static Result finish(String metric, long start, int rows, int columns, long bytesWritten) {
+        MetricsRegistry metrics = MetricsRegistry.get();
+        metrics.histogram(metric).recordSince(start);
+        metrics.counter(metric + ".bytes").add(bytesWritten);
+        return new Result(rows, columns, bytesWritten, System.nanoTime() - start);
+    }
+
+    private static void appendCsvField(StringBuilder line, String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) {
+            line.append(field);
+            return;
+        }
+        line.append('"').append(field.replace("\"", "\"\"")).append('"');
+    }
+
+    /**
+     * Encode timestamps as the first one, the first difference, then differences of
+     * differences, which are near zero at a steady sample rate.
+     *
+     * @return Bytes written to output
+     */
+    static int encodeTimes(long[] times, int count, byte[] output) {
+        int position = putVarint(output, 0, zigZag(times[0]));
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = times[i] - times[i - 1];
+            position = putVarint(output, position, zigZag(delta - previousDelta));
+            previousDelta = delta;
+        }
+        return position;
+    }
+
+    private static void writeColumn(float[] values, int count, byte[] scratch, ByteSink sink) throws IOException {
+        // Both candidates are encoded side by side: deltas from 0, runs from runsStart
+        int deltaLength = 0;
+        int runsStart = GROUP_ROWS * 5;
+        int runsEnd = runsStart;
+        int previous = 0;
+        int runBase = 0;
+        int runLength = 0;
+        for (int i = 0; i < count; i++) {
+            int bits = Float.floatToRawIntBits(values[i]);
+            deltaLength = putVarint(scratch, deltaLength, zigZag(bits - previous) & 0xFFFFFFFFL);
+            if (i > 0 && bits != previous) {
+                runsEnd = putVarint(scratch, runsEnd, runLength);
+                runsEnd = putVarint(scratch, runsEnd, zigZag(previous - runBase) & 0xFFFFFFFFL);
+                runBase = previous;
+                runLength = 0;
+            }
+            runLength++;
+            previous = bits;
+        }
+        runsEnd = putVarint(scratch, runsEnd, runLength);
+        runsEnd = putVarint(scratch, runsEnd, zigZag(previous - runBase) & 0xFFFFFFFFL);
+        int runsLength = runsEnd - runsStart;
+
+        if (runsLength <= deltaLength && runsLength < count * 4) {
+            sink.write(ENCODING_RUNS);
+            sink.writeVarint(runsLength);
+            sink.write(scratch, runsStart, runsLength);
+        } else if (deltaLength < count * 4) {
+            sink.write(ENCODING_DELTA);
+            sink.writeVarint(deltaLength);
+            sink.write(scratch, 0, deltaLength);
+        } else {
+            sink.write(ENCODING_RAW);
+            sink.writeVarint(count * 4);
+            for (int i = 0; i < count; i++) {
+                sink.writeInt(Float.floatToRawIntBits(values[i]));
+            }
+        }
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int putVarint(byte[] output, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Buffers bytes ahead of a stream, which is cheaper per value than a BufferedOutputStream
+     * as it is written to byte by byte.
+     */
+    private static final class ByteSink {
+        private final OutputStream output;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+
+        ByteSink(OutputStream output) {
+            this.output = output;
+        }
+
+        void write(int value) throws IOException {
+            if (position == buffer.length) {
+                flushBuffer();
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            write(bytes, 0, bytes.length);
+        }
+
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length > buffer.length - position) {
+                flushBuffer();
+                if (length > buffer.length) {
+                    output.write(bytes, offset, length);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+        }
+
+        /**
+         * Write characters known to be ASCII, such as formatted numbers.
+         */
+        void writeAscii(CharSequence text) throws IOException {
+            int length = text.length();
+            for (int i = 0; i < length; i++) {
+                if (position == buffer.length) {
+                    flushBuffer();
+                }
+                buffer[position++] = (byte) text.charAt(i);
+            }
+        }
+
+        void writeVarint(long value) throws IOException {
+            if (buffer.length - position < 10) {
+                flushBuffer();
+            }
+            position = putVarint(buffer, position, value);
+        }
+
+        void writeInt(int value) throws IOException {
+            write(value);
+            write(value >>> 8);
+            write(value >>> 16);
+            write(value >>> 24);
+        }
+
+        void writeString(String text) throws IOException {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes);
+        }
+
+        void flush() throws IOException {
+            flushBuffer();
+            output.flush();
+        }
+
+        private void flushBuffer() throws IOException {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            out.write(value);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.Locale;
+
+/**
+ * SessionRecorder is the telemetry stage that records a Recording of everything the other
+ * stages compute: a column per plugin PID registered with the PidPublisher, then, with a
+ * CellMonitor, a "Cell Voltage NN" column per cell.
+ *
+ * It sends no requests of its own; every SAMPLE_INTERVAL_MS it copies the values the stages
+ * before it left behind in the same tick, so add it after them. After MAX_HOURS, MAX_ROWS at
+ * one row a second and about 13 MB with a 96 cell pack, the recording is finished: it stops
+ * and Recording.isFinished() tells its readers why it ends there.
+ *
+ * Usage Example:
+ * SessionRecorder recorder = new SessionRecorder(poller.getPublisher(), cellMonitor);
+ * poller.addStage(recorder);
+ * Recording recording = recorder.getRecording();
+ */
+public class SessionRecorder implements TelemetryStage {
+    static final long SAMPLE_INTERVAL_MS = 1_000;
+    /** Length of the longest recording. */
+    public static final int MAX_HOURS = 8;
+    static final int MAX_ROWS = (int) (MAX_HOURS * 60 * 60 * 1_000L / SAMPLE_INTERVAL_MS);
+
+    private final PidPublisher publisher;
+    @Nullable
+    private final CellMonitor cellMonitor;
+    private final int slotCount;
+    private final float[] row;
+    private final Recording recording;
+    private final long sampleIntervalNanos;
+    private final int maxRows;
+    private final MetricsRegistry.Counter rows = MetricsRegistry.get().counter("recording.rows");
+    private final MetricsRegistry.Counter dropped = MetricsRegistry.get().counter("recording.dropped");
+    private long sampledAt;
+    private boolean sampled;
+
+    /**
+     * @param cellMonitor Stage whose cell voltages to record, or null
+     */
+    public SessionRecorder(PidPublisher publisher, @Nullable CellMonitor cellMonitor) {
+        this(publisher, cellMonitor, SAMPLE_INTERVAL_MS, MAX_ROWS);
+    }
+
+    SessionRecorder(PidPublisher publisher, @Nullable CellMonitor cellMonitor, long sampleIntervalMs,
+                    int maxRows) {
+        this.publisher = publisher;
+        this.cellMonitor = cellMonitor;
+        this.sampleIntervalNanos = sampleIntervalMs * 1_000_000L;
+        this.maxRows = maxRows;
+        // Slots registered after this point are not recorded
+        slotCount = publisher.getSlotCount();
+        int cellCount = cellMonitor != null ? cellMonitor.getCells().length : 0;
+        String[] names = new String[slotCount + cellCount];
+        String[] units = new String[names.length];
+        for (int slot = 0; slot < slotCount; slot++) {
+            names[slot] = publisher.getName(slot);
+            units[slot] = publisher.getUnit(slot);
+        }
+        for (int cell = 0; cell < cellCount; cell++) {
+            // Named like the catalog's cell PIDs, so charts can find them
+            names[slotCount + cell] = String.format(Locale.ROOT, "Cell Voltage %02d",
+                    cellMonitor.getAnalyzer().getCellNumber(cell));
+            units[slotCount + cell] = cellMonitor.getAnalyzer().getCellUnit(cell);
+        }
+        row = new float[names.length];
+        recording = new Recording(names, units);
+    }
+
+    @Override
+    @WorkerThread
+    public void poll(TorqueLink link) {
+        long now = System.nanoTime();
+        if (sampled && now - sampledAt < sampleIntervalNanos) {
+            return;
+        }
+        sampled = true;
+        sampledAt = now;
+        if (recording.isFinished()) {
+            dropped.increment();
+            return;
+        }
+        publisher.copyValues(slotCount, row, 0);
+        if (cellMonitor != null) {
+            float[] cells = cellMonitor.getCells();
+            System.arraycopy(cells, 0, row, slotCount, cells.length);
+        }
+        recording.append(System.currentTimeMillis(), row);
+        rows.increment();
+        if (recording.getRowCount() >= maxRows) {
+            recording.finish();
+        }
+    }
+
+    public Recording getRecording() {
+        return recording;
+    }
+}
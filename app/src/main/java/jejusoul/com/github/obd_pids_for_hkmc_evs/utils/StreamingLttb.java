@@ -0,0 +1,181 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import java.util.Arrays;
+
+/**
+ * StreamingLttb applies Largest-Triangle-Three-Buckets to a live series as it arrives, keeping
+ * only what a chart of the last windowSeconds at a given width shows.
+ *
+ * Time is cut into fixed buckets of windowSeconds / width. When a point opens a new bucket,
+ * the bucket before the one it closes is settled: its point with the largest triangle
+ * between the last kept point and the average of the closed bucket is kept, as batch LTTB
+ * would choose it. Kept points go into a ring of width points, so older ones fall out of
+ * the window by themselves. Only the raw points of the last two buckets are held, in arrays
+ * that grow only if the series arrives faster than they have ever held. copyTo() hands the
+ * kept points plus the newest raw point to a chart; it is synchronized with add(), so the
+ * polling thread can feed the series while the UI thread draws it.
+ *
+ * Usage Example:
+ * StreamingLttb series = new StreamingLttb(width, 300);
+ * series.add(elapsedSeconds, value);
+ * int points = series.copyTo(xs, ys);
+ */
+public final class StreamingLttb {
+    private final float bucketSeconds;
+    private final int capacity;
+    private final float[] keptX;
+    private final float[] keptY;
+    private int keptStart;
+    private int keptCount;
+    // Raw points of the bucket awaiting selection and of the newest bucket
+    private float[] pendingX = new float[16];
+    private float[] pendingY = new float[16];
+    private int pendingCount;
+    private float[] currentX = new float[16];
+    private float[] currentY = new float[16];
+    private int currentCount;
+    private long currentBucket = Long.MIN_VALUE;
+    private int version;
+
+    /**
+     * @param width         Points across the chart
+     * @param windowSeconds Time the chart spans
+     */
+    public StreamingLttb(int width, float windowSeconds) {
+        if (width < 3) {
+            throw new IllegalArgumentException("width must be at least 3");
+        }
+        this.capacity = width;
+        this.bucketSeconds = windowSeconds / width;
+        keptX = new float[width];
+        keptY = new float[width];
+    }
+
+    /**
+     * @return Most points copyTo() writes
+     */
+    public int getMaxPoints() {
+        return capacity + 1;
+    }
+
+    /**
+     * Add a point; x must not decrease. NaN values are ignored.
+     */
+    public synchronized void add(float x, float y) {
+        if (Float.isNaN(y)) {
+            return;
+        }
+        long bucket = (long) Math.floor(x / bucketSeconds);
+        if (keptCount == 0) {
+            // LTTB always keeps the first point, outside any bucket
+            keep(x, y);
+            currentBucket = bucket;
+            version++;
+            return;
+        }
+        if (bucket > currentBucket) {
+            if (pendingCount > 0) {
+                settle();
+            }
+            float[] swapX = pendingX;
+            float[] swapY = pendingY;
+            pendingX = currentX;
+            pendingY = currentY;
+            pendingCount = currentCount;
+            currentX = swapX;
+            currentY = swapY;
+            currentCount = 0;
+            currentBucket = bucket;
+        }
+        if (currentCount == currentX.length) {
+            currentX = Arrays.copyOf(currentX, currentCount * 2);
+            currentY = Arrays.copyOf(currentY, currentCount * 2);
+        }
+        currentX[currentCount] = x;
+        currentY[currentCount] = y;
+        currentCount++;
+        version++;
+    }
+
+    /**
+     * Keep the pending bucket's point with the largest triangle between the last kept point
+     * and the average of the current bucket.
+     */
+    private void settle() {
+        int last = (keptStart + keptCount - 1) % capacity;
+        float previousX = keptX[last];
+        float previousY = keptY[last];
+        double averageX = 0;
+        double averageY = 0;
+        for (int i = 0; i < currentCount; i++) {
+            averageX += currentX[i];
+            averageY += currentY[i];
+        }
+        averageX /= currentCount;
+        averageY /= currentCount;
+        double maxArea = -1;
+        int chosen = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            double area = Math.abs((previousX - averageX) * (pendingY[i] - previousY)
+                    - (previousX - pendingX[i]) * (averageY - previousY));
+            if (area > maxArea) {
+                maxArea = area;
+                chosen = i;
+            }
+        }
+        keep(pendingX[chosen], pendingY[chosen]);
+        pendingCount = 0;
+    }
+
+    private void keep(float x, float y) {
+        int slot = (keptStart + keptCount) % capacity;
+        keptX[slot] = x;
+        keptY[slot] = y;
+        if (keptCount < capacity) {
+            keptCount++;
+        } else {
+            keptStart = (keptStart + 1) % capacity;
+        }
+    }
+
+    /**
+     * Copy what the chart shows, oldest first: the kept points, then the newest raw point.
+     *
+     * @param x Receives x values; needs getMaxPoints() entries
+     * @param y Receives y values; needs getMaxPoints() entries
+     * @return Number of points written
+     */
+    public synchronized int copyTo(float[] x, float[] y) {
+        int firstPart = Math.min(keptCount, capacity - keptStart);
+        System.arraycopy(keptX, keptStart, x, 0, firstPart);
+        System.arraycopy(keptY, keptStart, y, 0, firstPart);
+        System.arraycopy(keptX, 0, x, firstPart, keptCount - firstPart);
+        System.arraycopy(keptY, 0, y, firstPart, keptCount - firstPart);
+        int count = keptCount;
+        float[] newestX = currentCount > 0 ? currentX : pendingX;
+        float[] newestY = currentCount > 0 ? currentY : pendingY;
+        int newest = (currentCount > 0 ? currentCount : pendingCount) - 1;
+        if (newest >= 0 && (count == 0 || newestX[newest] > x[count - 1])) {
+            x[count] = newestX[newest];
+            y[count] = newestY[newest];
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return Number that changes with every added point, to skip redrawing an unchanged chart
+     */
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    public synchronized void clear() {
+        keptStart = 0;
+        keptCount = 0;
+        pendingCount = 0;
+        currentCount = 0;
+        currentBucket = Long.MIN_VALUE;
+        version++;
+    }
+}
@@ -0,0 +1,77 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.content.Context;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+/**
+ * SyncHttpClient owns the single OkHttpClient used for all PID sync traffic.
+ *
+ * Sharing one client means every request reuses the same:
+ * - Connection pool (TLS sessions to GitHub survive between requests)
+ * - HTTP disk cache (unchanged archives are revalidated with a conditional request)
+ * - Dispatcher threads and timeouts
+ *
+ * Responses are transparently gzip-decoded by OkHttp, except for Range requests where the
+ * byte offsets must refer to the identity encoding. Every call is instrumented by
+ * HttpTimingListener, which logs DNS, connect, TLS and time-to-first-byte durations.
+ *
+ * Usage Example:
+ * OkHttpClient client = SyncHttpClient.get(context);
+ */
+public final class SyncHttpClient {
+    private static final String CACHE_DIR = "http_cache";
+    // The repository archive is a few MB; leave room for a second revision while revalidating
+    private static final long CACHE_SIZE_BYTES = 32L * 1024 * 1024;
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    private static final long READ_TIMEOUT_SECONDS = 30;
+    private static final long WRITE_TIMEOUT_SECONDS = 30;
+
+    private static volatile OkHttpClient instance;
+
+    private SyncHttpClient() {
+    }
+
+    /**
+     * Get the process-wide sync client, creating it on first use.
+     * @param context Any context; only the application context is retained
+     * @return Shared OkHttpClient
+     */
+    public static OkHttpClient get(Context context) {
+        OkHttpClient client = instance;
+        if (client == null) {
+            synchronized (SyncHttpClient.class) {
+                client = instance;
+                if (client == null) {
+                    File cacheDir = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR);
+                    client = newBuilder(new Cache(cacheDir, CACHE_SIZE_BYTES)).build();
+                    instance = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Builder with the sync defaults, exposed so tests can supply their own cache directory.
+     * @param cache HTTP disk cache, or null to disable caching
+     * @return Configured builder
+     */
+    public static OkHttpClient.Builder newBuilder(Cache cache) {
+        return new OkHttpClient.Builder()
+                .cache(cache)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .followRedirects(true)
+                .eventListenerFactory(HttpTimingListener.FACTORY);
+    }
+}
@@ -0,0 +1,175 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * SyncSettings stores the user's PID sync preferences.
+ *
+ * Sync Modes:
+ * - ARCHIVE: Download the whole repository archive (default)
+ * - GIT: Keep a shallow clone of the repository and fetch only new objects
+ *
+ * Repository Heads:
+ * - Last synced SHA: commit the installed PID files came from
+ * - Last notified SHA: newest commit the user has already been told about
+ *
+ * Bundled Catalog:
+ * - Seeded catalog checksum: set while the installed files are the ones shipped in the APK
+ *
+ * Vehicle Subscriptions:
+ * - Subscribed vehicles: repository folders to install (empty means all)
+ * - Known vehicles: folders seen in the last sync, offered for subscription
+ * - Detected vehicle: folder VehicleDetector matched to the car, with its VIN if read
+ *
+ * Usage Example:
+ * SyncSettings settings = new SyncSettings(context);
+ * if (settings.getSyncMode() == SyncSettings.SyncMode.GIT) { ... }
+ */
+public class SyncSettings {
+    private static final String PREFS_NAME = "pid_sync";
+    private static final String KEY_SYNC_MODE = "sync_mode";
+    private static final String KEY_LAST_SYNCED_SHA = "last_synced_sha";
+    private static final String KEY_LAST_NOTIFIED_SHA = "last_notified_sha";
+    private static final String KEY_SUBSCRIBED_VEHICLES = "subscribed_vehicles";
+    private static final String KEY_KNOWN_VEHICLES = "known_vehicles";
+    private static final String KEY_SUBSCRIPTIONS_CHANGED = "subscriptions_changed";
+    private static final String KEY_SEEDED_CATALOG_CHECKSUM = "seeded_catalog_checksum";
+    private static final String KEY_DETECTED_VEHICLE = "detected_vehicle";
+    private static final String KEY_DETECTED_VIN = "detected_vin";
+
+    private final SharedPreferences preferences;
+
+    public enum SyncMode {
+        ARCHIVE,
+        GIT
+    }
+
+    public SyncSettings(Context context) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public SyncMode getSyncMode() {
+        String mode = preferences.getString(KEY_SYNC_MODE, SyncMode.ARCHIVE.name());
+        try {
+            return SyncMode.valueOf(mode);
+        } catch (IllegalArgumentException e) {
+            return SyncMode.ARCHIVE;
+        }
+    }
+
+    public void setSyncMode(SyncMode mode) {
+        preferences.edit().putString(KEY_SYNC_MODE, mode.name()).apply();
+    }
+
+    /**
+     * @return SHA of the commit the installed PID files came from, or null if unknown
+     */
+    public String getLastSyncedSha() {
+        return preferences.getString(KEY_LAST_SYNCED_SHA, null);
+    }
+
+    public void setLastSyncedSha(String sha) {
+        preferences.edit().putString(KEY_LAST_SYNCED_SHA, sha).apply();
+    }
+
+    /**
+     * @return SHA of the newest commit the user was notified about, or null if none
+     */
+    public String getLastNotifiedSha() {
+        return preferences.getString(KEY_LAST_NOTIFIED_SHA, null);
+    }
+
+    public void setLastNotifiedSha(String sha) {
+        preferences.edit().putString(KEY_LAST_NOTIFIED_SHA, sha).apply();
+    }
+
+    /**
+     * @return Vehicle folders to install; empty means every vehicle
+     */
+    public Set<String> getSubscribedVehicles() {
+        return copyOf(preferences.getStringSet(KEY_SUBSCRIBED_VEHICLES, null));
+    }
+
+    /**
+     * Replace the subscriptions. The next sync then installs the whole selection again.
+     */
+    public void setSubscribedVehicles(Collection<String> vehicles) {
+        preferences.edit()
+                .putStringSet(KEY_SUBSCRIBED_VEHICLES, new HashSet<>(vehicles))
+                .putBoolean(KEY_SUBSCRIPTIONS_CHANGED, true)
+                .apply();
+    }
+
+    /**
+     * @return true if the subscriptions changed since the last completed sync
+     */
+    public boolean haveSubscriptionsChanged() {
+        return preferences.getBoolean(KEY_SUBSCRIPTIONS_CHANGED, false);
+    }
+
+    public void clearSubscriptionsChanged() {
+        preferences.edit().putBoolean(KEY_SUBSCRIPTIONS_CHANGED, false).apply();
+    }
+
+    /**
+     * @return Vehicle folders found in the repository by the last sync, sorted
+     */
+    public Set<String> getKnownVehicles() {
+        return copyOf(preferences.getStringSet(KEY_KNOWN_VEHICLES, null));
+    }
+
+    public void setKnownVehicles(Collection<String> vehicles) {
+        preferences.edit().putStringSet(KEY_KNOWN_VEHICLES, new HashSet<>(vehicles)).apply();
+    }
+
+    /**
+     * @return Vehicle folder detected from the connected car, or null if none was detected yet
+     */
+    public String getDetectedVehicle() {
+        return preferences.getString(KEY_DETECTED_VEHICLE, null);
+    }
+
+    /**
+     * @return VIN read during detection, or null
+     */
+    public String getDetectedVin() {
+        return preferences.getString(KEY_DETECTED_VIN, null);
+    }
+
+    public void setDetectedVehicle(String vehicle, String vin) {
+        preferences.edit()
+                .putString(KEY_DETECTED_VEHICLE, vehicle)
+                .putString(KEY_DETECTED_VIN, vin)
+                .apply();
+    }
+
+    /**
+     * @return Checksum of the bundled catalog the installed PID files were seeded from,
+     *         or null if they came from a sync
+     */
+    public Integer getSeededCatalogChecksum() {
+        if (!preferences.contains(KEY_SEEDED_CATALOG_CHECKSUM)) {
+            return null;
+        }
+        return preferences.getInt(KEY_SEEDED_CATALOG_CHECKSUM, 0);
+    }
+
+    public void setSeededCatalogChecksum(int checksum) {
+        preferences.edit().putInt(KEY_SEEDED_CATALOG_CHECKSUM, checksum).apply();
+    }
+
+    public void clearSeededCatalogChecksum() {
+        preferences.edit().remove(KEY_SEEDED_CATALOG_CHECKSUM).apply();
+    }
+
+    private static Set<String> copyOf(Set<String> stored) {
+        // The set returned by SharedPreferences must not be modified
+        return stored != null ? new TreeSet<>(stored) : new TreeSet<>();
+    }
+}
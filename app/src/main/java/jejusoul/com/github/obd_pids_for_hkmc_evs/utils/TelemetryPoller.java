@@ -0,0 +1,130 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TelemetryPoller runs its stages against Torque at a fixed interval while Torque is
+ * connected and has granted full permissions.
+ *
+ * A tick is one TorqueServiceManager.call(), so the stages share the binder thread with the
+ * rest of the app's Torque calls instead of racing them. The next tick is scheduled only
+ * after the previous one has finished, so a slow bus stretches the interval rather than
+ * queueing ticks up. Stages store their results in the poller's PidPublisher, which is
+ * flushed to Torque at the end of every tick. Stopping the poller runs every stage's
+ * onStop() on the binder thread once the tick in progress has finished there, even if the
+ * tick's call already timed out.
+ *
+ * Usage Example:
+ * TelemetryPoller poller = new TelemetryPoller(torque, TelemetryPoller.DEFAULT_INTERVAL_MS);
+ * poller.addStage(new CellMonitor(analyzer, poller.getPublisher()));
+ * poller.start();
+ */
+public class TelemetryPoller {
+    private static final String TAG = "TelemetryPoller";
+    /** Latency histogram name of one tick. */
+    public static final String CALL_POLL = "pollTelemetry";
+    // Lets plugin gauges refresh at 4 Hz; stages that read the bus throttle themselves
+    public static final long DEFAULT_INTERVAL_MS = 250;
+
+    private final TorqueServiceManager torque;
+    private final long intervalMs;
+    private final List<TelemetryStage> stages = new CopyOnWriteArrayList<>();
+    private final PidPublisher publisher = new PidPublisher(PidPublisher.DEFAULT_MAX_CALLS_PER_SECOND);
+    private final MetricsRegistry.Counter errors = MetricsRegistry.get().counter("telemetry.errors");
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> task;
+
+    public TelemetryPoller(TorqueServiceManager torque, long intervalMs) {
+        this.torque = torque;
+        this.intervalMs = intervalMs;
+    }
+
+    public void addStage(TelemetryStage stage) {
+        stages.add(stage);
+    }
+
+    /**
+     * @return Publisher flushed after the stages of every tick
+     */
+    public PidPublisher getPublisher() {
+        return publisher;
+    }
+
+    public synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "TelemetryPoller");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        task = scheduler.scheduleWithFixedDelay(this::tick, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop polling; a tick in progress finishes on the binder thread, then the stages are
+     * stopped on the binder thread too.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+            // Queued behind the tick in progress, so its call is on the binder thread by then;
+            // the stages' polls can outlive the call's timeout there, so onStop() waits behind them
+            scheduler.execute(() -> torque.runAfterCalls(this::stopStages));
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    private void stopStages() {
+        for (TelemetryStage stage : stages) {
+            try {
+                stage.onStop();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to stop " + stage, e);
+            }
+        }
+    }
+
+    private void tick() {
+        if (!torque.isConnected() || stages.isEmpty()) {
+            return;
+        }
+        try {
+            torque.call(CALL_POLL, service -> {
+                if (!service.hasFullPermissions()) {
+                    return null; // Bus requests are refused until the user allows them
+                }
+                TorqueLink link = TorqueServiceManager.linkTo(service);
+                for (TelemetryStage stage : stages) {
+                    stage.poll(link);
+                }
+                publisher.flush(link);
+                return null;
+            }, TorqueServiceManager.DEFAULT_TIMEOUT_MS).get();
+        } catch (ExecutionException e) {
+            errors.increment();
+            Log.w(TAG, "Telemetry tick failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.os.RemoteException;
+
+import androidx.annotation.WorkerThread;
+
+/**
+ * One step of a TelemetryPoller tick, e.g. reading the cell voltages and publishing their
+ * statistics. Stages run one after the other on Torque's binder thread.
+ *
+ * Usage Example:
+ * poller.addStage(new CellMonitor(analyzer));
+ */
+public interface TelemetryStage {
+    /**
+     * Take one sample. A RemoteException ends the tick; the next tick starts over.
+     */
+    @WorkerThread
+    void poll(TorqueLink link) throws RemoteException;
+
+    /**
+     * Called once when the poller stops, after its last tick and on its own thread, to save
+     * what the stage would otherwise lose and release what it holds.
+     */
+    @WorkerThread
+    default void onStop() {
+    }
+}
@@ -0,0 +1,29 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.os.RemoteException;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The part of ITorqueService that telemetry stages use: raw bus requests and pushing values
+ * of plugin PIDs back to Torque. Keeps the stages testable without a binder.
+ *
+ * Usage Example:
+ * TorqueLink link = TorqueServiceManager.linkTo(service);
+ * link.setPidInformation("Cell Voltage Min", "Cell Min", "V", 5, 0, 3.91f);
+ */
+public interface TorqueLink {
+    /**
+     * Send a request on the OBD bus; needs Torque's full plugin permissions.
+     * @return Raw response lines of the adapter, or null
+     */
+    @Nullable
+    String[] sendCommand(String header, String command) throws RemoteException;
+
+    /**
+     * Add or update a plugin PID in Torque, keyed by name, and set its value.
+     * @return true if Torque accepted the value
+     */
+    boolean setPidInformation(String name, String shortName, String unit, float max, float min,
+                              float value) throws RemoteException;
+}
@@ -18,11 +18,25 @@
  *    - Managing service disconnections
  *    - Providing error feedback
  * 
+ * Connection Lifetime:
+ * The application holds one TorqueServiceManager for the whole process. Screens that need
+ * Torque call acquire() when they start and release() when they stop; the service is bound
+ * on the first acquire and unbound only after the last release has lingered for
+ * LINGER_MS, so moving between screens reuses the open binding instead of paying a new
+ * bind each time.
+ * 
+ * Threading:
+ * Calls into Torque are binder transactions that can block for as long as Torque's process
+ * takes to answer. call() and importPidsAsync() run them on a dedicated binder thread and
+ * return a ListenableFuture with a timeout, so the main thread never waits on Torque. The
+ * duration of every call is recorded in a LatencyHistogram per method, in the MetricsRegistry.
+ * 
  * Usage:
- * 1. Create an instance with a Context
- * 2. Set connection listener
- * 3. Call bindToTorqueService() to establish connection
- * 4. Use importPids() to send PID data to Torque
+ * 1. Get the shared instance from TorquePluginApplication
+ * 2. Add a connection listener (and remove it when done)
+ * 3. Call acquire() to use the connection and release() when done with it
+ * 4. Use importPidsAsync() or call() to talk to Torque, and cancel the future if the
+ *    result is no longer needed
  */
 package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
 
@@ -37,24 +51,74 @@ import android.os.IBinder;
 import android.os.Looper;
 import android.os.RemoteException;
 import android.util.Log;
-import androidx.core.content.ContextCompat;
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.prowl.torque.remote.ITorqueService;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class TorqueServiceManager {
     private static final String TAG = TorqueServiceManager.class.getSimpleName();
     private static final String TORQUE_PACKAGE = "org.prowl.torque";
     private static final String TORQUE_SERVICE = "org.prowl.torque.remote.TorqueService";
+    // Keep the binding this long after the last release, to cover screen changes and rotation
+    static final long LINGER_MS = 10_000;
+    // Below the 5s input dispatch ANR limit, so a stuck Torque surfaces as an error instead
+    public static final long DEFAULT_TIMEOUT_MS = 4_000;
+    /** Latency histogram name of importPids() and importPidsAsync(). */
+    public static final String CALL_SEND_PID_DATA = "sendPIDDataPrivate";
+    /** Latency histogram name of detectVehicleAsync(). */
+    public static final String CALL_DETECT_VEHICLE = "detectVehicle";
+    // Detection makes several bus requests, each of which may wait for an ECU to time out
+    public static final long DETECT_TIMEOUT_MS = 20_000;
+
+    /**
+     * State of the binding to the Torque service.
+     */
+    public enum State {
+        UNBOUND,
+        BINDING,
+        CONNECTED
+    }
 
     private final Context context;
     private final Handler handler;
-    private ITorqueService torqueService;
+    private final AtomicReference<State> state = new AtomicReference<>(State.UNBOUND);
+    private final AtomicInteger refCount = new AtomicInteger();
+    private final List<TorqueConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+    private final Runnable lingerUnbind = this::unbindIfUnused;
+    private volatile ITorqueService torqueService;
+    private volatile PermissionListener permissionListener;
+    private volatile long bindStartedAt;
+    private volatile long lastBindLatencyMs = -1;
+    private final MetricsRegistry.Counter bindCount = MetricsRegistry.get().counter("torque.binds");
+    private final LatencyHistogram bindLatency = MetricsRegistry.get().histogram("torque.bind");
+    private final MetricsRegistry.Gauge refGauge = MetricsRegistry.get().gauge("torque.refs");
     private ServiceConnection serviceConnection;
-    private TorqueConnectionListener connectionListener;
-    private PermissionListener permissionListener;
-    private boolean isConnected = false;
+    // One thread keeps calls in submission order; Torque serves them one at a time anyway
+    private final ListeningExecutorService binderExecutor = MoreExecutors.listeningDecorator(
+            Executors.newSingleThreadExecutor(runnable -> newDaemonThread(runnable, "TorqueBinder")));
+    private final ScheduledExecutorService timeoutExecutor =
+            Executors.newSingleThreadScheduledExecutor(runnable -> newDaemonThread(runnable, "TorqueTimeout"));
+
+    /**
+     * One call into the Torque service, run on the binder thread by call().
+     */
+    public interface TorqueCall<T> {
+        T call(ITorqueService service) throws RemoteException;
+    }
 
     /**
      * Interface for handling Torque service connection events.
@@ -89,8 +153,26 @@ public class TorqueServiceManager {
         Log.d(TAG, "TorqueServiceManager initialized with context: " + this.context);
     }
 
-    public void setConnectionListener(TorqueConnectionListener listener) {
-        this.connectionListener = listener;
+    /**
+     * Registers a listener for connection events. A listener added while connected is told
+     * so right away, so a new screen can enable its import button without waiting for a bind.
+     */
+    public void addConnectionListener(TorqueConnectionListener listener) {
+        if (listener == null || connectionListeners.contains(listener)) {
+            return;
+        }
+        connectionListeners.add(listener);
+        if (state.get() == State.CONNECTED) {
+            handler.post(() -> {
+                if (connectionListeners.contains(listener) && state.get() == State.CONNECTED) {
+                    listener.onTorqueConnected();
+                }
+            });
+        }
+    }
+
+    public void removeConnectionListener(TorqueConnectionListener listener) {
+        connectionListeners.remove(listener);
     }
 
     public void setPermissionListener(PermissionListener listener) {
@@ -107,24 +189,147 @@ public class TorqueServiceManager {
     }
 
     public boolean isConnected() {
-        return isConnected;
+        return state.get() == State.CONNECTED;
+    }
+
+    public State getState() {
+        return state.get();
     }
 
     /**
-     * Unbinds from the Torque service if currently bound.
-     * Should be called when the connection is no longer needed.
+     * @return Time from bindService() to onServiceConnected() of the last bind, or -1 if
+     *         the service has not connected yet
+     */
+    public long getLastBindLatencyMs() {
+        return lastBindLatencyMs;
+    }
+
+    /**
+     * @return Number of bindService() calls made by this process
+     */
+    public long getBindCount() {
+        return bindCount.get();
+    }
+
+    /**
+     * @param method Method name passed to call(), or CALL_SEND_PID_DATA
+     * @return Durations of the binder calls made for that method, kept in the
+     *         MetricsRegistry as "torque.<method>"
+     */
+    public LatencyHistogram getLatencyHistogram(String method) {
+        return MetricsRegistry.get().histogram("torque." + method);
+    }
+
+    /**
+     * Runs a call into Torque on the binder thread.
+     * 
+     * The future fails with RemoteException if Torque is not connected when the call runs,
+     * and with TimeoutException if it takes longer than timeoutMs. Cancelling the future,
+     * or timing out, interrupts the call's thread; a binder transaction that is already in
+     * Torque cannot be aborted, so its result is simply dropped.
+     * 
+     * @param method    Method name, used for the latency histogram and logs
+     * @param call      Call to make with the connected service
+     * @param timeoutMs Time the caller is willing to wait, including time queued behind other calls
+     * @return Future of the call's result
      */
-    public void unbindFromTorqueService() {
-        if (isConnected) {
+    public <T> ListenableFuture<T> call(String method, TorqueCall<T> call, long timeoutMs) {
+        LatencyHistogram histogram = getLatencyHistogram(method);
+        ListenableFuture<T> future = binderExecutor.submit(() -> {
+            ITorqueService service = torqueService;
+            if (service == null) {
+                throw new RemoteException("Not connected to Torque Pro");
+            }
+            long start = System.nanoTime();
             try {
-                context.unbindService(serviceConnection);
-                Log.d(TAG, "Successfully unbound from Torque service");
-            } catch (Exception e) {
-                Log.e(TAG, "Error unbinding from service", e);
+                return call.call(service);
             } finally {
-                isConnected = false;
-                torqueService = null;
+                histogram.record(System.nanoTime() - start);
             }
+        });
+        return Futures.withTimeout(future, timeoutMs, TimeUnit.MILLISECONDS, timeoutExecutor);
+    }
+
+    /**
+     * Runs a task on the binder thread after every call queued before it, whether or not
+     * Torque is connected. A call that outlived its timeout may still be running there, so
+     * state it uses can only be torn down safely behind it.
+     * 
+     * @param task Task to run; it must not block on Torque
+     * @return Future of the task
+     */
+    public ListenableFuture<?> runAfterCalls(Runnable task) {
+        return binderExecutor.submit(task);
+    }
+
+    private static Thread newDaemonThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Takes a reference on the Torque connection, binding the service if this is the first
+     * one. Each successful acquire() must be matched by one release().
+     * 
+     * @return true if the service is bound or binding, false if Torque is not installed or
+     *         the bind failed; no reference is held in that case
+     */
+    @MainThread
+    public boolean acquire() {
+        handler.removeCallbacks(lingerUnbind);
+        if (state.get() != State.UNBOUND) {
+            refGauge.set(refCount.incrementAndGet());
+            return true;
+        }
+        if (!bindToTorqueService()) {
+            return false;
+        }
+        refGauge.set(refCount.incrementAndGet());
+        return true;
+    }
+
+    /**
+     * Drops a reference taken by acquire(). The service is unbound LINGER_MS after the last
+     * reference is released, unless it is acquired again in the meantime.
+     */
+    @MainThread
+    public void release() {
+        int remaining = refCount.decrementAndGet();
+        refGauge.set(Math.max(remaining, 0));
+        if (remaining < 0) {
+            refCount.set(0);
+            Log.w(TAG, "release() without matching acquire()");
+            return;
+        }
+        if (remaining == 0) {
+            handler.removeCallbacks(lingerUnbind);
+            handler.postDelayed(lingerUnbind, LINGER_MS);
+        }
+    }
+
+    private void unbindIfUnused() {
+        if (refCount.get() == 0) {
+            unbindFromTorqueService();
+        }
+    }
+
+    /**
+     * Unbinds from the Torque service if currently bound.
+     */
+    private void unbindFromTorqueService() {
+        State previous = state.getAndSet(State.UNBOUND);
+        if (previous == State.UNBOUND) {
+            return;
+        }
+        try {
+            context.unbindService(serviceConnection);
+            Log.d(TAG, "Successfully unbound from Torque service");
+        } catch (Exception e) {
+            Log.e(TAG, "Error unbinding from service", e);
+        } finally {
+            serviceConnection = null;
+            torqueService = null;
         }
     }
 
@@ -172,18 +377,13 @@ public class TorqueServiceManager {
      * 
      * @return true if binding process started successfully, false otherwise
      */
-    public boolean bindToTorqueService() {
+    private boolean bindToTorqueService() {
         Log.d(TAG, "Attempting to bind to Torque service");
 
-        if (context == null) {
-            Log.e(TAG, "Context is null when binding to service");
-            return false;
-        }
-
         if (!isTorqueInstalled()) {
             Log.d(TAG, "Torque is not installed");
-            if (connectionListener != null) {
-                connectionListener.onTorqueNotInstalled();
+            for (TorqueConnectionListener listener : connectionListeners) {
+                listener.onTorqueNotInstalled();
             }
             return false;
         }
@@ -192,8 +392,8 @@ public class TorqueServiceManager {
     }
 
     private boolean attemptServiceBinding() {
-        if (isConnected) {
-            Log.d(TAG, "Already connected to Torque service");
+        if (!state.compareAndSet(State.UNBOUND, State.BINDING)) {
+            Log.d(TAG, "Already bound to Torque service");
             return true;
         }
 
@@ -204,118 +404,223 @@ public class TorqueServiceManager {
             serviceConnection = new ServiceConnection() {
                 @Override
                 public void onServiceConnected(ComponentName name, IBinder service) {
-                    Log.d(TAG, "Service connected");
+                    if (serviceConnection != this) {
+                        return; // Unbound while the bind was in flight
+                    }
+                    long latencyNanos = System.nanoTime() - bindStartedAt;
+                    long latencyMs = latencyNanos / 1_000_000L;
+                    lastBindLatencyMs = latencyMs;
+                    bindLatency.record(latencyNanos);
+                    Log.d(TAG, "Service connected in " + latencyMs + "ms");
                     try {
                         torqueService = ITorqueService.Stub.asInterface(service);
-                        isConnected = true;
-                        if (connectionListener != null) {
-                            connectionListener.onTorqueConnected();
+                        state.set(State.CONNECTED);
+                        for (TorqueConnectionListener listener : connectionListeners) {
+                            listener.onTorqueConnected();
                         }
                     } catch (Exception e) {
                         Log.e(TAG, "Failed to get Torque interface", e);
-                        if (connectionListener != null) {
-                            connectionListener.onTorqueError("Failed to get Torque interface: " + e.getMessage());
-                        }
+                        notifyError("Failed to get Torque interface: " + e.getMessage());
                     }
                 }
 
                 @Override
                 public void onServiceDisconnected(ComponentName name) {
+                    if (serviceConnection != this) {
+                        return;
+                    }
+                    // Torque's process died; the binding stays and reconnects when it restarts
                     Log.d(TAG, "Service disconnected");
                     torqueService = null;
-                    isConnected = false;
-                    if (connectionListener != null) {
-                        connectionListener.onTorqueDisconnected();
+                    state.compareAndSet(State.CONNECTED, State.BINDING);
+                    bindStartedAt = System.nanoTime();
+                    for (TorqueConnectionListener listener : connectionListeners) {
+                        listener.onTorqueDisconnected();
                     }
                 }
             };
 
+            bindStartedAt = System.nanoTime();
+            bindCount.increment();
             boolean bound = context.bindService(intent, serviceConnection, Context.BIND_AUTO_CREATE);
             Log.d(TAG, "Bind attempt result: " + bound);
+            if (!bound) {
+                unbindFromTorqueService();
+            }
             return bound;
 
         } catch (Exception e) {
             Log.e(TAG, "Error binding to service", e);
-            if (connectionListener != null) {
-                connectionListener.onTorqueError("Error binding to service: " + e.getMessage());
-            }
+            state.set(State.UNBOUND);
+            serviceConnection = null;
+            notifyError("Error binding to service: " + e.getMessage());
             return false;
         }
     }
 
+    private void notifyError(String error) {
+        // Imports report errors from the binder thread; listeners always run on the main thread
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            handler.post(() -> notifyError(error));
+            return;
+        }
+        for (TorqueConnectionListener listener : connectionListeners) {
+            listener.onTorqueError(error);
+        }
+    }
+
     /**
      * Imports PID data into Torque Pro.
      * Formats and sends PID data using the appropriate service method.
+     * Blocks until Torque answers; prefer importPidsAsync() on the main thread.
      * 
      * @param pids List of PID data to import
      * @return true if import was successful, false otherwise
      * @throws RemoteException if service communication fails
      */
+    @WorkerThread
     public boolean importPids(List<PidData> pids) throws RemoteException {
-        if (!isConnected) {
-            if (connectionListener != null) {
-                connectionListener.onTorqueError("Not connected to Torque Pro");
-            }
+        return importPids(pids, new PidSelection(pids.size(), true));
+    }
+
+    /**
+     * Imports the selected rows of a PID list into Torque Pro.
+     * Only selected rows are visited, and nothing is copied besides the arrays sent to Torque.
+     * Blocks until Torque answers; prefer importPidsAsync() on the main thread.
+     * 
+     * @param pids      PID list the selection refers to
+     * @param selection Rows of pids to import
+     * @return true if import was successful, false otherwise
+     * @throws RemoteException if service communication fails
+     */
+    @WorkerThread
+    public boolean importPids(List<PidData> pids, PidSelection selection) throws RemoteException {
+        ITorqueService service = torqueService;
+        if (service == null) {
+            notifyError("Not connected to Torque Pro");
             return false;
         }
 
+        long start = System.nanoTime();
         try {
-            int size = pids.size();
-            String[] names = new String[size];
-            String[] shortNames = new String[size];
-            String[] modeAndPIDs = new String[size];
-            String[] equations = new String[size];
-            float[] minValues = new float[size];
-            float[] maxValues = new float[size];
-            String[] units = new String[size];
-            String[] headers = new String[size];
-
-            for (int i = 0; i < size; i++) {
-                PidData pid = pids.get(i);
-                names[i] = pid.getName();
-                shortNames[i] = pid.getShortName();
-                String modeAndPID = pid.getModeAndPID();
-                // Remove "0x" prefix if present
-                modeAndPIDs[i] = modeAndPID.startsWith("0x") ? modeAndPID.substring(2) : modeAndPID;
-                equations[i] = pid.getEquation();
-                minValues[i] = pid.getMinValue();
-                maxValues[i] = pid.getMaxValue();
-                units[i] = pid.getUnit();
-                headers[i] = pid.getHeader();
-            }
-
-            boolean success = torqueService.sendPIDDataPrivate(
-                "jejusoul.com.github.obd_pids_for_hkmc_evs",
-                names,
-                shortNames,
-                modeAndPIDs,
-                equations,
-                minValues,
-                maxValues,
-                units,
-                headers
-            );
-
-            if (success) {
-                Log.d(TAG, "Successfully imported " + size + " PIDs");
-                if (connectionListener != null) {
-                    connectionListener.onTorqueConnected();
-                }
-            } else {
-                String error = "Failed to import PIDs";
-                Log.e(TAG, error);
-                if (connectionListener != null) {
-                    connectionListener.onTorqueError(error);
-                }
-            }
-            return success;
+            return sendPids(service, pids, selection);
         } catch (Exception e) {
             String error = "Error importing PIDs: " + e.getMessage();
             Log.e(TAG, error, e);
-            if (connectionListener != null) {
-                connectionListener.onTorqueError(error);
-            }
+            notifyError(error);
             return false;
+        } finally {
+            getLatencyHistogram(CALL_SEND_PID_DATA).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Imports the selected rows of a PID list on the binder thread.
+     * 
+     * The selection is copied before returning, so the caller may keep editing it; the rows
+     * of pids are read on the binder thread and must not change until the future completes.
+     * 
+     * @param pids      PID list the selection refers to
+     * @param selection Rows of pids to import
+     * @param timeoutMs See call()
+     * @return Future of Torque's answer: true if the PIDs were accepted
+     */
+    public ListenableFuture<Boolean> importPidsAsync(List<PidData> pids, PidSelection selection, long timeoutMs) {
+        PidSelection rows = selection.copy();
+        return call(CALL_SEND_PID_DATA, service -> sendPids(service, pids, rows), timeoutMs);
+    }
+
+    /**
+     * Identifies the connected car on the binder thread; see VehicleDetector.
+     * 
+     * @param detector  Detector over the installed catalog
+     * @param timeoutMs See call(); DETECT_TIMEOUT_MS covers a few unanswered bus requests
+     * @return Future of the detected vehicle, or of null if it could not be told apart
+     */
+    public ListenableFuture<VehicleDetector.Result> detectVehicleAsync(VehicleDetector detector, long timeoutMs) {
+        return call(CALL_DETECT_VEHICLE, service -> detector.detect(new VehicleDetector.Probe() {
+            @Override
+            public String[] getVehicleProfileInformation() throws RemoteException {
+                return service.getVehicleProfileInformation();
+            }
+
+            @Override
+            public boolean canSendCommands() throws RemoteException {
+                return service.hasFullPermissions();
+            }
+
+            @Override
+            public String[] sendCommand(String header, String command) throws RemoteException {
+                return service.sendCommandGetResponse(header, command);
+            }
+        }), timeoutMs);
+    }
+
+    /**
+     * @param service Service handed to a TorqueCall
+     * @return TorqueLink for telemetry stages; valid only within that call
+     */
+    public static TorqueLink linkTo(ITorqueService service) {
+        return new TorqueLink() {
+            @Override
+            public String[] sendCommand(String header, String command) throws RemoteException {
+                return service.sendCommandGetResponse(header, command);
+            }
+
+            @Override
+            public boolean setPidInformation(String name, String shortName, String unit, float max,
+                                             float min, float value) throws RemoteException {
+                return service.setPIDInformation(name, shortName, unit, max, min, value, null);
+            }
+        };
+    }
+
+    private boolean sendPids(ITorqueService service, List<PidData> pids, PidSelection selection)
+            throws RemoteException {
+        int size = selection.getSelectedCount();
+        String[] names = new String[size];
+        String[] shortNames = new String[size];
+        String[] modeAndPIDs = new String[size];
+        String[] equations = new String[size];
+        float[] minValues = new float[size];
+        float[] maxValues = new float[size];
+        String[] units = new String[size];
+        String[] headers = new String[size];
+
+        int i = 0;
+        for (int row = selection.nextSelected(0); row >= 0; row = selection.nextSelected(row + 1), i++) {
+            PidData pid = pids.get(row);
+            names[i] = pid.getName();
+            shortNames[i] = pid.getShortName();
+            String modeAndPID = pid.getModeAndPID();
+            // Remove "0x" prefix if present
+            modeAndPIDs[i] = modeAndPID.startsWith("0x") ? modeAndPID.substring(2) : modeAndPID;
+            equations[i] = pid.getEquation();
+            minValues[i] = pid.getMinValue();
+            maxValues[i] = pid.getMaxValue();
+            units[i] = pid.getUnit();
+            headers[i] = pid.getHeader();
+        }
+
+        boolean success = service.sendPIDDataPrivate(
+            "jejusoul.com.github.obd_pids_for_hkmc_evs",
+            names,
+            shortNames,
+            modeAndPIDs,
+            equations,
+            minValues,
+            maxValues,
+            units,
+            headers
+        );
+
+        if (success) {
+            Log.d(TAG, "Successfully imported " + size + " PIDs");
+        } else {
+            String error = "Failed to import PIDs";
+            Log.e(TAG, error);
+            notifyError(error);
         }
+        return success;
     }
 }
\ No newline at end of file
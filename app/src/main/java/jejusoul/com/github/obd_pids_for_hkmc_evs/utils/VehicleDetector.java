@@ -0,0 +1,368 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import android.os.RemoteException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * VehicleDetector works out which vehicle folder of the PID catalog the connected car is.
+ *
+ * It tries the cheapest evidence first and stops at the first unambiguous answer:
+ * 1. The Torque profile name, e.g. a profile called "My Soul EV" matches "Soul EV"
+ * 2. The VIN, read with the vehicles' own VIN PIDs (mode 0902 on their header); a vehicle
+ *    whose ECU answers with a valid VIN is a match, and known VIN prefixes break ties
+ * 3. Probing the ECU headers only one candidate uses, with that header's first PID
+ *
+ * Requests 2 and 3 go over the OBD bus, so they need Torque's full plugin permissions and
+ * are skipped without them. Probes are deduplicated and capped per vehicle, so detection
+ * costs a handful of bus requests however many vehicles the catalog holds.
+ *
+ * Usage Example:
+ * VehicleDetector detector = VehicleDetector.fromCatalog(catalog);
+ * VehicleDetector.Result result = detector.detect(probe);
+ * if (result != null) settings.setSubscribedVehicles(Collections.singleton(result.vehicle));
+ */
+public class VehicleDetector {
+    static final String VIN_COMMAND = "0902";
+    private static final int VIN_LENGTH = 17;
+    private static final int MAX_HEADER_PROBES = 3;
+    // VIN prefixes (WMI plus model code) of the vehicles the upstream repository covers
+    private static final String[][] VIN_PREFIXES = {
+            {"KNDJX3A", "Soul EV"},
+    };
+
+    // Tenth VIN character of model years 2010 to 2039, which skip I, O, Q, U, Z and 0
+    private static final String MODEL_YEAR_CODES = "ABCDEFGHJKLMNPRSTVWXY123456789";
+
+    private final List<Candidate> candidates;
+
+    /**
+     * How the connected car can be asked about itself; implemented over ITorqueService.
+     */
+    public interface Probe {
+        /**
+         * @return Torque's vehicle profile, [0] being the profile name, or null
+         */
+        @Nullable
+        String[] getVehicleProfileInformation() throws RemoteException;
+
+        /**
+         * @return true if sendCommand() may be used
+         */
+        boolean canSendCommands() throws RemoteException;
+
+        /**
+         * @return Raw response lines of the adapter, or null
+         */
+        @Nullable
+        String[] sendCommand(String header, String command) throws RemoteException;
+    }
+
+    public enum Source {
+        PROFILE,
+        VIN,
+        HEADERS
+    }
+
+    public static final class Result {
+        public final String vehicle;
+        public final Source source;
+        /**
+         * VIN read from the car, or null if detection did not get that far
+         */
+        @Nullable
+        public final String vin;
+
+        Result(String vehicle, Source source, @Nullable String vin) {
+            this.vehicle = vehicle;
+            this.source = source;
+            this.vin = vin;
+        }
+    }
+
+    /**
+     * What the detector knows about one vehicle folder of the catalog.
+     */
+    static final class Candidate {
+        final String vehicle;
+        // Header of the vehicle's VIN PID, or null if it has none
+        String vinHeader;
+        // First PID per header, in catalog order
+        final Map<String, String> probes = new LinkedHashMap<>();
+
+        Candidate(String vehicle) {
+            this.vehicle = vehicle;
+        }
+    }
+
+    VehicleDetector(List<Candidate> candidates) {
+        this.candidates = candidates;
+    }
+
+    /**
+     * Collect the vehicles of a catalog with their headers and VIN PIDs. Only header and
+     * mode strings are read, not whole rows.
+     */
+    @NonNull
+    public static VehicleDetector fromCatalog(PidCatalog catalog) {
+        Map<String, Candidate> byVehicle = new LinkedHashMap<>();
+        for (int file = 0; file < catalog.getFileCount(); file++) {
+            String vehicle = VehicleFilter.vehicleOf(catalog.getFilePath(file));
+            if (vehicle == null) {
+                continue;
+            }
+            Candidate candidate = byVehicle.get(vehicle);
+            if (candidate == null) {
+                candidate = new Candidate(vehicle);
+                byVehicle.put(vehicle, candidate);
+            }
+            int first = catalog.getFirstPid(file);
+            int end = first + catalog.getPidCount(file);
+            for (int pid = first; pid < end; pid++) {
+                String header = catalog.getHeader(pid);
+                if (header.isEmpty()) {
+                    continue;
+                }
+                String modeAndPid = catalog.getModeAndPid(pid);
+                if (candidate.vinHeader == null && VIN_COMMAND.equalsIgnoreCase(modeAndPid)) {
+                    candidate.vinHeader = header;
+                }
+                if (!candidate.probes.containsKey(header)) {
+                    candidate.probes.put(header, modeAndPid);
+                }
+            }
+        }
+        return new VehicleDetector(new ArrayList<>(byVehicle.values()));
+    }
+
+    /**
+     * @return Vehicles found in the catalog
+     */
+    public List<String> getVehicles() {
+        List<String> vehicles = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            vehicles.add(candidate.vehicle);
+        }
+        return vehicles;
+    }
+
+    /**
+     * Identify the connected car. Blocks on binder and bus calls.
+     * @return Detected vehicle, or null if the catalog holds fewer than two vehicles or the
+     *         evidence does not single one out
+     */
+    @Nullable
+    @WorkerThread
+    public Result detect(Probe probe) throws RemoteException {
+        if (candidates.size() < 2) {
+            return null; // Nothing to narrow down
+        }
+
+        String[] profile = probe.getVehicleProfileInformation();
+        if (profile != null && profile.length > 0 && profile[0] != null) {
+            String vehicle = matchProfileName(profile[0]);
+            if (vehicle != null) {
+                return new Result(vehicle, Source.PROFILE, null);
+            }
+        }
+
+        if (!probe.canSendCommands()) {
+            return null;
+        }
+
+        String vin = null;
+        List<Candidate> remaining = candidates;
+        List<Candidate> answered = new ArrayList<>();
+        Map<String, String> vinByHeader = new LinkedHashMap<>();
+        for (Candidate candidate : candidates) {
+            if (candidate.vinHeader == null) {
+                continue;
+            }
+            if (!vinByHeader.containsKey(candidate.vinHeader)) {
+                vinByHeader.put(candidate.vinHeader,
+                        parseVin(probe.sendCommand(candidate.vinHeader, VIN_COMMAND)));
+            }
+            String candidateVin = vinByHeader.get(candidate.vinHeader);
+            if (candidateVin != null) {
+                vin = candidateVin;
+                answered.add(candidate);
+            }
+        }
+        if (vin != null) {
+            String byPrefix = matchVinPrefix(vin, answered);
+            if (byPrefix != null) {
+                return new Result(byPrefix, Source.VIN, vin);
+            }
+            if (answered.size() == 1) {
+                return new Result(answered.get(0).vehicle, Source.VIN, vin);
+            }
+            remaining = answered;
+        }
+
+        String vehicle = probeHeaders(probe, remaining);
+        return vehicle != null ? new Result(vehicle, Source.HEADERS, vin) : null;
+    }
+
+    /**
+     * @return The vehicle whose name the profile name contains, preferring the longest
+     *         name so "Niro EV" wins over "Niro"; null if none or a tie
+     */
+    @Nullable
+    String matchProfileName(String profileName) {
+        String profile = normalize(profileName);
+        String best = null;
+        int bestLength = 0;
+        boolean tie = false;
+        for (Candidate candidate : candidates) {
+            String name = normalize(candidate.vehicle);
+            if (name.isEmpty() || !profile.contains(name)) {
+                continue;
+            }
+            if (name.length() > bestLength) {
+                best = candidate.vehicle;
+                bestLength = name.length();
+                tie = false;
+            } else if (name.length() == bestLength) {
+                tie = true;
+            }
+        }
+        return tie ? null : best;
+    }
+
+    @Nullable
+    private static String matchVinPrefix(String vin, List<Candidate> answered) {
+        for (String[] prefix : VIN_PREFIXES) {
+            if (!vin.startsWith(prefix[0])) {
+                continue;
+            }
+            for (Candidate candidate : answered) {
+                if (normalize(candidate.vehicle).equals(normalize(prefix[1]))) {
+                    return candidate.vehicle;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Probe the headers that only one candidate uses; the candidate with the most answering
+     * headers wins.
+     */
+    @Nullable
+    private static String probeHeaders(Probe probe, List<Candidate> remaining) throws RemoteException {
+        Map<String, Boolean> answers = new LinkedHashMap<>();
+        String best = null;
+        int bestScore = 0;
+        boolean tie = false;
+        for (Candidate candidate : remaining) {
+            Set<String> shared = new HashSet<>();
+            for (Candidate other : remaining) {
+                if (other != candidate) {
+                    shared.addAll(other.probes.keySet());
+                }
+            }
+            int score = 0;
+            int probes = 0;
+            for (Map.Entry<String, String> entry : candidate.probes.entrySet()) {
+                if (probes == MAX_HEADER_PROBES) {
+                    break;
+                }
+                String header = entry.getKey();
+                if (shared.contains(header)) {
+                    continue;
+                }
+                probes++;
+                Boolean answered = answers.get(header);
+                if (answered == null) {
+                    answered = isAnswer(probe.sendCommand(header, entry.getValue()));
+                    answers.put(header, answered);
+                }
+                if (answered) {
+                    score++;
+                }
+            }
+            if (score > bestScore) {
+                best = candidate.vehicle;
+                bestScore = score;
+                tie = false;
+            } else if (score == bestScore && score > 0) {
+                tie = true;
+            }
+        }
+        return tie ? null : best;
+    }
+
+    /**
+     * @return true if the response carries data rather than an adapter error
+     */
+    static boolean isAnswer(@Nullable String[] response) {
+        return ObdResponse.parse(response, new byte[ObdResponse.MAX_PAYLOAD]) > 0;
+    }
+
+    /**
+     * Decode a mode 09 PID 02 response into a VIN.
+     * @return The VIN, or null if the response holds no valid one
+     */
+    @Nullable
+    static String parseVin(@Nullable String[] response) {
+        byte[] payload = new byte[ObdResponse.MAX_PAYLOAD];
+        int length = ObdResponse.parse(response, payload);
+        // Skip to the payload after the 49 02 reply header and the message count
+        int start = -1;
+        for (int i = 0; i + 1 < length; i++) {
+            if (payload[i] == 0x49 && payload[i + 1] == 0x02) {
+                start = i + 2;
+                break;
+            }
+        }
+        if (start < 0) {
+            return null;
+        }
+        StringBuilder vin = new StringBuilder();
+        for (int i = start; i < length; i++) {
+            char c = (char) (payload[i] & 0xFF);
+            if (isVinChar(c)) {
+                vin.append(c);
+            }
+        }
+        // Some ECUs pad the front with zeros or a message count; the VIN is the last 17
+        return vin.length() >= VIN_LENGTH ? vin.substring(vin.length() - VIN_LENGTH) : null;
+    }
+
+    /**
+     * @return Model year the VIN's tenth character stands for, taking the 2010 to 2039 cycle
+     *         as no EV predates it; -1 if the VIN is not one
+     */
+    public static int getModelYear(@Nullable String vin) {
+        if (vin == null || vin.length() != VIN_LENGTH) {
+            return -1;
+        }
+        int code = MODEL_YEAR_CODES.indexOf(vin.charAt(9));
+        return code >= 0 ? 2010 + code : -1;
+    }
+
+    private static boolean isVinChar(char c) {
+        // VINs use digits and capitals except I, O and Q
+        return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z' && c != 'I' && c != 'O' && c != 'Q');
+    }
+
+    private static String normalize(String name) {
+        StringBuilder normalized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = Character.toLowerCase(name.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * VehicleFilter decides which PID files of the upstream repository belong to the user's vehicles.
+ *
+ * The repository keeps one folder per vehicle ("Soul EV/...", "Ioniq/..."); the first path
+ * segment of a file is its vehicle. An empty subscription set means "all vehicles", which is
+ * also the default before the user has picked any.
+ *
+ * Paths are relative to the repository root and use '/' as separator.
+ *
+ * Usage Example:
+ * VehicleFilter filter = new VehicleFilter(settings.getSubscribedVehicles());
+ * if (filter.matches("Soul EV/Kia_Soul_EV_BMS_data.csv")) { ... }
+ */
+public class VehicleFilter {
+    private static final String CSV_EXTENSION = ".csv";
+
+    public static final VehicleFilter ALL = new VehicleFilter(Collections.emptySet());
+
+    private final Set<String> vehicles;
+
+    public VehicleFilter(Collection<String> vehicles) {
+        this.vehicles = Collections.unmodifiableSet(new HashSet<>(vehicles));
+    }
+
+    public boolean isAll() {
+        return vehicles.isEmpty();
+    }
+
+    public Set<String> getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * @param relativePath Path relative to the repository root
+     * @return true if the path is a CSV file of a subscribed vehicle
+     */
+    public boolean matches(String relativePath) {
+        if (!isCsv(relativePath)) {
+            return false;
+        }
+        if (isAll()) {
+            return true;
+        }
+        String vehicle = vehicleOf(relativePath);
+        return vehicle != null && vehicles.contains(vehicle);
+    }
+
+    /**
+     * @param relativePath Path relative to the repository root
+     * @return Vehicle folder of the path, or null for files at the repository root
+     */
+    @Nullable
+    public static String vehicleOf(String relativePath) {
+        int slash = relativePath.indexOf('/');
+        return slash > 0 ? relativePath.substring(0, slash) : null;
+    }
+
+    public static boolean isCsv(String path) {
+        return path != null && path.toLowerCase().endsWith(CSV_EXTENSION);
+    }
+}
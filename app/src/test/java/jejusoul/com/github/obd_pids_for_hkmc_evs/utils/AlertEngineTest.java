@@ -0,0 +1,199 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for AlertRule parsing, AlertEngine's hysteresis and debounce, and resolving rules
+ * against plugin and catalog PIDs in AlertMonitor.
+ */
+public class AlertEngineTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    /**
+     * Records alerts as "+rule" when raised and "-rule" when cleared.
+     */
+    private static class RecordingListener implements AlertEngine.Listener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onAlert(AlertRule rule, double value, boolean active) {
+            events.add((active ? "+" : "-") + rule.getSignal());
+        }
+    }
+
+    @Test
+    public void parsesRules() throws Exception {
+        AlertRule rule = AlertRule.parse("Cell Voltage Delta > 40 mV");
+        assertEquals("Cell Voltage Delta", rule.getSignal());
+        assertEquals(AlertRule.Operator.ABOVE, rule.getOperator());
+        assertEquals(40, rule.getThreshold(), 0);
+        assertEquals("mV", rule.getUnit());
+        assertEquals(0.8, rule.getHysteresis(), 1e-9);
+        assertEquals(AlertRule.DEFAULT_DEBOUNCE_MS, rule.getDebounceMs());
+
+        rule = AlertRule.parse("Aux Batt Volts <= 11.8 V +-0.3 for 10s");
+        assertEquals("Aux Batt Volts", rule.getSignal());
+        assertEquals(AlertRule.Operator.AT_MOST, rule.getOperator());
+        assertEquals(11.8, rule.getThreshold(), 0);
+        assertEquals(0.3, rule.getHysteresis(), 1e-9);
+        assertEquals(10_000, rule.getDebounceMs());
+
+        rule = AlertRule.parse("Batt MaxT >= -10 for 0s");
+        assertEquals("", rule.getUnit());
+        assertEquals(-10, rule.getThreshold(), 0);
+        assertEquals(0, rule.getDebounceMs());
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsRuleWithoutOperator() throws Exception {
+        AlertRule.parse("Cell Voltage Delta 40");
+    }
+
+    @Test
+    public void raisesAfterDebounceAndClearsPastHysteresis() throws Exception {
+        AlertEngine engine = new AlertEngine(
+                Collections.singletonList(AlertRule.parse("Temp > 45 C +-2 for 3s")), new int[] {0});
+        RecordingListener listener = new RecordingListener();
+        double[] values = {46};
+
+        assertEquals(0, engine.evaluate(values, 0, listener));
+        assertEquals(0, engine.evaluate(values, 2 * SECOND, listener));
+        assertEquals(1, engine.evaluate(values, 3 * SECOND, listener));
+        assertEquals(Collections.singletonList("+Temp"), listener.events);
+
+        // Inside the hysteresis band the alert stays up
+        values[0] = 44;
+        assertEquals(1, engine.evaluate(values, 4 * SECOND, listener));
+        values[0] = 43;
+        assertEquals(0, engine.evaluate(values, 5 * SECOND, listener));
+        assertEquals(Arrays.asList("+Temp", "-Temp"), listener.events);
+    }
+
+    @Test
+    public void clearsAtThresholdWithoutHysteresis() throws Exception {
+        AlertEngine engine = new AlertEngine(
+                Collections.singletonList(AlertRule.parse("Drifting Cell > 0 for 0s")), new int[] {0});
+        RecordingListener listener = new RecordingListener();
+        double[] values = {37};
+        assertEquals(1, engine.evaluate(values, 0, listener));
+        values[0] = 0;
+        assertEquals(0, engine.evaluate(values, SECOND, listener));
+    }
+
+    @Test
+    public void dipRestartsDebounce() throws Exception {
+        AlertEngine engine = new AlertEngine(
+                Collections.singletonList(AlertRule.parse("Aux < 11.8 for 3s")), new int[] {0});
+        RecordingListener listener = new RecordingListener();
+        double[] values = {11.5};
+        engine.evaluate(values, 0, listener);
+        values[0] = 12.0;
+        engine.evaluate(values, 2 * SECOND, listener);
+        values[0] = 11.5;
+        engine.evaluate(values, 3 * SECOND, listener);
+        engine.evaluate(values, 5 * SECOND, listener);
+        assertTrue(listener.events.isEmpty());
+        engine.evaluate(values, 6 * SECOND, listener);
+        assertEquals(Collections.singletonList("+Aux"), listener.events);
+    }
+
+    @Test
+    public void missingValuesNeitherRaiseNorClear() throws Exception {
+        AlertEngine engine = new AlertEngine(Arrays.asList(
+                AlertRule.parse("A > 1 for 0s"), AlertRule.parse("B < 1 for 0s")), new int[] {0, 1});
+        RecordingListener listener = new RecordingListener();
+        double[] values = {2, Double.NaN};
+        assertEquals(1, engine.evaluate(values, 0, listener));
+        values[0] = Double.NaN;
+        assertEquals(1, engine.evaluate(values, SECOND, listener));
+        assertTrue(engine.isActive(0));
+        assertFalse(engine.isActive(1));
+        assertEquals(Collections.singletonList("+A"), listener.events);
+    }
+
+    @Test
+    public void missingValueKeepsDebounceRunning() throws Exception {
+        AlertEngine engine = new AlertEngine(
+                Collections.singletonList(AlertRule.parse("Aux < 11.8 for 3s")), new int[] {0});
+        RecordingListener listener = new RecordingListener();
+        double[] values = {11.5};
+        engine.evaluate(values, 0, listener);
+        values[0] = Double.NaN;
+        engine.evaluate(values, 2 * SECOND, listener);
+        values[0] = 11.5;
+        assertEquals(1, engine.evaluate(values, 3 * SECOND, listener));
+        assertEquals(Collections.singletonList("+Aux"), listener.events);
+    }
+
+    @Test
+    public void monitorWatchesPluginPids() throws Exception {
+        PidPublisher publisher = new PidPublisher(PidPublisher.DEFAULT_MAX_CALLS_PER_SECOND);
+        int slot = publisher.register(CellMonitor.PID_DELTA, "Cell Delta", "mV", 0, 1000, 1);
+        RecordingListener listener = new RecordingListener();
+        AlertMonitor monitor = AlertMonitor.compile(Arrays.asList(
+                AlertRule.parse("Cell Delta > 40 mV for 0s"),
+                AlertRule.parse("Aux Batt Volts < 11.8 V")), null, publisher, listener);
+
+        assertNotNull(monitor);
+        assertEquals(1, monitor.getEngine().getRuleCount());
+        assertEquals("Aux Batt Volts", monitor.getSkippedRules().get(0).getSignal());
+
+        publisher.set(slot, 30);
+        monitor.poll(null);
+        publisher.set(slot, 55);
+        monitor.poll(null);
+        assertEquals(Collections.singletonList("+Cell Delta"), listener.events);
+    }
+
+    @Test
+    public void monitorReadsReferencedCatalogPids() throws Exception {
+        PidCatalogWriter writer = new PidCatalogWriter();
+        writer.addFile("Soul EV/Kia_Soul_EV_BMS_data.csv", new PidCsvParser(true).parse(new StringReader(
+                "000_Battery Current,Batt Current,2101,((Signed(K)*256)+L)/10,-230,230,A,7E4\n"
+                + "000_Battery DC Voltage,Batt Volts,2101,((m<8)+n)/10,268.8,403.2,V,7E4\n"
+                + "000_Battery Power,Energy Draw,2101,val{000_Battery Current}*val{000_Battery DC Voltage}/1000,-90,90,kW,7E4\n"
+                + "000_Motor Power,Motor Power,2101,val{000_Motor Current}*2,0,100,kW,7E4\n"),
+                "bms.csv").pids);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.write(output);
+        PidCatalog catalog = PidCatalog.wrap(ByteBuffer.wrap(output.toByteArray()));
+        RecordingListener listener = new RecordingListener();
+        AlertMonitor monitor = AlertMonitor.compile(Arrays.asList(
+                AlertRule.parse("Battery Power > 4 kW for 0s"),
+                AlertRule.parse("Motor Power > 50 kW")), catalog,
+                new PidPublisher(PidPublisher.DEFAULT_MAX_CALLS_PER_SECOND), listener);
+
+        assertNotNull(monitor);
+        assertEquals(1, monitor.getEngine().getRuleCount());
+        assertEquals("Motor Power", monitor.getSkippedRules().get(0).getSignal());
+        // 12.3 A at 360.0 V
+        monitor.poll(new TorqueLink() {
+            @Override
+            public String[] sendCommand(String header, String command) {
+                return new String[]{
+                        "7EC 10 10 61 01 00 00 00 00",
+                        "7EC 21 00 00 00 00 00 00 00",
+                        "7EC 22 7B 0E 10 00 00 00 00"
+                };
+            }
+
+            @Override
+            public boolean setPidInformation(String name, String shortName, String unit, float max,
+                                             float min, float value) {
+                return true;
+            }
+        });
+        assertEquals(Collections.singletonList("+Battery Power"), listener.events);
+    }
+}
@@ -0,0 +1,234 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tests for CellAnalyzer, CellStats and CellMonitor over a Soul EV style layout: 96 cells in
+ * three blocks of 32 on 7E4, data bytes E..AJ of each block.
+ */
+public class CellAnalyzerTest {
+    private static final String[] BLOCKS = {"2102", "2103", "2104"};
+
+    /**
+     * Fake Torque answering the cell blocks and recording published PIDs.
+     */
+    private static class FakeLink implements TorqueLink {
+        final Map<String, String[]> responses = new HashMap<>();
+        final Map<String, Float> published = new HashMap<>();
+        int requests;
+
+        @Override
+        public String[] sendCommand(String header, String command) {
+            requests++;
+            String[] response = responses.get(header + " " + command);
+            return response != null ? response : new String[]{"NO DATA"};
+        }
+
+        @Override
+        public boolean setPidInformation(String name, String shortName, String unit, float max,
+                                         float min, float value) {
+            published.put(name, value);
+            return true;
+        }
+    }
+
+    private static List<PidData> soulCells() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for (int cell = 1; cell <= 96; cell++) {
+            String block = BLOCKS[(cell - 1) / 32];
+            csv.append(String.format(Locale.US, "000_Cell Voltage %02d,Cell %02d,%s,%s/50,2.80,4.20,V,7E4\n",
+                    cell, cell, block, letters(4 + (cell - 1) % 32)));
+        }
+        return new PidCsvParser(true).parse(new StringReader(csv.toString()), "cells.csv").pids;
+    }
+
+    private static String letters(int index) {
+        if (index < 26) {
+            return String.valueOf((char) ('a' + index));
+        }
+        index -= 26;
+        return "" + (char) ('a' + index / 26) + (char) ('a' + index % 26);
+    }
+
+    /**
+     * @param raw Raw cell bytes of the block, volts * 50
+     * @return Response as the adapter prints it with CAN headers on
+     */
+    private static String[] blockResponse(String command, int[] raw) {
+        List<Integer> bytes = new ArrayList<>();
+        bytes.add(0x61);
+        bytes.add(Integer.parseInt(command.substring(2), 16));
+        for (int i = 0; i < 4; i++) {
+            bytes.add(0xFF);
+        }
+        for (int value : raw) {
+            bytes.add(value);
+        }
+        List<String> lines = new ArrayList<>();
+        StringBuilder line = new StringBuilder(String.format("7EC 10 %02X", bytes.size()));
+        int room = 6;
+        int sequence = 1;
+        for (int b : bytes) {
+            if (room == 0) {
+                lines.add(line.toString());
+                line = new StringBuilder(String.format("7EC %02X", 0x20 + (sequence++ & 0x0F)));
+                room = 7;
+            }
+            line.append(String.format(" %02X", b));
+            room--;
+        }
+        lines.add(line.toString());
+        return lines.toArray(new String[0]);
+    }
+
+    private static FakeLink linkWithCells(int[] raw) {
+        FakeLink link = new FakeLink();
+        for (int block = 0; block < BLOCKS.length; block++) {
+            int[] cells = new int[32];
+            System.arraycopy(raw, block * 32, cells, 0, 32);
+            link.responses.put("7E4 " + BLOCKS[block], blockResponse(BLOCKS[block], cells));
+        }
+        return link;
+    }
+
+    @Test
+    public void groupsCellsIntoBlocks() throws Exception {
+        CellAnalyzer analyzer = CellAnalyzer.fromPids(soulCells());
+        assertEquals(96, analyzer.getCellCount());
+        assertEquals(3, analyzer.getBlockCount());
+        assertEquals("2103", analyzer.getBlockCommand(1));
+        assertEquals("7E4", analyzer.getBlockHeader(2));
+        assertEquals(96, analyzer.getCellNumber(95));
+    }
+
+    @Test
+    public void decodesBlockLikeTheEquations() throws Exception {
+        List<PidData> pids = soulCells();
+        CellAnalyzer analyzer = CellAnalyzer.fromPids(pids);
+        int[] raw = new int[32];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = 180 + i;
+        }
+        byte[] payload = new byte[ObdResponse.MAX_PAYLOAD];
+        int length = ObdResponse.parse(blockResponse("2102", raw), payload);
+        float[] cells = new float[96];
+        assertTrue(analyzer.decodeBlock(0, payload, length, cells));
+
+        // The fast path must agree with Torque's evaluation of each row
+        PidEquation last = PidEquation.parse(pids.get(31).getEquation());
+        float expected = (float) last.evaluate(new PidEquation.Context() {
+            @Override
+            public int byteAt(int index) {
+                return index == 35 ? raw[31] : 0;
+            }
+
+            @Override
+            public double valueOf(String name) {
+                return 0;
+            }
+
+            @Override
+            public double average(int slot, int window, double sample) {
+                return sample;
+            }
+        });
+        assertEquals(expected, cells[31], 1e-6f);
+        assertEquals(3.6f, cells[0], 1e-6f);
+    }
+
+    @Test
+    public void fallsBackToEquationForOtherForms() throws Exception {
+        List<PidData> pids = new PidCsvParser(true).parse(new StringReader(
+                "Cell Voltage 1,Cell 1,2102,(A*256+B)/1000,0,5,V,7E4\n"), "cells.csv").pids;
+        CellAnalyzer analyzer = CellAnalyzer.fromPids(pids);
+        byte[] payload = new byte[ObdResponse.MAX_PAYLOAD];
+        int length = ObdResponse.parse(new String[]{"7EC 04 61 02 0F 3C"}, payload);
+        float[] cells = new float[1];
+        assertTrue(analyzer.decodeBlock(0, payload, length, cells));
+        assertEquals(3.9f, cells[0], 1e-6f);
+    }
+
+    @Test
+    public void rejectsShortOrForeignPayloads() throws Exception {
+        CellAnalyzer analyzer = CellAnalyzer.fromPids(soulCells());
+        byte[] payload = new byte[ObdResponse.MAX_PAYLOAD];
+        float[] cells = new float[96];
+        int length = ObdResponse.parse(new String[]{"7EC 05 61 02 FF FF B4"}, payload);
+        assertFalse(analyzer.decodeBlock(0, payload, length, cells));
+        length = ObdResponse.parse(blockResponse("2103", new int[32]), payload);
+        assertFalse(analyzer.decodeBlock(0, payload, length, cells));
+    }
+
+    @Test
+    public void statsMatchTwoPassComputation() {
+        float[] cells = {3.90f, 3.92f, Float.NaN, 3.88f, 3.95f, 3.91f};
+        CellStats stats = new CellStats();
+        stats.update(cells, cells.length);
+        assertEquals(5, stats.getCount());
+        assertEquals(3.88f, stats.getMin(), 0);
+        assertEquals(3.95f, stats.getMax(), 0);
+        assertEquals(0.07f, stats.getDelta(), 1e-6f);
+        assertEquals(3, stats.getMinIndex());
+        assertEquals(4, stats.getMaxIndex());
+
+        double mean = (3.90 + 3.92 + 3.88 + 3.95 + 3.91) / 5;
+        double sum = 0;
+        for (float cell : cells) {
+            if (!Float.isNaN(cell)) {
+                sum += (cell - mean) * (cell - mean);
+            }
+        }
+        assertEquals((float) mean, stats.getMean(), 1e-6f);
+        assertEquals((float) Math.sqrt(sum / 5), stats.getStdDev(), 1e-6f);
+    }
+
+    @Test
+    public void monitorPublishesPackFigures() throws Exception {
+        int[] raw = new int[96];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = 195;
+        }
+        raw[40] = 190; // Cell 41 is weakest
+        raw[70] = 197;
+        FakeLink link = linkWithCells(raw);
+        PidPublisher publisher = new PidPublisher(PidPublisher.DEFAULT_MAX_CALLS_PER_SECOND);
+        new CellMonitor(CellAnalyzer.fromPids(soulCells()), publisher, 0).poll(link);
+        publisher.flush(link);
+
+        assertEquals(3, link.requests);
+        assertEquals(3.8f, link.published.get(CellMonitor.PID_MIN), 1e-6f);
+        assertEquals(3.94f, link.published.get(CellMonitor.PID_MAX), 1e-6f);
+        assertEquals(140f, link.published.get(CellMonitor.PID_DELTA), 1e-3f);
+        assertEquals(41f, link.published.get(CellMonitor.PID_WEAKEST), 0);
+    }
+
+    @Test
+    public void monitorDropsIncompleteSamples() throws Exception {
+        FakeLink link = linkWithCells(new int[96]);
+        link.responses.remove("7E4 2104");
+        PidPublisher publisher = new PidPublisher(PidPublisher.DEFAULT_MAX_CALLS_PER_SECOND);
+        new CellMonitor(CellAnalyzer.fromPids(soulCells()), publisher, 0).poll(link);
+        publisher.flush(link);
+        assertTrue(link.published.isEmpty());
+    }
+
+    @Test
+    public void monitorSamplesAtMostOncePerInterval() throws Exception {
+        FakeLink link = linkWithCells(new int[96]);
+        PidPublisher publisher = new PidPublisher(PidPublisher.DEFAULT_MAX_CALLS_PER_SECOND);
+        CellMonitor monitor = new CellMonitor(CellAnalyzer.fromPids(soulCells()), publisher, 60_000);
+        monitor.poll(link);
+        monitor.poll(link);
+        assertEquals(3, link.requests);
+    }
+}
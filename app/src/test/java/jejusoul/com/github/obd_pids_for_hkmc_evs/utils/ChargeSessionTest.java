@@ -0,0 +1,323 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for ChargeCurve, ChargeSession and ChargeSessionMonitor.
+ */
+public class ChargeSessionTest {
+    private static final long SECOND = 1_000_000_000L;
+    private static final String BMS =
+            "002_Normal Charge Port,AC Plug,2101,{j:5},0,1,,7E4\n"
+            + "002_Rapid Charge Port,DC Plug,2101,{j:6},0,1,,7E4\n"
+            + "000_Battery Current,Batt Current,2101,((Signed(K)*256)+L)/10,-230,230,A,7E4\n"
+            + "000_Battery DC Voltage,Batt Volts,2101,((m<8)+n)/10,268.8,403.2,V,7E4\n"
+            + "000_State of Charge BMS,SOC BMS,2101,e/2,0,100,%,7E4\n"
+            + "000_Battery Max Temperature,Batt Max Temp,2101,Signed(O),-20,60,C,7E4\n";
+    private static final String OBC =
+            "002_OBC_Charging_Voltage,AC Volts,2102,((g<8)+h)/10,0,260,V,794\n"
+            + "002_OBC_Charging_Current,AC Amps,2102,((m<8)+n)/10,0,40,A,794\n"
+            + "002_OBC Temp 1,OBC Temp,2102,Signed(S),-20,100,C,794\n";
+    // The 2016 model year reads the AC current from O P instead of M N
+    private static final String OBC_2016 =
+            "002_OBC_Charging_Voltage,AC Volts,2102,((g<8)+h)/10,0,260,V,794\n"
+            + "002_OBC_Charging_Current,AC Amps,2102,((o<8)+p)/10,0,40,A,794\n"
+            + "002_OBC Temp 1,OBC Temp,2102,Signed(S),-20,100,C,794\n";
+    private static final String VIN = "005_Year,Year,0902,K+1945,2014,2035,,7E2\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void tenHourSessionStaysSmall() throws Exception {
+        ChargeSession session = new ChargeSession(1_700_000_000_000L, 0, false);
+        // 10 hours at one sample per second, far more often than the monitor samples
+        for (int s = 0; s <= 36_000; s++) {
+            session.add(s * SECOND, 6.3f, 7.0f, 20 + s / 500f, 25, 40);
+        }
+        ChargeCurve curve = session.getCurve();
+        assertTrue(curve.size() <= ChargeCurve.DEFAULT_CAPACITY);
+        assertEquals(16, curve.getStride());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        session.writeTo(new DataOutputStream(bytes));
+        assertTrue("size " + bytes.size(), bytes.size() < 64 * 1024);
+
+        // 6.3f is not exact in binary; the integration itself adds no error
+        assertEquals(63.0, session.getDcKwh(), 1e-4);
+        assertEquals(70.0, session.getAcKwh(), 1e-4);
+        assertEquals(0.9f, session.getEfficiency(), 1e-5f);
+        assertEquals(36_000, session.getDurationSeconds());
+    }
+
+    @Test
+    public void curveQuantizesAndKeepsMissingValues() {
+        ChargeCurve curve = new ChargeCurve(4);
+        curve.add(0, 6.424f, Float.NaN, 64.2f, -7.4f, Float.NaN);
+        assertEquals(6.42f, curve.getDcKw(0), 1e-6f);
+        assertTrue(Float.isNaN(curve.getAcKw(0)));
+        assertEquals(64.0f, curve.getSoc(0), 0);
+        assertEquals(-7f, curve.getBatteryTemp(0), 0);
+        assertTrue(Float.isNaN(curve.getChargerTemp(0)));
+    }
+
+    @Test
+    public void curveHalvesResolutionWhenFull() {
+        ChargeCurve curve = new ChargeCurve(4);
+        for (int s = 0; s < 8; s++) {
+            curve.add(s, 1, 1, 50, 20, 30);
+        }
+        assertEquals(2, curve.getStride());
+        assertEquals(4, curve.size());
+        assertEquals(0, curve.getSeconds(0));
+        assertEquals(2, curve.getSeconds(1));
+        assertEquals(6, curve.getSeconds(3));
+    }
+
+    @Test
+    public void sessionRoundTrips() throws Exception {
+        ChargeSession session = new ChargeSession(1_700_000_000_000L, 0, false);
+        for (int s = 0; s <= 60; s += 10) {
+            session.add(s * SECOND, 6f, 6.6f, 50 + s / 60f, 24, 38);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        session.writeTo(new DataOutputStream(bytes));
+        ChargeSession read = ChargeSession.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(session.getStartMillis(), read.getStartMillis());
+        assertEquals(session.getDcKwh(), read.getDcKwh(), 0);
+        assertEquals(session.getEfficiency(), read.getEfficiency(), 0);
+        assertEquals(51f, read.getEndSoc(), 0);
+        assertEquals(7, read.getCurve().size());
+        assertEquals(60, read.getCurve().getSeconds(6));
+    }
+
+    @Test
+    public void curveRejectsImpossibleStrideAndSize() throws Exception {
+        assertEquals(2, readCurve(curveBytes(4, 2)).size());
+        int[][] corrupt = {{0, 2}, {-2, 2}, {3, 2}, {1, -1}, {1, ChargeCurve.DEFAULT_CAPACITY + 2}};
+        for (int[] header : corrupt) {
+            try {
+                readCurve(curveBytes(header[0], header[1]));
+                fail("stride " + header[0] + ", size " + header[1]);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    /**
+     * A curve file with the given header and zeroed samples.
+     */
+    private static byte[] curveBytes(int stride, int size) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        new ChargeCurve(4).writeTo(new DataOutputStream(header));
+        // Version byte, stride and size, then 11 bytes per sample
+        ByteBuffer buffer = ByteBuffer.allocate(header.size() + Math.max(size, 0) * 11);
+        buffer.put(header.toByteArray()).putInt(1, stride).putInt(5, size);
+        return buffer.array();
+    }
+
+    private static ChargeCurve readCurve(byte[] bytes) throws IOException {
+        return ChargeCurve.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void storeKeepsNewestSessions() throws Exception {
+        ChargeSessionStore store = new ChargeSessionStore(folder.newFolder("sessions"));
+        for (int i = 0; i < ChargeSessionStore.MAX_SESSIONS + 2; i++) {
+            ChargeSession session = new ChargeSession(1_000 + i, 0, false);
+            session.add(0, 1, 1, 50, 20, 30);
+            store.save(session);
+        }
+        List<File> files = store.list();
+        assertEquals(ChargeSessionStore.MAX_SESSIONS, files.size());
+        assertEquals(1_002, store.load(files.get(0)).getStartMillis());
+    }
+
+    /**
+     * Fake car: a plugged-in flag and AC charging at 230 V / 30 A into a 360 V pack at -18 A.
+     * The charger's O P hold 15 A, what a 2016 file would read as the current.
+     */
+    private static class FakeCar implements TorqueLink {
+        boolean plugged = true;
+        String vin;
+        final List<String> requests = new ArrayList<>();
+
+        @Override
+        public String[] sendCommand(String header, String command) {
+            requests.add(header + " " + command);
+            if (command.equals("2101")) {
+                // A..O: E = SOC * 2, J bit 5 = normal port, K L = -180 (0.1 A), M N = 3600, O = 25
+                return new String[]{response(0x61, 0x01,
+                        0, 0, 0, 0, 101, 0, 0, 0, 0, plugged ? 0x20 : 0, 0xFF, 0x4C, 0x0E, 0x10, 25)};
+            }
+            if (command.equals("0902")) {
+                if (vin == null) {
+                    return new String[]{"NO DATA"};
+                }
+                int[] bytes = new int[3 + vin.length()];
+                bytes[0] = 0x49;
+                bytes[1] = 0x02;
+                bytes[2] = 0x01;
+                for (int i = 0; i < vin.length(); i++) {
+                    bytes[3 + i] = vin.charAt(i);
+                }
+                return new String[]{response(bytes)};
+            }
+            // A..S: G H = 2300 (0.1 V), M N = 300 (0.1 A), O P = 150, S = 41
+            return new String[]{response(0x61, 0x02,
+                    0, 0, 0, 0, 0, 0, 0x08, 0xFC, 0, 0, 0, 0, 0x01, 0x2C, 0x00, 0x96, 0, 0, 41)};
+        }
+
+        @Override
+        public boolean setPidInformation(String name, String shortName, String unit, float max,
+                                         float min, float value) {
+            return true;
+        }
+    }
+
+    /**
+     * @return Response lines of one message, auto-formatted
+     */
+    private static String response(int... bytes) {
+        StringBuilder line = new StringBuilder("0:");
+        for (int b : bytes) {
+            line.append(String.format(" %02X", b));
+        }
+        return line.toString();
+    }
+
+    private static PidCatalog catalog() throws Exception {
+        return catalog(false, false);
+    }
+
+    private static PidCatalog catalog(boolean obc2016, boolean vin) throws Exception {
+        PidCatalogWriter writer = new PidCatalogWriter();
+        writer.addFile("Soul EV/Kia_Soul_EV_BMS_data.csv",
+                new PidCsvParser(true).parse(new StringReader(BMS), "bms.csv").pids);
+        writer.addFile("Soul EV/Kia_Soul_EV_OBC2015_data.csv",
+                new PidCsvParser(true).parse(new StringReader(OBC), "obc.csv").pids);
+        if (obc2016) {
+            writer.addFile("Soul EV/Kia_Soul_EV_OBC2016_data.csv",
+                    new PidCsvParser(true).parse(new StringReader(OBC_2016), "obc2016.csv").pids);
+        }
+        if (vin) {
+            writer.addFile("Soul EV/Kia_Soul_EV_VIN_data.csv",
+                    new PidCsvParser(true).parse(new StringReader(VIN), "vin.csv").pids);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.write(output);
+        return PidCatalog.wrap(ByteBuffer.wrap(output.toByteArray()));
+    }
+
+    @Test
+    public void monitorRecordsSessionFromPlugInToUnplug() throws Exception {
+        PidPublisher publisher = new PidPublisher(PidPublisher.DEFAULT_MAX_CALLS_PER_SECOND);
+        ChargeSessionMonitor monitor = new ChargeSessionMonitor(
+                PidBlockReader.fromCatalog(catalog(), ChargeSessionMonitor.BMS_PIDS),
+                PidBlockReader.fromCatalog(catalog(), ChargeSessionMonitor.OBC_PIDS),
+                publisher, null, 0, 0);
+        FakeCar car = new FakeCar();
+        monitor.poll(car);
+        monitor.poll(car);
+        ChargeSession session = monitor.getSession();
+        assertNotNull(session);
+        assertFalse(session.isRapid());
+        assertEquals(2, session.getCurve().size());
+        assertEquals(6.48f, session.getCurve().getDcKw(0), 1e-6f);
+        assertEquals(6.9f, session.getCurve().getAcKw(0), 1e-6f);
+        assertEquals(50.5f, session.getStartSoc(), 0);
+        assertEquals(41f, session.getCurve().getChargerTemp(0), 0);
+
+        car.plugged = false;
+        monitor.poll(car);
+        assertNull(monitor.getSession());
+        assertSame(session, monitor.getLastSession());
+        // Idle checks only read the BMS
+        car.requests.clear();
+        monitor.poll(car);
+        assertEquals(1, car.requests.size());
+    }
+
+    @Test
+    public void stoppingMidChargeSavesSession() throws Exception {
+        ChargeSessionStore store = new ChargeSessionStore(folder.newFolder("sessions"));
+        ChargeSessionMonitor monitor = new ChargeSessionMonitor(
+                PidBlockReader.fromCatalog(catalog(), ChargeSessionMonitor.BMS_PIDS),
+                PidBlockReader.fromCatalog(catalog(), ChargeSessionMonitor.OBC_PIDS),
+                new PidPublisher(PidPublisher.DEFAULT_MAX_CALLS_PER_SECOND), store, 0, 0);
+        FakeCar car = new FakeCar();
+        monitor.poll(car);
+        monitor.poll(car);
+
+        monitor.onStop();
+
+        assertNull(monitor.getSession());
+        List<File> files = store.list();
+        assertEquals(1, files.size());
+        assertEquals(2, store.load(files.get(0)).getCurve().size());
+    }
+
+    /**
+     * @return AC kW of the first sample of a session monitored with the catalog's charger files
+     */
+    private static float firstAcKw(PidCatalog catalog, String knownVin, FakeCar car) throws Exception {
+        PidPublisher publisher = new PidPublisher(PidPublisher.DEFAULT_MAX_CALLS_PER_SECOND);
+        ChargeSessionMonitor monitor = ChargeSessionMonitor.fromCatalog(catalog, publisher, null, knownVin);
+        monitor.poll(car);
+        return monitor.getSession().getCurve().getAcKw(0);
+    }
+
+    @Test
+    public void picksChargerFileOfModelYear() throws Exception {
+        FakeCar car = new FakeCar();
+        // 2015 (F) reads M N, 30 A
+        assertEquals(6.9f, firstAcKw(catalog(true, true), "KNDJX3AE5F7000001", car), 1e-6f);
+        assertFalse(car.requests.contains("7E2 0902"));
+
+        // Unknown until read from the car: 2016 (G) reads O P, 15 A
+        car.vin = "KNDJX3AE5G7000001";
+        assertEquals(3.45f, firstAcKw(catalog(true, true), null, car), 1e-6f);
+        assertTrue(car.requests.contains("7E2 0902"));
+
+        // A single charger file needs no model year
+        assertEquals(6.9f, firstAcKw(catalog(false, false), null, new FakeCar()), 1e-6f);
+    }
+
+    @Test
+    public void unknownModelYearDropsAcSide() throws Exception {
+        PidPublisher publisher = new PidPublisher(PidPublisher.DEFAULT_MAX_CALLS_PER_SECOND);
+        PidCatalog catalog = catalog(true, true);
+        ChargeSessionMonitor monitor = new ChargeSessionMonitor(
+                PidBlockReader.fromCatalog(catalog, ChargeSessionMonitor.BMS_PIDS), null,
+                ChargeSessionMonitor.ChargerFiles.fromCatalog(catalog), publisher, null, 0, 0);
+        FakeCar car = new FakeCar();
+        monitor.poll(car);
+        monitor.poll(car);
+
+        ChargeSession session = monitor.getSession();
+        assertTrue(Float.isNaN(session.getCurve().getAcKw(1)));
+        assertTrue(Float.isNaN(publisher.get(publisher.findSlot(ChargeSessionMonitor.PID_AC_ENERGY))));
+        assertTrue(Float.isNaN(publisher.get(publisher.findSlot(ChargeSessionMonitor.PID_EFFICIENCY))));
+        // The VIN is asked for once
+        int vinRequests = 0;
+        for (String request : car.requests) {
+            vinRequests += request.equals("7E2 0902") ? 1 : 0;
+        }
+        assertEquals(1, vinRequests);
+    }
+}
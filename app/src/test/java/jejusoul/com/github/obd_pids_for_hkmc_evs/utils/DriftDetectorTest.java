@@ -0,0 +1,72 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Tests for DriftDetector: the median, common-mode rejection and flagging a slowly drifting
+ * channel.
+ */
+public class DriftDetectorTest {
+    private static final int CELLS = 96;
+
+    @Test
+    public void mediansOfOddAndEvenCounts() {
+        assertEquals(3f, DriftDetector.median(new float[] {5, 1, 3, 4, 2}, 5), 0);
+        assertEquals(2.5f, DriftDetector.median(new float[] {4, 1, 3, 2}, 4), 0);
+        assertEquals(7f, DriftDetector.median(new float[] {7, 7, 7, 9, 1, 7}, 6), 0);
+    }
+
+    @Test
+    public void packWideMovesAreNotDrift() {
+        DriftDetector drift = new DriftDetector(CELLS, 0.02f, 0.002f, 4f);
+        float[] cells = new float[CELLS];
+        Random random = new Random(1);
+        for (int sample = 0; sample < 500; sample++) {
+            // The whole pack sags and recovers, with quantised noise per cell
+            float pack = 3.9f - 0.3f * (float) Math.sin(sample / 20.0);
+            for (int i = 0; i < CELLS; i++) {
+                cells[i] = Math.round((pack + (float) random.nextGaussian() * 0.004f) / 0.02f) * 0.02f;
+            }
+            assertTrue(drift.update(cells, CELLS));
+        }
+        assertEquals(0, drift.getFlaggedCount());
+    }
+
+    @Test
+    public void flagsDriftingCellBeforeItIsFarOff() {
+        DriftDetector drift = new DriftDetector(CELLS, 0.02f, 0.002f, 4f);
+        float[] cells = new float[CELLS];
+        Random random = new Random(2);
+        int firstFlagged = -1;
+        for (int sample = 0; sample < 2000 && firstFlagged < 0; sample++) {
+            for (int i = 0; i < CELLS; i++) {
+                cells[i] = 3.9f + (float) random.nextGaussian() * 0.003f;
+            }
+            // Cell 37 sinks by 1 mV every 100 samples
+            cells[37] -= sample * 0.00001f;
+            drift.update(cells, CELLS);
+            if (drift.getFlaggedCount() > 0) {
+                firstFlagged = sample;
+            }
+        }
+        assertTrue("never flagged", firstFlagged >= 0);
+        assertEquals(37, drift.getMaxIndex());
+        assertTrue(drift.isFlagged(37));
+        assertTrue(drift.getMaxZScore() < 0);
+        // Flagged while still far from a 40 mV imbalance alert
+        assertTrue("flagged at " + firstFlagged, firstFlagged * 0.00001f < 0.04f);
+    }
+
+    @Test
+    public void skipsMissingChannels() {
+        DriftDetector drift = new DriftDetector(4, 0.5f, 0.5f, 4f);
+        assertFalse(drift.update(new float[] {20, Float.NaN, Float.NaN, 21}, 4));
+        assertTrue(drift.update(new float[] {20, 21, Float.NaN, 22}, 4));
+        assertTrue(Float.isNaN(drift.getZScore(2)));
+        assertEquals(-1f, drift.getMean(0), 0);
+    }
+}
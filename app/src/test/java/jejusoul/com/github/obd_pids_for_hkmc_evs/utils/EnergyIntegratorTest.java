@@ -0,0 +1,94 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Tests for EnergyIntegrator: trapezoidal accuracy, sign changes and gaps.
+ */
+public class EnergyIntegratorTest {
+    private static final long MS = 1_000_000L;
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void constantPowerGivesExactEnergy() {
+        EnergyIntegrator integrator = new EnergyIntegrator();
+        // 36 kW for 100 s is 1 kWh
+        for (int i = 0; i <= 100; i++) {
+            integrator.add(i * 1000 * MS, 36_000, false);
+        }
+        assertEquals(1.0, integrator.getDischargedKwh(), EPSILON);
+        assertEquals(0.0, integrator.getRegenKwh(), EPSILON);
+    }
+
+    @Test
+    public void unevenSamplingOfRampIsExact() {
+        // Trapezoids are exact on a linear ramp however the samples fall
+        EnergyIntegrator integrator = new EnergyIntegrator();
+        Random random = new Random(42);
+        long time = 0;
+        long end = 200_000 * MS;
+        while (time < end) {
+            integrator.add(time, rampWatts(time), false);
+            time += (50 + random.nextInt(2000)) * MS;
+        }
+        integrator.add(end, rampWatts(end), false);
+        // Integral of 360 W/s * t over 200 s is 360 * 200^2 / 2 J
+        assertEquals(360.0 * 200 * 200 / 2 / 3_600_000, integrator.getDischargedKwh(), EPSILON);
+    }
+
+    private static double rampWatts(long timeNanos) {
+        return 360.0 * timeNanos / 1e9;
+    }
+
+    @Test
+    public void signChangeIsSplitAtZeroCrossing() {
+        EnergyIntegrator integrator = new EnergyIntegrator();
+        integrator.add(0, 36_000, false);
+        integrator.add(2000 * MS, -36_000, false);
+        // The line crosses zero at 1 s: 18 kJ out, then 18 kJ back in
+        assertEquals(0.005, integrator.getDischargedKwh(), EPSILON);
+        assertEquals(0.005, integrator.getRegenKwh(), EPSILON);
+        assertEquals(0.0, integrator.getNetKwh(), EPSILON);
+    }
+
+    @Test
+    public void chargingIsSeparateFromRegen() {
+        EnergyIntegrator integrator = new EnergyIntegrator();
+        integrator.add(0, -7_200, true);
+        integrator.add(1000 * MS, -7_200, true);
+        integrator.add(2000 * MS, -7_200, false);
+        assertEquals(0.002, integrator.getChargedKwh(), EPSILON);
+        assertEquals(0.002, integrator.getRegenKwh(), EPSILON);
+    }
+
+    @Test
+    public void gapsAreNotBridged() {
+        EnergyIntegrator integrator = new EnergyIntegrator();
+        integrator.add(0, 36_000, false);
+        integrator.add(1000 * MS, 36_000, false);
+        integrator.add((1000 + EnergyIntegrator.MAX_GAP_MS + 1) * MS, 36_000, false);
+        assertEquals(0.01, integrator.getDischargedKwh(), EPSILON);
+
+        // A failed read also starts a new segment
+        integrator.add(100_000 * MS, 36_000, false);
+        integrator.add(101_000 * MS, Double.NaN, false);
+        integrator.add(102_000 * MS, 36_000, false);
+        assertEquals(0.01, integrator.getDischargedKwh(), EPSILON);
+    }
+
+    @Test
+    public void restoreContinuesFromCheckpoint() {
+        EnergyIntegrator integrator = new EnergyIntegrator();
+        integrator.restore(1.5, 0.25, 0);
+        integrator.add(0, 36_000, false);
+        integrator.add(1000 * MS, 36_000, false);
+        assertEquals(1.51, integrator.getDischargedKwh(), EPSILON);
+        assertEquals(1.26, integrator.getNetKwh(), EPSILON);
+        integrator.reset();
+        assertEquals(0.0, integrator.getDischargedKwh(), 0);
+    }
+}
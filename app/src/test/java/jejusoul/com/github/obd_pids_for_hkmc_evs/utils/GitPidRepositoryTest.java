@@ -0,0 +1,133 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.URIish;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Runs GitPidRepository against a local bare repository standing in for GitHub.
+ */
+public class GitPidRepositoryTest {
+    private static final String BMS_LINE = "000_Battery Current,Batt Current,2101,((Signed(K)*256)+L)/10,-230,230,A,7E4\n";
+    private static final String CELL_LINE = "000_Cell Voltage 01,Cell 01,2102,e/50,2.80,4.20,V,7E4\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File upstreamDir;
+    private String bareUri;
+    private Git upstream;
+
+    @Before
+    public void setUp() throws IOException, GitAPIException, URISyntaxException {
+        File bareDir = temporaryFolder.newFolder("remote.git");
+        Git.init().setBare(true).setDirectory(bareDir).setInitialBranch("master").call().close();
+        bareUri = bareDir.toURI().toString();
+
+        upstreamDir = temporaryFolder.newFolder("upstream");
+        upstream = Git.init().setDirectory(upstreamDir).setInitialBranch("master").call();
+        upstream.remoteAdd().setName("origin").setUri(new URIish(bareUri)).call();
+
+        write("Soul EV/Kia_Soul_EV_BMS_data.csv", BMS_LINE);
+        write("Soul EV/Kia_Soul_EV_Battery_Cell_data.csv", CELL_LINE);
+        write("Ioniq/Ioniq_BMS_data.csv", BMS_LINE);
+        write("README.md", "PIDs\n");
+        commitAndPush("Initial PIDs");
+    }
+
+    @After
+    public void tearDown() {
+        upstream.close();
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(upstreamDir, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ObjectId commitAndPush(String message) throws GitAPIException {
+        upstream.add().addFilepattern(".").call();
+        upstream.add().addFilepattern(".").setUpdate(true).call();
+        ObjectId id = upstream.commit().setMessage(message).setAuthor("PIDs", "pids@example.com").call();
+        upstream.push().setRemote("origin").add("master").call();
+        return id;
+    }
+
+    @Test
+    public void sync_FirstRun_ClonesShallowAndListsAllCsvFiles() throws IOException {
+        File localDir = new File(temporaryFolder.getRoot(), "local");
+        GitPidRepository repository = new GitPidRepository(localDir, bareUri, "master");
+
+        GitPidRepository.SyncResult result = repository.sync();
+
+        assertTrue(result.fullClone);
+        assertNull(result.oldHead);
+        assertEquals(new HashSet<>(Arrays.asList(
+                        "Soul EV/Kia_Soul_EV_BMS_data.csv",
+                        "Soul EV/Kia_Soul_EV_Battery_Cell_data.csv",
+                        "Ioniq/Ioniq_BMS_data.csv")),
+                new HashSet<>(result.changedPaths));
+        assertTrue("Clone should be shallow", new File(localDir, ".git/shallow").exists());
+        assertTrue(new File(localDir, "Soul EV/Kia_Soul_EV_BMS_data.csv").exists());
+    }
+
+    @Test
+    public void sync_AfterUpstreamEdits_ReportsOnlyChangedPaths() throws IOException, GitAPIException {
+        File localDir = new File(temporaryFolder.getRoot(), "local");
+        GitPidRepository repository = new GitPidRepository(localDir, bareUri, "master");
+        String firstHead = repository.sync().newHead;
+
+        write("Soul EV/Kia_Soul_EV_Battery_Cell_data.csv", CELL_LINE + CELL_LINE.replace("01", "02"));
+        write("Soul EV/Kia_Soul_EV_TPMS_data.csv", BMS_LINE);
+        new File(upstreamDir, "Ioniq/Ioniq_BMS_data.csv").delete();
+        write("README.md", "PIDs for HKMC EVs\n");
+        ObjectId secondHead = commitAndPush("Add cell 02, TPMS; drop Ioniq");
+
+        GitPidRepository.SyncResult result = repository.sync();
+
+        assertFalse(result.fullClone);
+        assertEquals(firstHead, result.oldHead);
+        assertEquals(secondHead.name(), result.newHead);
+        assertEquals(new HashSet<>(Arrays.asList(
+                        "Soul EV/Kia_Soul_EV_Battery_Cell_data.csv",
+                        "Soul EV/Kia_Soul_EV_TPMS_data.csv")),
+                new HashSet<>(result.changedPaths));
+        assertEquals(Arrays.asList("Ioniq/Ioniq_BMS_data.csv"), result.deletedPaths);
+
+        String cells = new String(Files.readAllBytes(
+                new File(localDir, "Soul EV/Kia_Soul_EV_Battery_Cell_data.csv").toPath()), StandardCharsets.UTF_8);
+        assertTrue("Work tree should be at the new commit", cells.contains("Cell 02"));
+        assertFalse(new File(localDir, "Ioniq/Ioniq_BMS_data.csv").exists());
+    }
+
+    @Test
+    public void sync_NoUpstreamChanges_IsUpToDate() throws IOException {
+        File localDir = new File(temporaryFolder.getRoot(), "local");
+        GitPidRepository repository = new GitPidRepository(localDir, bareUri, "master");
+        repository.sync();
+
+        GitPidRepository.SyncResult result = repository.sync();
+
+        assertTrue(result.isUpToDate());
+        assertTrue(result.changedPaths.isEmpty());
+        assertTrue(result.deletedPaths.isEmpty());
+    }
+}
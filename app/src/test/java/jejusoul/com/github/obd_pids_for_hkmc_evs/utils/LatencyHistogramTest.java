@@ -0,0 +1,73 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanMicros());
+        assertEquals(0, histogram.getPercentileMicros(99));
+    }
+
+    @Test
+    public void bucketsAreLinearBelowEightMicrosecondsThenLogLinear() {
+        for (int micros = 0; micros < 8; micros++) {
+            assertEquals(micros, LatencyHistogram.bucketOf(micros));
+        }
+        assertEquals(8, LatencyHistogram.bucketOf(8));
+        assertEquals(16, LatencyHistogram.bucketOf(16));
+        assertEquals(16, LatencyHistogram.bucketOf(17));
+        assertEquals(17, LatencyHistogram.bucketOf(18));
+        assertEquals(311, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void bucketsCoverEveryValueExactlyOnce() {
+        for (long micros = 0; micros < 100_000; micros++) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(micros <= LatencyHistogram.highestValueOf(bucket));
+            assertTrue(bucket == 0 || micros > LatencyHistogram.highestValueOf(bucket - 1));
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinOneEighth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1_000_000L); // 1ms
+        }
+        histogram.record(200_000_000L); // 200ms
+
+        assertEquals(100, histogram.getCount());
+        long p50 = histogram.getPercentileMicros(50);
+        assertTrue(String.valueOf(p50), p50 >= 1_000 && p50 <= 1_125);
+        assertEquals(p50, histogram.getPercentileMicros(99));
+        assertEquals(200_000, histogram.getPercentileMicros(100));
+        assertEquals(200_000, histogram.getMaxMicros());
+        assertEquals(2_990, histogram.getMeanMicros());
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5_000);
+        histogram.record(-1);
+        assertEquals(2, histogram.getCount());
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPercentileOutOfRange() {
+        new LatencyHistogram().getPercentileMicros(0);
+    }
+}
@@ -0,0 +1,142 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for Lttb and StreamingLttb: output stays within the chart's width and keeps the
+ * ends and the peaks of a series.
+ */
+public class LttbTest {
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Test
+    public void keepsEndsAndSpikes() {
+        int count = 10_000;
+        float[] x = new float[count];
+        float[] y = new float[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = i;
+            y[i] = (float) Math.sin(i / 500.0);
+        }
+        y[3_333] = 25;
+        y[7_777] = -25;
+        float[] outputX = new float[100];
+        float[] outputY = new float[100];
+
+        int points = Lttb.downsample(x, y, count, 100, outputX, outputY);
+
+        assertEquals(100, points);
+        assertEquals(0, outputX[0], 0);
+        assertEquals(count - 1, outputX[points - 1], 0);
+        boolean high = false;
+        boolean low = false;
+        for (int i = 0; i < points; i++) {
+            if (i > 0) {
+                assertTrue("x must increase", outputX[i] > outputX[i - 1]);
+            }
+            high |= outputY[i] == 25;
+            low |= outputY[i] == -25;
+        }
+        assertTrue("Lost the spike", high);
+        assertTrue("Lost the dip", low);
+    }
+
+    @Test
+    public void copiesShortSeries() {
+        float[] x = {0, 1, 2};
+        float[] y = {5, 6, 7};
+        float[] outputX = new float[10];
+        float[] outputY = new float[10];
+
+        assertEquals(3, Lttb.downsample(x, y, 3, 10, outputX, outputY));
+        assertEquals(7, outputY[2], 0);
+    }
+
+    @Test
+    public void downsamplesRecordingRawAndFromPyramid() {
+        Recording recording = new Recording(new String[] {"Value"});
+        float[] row = new float[1];
+        int rows = 6 * 3600;
+        for (int i = 0; i < rows; i++) {
+            row[0] = i == 12_345 ? 100 : i % 60;
+            recording.append(T0 + i * 1000L, row);
+        }
+        Lttb lttb = new Lttb(200);
+        float[] x = new float[200];
+        float[] y = new float[200];
+
+        // Five minutes fits in the raw input buffer
+        int points = lttb.downsample(recording, 0, T0 + 12_100_000L, T0 + 12_400_000L, x, y);
+        assertEquals(200, points);
+        assertEquals(0, x[0], 0);
+        assertEquals(299, x[points - 1], 0);
+        assertTrue(containsValue(y, points, 100));
+
+        // Six hours is read from the pyramid, as bucket extremes that keep the single spike
+        points = lttb.downsample(recording, 0, T0, T0 + rows * 1000L, x, y);
+        assertEquals(200, points);
+        for (int i = 0; i < points; i++) {
+            if (i > 0) {
+                assertTrue("x must increase", x[i] > x[i - 1]);
+            }
+            assertTrue(x[i] >= 0 && x[i] <= rows);
+            assertTrue(y[i] >= 0 && y[i] <= 100);
+        }
+        assertTrue(containsValue(y, points, 100));
+
+        assertEquals(0, lttb.downsample(recording, 0, T0 - 5000, T0 - 1000, x, y));
+    }
+
+    @Test
+    public void streamingKeepsOnePointPerBucket() {
+        StreamingLttb series = new StreamingLttb(100, 100);
+        float[] x = new float[series.getMaxPoints()];
+        float[] y = new float[series.getMaxPoints()];
+        for (int i = 0; i < 1_000; i++) {
+            float time = i * 0.25f;
+            series.add(time, i == 200 ? 50 : 0);
+        }
+
+        int points = series.copyTo(x, y);
+        assertTrue(points <= series.getMaxPoints());
+        // 250 s of buckets a second apart, of which the ring keeps the last 100
+        assertEquals(101, points);
+        assertEquals(249.75f, x[points - 1], 0);
+        for (int i = 1; i < points; i++) {
+            assertTrue("x must increase", x[i] > x[i - 1]);
+        }
+    }
+
+    @Test
+    public void streamingKeepsFirstPointAndSpike() {
+        StreamingLttb series = new StreamingLttb(100, 100);
+        float[] x = new float[series.getMaxPoints()];
+        float[] y = new float[series.getMaxPoints()];
+        int version = series.getVersion();
+        series.add(0.1f, 1);
+        assertNotEquals(version, series.getVersion());
+        assertEquals(1, series.copyTo(x, y));
+        assertEquals(0.1f, x[0], 0);
+
+        for (int i = 1; i < 200; i++) {
+            series.add(0.1f + i * 0.25f, i == 100 ? 50 : 1);
+        }
+        int points = series.copyTo(x, y);
+        assertEquals(0.1f, x[0], 0);
+        assertTrue("Lost the spike", containsValue(y, points, 50));
+
+        series.clear();
+        assertEquals(0, series.copyTo(x, y));
+    }
+
+    private static boolean containsValue(float[] values, int count, float value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
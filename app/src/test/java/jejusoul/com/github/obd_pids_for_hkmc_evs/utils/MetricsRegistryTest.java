@@ -0,0 +1,75 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for MetricsRegistry.
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    public void returnsTheSameMetricForAName() {
+        MetricsRegistry registry = new MetricsRegistry();
+        assertSame(registry.counter("a"), registry.counter("a"));
+        assertSame(registry.gauge("a"), registry.gauge("a"));
+        assertSame(registry.histogram("a"), registry.histogram("a"));
+        assertNotSame(registry.histogram("a"), registry.histogram("b"));
+    }
+
+    @Test
+    public void resetKeepsMetricObjects() {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsRegistry.Counter counter = registry.counter("csv.pids");
+        counter.add(5);
+        registry.histogram("csv.parse").record(1_000);
+        registry.reset();
+
+        assertSame(counter, registry.counter("csv.pids"));
+        assertEquals(0, counter.get());
+        assertEquals(0, registry.histogram("csv.parse").getCount());
+    }
+
+    @Test
+    public void jsonListsEveryMetricSortedByName() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("sync.copy.bytes").add(2048);
+        registry.counter("http.calls").increment();
+        registry.gauge("torque.refs").set(2);
+        registry.histogram("csv.parse").record(3_000_000L);
+
+        assertEquals("{\"counters\":{\"http.calls\":1,\"sync.copy.bytes\":2048},"
+                + "\"gauges\":{\"torque.refs\":2},"
+                + "\"histograms\":{\"csv.parse\":{\"count\":1,\"mean_us\":3000,\"p50_us\":3000,"
+                + "\"p90_us\":3000,\"p99_us\":3000,\"max_us\":3000}}}", registry.toJson());
+    }
+
+    @Test
+    public void jsonEscapesNames() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("a\"b\\c\n").increment();
+        assertEquals("{\"counters\":{\"a\\\"b\\\\c\\u000a\":1},\"gauges\":{},\"histograms\":{}}",
+                registry.toJson());
+    }
+
+    @Test
+    public void countsFromManyThreads() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    registry.counter("calls").increment();
+                    registry.histogram("latency").record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, registry.counter("calls").get());
+        assertEquals(40_000, registry.histogram("latency").getCount());
+    }
+}
@@ -0,0 +1,77 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for ObdResponse: ISO-TP reassembly of ELM327 output in its different formats.
+ */
+public class ObdResponseTest {
+    private final byte[] payload = new byte[ObdResponse.MAX_PAYLOAD];
+
+    @Test
+    public void stripsHeadersAndPciOfMultiFrameResponse() {
+        int length = ObdResponse.parse(new String[]{
+                "7EC 10 0A 61 02 FF C4 00",
+                "7EC 21 AA BB CC 00 00 00 00"
+        }, payload);
+        // The first frame announces 10 bytes; the zeros after CC are padding
+        assertEquals(10, length);
+        assertEquals(0x61, payload[0] & 0xFF);
+        assertEquals(0xAA, payload[5] & 0xFF);
+        assertEquals(2, ObdResponse.dataOffset(payload, length, "2102"));
+    }
+
+    @Test
+    public void parsesAutoFormattedAndHeaderlessFrames() {
+        int length = ObdResponse.parse(new String[]{"00A", "0: 61 02 FF C4 00 AA", "1: BB CC"}, payload);
+        assertEquals(8, length);
+        assertEquals(0xCC, payload[7] & 0xFF);
+
+        length = ObdResponse.parse(new String[]{"SEARCHING...", "03 41 0D 32"}, payload);
+        assertEquals(3, length);
+        assertEquals(2, ObdResponse.dataOffset(payload, length, "010D"));
+    }
+
+    @Test
+    public void cutsSingleFramePadding() {
+        int length = ObdResponse.parse(new String[]{"7E8 03 41 0D 32 AA AA AA AA"}, payload);
+        assertEquals(3, length);
+    }
+
+    @Test
+    public void parses29BitHeaders() {
+        int length = ObdResponse.parse(new String[]{"18DAF110 03 41 0D 32"}, payload);
+        assertEquals(3, length);
+        assertEquals(0x32, payload[2] & 0xFF);
+    }
+
+    @Test
+    public void toleratesPaddingAndRepeatedWhitespace() {
+        int length = ObdResponse.parse(new String[]{"  7ec\t10  0a 61 02 ff c4 00 ", "\r\n", " 7EC 21 AA  BB CC 00 00 00 00\r"}, payload);
+        assertEquals(10, length);
+        assertEquals(0xC4, payload[3] & 0xFF);
+        assertEquals(0xCC, payload[7] & 0xFF);
+        length = ObdResponse.parse(new String[]{" 00A ", "0:  61 02 FF C4 00 AA", "1: BB CC "}, payload);
+        assertEquals(8, length);
+        assertEquals(-1, ObdResponse.parse(new String[]{"  no data  "}, payload));
+    }
+
+    @Test
+    public void reportsAdapterErrors() {
+        assertEquals(-1, ObdResponse.parse(new String[]{"NO DATA"}, payload));
+        assertEquals(-1, ObdResponse.parse(new String[]{"CAN ERROR"}, payload));
+        assertEquals(-1, ObdResponse.parse(new String[]{""}, payload));
+        assertEquals(-1, ObdResponse.parse(null, payload));
+    }
+
+    @Test
+    public void rejectsResponseToAnotherCommand() {
+        int length = ObdResponse.parse(new String[]{"7EC 03 61 03 10"}, payload);
+        assertEquals(-1, ObdResponse.dataOffset(payload, length, "2102"));
+        // Negative response: 7F, service, reason
+        length = ObdResponse.parse(new String[]{"7EC 03 7F 21 12"}, payload);
+        assertEquals(-1, ObdResponse.dataOffset(payload, length, "2102"));
+    }
+}
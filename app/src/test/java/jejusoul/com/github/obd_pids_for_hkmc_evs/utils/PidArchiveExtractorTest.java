@@ -0,0 +1,169 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Tests for PidArchiveExtractor using archives laid out like GitHub branch archives.
+ */
+public class PidArchiveExtractorTest {
+    private static final String ROOT = "OBD-PIDs-for-HKMC-EVs-master/";
+    private static final String SOUL_BMS = "000_Battery Current,Batt Current,2101,((Signed(K)*256)+L)/10,-230,230,A,7E4\n";
+    private static final String IONIQ_BMS = "000_Battery Current,Batt Current,2101,((Signed(M)*256)+N)/10,-230,230,A,7E4\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final String[][] ENTRIES = {
+            {"README.md", "PIDs\n"},
+            {"Soul EV/Kia_Soul_EV_BMS_data.csv", SOUL_BMS},
+            {"Soul EV/Extended/Kia_Soul_EV_Cell_data.csv", SOUL_BMS},
+            {"Ioniq/Kia_Soul_EV_BMS_data.csv", IONIQ_BMS},
+            {"Kona EV/Kona_EV_BMS_data.csv", IONIQ_BMS},
+            {"Kona EV/notes.txt", "not a PID file\n"},
+    };
+
+    /**
+     * @return Archive bytes; the central directory starts at the returned length of truncated
+     */
+    private static byte[] buildArchive(ByteArrayOutputStream truncated) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bytes)) {
+            zos.putNextEntry(new ZipEntry(ROOT));
+            zos.closeEntry();
+            for (String[] entry : ENTRIES) {
+                zos.putNextEntry(new ZipEntry(ROOT + entry[0]));
+                zos.write(entry[1].getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+            zos.flush();
+            if (truncated != null) {
+                truncated.write(bytes.toByteArray());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private File writeArchive(byte[] bytes) throws IOException {
+        File zipFile = temporaryFolder.newFile("master.zip");
+        Files.write(zipFile.toPath(), bytes);
+        return zipFile;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void extract_AllVehicles_KeepsRepositoryLayout() throws IOException {
+        File zipFile = writeArchive(buildArchive(null));
+        File outputDir = temporaryFolder.newFolder("out");
+
+        PidArchiveExtractor.Result result = new PidArchiveExtractor(VehicleFilter.ALL).extract(zipFile, outputDir);
+
+        assertEquals(4, result.files.size());
+        // Same file name in two vehicles must not collide
+        assertEquals(SOUL_BMS, read(new File(outputDir, "Soul EV/Kia_Soul_EV_BMS_data.csv")));
+        assertEquals(IONIQ_BMS, read(new File(outputDir, "Ioniq/Kia_Soul_EV_BMS_data.csv")));
+        assertTrue(new File(outputDir, "Soul EV/Extended/Kia_Soul_EV_Cell_data.csv").exists());
+        assertFalse(new File(outputDir, "Kona EV/notes.txt").exists());
+        assertFalse(new File(outputDir, "README.md").exists());
+    }
+
+    @Test
+    public void extract_Subscribed_WritesOnlyThoseVehiclesButReportsAll() throws IOException {
+        File zipFile = writeArchive(buildArchive(null));
+        File outputDir = temporaryFolder.newFolder("out");
+        VehicleFilter filter = new VehicleFilter(Collections.singletonList("Soul EV"));
+
+        PidArchiveExtractor.Result result = new PidArchiveExtractor(filter).extract(zipFile, outputDir);
+
+        assertEquals(new HashSet<>(Arrays.asList(
+                        new File(outputDir, "Soul EV/Kia_Soul_EV_BMS_data.csv"),
+                        new File(outputDir, "Soul EV/Extended/Kia_Soul_EV_Cell_data.csv"))),
+                new HashSet<>(result.files));
+        assertFalse(new File(outputDir, "Ioniq").exists());
+        assertFalse(new File(outputDir, "Kona EV").exists());
+        assertEquals(new TreeSet<>(Arrays.asList("Ioniq", "Kona EV", "Soul EV")), result.vehicles);
+    }
+
+    @Test
+    public void extract_MissingCentralDirectory_FallsBackToStreaming() throws IOException {
+        ByteArrayOutputStream truncated = new ByteArrayOutputStream();
+        buildArchive(truncated);
+        File zipFile = writeArchive(truncated.toByteArray());
+        File outputDir = temporaryFolder.newFolder("out");
+        VehicleFilter filter = new VehicleFilter(Arrays.asList("Ioniq", "Kona EV"));
+
+        PidArchiveExtractor.Result result = new PidArchiveExtractor(filter).extract(zipFile, outputDir);
+
+        assertEquals(2, result.files.size());
+        assertEquals(IONIQ_BMS, read(new File(outputDir, "Ioniq/Kia_Soul_EV_BMS_data.csv")));
+        assertTrue(new File(outputDir, "Kona EV/Kona_EV_BMS_data.csv").exists());
+        assertFalse(new File(outputDir, "Soul EV").exists());
+        assertEquals(3, result.vehicles.size());
+    }
+
+    @Test
+    public void extractStreaming_MatchesCentralDirectory() throws IOException {
+        byte[] archive = buildArchive(null);
+        VehicleFilter filter = new VehicleFilter(Collections.singletonList("Soul EV"));
+
+        List<File> random = new PidArchiveExtractor(filter)
+                .extractFromCentralDirectory(writeArchive(archive), temporaryFolder.newFolder("random")).files;
+        List<File> streamed = new PidArchiveExtractor(filter)
+                .extractStreaming(new ByteArrayInputStream(archive), temporaryFolder.newFolder("streamed")).files;
+
+        assertEquals(random.size(), streamed.size());
+        for (int i = 0; i < random.size(); i++) {
+            assertEquals(random.get(i).getName(), streamed.get(i).getName());
+            assertEquals(read(random.get(i)), read(streamed.get(i)));
+        }
+    }
+
+    @Test
+    public void extract_EntryOutsideOutputDirectory_IsSkipped() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bytes)) {
+            zos.putNextEntry(new ZipEntry(ROOT + "../../evil.csv"));
+            zos.write(SOUL_BMS.getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+        File outputDir = temporaryFolder.newFolder("nested", "out");
+
+        PidArchiveExtractor.Result result = new PidArchiveExtractor(VehicleFilter.ALL)
+                .extract(writeArchive(bytes.toByteArray()), outputDir);
+
+        assertTrue(result.files.isEmpty());
+        assertFalse(new File(temporaryFolder.getRoot(), "evil.csv").exists());
+    }
+
+    @Test
+    public void vehicleFilter_MatchesFirstPathSegment() {
+        VehicleFilter filter = new VehicleFilter(Collections.singletonList("Soul EV"));
+
+        assertTrue(filter.matches("Soul EV/Extended/x.csv"));
+        assertFalse(filter.matches("Soul EV/notes.txt"));
+        assertFalse(filter.matches("Soul EVX/x.csv"));
+        assertFalse(filter.matches("x.csv"));
+        assertTrue(VehicleFilter.ALL.matches("x.csv"));
+        assertNull(VehicleFilter.vehicleOf("x.csv"));
+    }
+}
@@ -0,0 +1,180 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for PidBlockReader: name lookup, one request per block and val{} references.
+ */
+public class PidBlockReaderTest {
+    private static final String BMS =
+            "000_Battery Current,Batt Current,2101,((Signed(K)*256)+L)/10,-230,230,A,7E4\n"
+            + "000_Battery DC Voltage,Batt Volts,2101,((m<8)+n)/10,268.8,403.2,V,7E4\n"
+            + "000_Battery Power,Energy Draw,2101,val{000_Battery Current}*val{000_Battery DC Voltage}/1000,-90,90,kW,7E4\n"
+            + "000_State of Charge Display,SOC Display,2105,af/2,0,100,%,7E4\n";
+
+    /**
+     * Answers 2101 with 12.3 A at 360.0 V, and nothing else.
+     */
+    private static class FakeLink implements TorqueLink {
+        final List<String> requests = new ArrayList<>();
+
+        @Override
+        public String[] sendCommand(String header, String command) {
+            requests.add(header + " " + command);
+            if (!command.equals("2101")) {
+                return new String[]{"NO DATA"};
+            }
+            // 61 01, then bytes A..N with K L = 0x007B and M N = 0x0E10
+            return new String[]{
+                    "7EC 10 10 61 01 00 00 00 00",
+                    "7EC 21 00 00 00 00 00 00 00",
+                    "7EC 22 7B 0E 10 00 00 00 00"
+            };
+        }
+
+        @Override
+        public boolean setPidInformation(String name, String shortName, String unit, float max,
+                                         float min, float value) {
+            return true;
+        }
+    }
+
+    /**
+     * Answers 2101 like FakeLink, and 2105 with A = 10, 20, 30... on successive requests.
+     */
+    private static class CountingLink extends FakeLink {
+        int count;
+
+        @Override
+        public String[] sendCommand(String header, String command) {
+            if (!command.equals("2105")) {
+                return super.sendCommand(header, command);
+            }
+            requests.add(header + " " + command);
+            count++;
+            return new String[]{String.format("7EC 03 61 05 %02X", count * 10)};
+        }
+    }
+
+    private static PidCatalog catalog() throws Exception {
+        return catalog(BMS);
+    }
+
+    private static PidCatalog catalog(String csv) throws Exception {
+        PidCatalogWriter writer = new PidCatalogWriter();
+        writer.addFile("Soul EV/Kia_Soul_EV_BMS_data.csv",
+                new PidCsvParser(true).parse(new StringReader(csv), "bms.csv").pids);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.write(output);
+        return PidCatalog.wrap(ByteBuffer.wrap(output.toByteArray()));
+    }
+
+    @Test
+    public void matchesNamesWithOrWithoutSortPrefix() {
+        assertTrue(PidBlockReader.matchesName("000_Battery Current", "Battery Current"));
+        assertTrue(PidBlockReader.matchesName("Battery Current", "battery current"));
+        assertFalse(PidBlockReader.matchesName("000_Battery Current", "Current"));
+        assertFalse(PidBlockReader.matchesName("000_Max Battery Current", "Battery Current"));
+    }
+
+    @Test
+    public void readsBlockOnceAndResolvesReferences() throws Exception {
+        PidBlockReader reader = PidBlockReader.fromCatalog(catalog(),
+                "Battery Current", "Battery DC Voltage", "Battery Power");
+        assertNotNull(reader);
+        assertEquals(1, reader.getBlockCount());
+        FakeLink link = new FakeLink();
+        assertTrue(reader.read(link));
+        assertEquals(1, link.requests.size());
+        assertEquals(12.3, reader.getValue(0), 1e-9);
+        assertEquals(360.0, reader.getValue(1), 1e-9);
+        assertEquals(4.428, reader.getValue(2), 1e-9);
+    }
+
+    @Test
+    public void unansweredBlockLeavesNaN() throws Exception {
+        PidBlockReader reader = PidBlockReader.fromCatalog(catalog(),
+                "Battery Current", "State of Charge Display");
+        assertFalse(reader.read(new FakeLink()));
+        assertEquals(12.3, reader.getValue(0), 1e-9);
+        assertTrue(Double.isNaN(reader.getValue(1)));
+    }
+
+    @Test
+    public void referencesResolveAcrossBlocksInAnyOrder() throws Exception {
+        PidCatalog catalog = catalog(BMS
+                + "001_Double Counter,Double,2101,val{001_Counter}*2+L-L,0,100,,7E4\n"
+                + "001_Counter,Counter,2105,A,0,100,,7E4\n"
+                + "001_Counter Ratio,Ratio,2201,val{001_Double Counter}/val{001_Counter},0,2,,7E4\n");
+        PidBlockReader reader = PidBlockReader.fromCatalog(catalog, "Counter Ratio", "Double Counter", "Counter");
+        CountingLink link = new CountingLink();
+
+        assertTrue(reader.read(link));
+        // The ratio reads no bytes, so 2201 is never requested
+        assertEquals(2, link.requests.size());
+        assertEquals(2, reader.getValue(0), 1e-9);
+        assertEquals(20, reader.getValue(1), 1e-9);
+        assertEquals(10, reader.getValue(2), 1e-9);
+    }
+
+    @Test
+    public void nanResultIsIncomplete() throws Exception {
+        PidCatalog catalog = catalog(BMS + "001_Ratio,Ratio,2101,A/B,0,1,,7E4\n");
+        PidBlockReader reader = PidBlockReader.fromCatalog(catalog, "Battery Current", "Ratio");
+
+        // Bytes A and B are 0, so the ratio is 0/0
+        assertFalse(reader.read(new FakeLink()));
+        assertEquals(12.3, reader.getValue(0), 1e-9);
+        assertTrue(Double.isNaN(reader.getValue(1)));
+    }
+
+    @Test
+    public void averagesOverSuccessiveReads() throws Exception {
+        PidCatalog catalog = catalog(BMS + "001_Smooth Counter,Smooth,2105,AVG(3:A),0,100,,7E4\n");
+        PidBlockReader reader = PidBlockReader.fromCatalog(catalog, "Smooth Counter");
+        CountingLink link = new CountingLink();
+        double[] expected = {10, 15, 20, 30};
+        for (double average : expected) {
+            assertTrue(reader.read(link));
+            assertEquals(average, reader.getValue(0), 1e-9);
+        }
+    }
+
+    @Test
+    public void circularReferencesAreRejected() throws Exception {
+        PidCatalog catalog = catalog(BMS
+                + "001_Ping,Ping,2101,val{001_Pong}+1,0,100,,7E4\n"
+                + "001_Pong,Pong,2101,val{001_Ping}+1,0,100,,7E4\n");
+        assertNull(PidBlockReader.fromCatalog(catalog, "Ping", "Pong"));
+    }
+
+    @Test
+    public void readsReferencedPidsAsHiddenDependencies() throws Exception {
+        PidBlockReader reader = PidBlockReader.fromCatalog(catalog(), "Battery Power");
+        assertNotNull(reader);
+        assertEquals(1, reader.getPidCount());
+        FakeLink link = new FakeLink();
+        assertTrue(reader.read(link));
+        assertEquals(1, link.requests.size());
+        assertEquals(4.428, reader.getValue(0), 1e-9);
+    }
+
+    @Test
+    public void unresolvableReferenceGivesNoReader() throws Exception {
+        PidCatalog catalog = catalog(BMS + "001_Motor Power,Motor Power,2101,val{001_Motor Current}*2,0,100,kW,7E4\n");
+        assertNull(PidBlockReader.fromCatalog(catalog, "Motor Power"));
+    }
+
+    @Test
+    public void missingPidGivesNoReader() throws Exception {
+        assertNull(PidBlockReader.fromCatalog(catalog(), "Battery Current", "Motor Temperature"));
+    }
+}
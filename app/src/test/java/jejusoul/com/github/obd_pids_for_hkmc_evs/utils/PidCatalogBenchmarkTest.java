@@ -0,0 +1,161 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Benchmark of PidCatalog at 100k PIDs: bulk build throughput, and lookups through the
+ * command and token indexes against the linear scans they replace. Each test checks the
+ * index agrees with the scan and prints the best of a few timed runs, e.g. with
+ * ./gradlew :app:testDebugUnitTest --tests '*PidCatalogBenchmarkTest' -i
+ */
+public class PidCatalogBenchmarkTest {
+    private static final int FILES = 100;
+    private static final int PIDS_PER_FILE = 1_000;
+    private static final String[] HEADERS = {"7E0", "7E2", "7E4", "7E5", "7A0", "7B3", "7C6", "7D1"};
+    private static final String[] SIGNALS = {"Cell Voltage", "Module Temperature", "Battery Current",
+            "Motor Speed", "Cabin Temperature", "Charger Voltage", "Tire Pressure", "Heater Power",
+            "Inverter Temperature", "Coolant Flow"};
+    private static final int RUNS = 5;
+
+    private static PidCatalog catalog;
+    private static double buildMillis;
+
+    @BeforeClass
+    public static void buildCatalog() throws IOException {
+        List<List<PidData>> files = new ArrayList<>(FILES);
+        for (int file = 0; file < FILES; file++) {
+            List<PidData> pids = new ArrayList<>(PIDS_PER_FILE);
+            for (int i = 0; i < PIDS_PER_FILE; i++) {
+                int pid = file * PIDS_PER_FILE + i;
+                String command = String.format(Locale.ROOT, "21%02X", i / 50);
+                pids.add(new PidData(String.format(Locale.ROOT, "%03d_%s %d", file,
+                        SIGNALS[pid % SIGNALS.length], pid), "S" + pid,
+                        command, "A", 0, 255, "", HEADERS[pid % HEADERS.length]));
+            }
+            files.add(pids);
+        }
+        byte[] bytes = null;
+        buildMillis = Double.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            PidCatalogWriter writer = new PidCatalogWriter();
+            for (int file = 0; file < FILES; file++) {
+                writer.addFile(String.format(Locale.ROOT, "Vehicle %02d/data.csv", file), files.get(file));
+            }
+            bytes = writer.toByteArray();
+            buildMillis = Math.min(buildMillis, (System.nanoTime() - start) / 1e6);
+        }
+        catalog = PidCatalog.wrap(ByteBuffer.wrap(bytes));
+    }
+
+    @Test
+    public void bulkBuild() {
+        assertEquals(FILES * PIDS_PER_FILE, catalog.getPidCount());
+        report("build", buildMillis, FILES * PIDS_PER_FILE / buildMillis * 1000, "PIDs/s");
+    }
+
+    @Test
+    public void findByCommandAgainstScan() {
+        int[] indexed = catalog.findByCommand("7e4", "2105");
+        assertArrayEquals(scanCommand("7E4", "2105"), indexed);
+        assertTrue(indexed.length > 0);
+
+        double index = Double.MAX_VALUE;
+        double scan = Double.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            catalog.findByCommand("7E4", "2105");
+            index = Math.min(index, (System.nanoTime() - start) / 1e6);
+            start = System.nanoTime();
+            scanCommand("7E4", "2105");
+            scan = Math.min(scan, (System.nanoTime() - start) / 1e6);
+        }
+        report("findByCommand", index, indexed.length, "matches");
+        report("scan by command", scan, indexed.length, "matches");
+    }
+
+    @Test
+    public void findByHeader() {
+        int[] indexed = catalog.findByHeader("7B3");
+        assertEquals(FILES * PIDS_PER_FILE / HEADERS.length, indexed.length);
+
+        double index = Double.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            catalog.findByHeader("7B3");
+            index = Math.min(index, (System.nanoTime() - start) / 1e6);
+        }
+        report("findByHeader", index, indexed.length, "matches");
+    }
+
+    @Test
+    public void findPidAgainstScan() {
+        String[] names = {"Cell Voltage 12340", "Motor Speed 98763", "S99999", "Cell Voltage 12341"};
+        for (String name : names) {
+            assertEquals(name, scanPid(name), PidBlockReader.findPid(catalog, name));
+        }
+        assertEquals(98_763, PidBlockReader.findPid(catalog, "Motor Speed 98763"));
+        assertEquals(99_999, PidBlockReader.findPid(catalog, "S99999"));
+
+        double index = Double.MAX_VALUE;
+        double scan = Double.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            PidBlockReader.findPid(catalog, "Motor Speed 98763");
+            index = Math.min(index, (System.nanoTime() - start) / 1e6);
+            start = System.nanoTime();
+            scanPid("Motor Speed 98763");
+            scan = Math.min(scan, (System.nanoTime() - start) / 1e6);
+        }
+        report("findPid", index, 1, "match");
+        report("scan by name", scan, 1, "match");
+    }
+
+    /**
+     * Every PID of one request, the way they were found before the command index.
+     */
+    private static int[] scanCommand(String header, String modeAndPid) {
+        int[] matches = new int[catalog.getPidCount()];
+        int n = 0;
+        for (int pid = 0; pid < catalog.getPidCount(); pid++) {
+            if (catalog.getHeader(pid).equalsIgnoreCase(header)
+                    && catalog.getModeAndPid(pid).equalsIgnoreCase(modeAndPid)) {
+                matches[n++] = pid;
+            }
+        }
+        return Arrays.copyOf(matches, n);
+    }
+
+    /**
+     * PidBlockReader.findPid() the way it was before it went through the token index.
+     */
+    private static int scanPid(String name) {
+        int byShortName = -1;
+        for (int pid = 0; pid < catalog.getPidCount(); pid++) {
+            if (catalog.getHeader(pid).isEmpty()) {
+                continue;
+            }
+            if (PidBlockReader.matchesName(catalog.getName(pid), name)) {
+                return pid;
+            }
+            if (byShortName < 0 && catalog.getShortName(pid).equalsIgnoreCase(name)) {
+                byShortName = pid;
+            }
+        }
+        return byShortName;
+    }
+
+    private static void report(String what, double millis, double amount, String unit) {
+        System.out.printf(Locale.ROOT, "%-16s %10.3f ms  %,.0f %s%n", what, millis, amount, unit);
+    }
+}
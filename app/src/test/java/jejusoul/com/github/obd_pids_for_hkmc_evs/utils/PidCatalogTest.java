@@ -0,0 +1,195 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for PidCsvParser, PidCatalogWriter and PidCatalog, including a strict parse of the
+ * bundled assets so a broken CSV fails the unit tests as well as the build.
+ */
+public class PidCatalogTest {
+    private static final String BMS_CSV =
+            "000_Battery Current,Batt Current,2101,((Signed(K)*256)+L)/10,-230,230,A,7E4\n"
+            + "000_Battery DC Voltage,Batt DC V,2101,((M*256)+N)/10,0,500,V,7E4\n"
+            + "000_Maximum Cell Voltage,Max Cell V,2101,Z/50,2.8,4.2,V,7E4\n";
+    private static final String TPMS_CSV =
+            "TPMS_Front Left Pressure,FL Pressure,22C00B,F/5,0,50,psi,7A0\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<PidData> parse(String csv, boolean strict) throws IOException {
+        PidCsvParser.Result result = new PidCsvParser(strict).parse(new StringReader(csv), "test.csv");
+        assertEquals(result.errors.toString(), 0, result.errors.size());
+        return result.pids;
+    }
+
+    private PidCatalog buildCatalog() throws IOException {
+        PidCatalogWriter writer = new PidCatalogWriter();
+        writer.addFile("Soul EV/Kia_Soul_EV_TPMS_data.csv", parse(TPMS_CSV, true));
+        writer.addFile("Soul EV/Kia_Soul_EV_BMS_data.csv", parse(BMS_CSV, true));
+        File file = temporaryFolder.newFile("pid_catalog.bin");
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            writer.write(output);
+        }
+        return PidCatalog.open(file);
+    }
+
+    @Test
+    public void keepsFirstRowWhenFileHasNoHeader() throws Exception {
+        List<PidData> pids = parse(BMS_CSV, false);
+        assertEquals(3, pids.size());
+        assertEquals("000_Battery Current", pids.get(0).getName());
+    }
+
+    @Test
+    public void skipsHeaderRow() throws Exception {
+        List<PidData> pids = parse("Name,ShortName,ModeAndPID,Equation,MinValue,MaxValue,Unit,Header\n" + BMS_CSV, false);
+        assertEquals(3, pids.size());
+    }
+
+    @Test
+    public void strictModeReportsMalformedEquations() throws Exception {
+        String csv = BMS_CSV + "000_Drive Motor Speed 2,Motor RPM 2,2101,(Signed(BD)*256))+BE,-5000,5000,rpm,7E4\n";
+        PidCsvParser.Result lenient = new PidCsvParser(false).parse(new StringReader(csv), "bms.csv");
+        PidCsvParser.Result strict = new PidCsvParser(true).parse(new StringReader(csv), "bms.csv");
+
+        assertEquals(4, lenient.pids.size());
+        assertEquals(3, strict.pids.size());
+        assertEquals(1, strict.errors.size());
+        assertTrue(strict.errors.get(0), strict.errors.get(0).startsWith("bms.csv:4: "));
+    }
+
+    @Test
+    public void catalogRoundTripsFilesInPathOrder() throws Exception {
+        PidCatalog catalog = buildCatalog();
+
+        assertTrue(catalog.verify());
+        assertEquals(2, catalog.getFileCount());
+        assertEquals("Soul EV/Kia_Soul_EV_BMS_data.csv", catalog.getFilePath(0));
+        assertEquals(1, catalog.findFile("Soul EV/Kia_Soul_EV_TPMS_data.csv"));
+        assertEquals(-1, catalog.findFile("Soul EV/missing.csv"));
+        assertEquals(4, catalog.getPidCount());
+
+        List<PidData> expected = parse(BMS_CSV, true);
+        List<PidData> actual = catalog.getPids(0);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            PidData e = expected.get(i);
+            PidData a = actual.get(i);
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getShortName(), a.getShortName());
+            assertEquals(e.getModeAndPID(), a.getModeAndPID());
+            assertEquals(e.getEquation(), a.getEquation());
+            assertEquals(e.getMinValue(), a.getMinValue(), 0f);
+            assertEquals(e.getMaxValue(), a.getMaxValue(), 0f);
+            assertEquals(e.getUnit(), a.getUnit());
+            assertEquals(e.getHeader(), a.getHeader());
+        }
+    }
+
+    @Test
+    public void searchMatchesWordPrefixesOfEveryQueryWord() throws Exception {
+        PidCatalog catalog = buildCatalog();
+
+        assertArrayEquals(new int[] {1}, catalog.search("batt volt"));
+        assertArrayEquals(new int[] {0, 1}, catalog.search("BATT"));
+        assertArrayEquals(new int[] {3}, catalog.search("pressure fl"));
+        assertArrayEquals(new int[0], catalog.search("batt pressure"));
+        assertEquals(4, catalog.search("  ").length);
+    }
+
+    @Test
+    public void searchFiltersByHeader() throws Exception {
+        PidCatalog catalog = buildCatalog();
+
+        assertEquals(Arrays.asList("7A0", "7E4"), catalog.getHeaders());
+        assertArrayEquals(new int[] {0, 1, 2}, catalog.search("", "7E4"));
+        assertArrayEquals(new int[] {3}, catalog.search("", "7A0"));
+        assertArrayEquals(new int[] {1}, catalog.search("batt volt", "7E4"));
+        assertArrayEquals(new int[0], catalog.search("batt", "7A0"));
+        assertArrayEquals(new int[0], catalog.search("", "7E2"));
+        assertEquals(4, catalog.search("", null).length);
+    }
+
+    @Test
+    public void findsPidsByHeaderAndCommandIgnoringCase() throws Exception {
+        PidCatalogWriter writer = new PidCatalogWriter();
+        writer.addFile("a.csv", parse(BMS_CSV, true));
+        writer.addFile("b.csv", parse(TPMS_CSV
+                + "000_Cell Voltage 01,Cell V 01,2102,e/50,2.8,4.2,V,7e4\n"
+                + "000_Cell Voltage 02,Cell V 02,2102,f/50,2.8,4.2,V,7E4\n", true));
+        PidCatalog catalog = PidCatalog.wrap(ByteBuffer.wrap(writer.toByteArray()));
+
+        assertArrayEquals(new int[] {0, 1, 2, 4, 5}, catalog.findByHeader("7E4"));
+        assertArrayEquals(new int[] {4, 5}, catalog.findByCommand("7E4", "2102"));
+        assertArrayEquals(new int[] {0, 1, 2}, catalog.findByCommand("7e4", "2101"));
+        assertArrayEquals(new int[] {3}, catalog.findByCommand("7A0", "22c00b"));
+        assertArrayEquals(new int[0], catalog.findByCommand("7E4", "2105"));
+        assertArrayEquals(new int[0], catalog.findByHeader("7E2"));
+        assertArrayEquals(new int[] {2, 4, 5}, catalog.search("cell", "7e4"));
+        assertArrayEquals(new int[0], catalog.search("cell", "7A0"));
+        assertEquals(2, catalog.getHeaders().size());
+    }
+
+    @Test
+    public void asListReadsRowsByCatalogIndex() throws Exception {
+        PidCatalog catalog = buildCatalog();
+
+        List<PidData> pids = catalog.asList();
+        assertEquals(4, pids.size());
+        assertEquals("000_Battery Current", pids.get(0).getName());
+        assertEquals("TPMS_Front Left Pressure", pids.get(3).getName());
+    }
+
+    @Test
+    public void writerIsDeterministic() throws Exception {
+        PidCatalogWriter first = new PidCatalogWriter();
+        first.addFile("b.csv", parse(TPMS_CSV, true));
+        first.addFile("a.csv", parse(BMS_CSV, true));
+        PidCatalogWriter second = new PidCatalogWriter();
+        second.addFile("a.csv", parse(BMS_CSV, true));
+        second.addFile("b.csv", parse(TPMS_CSV, true));
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedCatalog() throws Exception {
+        PidCatalogWriter writer = new PidCatalogWriter();
+        writer.addFile("a.csv", parse(BMS_CSV, true));
+        byte[] bytes = writer.toByteArray();
+        PidCatalog.wrap(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 4)));
+    }
+
+    @Test
+    public void bundledAssetsParseStrictly() throws Exception {
+        File assets = new File("src/main/assets/Soul EV");
+        if (!assets.isDirectory()) {
+            assets = new File("app/src/main/assets/Soul EV");
+        }
+        File[] files = assets.listFiles();
+        assertNotNull("Bundled assets not found", files);
+        int pidCount = 0;
+        for (File file : files) {
+            PidCsvParser.Result result = new PidCsvParser(true).parse(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), file.getName());
+            assertEquals(result.errors.toString(), 0, result.errors.size());
+            pidCount += result.pids.size();
+        }
+        assertTrue(pidCount > 0);
+    }
+}
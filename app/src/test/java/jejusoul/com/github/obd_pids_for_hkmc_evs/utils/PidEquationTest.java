@@ -0,0 +1,114 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for PidEquation using equations from the bundled PID files.
+ */
+public class PidEquationTest {
+
+    /**
+     * Evaluation context over fixed response bytes; AVG() returns the sample unchanged.
+     */
+    private static class Response implements PidEquation.Context {
+        private final int[] bytes;
+        private final Map<String, Double> values = new HashMap<>();
+
+        Response(int... bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int byteAt(int index) {
+            return bytes[index];
+        }
+
+        @Override
+        public double valueOf(String name) {
+            return values.get(name);
+        }
+
+        @Override
+        public double average(int slot, int window, double sample) {
+            return sample;
+        }
+    }
+
+    private static double evaluate(String equation, Response response) throws ParseException {
+        return PidEquation.parse(equation).evaluate(response);
+    }
+
+    @Test
+    public void signedBytesFormNegativeCurrents() throws Exception {
+        int[] bytes = new int[12];
+        bytes[10] = 0xFF; // K
+        bytes[11] = 0x9C; // L
+        assertEquals(-10.0, evaluate("((Signed(K)*256)+L)/10", new Response(bytes)), 1e-9);
+    }
+
+    @Test
+    public void twoLetterBytesFollowZ() throws Exception {
+        int[] bytes = new int[58];
+        bytes[55] = 0x12; // BD
+        bytes[56] = 0x34; // BE
+        PidEquation equation = PidEquation.parse("(Signed(BD)*256)+BE");
+        assertEquals(0x1234, equation.evaluate(new Response(bytes)), 1e-9);
+        assertEquals(56, equation.getMaxByteIndex());
+    }
+
+    @Test
+    public void shiftsAndMasksFollowCPrecedence() throws Exception {
+        assertEquals(0x0A, evaluate("A>4&15", new Response(0xA5)), 1e-9);
+        assertEquals(0x0102, evaluate("A<8|B", new Response(0x01, 0x02)), 1e-9);
+        assertEquals(7.0, evaluate("1 + 2 * 3", new Response()), 1e-9);
+    }
+
+    @Test
+    public void bitsReferencesAndAverages() throws Exception {
+        assertEquals(1.0, evaluate("{A:7}", new Response(0x80)), 1e-9);
+
+        Response response = new Response(10);
+        response.values.put("000_Battery Current", 2.5);
+        PidEquation equation = PidEquation.parse("AVG(5:A*val{000_Battery Current})");
+        assertEquals(25.0, equation.evaluate(response), 1e-9);
+        assertEquals(Arrays.asList("000_Battery Current"), Arrays.asList(equation.getReferences().toArray()));
+        assertEquals(1, equation.getAverageSlots());
+    }
+
+    @Test
+    public void constantEquationsReadNoBytes() throws Exception {
+        assertEquals(-1, PidEquation.parse("0.5*100").getMaxByteIndex());
+    }
+
+    @Test
+    public void rejectsMalformedEquations() {
+        String[] malformed = {
+                "", "(Signed(BD)*256))+BE", "((A*256)+B", "A+", "Foo(A)", "{A:8}", "AVG(0:A)", "val{", "A $ B",
+        };
+        for (String equation : malformed) {
+            try {
+                PidEquation.parse(equation);
+                fail("Expected a parse error for " + equation);
+            } catch (ParseException e) {
+                assertTrue(e.getErrorOffset() <= equation.length());
+            }
+        }
+    }
+
+    @Test
+    public void errorOffsetPointsAtUnbalancedParenthesis() {
+        try {
+            PidEquation.parse("(Signed(BD)*256))+BE");
+            fail("Expected a parse error");
+        } catch (ParseException e) {
+            assertEquals(16, e.getErrorOffset());
+        }
+    }
+}
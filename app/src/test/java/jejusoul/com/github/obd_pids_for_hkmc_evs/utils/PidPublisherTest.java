@@ -0,0 +1,104 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for PidPublisher: deadbands, refreshes and the call budget.
+ */
+public class PidPublisherTest {
+    private static final long SECOND = 1_000_000_000L;
+    // Arbitrary start, away from the 0 that means never published
+    private static final long T0 = 5 * SECOND;
+
+    /**
+     * Records setPidInformation calls as "name=value".
+     */
+    private static class RecordingLink implements TorqueLink {
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public String[] sendCommand(String header, String command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean setPidInformation(String name, String shortName, String unit, float max,
+                                         float min, float value) {
+            calls.add(name + "=" + value);
+            return true;
+        }
+    }
+
+    @Test
+    public void publishesOnlyChangesBeyondDeadband() throws Exception {
+        PidPublisher publisher = new PidPublisher(100);
+        int slot = publisher.register("Cell Voltage Min", "Cell Min", "V", 0, 5, 0.01f);
+        RecordingLink link = new RecordingLink();
+
+        publisher.set(slot, 3.90f);
+        assertEquals(1, publisher.flush(link, T0));
+        publisher.set(slot, 3.905f);
+        assertEquals(0, publisher.flush(link, T0 + SECOND / 4));
+        publisher.set(slot, 3.92f);
+        assertEquals(1, publisher.flush(link, T0 + SECOND / 2));
+        assertEquals("Cell Voltage Min=3.92", link.calls.get(1));
+    }
+
+    @Test
+    public void refreshesUnchangedValues() throws Exception {
+        PidPublisher publisher = new PidPublisher(100);
+        int slot = publisher.register("Weakest Cell", "Weakest", "", 1, 96, 0);
+        RecordingLink link = new RecordingLink();
+        publisher.set(slot, 41);
+        publisher.flush(link, T0);
+        assertEquals(0, publisher.flush(link, T0 + SECOND));
+        assertEquals(1, publisher.flush(link, T0 + PidPublisher.REFRESH_MS * 1_000_000L));
+    }
+
+    @Test
+    public void skipsSlotsWithoutValue() throws Exception {
+        PidPublisher publisher = new PidPublisher(100);
+        publisher.register("A", "A", "", 0, 1, 0);
+        int b = publisher.register("B", "B", "", 0, 1, 0);
+        publisher.set(b, Float.NaN);
+        assertEquals(0, publisher.flush(new RecordingLink(), T0));
+    }
+
+    @Test
+    public void registeringTwiceReturnsSameSlot() {
+        PidPublisher publisher = new PidPublisher(100);
+        int slot = publisher.register("A", "A", "", 0, 1, 0);
+        for (int i = 0; i < 20; i++) {
+            publisher.register("P" + i, "P", "", 0, 1, 0);
+        }
+        assertEquals(slot, publisher.register("A", "A", "", 0, 1, 0));
+    }
+
+    @Test
+    public void capsCallsAndRotatesDeferredSlots() throws Exception {
+        PidPublisher publisher = new PidPublisher(4);
+        int[] slots = new int[6];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = publisher.register("P" + i, "P" + i, "", 0, 100, 0);
+            publisher.set(slots[i], i);
+        }
+        RecordingLink link = new RecordingLink();
+        assertEquals(4, publisher.flush(link, T0));
+
+        // Half a second refills two calls, which go to the slots deferred last time
+        assertEquals(2, publisher.flush(link, T0 + SECOND / 2));
+        assertEquals("P4=4.0", link.calls.get(4));
+        assertEquals("P5=5.0", link.calls.get(5));
+
+        // The budget never exceeds one second's worth
+        for (int slot : slots) {
+            publisher.set(slot, 50);
+        }
+        assertEquals(4, publisher.flush(link, T0 + 60 * SECOND));
+    }
+}
@@ -0,0 +1,34 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for PidRow.
+ */
+public class PidRowTest {
+    private static final PidData CELL = new PidData("001_Cell Voltage 01", "Cell 01", "2102", "G/50",
+            0f, 5f, "V", "7E4");
+
+    @Test
+    public void detailsMatchRowLayout() {
+        String expected = String.format("Mode: %s\nEquation: %s\nRange: %.2f to %.2f %s",
+                "2102", "G/50", 0f, 5f, "V");
+        assertEquals(expected, PidRow.DETAILS.format(CELL));
+    }
+
+    @Test
+    public void formatKeepsOrderAndViewsPids() {
+        PidData other = new PidData("001_Cell Voltage 02", "Cell 02", "2102", "H/50", 0f, 5f, "V", "7E4");
+        List<PidRow> rows = PidRow.format(Arrays.asList(CELL, other), PidRow.DESCRIPTION);
+
+        assertEquals(2, rows.size());
+        assertSame(other, rows.get(1).pid);
+        assertTrue(rows.get(1).text.startsWith("Short Name: Cell 02\n"));
+        assertEquals(Arrays.asList(CELL, other), PidRow.pidsOf(rows));
+    }
+}
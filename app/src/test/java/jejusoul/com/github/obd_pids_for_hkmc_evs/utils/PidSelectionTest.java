@@ -0,0 +1,66 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for PidSelection.
+ */
+public class PidSelectionTest {
+
+    @Test
+    public void startsFullyOrNotSelected() {
+        assertTrue(new PidSelection(130, true).isAllSelected());
+        assertEquals(130, new PidSelection(130, true).getSelectedCount());
+        assertTrue(new PidSelection(130, false).isEmpty());
+        assertTrue(new PidSelection(0, true).isAllSelected());
+    }
+
+    @Test
+    public void toggleAndSelectAll() {
+        PidSelection selection = new PidSelection(100, true);
+        assertFalse(selection.toggle(64));
+        assertFalse(selection.isSelected(64));
+        assertFalse(selection.isAllSelected());
+        assertEquals(99, selection.getSelectedCount());
+
+        selection.setAll(true);
+        assertTrue(selection.isAllSelected());
+        selection.setAll(false);
+        assertTrue(selection.isEmpty());
+        assertTrue(selection.toggle(99));
+    }
+
+    @Test
+    public void iteratesSelectedRowsInOrder() {
+        PidSelection selection = new PidSelection(200, false);
+        int[] rows = {0, 63, 64, 150, 199};
+        for (int row : rows) {
+            selection.setSelected(row, true);
+        }
+        int i = 0;
+        for (int row = selection.nextSelected(0); row >= 0; row = selection.nextSelected(row + 1)) {
+            assertEquals(rows[i++], row);
+        }
+        assertEquals(rows.length, i);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsRowsOutsideTheList() {
+        new PidSelection(10, false).toggle(10);
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        PidSelection selection = new PidSelection(10, false);
+        selection.setSelected(3, true);
+        PidSelection copy = selection.copy();
+        selection.setSelected(4, true);
+
+        assertEquals(10, copy.size());
+        assertTrue(copy.isSelected(3));
+        assertFalse(copy.isSelected(4));
+        assertEquals(1, copy.getSelectedCount());
+    }
+}
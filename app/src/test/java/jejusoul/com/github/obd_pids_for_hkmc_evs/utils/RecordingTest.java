@@ -0,0 +1,130 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Tests for Recording: pyramid range queries agree with a plain scan of the raw rows, and
+ * SessionRecorder finishes a recording at its row limit.
+ */
+public class RecordingTest {
+    private static final long T0 = 1_700_000_000_000L;
+
+    /**
+     * One row a second for the given number of rows, column 0 random with some NaN and
+     * column 1 the row number.
+     */
+    private static Recording record(int rows, long seed) {
+        Recording recording = new Recording(new String[] {"Cell Voltage 37", "Row"});
+        Random random = new Random(seed);
+        float[] row = new float[2];
+        for (int i = 0; i < rows; i++) {
+            row[0] = random.nextInt(50) == 0 ? Float.NaN : 3.6f + random.nextFloat() * 0.5f;
+            row[1] = i;
+            recording.append(T0 + i * 1000L, row);
+        }
+        return recording;
+    }
+
+    private static void assertMatchesScan(Recording recording, int column, long fromMs, long toMs,
+                                          int buckets, BucketSummary summary) {
+        recording.query(column, fromMs, toMs, buckets, summary);
+        assertEquals(buckets, summary.size());
+        double bucketMs = (double) (toMs - fromMs) / buckets;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            double sum = 0;
+            int count = 0;
+            for (int row = 0; row < recording.getRowCount(); row++) {
+                long time = recording.getTime(row);
+                float value = recording.getValue(column, row);
+                if (time < fromMs || time >= toMs || Float.isNaN(value)
+                        || (int) Math.floor((time - fromMs) / bucketMs) != bucket) {
+                    continue;
+                }
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+                count++;
+            }
+            String where = "bucket " + bucket + " of [" + fromMs + ", " + toMs + ")";
+            assertEquals(where, count, summary.getCount(bucket));
+            if (count > 0) {
+                assertEquals(where, min, summary.getMin(bucket), 0);
+                assertEquals(where, max, summary.getMax(bucket), 0);
+                assertEquals(where, sum / count, summary.getMean(bucket), 1e-5);
+            } else {
+                assertTrue(Float.isNaN(summary.getMean(bucket)));
+            }
+        }
+    }
+
+    @Test
+    public void queriesMatchScanOfRawRows() {
+        int rows = 3 * Recording.CHUNK_ROWS + 1234;
+        Recording recording = record(rows, 1);
+        BucketSummary summary = new BucketSummary(800);
+        Random random = new Random(2);
+        for (int query = 0; query < 40; query++) {
+            long fromMs = T0 - 5_000 + (long) (random.nextDouble() * rows * 1000);
+            long toMs = fromMs + 1 + (long) (random.nextDouble() * (T0 + rows * 1000L - fromMs + 5_000));
+            int buckets = 1 + random.nextInt(800);
+            assertMatchesScan(recording, query % 2, fromMs, toMs, buckets, summary);
+        }
+        // Whole recording, with the partial blocks at the end
+        assertMatchesScan(recording, 0, T0, T0 + rows * 1000L, 7, summary);
+        assertEquals(3, recording.getLevelCount(0));
+    }
+
+    @Test
+    public void wholeSessionInOneBucket() {
+        Recording recording = record(6 * 60 * 60, 3);
+        BucketSummary summary = new BucketSummary(1);
+        recording.query(1, recording.getStartMs(), recording.getEndMs() + 1, 1, summary);
+        assertEquals(0f, summary.getMin(0), 0);
+        assertEquals(6 * 60 * 60 - 1, summary.getMax(0), 0);
+        assertEquals(6 * 60 * 60, summary.getCount(0));
+    }
+
+    @Test
+    public void emptyRangesAndEarlierTimestamps() {
+        Recording recording = new Recording(new String[] {"A"});
+        BucketSummary summary = new BucketSummary(4);
+        recording.query(0, T0, T0 + 1000, 4, summary);
+        assertEquals(0, summary.getCount(0));
+
+        recording.append(T0, new float[] {1});
+        recording.append(T0 - 500, new float[] {2});
+        assertEquals(T0, recording.getTime(1));
+        assertEquals(2, recording.rowAt(T0 + 1));
+        assertEquals(0, recording.findColumn("a"));
+    }
+
+    @Test
+    public void recorderFinishesRecordingAtMaxRows() {
+        PidPublisher publisher = new PidPublisher(PidPublisher.DEFAULT_MAX_CALLS_PER_SECOND);
+        int slot = publisher.register("Cell Voltage Delta", "Cell Delta", "mV", 0, 1000, 1);
+        SessionRecorder recorder = new SessionRecorder(publisher, null, 0, 3);
+        Recording recording = recorder.getRecording();
+        for (int i = 0; i < 5; i++) {
+            publisher.set(slot, i);
+            assertEquals(i >= 3, recording.isFinished());
+            recorder.poll(null);
+        }
+        assertEquals(3, recording.getRowCount());
+        assertTrue(recording.isFinished());
+        assertEquals(2, recording.getValue(0, 2), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void appendAfterFinishFails() {
+        Recording recording = new Recording(new String[] {"A"});
+        recording.append(T0, new float[] {1});
+        recording.finish();
+        recording.append(T0 + 1000, new float[] {2});
+    }
+}
@@ -0,0 +1,124 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
+/**
+ * Runs RemoteHeadChecker against a local HTTP server standing in for the GitHub commits API.
+ */
+public class RemoteHeadCheckerTest {
+    private static final String SHA_1 = "2f6c1e1ab0f3d0d6a9e2c4b7f8e9a0b1c2d3e4f5";
+    private static final String SHA_2 = "9a8b7c6d5e4f30211f2e3d4c5b6a79880a1b2c3d";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private OkHttpClient client;
+    private String url;
+    private volatile String headSha = SHA_1;
+    private volatile String lastAccept;
+    private final AtomicInteger notModifiedCount = new AtomicInteger();
+    private final AtomicLong bodyBytesSent = new AtomicLong();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/repos/pids/commits/master", this::handle);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/repos/pids/commits/master";
+
+        client = SyncHttpClient.newBuilder(new Cache(temporaryFolder.newFolder("http_cache"), 1024 * 1024)).build();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        lastAccept = exchange.getRequestHeaders().getFirst("Accept");
+        String etag = "\"" + headSha + "\"";
+        exchange.getResponseHeaders().add("ETag", etag);
+        exchange.getResponseHeaders().add("Cache-Control", "private, max-age=60");
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModifiedCount.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = (RemoteHeadChecker.SHA_MEDIA_TYPE.equals(lastAccept)
+                ? headSha
+                : "{\"sha\":\"" + headSha + "\",\"commit\":{}}").getBytes(StandardCharsets.US_ASCII);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+        bodyBytesSent.addAndGet(body.length);
+    }
+
+    @Test
+    public void fetchHeadSha_RequestsShaMediaType() throws IOException {
+        RemoteHeadChecker checker = new RemoteHeadChecker(client, url);
+
+        assertEquals(SHA_1, checker.fetchHeadSha());
+        assertEquals(RemoteHeadChecker.SHA_MEDIA_TYPE, lastAccept);
+        assertEquals(40, bodyBytesSent.get());
+    }
+
+    @Test
+    public void fetchHeadSha_UnchangedHead_RevalidatesWithoutBody() throws IOException {
+        RemoteHeadChecker checker = new RemoteHeadChecker(client, url);
+        checker.fetchHeadSha();
+
+        // max-age has not expired, but every check must still reach the server
+        assertEquals(SHA_1, checker.fetchHeadSha());
+        assertEquals(SHA_1, checker.fetchHeadSha());
+
+        assertEquals(2, notModifiedCount.get());
+        assertEquals("Only the first response should carry a body", 40, bodyBytesSent.get());
+    }
+
+    @Test
+    public void fetchHeadSha_NewCommit_ReturnsNewSha() throws IOException {
+        RemoteHeadChecker checker = new RemoteHeadChecker(client, url);
+        checker.fetchHeadSha();
+
+        headSha = SHA_2;
+
+        assertEquals(SHA_2, checker.fetchHeadSha());
+        assertEquals(0, notModifiedCount.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void fetchHeadSha_NotFound_Throws() throws IOException {
+        new RemoteHeadChecker(client, url.replace("master", "missing")).fetchHeadSha();
+    }
+
+    @Test
+    public void isSha_RejectsNonShaBodies() {
+        assertTrue(RemoteHeadChecker.isSha(SHA_1));
+        assertFalse(RemoteHeadChecker.isSha(null));
+        assertFalse(RemoteHeadChecker.isSha(SHA_1.substring(1)));
+        assertFalse(RemoteHeadChecker.isSha("{\"sha\":\"" + SHA_1 + "\"}"));
+        assertFalse(RemoteHeadChecker.isSha(SHA_1.toUpperCase()));
+    }
+}
@@ -0,0 +1,202 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
+/**
+ * Runs ResumableDownloader against a local HTTP server that drops connections mid-transfer.
+ */
+public class ResumableDownloaderTest {
+    private static final int PAYLOAD_SIZE = 1024 * 1024;
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private OkHttpClient client;
+    private byte[] payload;
+    private final List<String> rangeHeaders = new ArrayList<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile int dropAfterBytes;
+    private volatile int dropsRemaining;
+    private volatile String etag = ETAG;
+
+    @Before
+    public void setUp() throws IOException {
+        payload = new byte[PAYLOAD_SIZE];
+        new Random(42).nextBytes(payload);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/master.zip", this::handle);
+        server.start();
+
+        client = SyncHttpClient.newBuilder(null).build();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.getResponseHeaders().add("ETag", etag);
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        synchronized (rangeHeaders) {
+            rangeHeaders.add(range);
+        }
+
+        int start = 0;
+        if (range != null && etag.equals(ifRange)) {
+            start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+        }
+
+        exchange.getResponseHeaders().add("ETag", etag);
+        if (start > 0) {
+            exchange.getResponseHeaders().add("Content-Range",
+                    "bytes " + start + "-" + (PAYLOAD_SIZE - 1) + "/" + PAYLOAD_SIZE);
+            exchange.sendResponseHeaders(206, PAYLOAD_SIZE - start);
+        } else {
+            exchange.sendResponseHeaders(200, PAYLOAD_SIZE);
+        }
+
+        OutputStream body = exchange.getResponseBody();
+        int end = PAYLOAD_SIZE;
+        boolean drop = dropsRemaining > 0;
+        if (drop) {
+            dropsRemaining--;
+            end = Math.min(PAYLOAD_SIZE, start + dropAfterBytes);
+        }
+        try {
+            body.write(payload, start, end - start);
+            body.flush();
+        } finally {
+            if (drop) {
+                // Abort the exchange without completing the declared Content-Length
+                exchange.close();
+            } else {
+                body.close();
+            }
+        }
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/master.zip";
+    }
+
+    @Test
+    public void download_NoFailures_WritesWholeFile() throws IOException {
+        File target = new File(temporaryFolder.getRoot(), "master.zip");
+
+        new ResumableDownloader(client, 1, 0).download(url(), target, null);
+
+        assertArrayEquals(payload, Files.readAllBytes(target.toPath()));
+        assertEquals(1, requestCount.get());
+        assertFalse("Partial file should be removed", new File(target.getPath() + ".part").exists());
+    }
+
+    @Test
+    public void download_ConnectionDropped_ResumesWithRange() throws IOException {
+        dropAfterBytes = 300 * 1024;
+        dropsRemaining = 2;
+        File target = new File(temporaryFolder.getRoot(), "master.zip");
+        List<long[]> reports = new ArrayList<>();
+
+        new ResumableDownloader(client, 5, 0).download(url(), target,
+                (downloaded, total, bytesPerSecond) -> reports.add(new long[]{downloaded, total}));
+
+        assertArrayEquals(payload, Files.readAllBytes(target.toPath()));
+        assertEquals(3, requestCount.get());
+        assertNull("First request starts from zero", rangeHeaders.get(0));
+        assertEquals("bytes=" + dropAfterBytes + "-", rangeHeaders.get(1));
+        assertEquals("bytes=" + (2 * dropAfterBytes) + "-", rangeHeaders.get(2));
+
+        long[] last = reports.get(reports.size() - 1);
+        assertEquals(PAYLOAD_SIZE, last[0]);
+        assertEquals(PAYLOAD_SIZE, last[1]);
+        for (int i = 1; i < reports.size(); i++) {
+            assertTrue("Progress must not go backwards", reports.get(i)[0] >= reports.get(i - 1)[0]);
+        }
+    }
+
+    @Test
+    public void download_AllAttemptsFail_KeepsPartialForNextCall() throws IOException {
+        dropAfterBytes = 100 * 1024;
+        dropsRemaining = 2;
+        File target = new File(temporaryFolder.getRoot(), "master.zip");
+
+        try {
+            new ResumableDownloader(client, 2, 0).download(url(), target, null);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // Both attempts were dropped
+        }
+        assertEquals(2 * dropAfterBytes, new File(target.getPath() + ".part").length());
+
+        new ResumableDownloader(client, 1, 0).download(url(), target, null);
+
+        assertArrayEquals(payload, Files.readAllBytes(target.toPath()));
+        assertEquals("bytes=" + (2 * dropAfterBytes) + "-", rangeHeaders.get(2));
+    }
+
+    @Test
+    public void download_EntityChanged_RestartsFromZero() throws IOException {
+        dropAfterBytes = 100 * 1024;
+        dropsRemaining = 1;
+        File target = new File(temporaryFolder.getRoot(), "master.zip");
+        try {
+            new ResumableDownloader(client, 1, 0).download(url(), target, null);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // Dropped once
+        }
+
+        etag = "\"v2\"";
+        new ResumableDownloader(client, 1, 0).download(url(), target, null);
+
+        assertArrayEquals(payload, Files.readAllBytes(target.toPath()));
+        assertEquals(PAYLOAD_SIZE, target.length());
+    }
+
+    @Test
+    public void download_WarmCache_RevalidatesInsteadOfTransferring() throws IOException {
+        client = SyncHttpClient.newBuilder(new Cache(temporaryFolder.newFolder("http_cache"), 8L * 1024 * 1024)).build();
+        File target = new File(temporaryFolder.getRoot(), "master.zip");
+
+        new ResumableDownloader(client, 1, 0).download(url(), target, null);
+        assertTrue(target.delete());
+        new ResumableDownloader(client, 1, 0).download(url(), target, null);
+
+        assertArrayEquals(payload, Files.readAllBytes(target.toPath()));
+        assertEquals(2, requestCount.get());
+        assertEquals("Second request is answered from cache after a 304", 1, client.cache().hitCount());
+    }
+}
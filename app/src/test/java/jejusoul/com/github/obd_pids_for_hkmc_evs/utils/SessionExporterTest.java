@@ -0,0 +1,152 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for SessionExporter and ColumnarSessionReader: both formats hold exactly what was
+ * recorded, across row groups and encodings.
+ */
+public class SessionExporterTest {
+    private static final long T0 = 1_700_000_000_000L;
+
+    /**
+     * A constant column, a slowly drifting one with gaps, a noisy one and one never read.
+     */
+    private static Recording record(int rows) {
+        Recording recording = new Recording(new String[] {"SOC, displayed", "Cell Voltage 01", "Noise", "Missing"},
+                new String[] {"%", "V", null, ""});
+        Random random = new Random(7);
+        float[] row = new float[4];
+        float voltage = 3.8f;
+        for (int i = 0; i < rows; i++) {
+            voltage += (random.nextInt(3) - 1) * 0.02f;
+            row[0] = 87.5f;
+            row[1] = i % 500 == 0 ? Float.NaN : voltage;
+            row[2] = random.nextFloat() * 1000 - 500;
+            row[3] = Float.NaN;
+            // A second apart, with some jitter
+            recording.append(T0 + i * 1000L + random.nextInt(20), row);
+        }
+        return recording;
+    }
+
+    @Test
+    public void columnarRoundTrips() throws IOException {
+        int rows = SessionExporter.GROUP_ROWS * 2 + 123;
+        Recording recording = record(rows);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        SessionExporter.Result result = SessionExporter.exportColumnar(recording, output);
+
+        assertEquals(rows, result.getRows());
+        assertEquals(output.size(), result.getBytesWritten());
+        // Far smaller than the 24 bytes a row the recording holds
+        assertTrue(output.size() < rows * 12);
+
+        ColumnarSessionReader reader = new ColumnarSessionReader(new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(4, reader.getColumnCount());
+        assertEquals("SOC, displayed", reader.getColumnName(0));
+        assertEquals("V", reader.getColumnUnit(1));
+        assertEquals("", reader.getColumnUnit(2));
+        int row = 0;
+        for (int count = reader.nextGroup(); count > 0; count = reader.nextGroup()) {
+            for (int i = 0; i < count; i++, row++) {
+                assertEquals(recording.getTime(row), reader.getTime(i));
+                for (int column = 0; column < 4; column++) {
+                    assertEquals(Float.floatToRawIntBits(recording.getValue(column, row)),
+                            Float.floatToRawIntBits(reader.getValue(column, i)));
+                }
+            }
+        }
+        assertEquals(rows, row);
+    }
+
+    @Test
+    public void csvHasUnitsInHeadersAndEmptyFieldsForNaN() throws IOException {
+        Recording recording = record(1_000);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        SessionExporter.Result result = SessionExporter.exportCsv(recording, output);
+        assertEquals(output.size(), result.getBytesWritten());
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(output.toByteArray())), StandardCharsets.UTF_8));
+        assertEquals("Time (ms),\"SOC, displayed (%)\",Cell Voltage 01 (V),Noise,Missing", reader.readLine());
+        String[] first = reader.readLine().split(",", -1);
+        assertEquals(Long.toString(recording.getTime(0)), first[0]);
+        assertEquals("87.5", first[1]);
+        assertEquals("", first[2]);
+        assertEquals("", first[4]);
+        int lines = 1;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split(",", -1);
+            assertEquals(recording.getValue(2, lines), Float.parseFloat(fields[3]), 0);
+            lines++;
+        }
+        assertEquals(1_000, lines);
+    }
+
+    @Test
+    public void emptyRecordingExports() throws IOException {
+        Recording recording = new Recording(new String[] {"A"});
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SessionExporter.exportColumnar(recording, output);
+
+        ColumnarSessionReader reader = new ColumnarSessionReader(new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(0, reader.nextGroup());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        new ColumnarSessionReader(new ByteArrayInputStream("Time (ms),A\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void eightHourSessionStreams() throws IOException {
+        String[] names = new String[110];
+        for (int column = 0; column < names.length; column++) {
+            names[column] = "Cell Voltage " + (column + 1);
+        }
+        Recording recording = new Recording(names);
+        float[] row = new float[names.length];
+        Random random = new Random(3);
+        for (int column = 0; column < row.length; column++) {
+            row[column] = 3.7f + random.nextInt(5) * 0.02f;
+        }
+        for (int i = 0; i < 8 * 3600; i++) {
+            // Cells step by the 20 mV the BMS reports in, now and then
+            int column = random.nextInt(row.length);
+            row[column] += (random.nextInt(2) * 2 - 1) * 0.02f;
+            recording.append(T0 + i * 1000L, row);
+        }
+        OutputStream discard = new OutputStream() {
+            @Override
+            public void write(int value) {
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+            }
+        };
+
+        SessionExporter.Result columnar = SessionExporter.exportColumnar(recording, discard);
+        SessionExporter.Result csv = SessionExporter.exportCsv(recording, discard);
+
+        assertEquals(8 * 3600, columnar.getRows());
+        assertTrue(columnar.getMegabytesPerSecond() > 0);
+        assertTrue(csv.getBytesWritten() > columnar.getBytesWritten());
+    }
+}
@@ -0,0 +1,208 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for VehicleDetector: VIN decoding and each detection step against a fake Torque.
+ */
+public class VehicleDetectorTest {
+    private static final String VIN = "KNDJX3AE1G7123456";
+    private static final String SOUL_BMS =
+            "000_Battery Current,Batt Current,2101,((Signed(K)*256)+L)/10,-230,230,A,7E4\n";
+    private static final String SOUL_VIN =
+            "005_Year,Year,0902,K+1945,2014,2035,,7E2\n";
+    private static final String SOUL_TPMS =
+            "TPMS_Front Left Pressure,FL Pressure,22C00B,F/5,0,50,psi,7A0\n";
+    private static final String IONIQ_BMS =
+            "BMS_Battery Current,Batt Current,2101,((Signed(L)*256)+M)/10,-230,230,A,7E4\n";
+    private static final String IONIQ_VIN =
+            "VIN_Year,Year,0902,K+1945,2016,2035,,7E2\n";
+    private static final String IONIQ_CLUSTER =
+            "Cluster_Odometer,Odo,22B002,(H*65536)+(I*256)+J,0,999999,km,7C6\n";
+
+    /**
+     * Fake Torque answering from canned responses; records the requests it was sent.
+     */
+    private static class FakeProbe implements VehicleDetector.Probe {
+        String profileName = "Default";
+        boolean fullPermissions = true;
+        final Map<String, String[]> responses = new HashMap<>();
+        final List<String> requests = new ArrayList<>();
+
+        @Override
+        public String[] getVehicleProfileInformation() {
+            return new String[]{profileName, "0.0", "1500", "0"};
+        }
+
+        @Override
+        public boolean canSendCommands() {
+            return fullPermissions;
+        }
+
+        @Override
+        public String[] sendCommand(String header, String command) {
+            requests.add(header + " " + command);
+            String[] response = responses.get(header + " " + command);
+            return response != null ? response : new String[]{"NO DATA"};
+        }
+    }
+
+    private static List<PidData> parse(String csv) throws IOException {
+        return new PidCsvParser(true).parse(new StringReader(csv), "test.csv").pids;
+    }
+
+    private static VehicleDetector buildDetector() throws IOException {
+        PidCatalogWriter writer = new PidCatalogWriter();
+        writer.addFile("Ioniq/Hyundai_Ioniq_BMS_data.csv", parse(IONIQ_BMS));
+        writer.addFile("Ioniq/Hyundai_Ioniq_Cluster_data.csv", parse(IONIQ_CLUSTER));
+        writer.addFile("Ioniq/Hyundai_Ioniq_VIN_data.csv", parse(IONIQ_VIN));
+        writer.addFile("Soul EV/Kia_Soul_EV_BMS_data.csv", parse(SOUL_BMS));
+        writer.addFile("Soul EV/Kia_Soul_EV_TPMS_data.csv", parse(SOUL_TPMS));
+        writer.addFile("Soul EV/Kia_Soul_EV_VIN_data.csv", parse(SOUL_VIN));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.write(output);
+        return VehicleDetector.fromCatalog(PidCatalog.wrap(ByteBuffer.wrap(output.toByteArray())));
+    }
+
+    /**
+     * @return VIN response as an ELM327 prints it with CAN headers on
+     */
+    private static String[] vinResponseWithHeaders(String vin) {
+        byte[] payload = ("\u0001" + vin).getBytes();
+        List<String> lines = new ArrayList<>();
+        StringBuilder line = new StringBuilder("7EA 10 14 49 02");
+        int sequence = 1;
+        // A first frame carries 6 data bytes, a consecutive frame 7
+        int room = 4;
+        for (byte b : payload) {
+            if (room == 0) {
+                lines.add(line.toString());
+                line = new StringBuilder(String.format("7EA %02X", 0x20 + sequence++));
+                room = 7;
+            }
+            line.append(String.format(" %02X", b));
+            room--;
+        }
+        lines.add(line.toString());
+        return lines.toArray(new String[0]);
+    }
+
+    @Test
+    public void parsesVinWithCanHeaders() {
+        assertEquals(VIN, VehicleDetector.parseVin(vinResponseWithHeaders(VIN)));
+    }
+
+    @Test
+    public void parsesAutoFormattedVin() {
+        String[] response = {
+                "014",
+                "0: 49 02 01 4B 4E 44",
+                "1: 4A 58 33 41 45 31 47",
+                "2: 37 31 32 33 34 35 36"
+        };
+        assertEquals(VIN, VehicleDetector.parseVin(response));
+    }
+
+    @Test
+    public void rejectsErrorsAndShortVins() {
+        assertNull(VehicleDetector.parseVin(new String[]{"NO DATA"}));
+        assertNull(VehicleDetector.parseVin(new String[]{"7EA 06 49 02 01 4B 4E 44"}));
+        assertNull(VehicleDetector.parseVin(null));
+    }
+
+    @Test
+    public void isAnswerRejectsAdapterErrors() {
+        assertTrue(VehicleDetector.isAnswer(new String[]{"7A8 03 62 C0 0B"}));
+        assertFalse(VehicleDetector.isAnswer(new String[]{"NO DATA"}));
+        assertFalse(VehicleDetector.isAnswer(new String[]{"SEARCHING...", "UNABLE TO CONNECT"}));
+        assertFalse(VehicleDetector.isAnswer(new String[]{""}));
+    }
+
+    @Test
+    public void collectsVehiclesFromCatalogFolders() throws Exception {
+        assertEquals(Arrays.asList("Ioniq", "Soul EV"), buildDetector().getVehicles());
+    }
+
+    @Test
+    public void profileNameWinsWithoutBusRequests() throws Exception {
+        FakeProbe probe = new FakeProbe();
+        probe.profileName = "My Kia SoulEV 2016";
+        VehicleDetector.Result result = buildDetector().detect(probe);
+        assertEquals("Soul EV", result.vehicle);
+        assertEquals(VehicleDetector.Source.PROFILE, result.source);
+        assertTrue(probe.requests.isEmpty());
+    }
+
+    @Test
+    public void knownVinPrefixBreaksTieOnSharedVinHeader() throws Exception {
+        FakeProbe probe = new FakeProbe();
+        probe.responses.put("7E2 0902", vinResponseWithHeaders(VIN));
+        VehicleDetector.Result result = buildDetector().detect(probe);
+        assertEquals("Soul EV", result.vehicle);
+        assertEquals(VehicleDetector.Source.VIN, result.source);
+        assertEquals(VIN, result.vin);
+        // Both vehicles read the VIN from 7E2, so it is requested once
+        assertEquals(Arrays.asList("7E2 0902"), probe.requests);
+    }
+
+    @Test
+    public void probesHeadersOnlyOneVehicleUses() throws Exception {
+        FakeProbe probe = new FakeProbe();
+        probe.responses.put("7E2 0902", vinResponseWithHeaders("KMHC751HFHU012345"));
+        probe.responses.put("7C6 22B002", new String[]{"7CE 10 2E 62 B0 02 00 01 02"});
+        VehicleDetector.Result result = buildDetector().detect(probe);
+        assertEquals("Ioniq", result.vehicle);
+        assertEquals(VehicleDetector.Source.HEADERS, result.source);
+        assertEquals("KMHC751HFHU012345", result.vin);
+        // 7E4 and 7E2 are used by both vehicles, so they tell nothing apart
+        assertFalse(probe.requests.contains("7E4 2101"));
+    }
+
+    @Test
+    public void undecidedWhenNothingAnswers() throws Exception {
+        assertNull(buildDetector().detect(new FakeProbe()));
+    }
+
+    @Test
+    public void skipsBusRequestsWithoutFullPermissions() throws Exception {
+        FakeProbe probe = new FakeProbe();
+        probe.fullPermissions = false;
+        probe.responses.put("7E2 0902", vinResponseWithHeaders(VIN));
+        assertNull(buildDetector().detect(probe));
+        assertTrue(probe.requests.isEmpty());
+    }
+
+    @Test
+    public void singleVehicleCatalogIsNotProbed() throws Exception {
+        PidCatalogWriter writer = new PidCatalogWriter();
+        writer.addFile("Soul EV/Kia_Soul_EV_BMS_data.csv", parse(SOUL_BMS));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.write(output);
+        VehicleDetector detector = VehicleDetector.fromCatalog(PidCatalog.wrap(ByteBuffer.wrap(output.toByteArray())));
+        FakeProbe probe = new FakeProbe();
+        probe.profileName = "Soul EV";
+        assertNull(detector.detect(probe));
+    }
+
+    @Test
+    public void decodesModelYearFromVin() {
+        assertEquals(2015, VehicleDetector.getModelYear("KNDJX3AE5F7000001"));
+        assertEquals(2018, VehicleDetector.getModelYear("KNDJX3AE5J7000001"));
+        assertEquals(2031, VehicleDetector.getModelYear("KNDJX3AE517000001"));
+        assertEquals(-1, VehicleDetector.getModelYear("KNDJX3AE5U7000001"));
+        assertEquals(-1, VehicleDetector.getModelYear("KNDJX3AE5"));
+        assertEquals(-1, VehicleDetector.getModelYear(null));
+    }
+}
@@ -0,0 +1,106 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.build;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidCatalogWriter;
+import jejusoul.com.github.obd_pids_for_hkmc_evs.utils.PidCsvParser;
+
+/**
+ * CompilePidCatalogTask validates the bundled PID CSVs and compiles them into pid_catalog.bin.
+ *
+ * Every row is parsed in strict mode by PidCsvParser, the parser the app uses at runtime, so a
+ * malformed row or equation fails the build instead of being skipped on the device. All errors
+ * are collected before failing, so one build lists every broken line.
+ *
+ * The catalog is added to the APK as a generated asset (see app/build.gradle) and mapped at
+ * runtime by BundledCatalog.
+ *
+ * Usage Example:
+ * tasks.register('compilePidCatalog', CompilePidCatalogTask) {
+ *     assetsDirectory = layout.projectDirectory.dir('src/main/assets')
+ * }
+ */
+public abstract class CompilePidCatalogTask extends DefaultTask {
+    public static final String CATALOG_NAME = "pid_catalog.bin";
+
+    @InputDirectory
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract DirectoryProperty getAssetsDirectory();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @TaskAction
+    public void compile() throws IOException {
+        File assetsDirectory = getAssetsDirectory().get().getAsFile();
+        List<String> paths = new ArrayList<>();
+        collectCsvPaths(assetsDirectory, "", paths);
+        Collections.sort(paths);
+
+        PidCsvParser parser = new PidCsvParser(true);
+        PidCatalogWriter writer = new PidCatalogWriter();
+        List<String> errors = new ArrayList<>();
+        int pidCount = 0;
+        for (String path : paths) {
+            File file = new File(assetsDirectory, path);
+            PidCsvParser.Result result = parser.parse(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), path);
+            errors.addAll(result.errors);
+            writer.addFile(path, result.pids);
+            pidCount += result.pids.size();
+        }
+
+        if (!errors.isEmpty()) {
+            StringBuilder message = new StringBuilder()
+                    .append(errors.size()).append(" malformed PID rows in ").append(assetsDirectory).append(':');
+            for (String error : errors) {
+                message.append("\n  ").append(error);
+            }
+            throw new GradleException(message.toString());
+        }
+
+        File outputDirectory = getOutputDirectory().get().getAsFile();
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Failed to create directory: " + outputDirectory);
+        }
+        try (OutputStream output = new FileOutputStream(new File(outputDirectory, CATALOG_NAME))) {
+            writer.write(output);
+        }
+        getLogger().info("Compiled {} PIDs from {} files into {}", pidCount, paths.size(), CATALOG_NAME);
+    }
+
+    /**
+     * Collect CSV paths relative to the assets directory, '/' separated like the repository.
+     */
+    private static void collectCsvPaths(File directory, String prefix, List<String> paths) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectCsvPaths(file, prefix + file.getName() + "/", paths);
+            } else if (file.getName().toLowerCase().endsWith(".csv")) {
+                paths.add(prefix + file.getName());
+            }
+        }
+    }
+}
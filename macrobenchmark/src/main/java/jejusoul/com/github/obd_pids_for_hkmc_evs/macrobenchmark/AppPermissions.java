@@ -0,0 +1,31 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.macrobenchmark;
+
+import androidx.test.uiautomator.UiDevice;
+
+import java.io.IOException;
+
+/**
+ * Grants the app's runtime permissions up front, so permission dialogs stay out of the
+ * measured frames and startups.
+ */
+final class AppPermissions {
+    static final String PACKAGE_NAME = "jejusoul.com.github.obd_pids_for_hkmc_evs";
+
+    private AppPermissions() {
+    }
+
+    static void grantAll(UiDevice device) {
+        grant(device, "android.permission.READ_EXTERNAL_STORAGE");
+        grant(device, "android.permission.WRITE_EXTERNAL_STORAGE");
+        grant(device, "android.permission.POST_NOTIFICATIONS");
+    }
+
+    private static void grant(UiDevice device, String permission) {
+        try {
+            // Fails harmlessly where the permission doesn't apply to the device's API level
+            device.executeShellCommand("pm grant " + PACKAGE_NAME + " " + permission);
+        } catch (IOException e) {
+            throw new AssertionError("Failed to grant " + permission, e);
+        }
+    }
+}
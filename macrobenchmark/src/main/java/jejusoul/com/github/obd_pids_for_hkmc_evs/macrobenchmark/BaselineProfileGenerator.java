@@ -0,0 +1,45 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.macrobenchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.Until;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import kotlin.Unit;
+
+/**
+ * Generates the app's baseline profile from a cold start up to the installed PID file list.
+ *
+ * Needs a rooted device or an emulator on API 33+. Run with
+ * ./gradlew :macrobenchmark:connectedBenchmarkAndroidTest
+ *     -Pandroid.testInstrumentationRunnerArguments.class=jejusoul.com.github.obd_pids_for_hkmc_evs.macrobenchmark.BaselineProfileGenerator
+ * then copy the generated *-baseline-prof.txt from the device's additional test output
+ * (macrobenchmark/build/outputs/connected_android_test_additional_output) over
+ * app/src/main/baseline-prof.txt and check StartupBenchmark before and after.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+    private static final String PACKAGE_NAME = AppPermissions.PACKAGE_NAME;
+    private static final long TIMEOUT_MS = 10_000;
+
+    @Rule
+    public BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void startup() {
+        baselineProfileRule.collect(PACKAGE_NAME, scope -> {
+            UiDevice device = scope.getDevice();
+            AppPermissions.grantAll(device);
+            scope.pressHome();
+            scope.startActivityAndWait();
+            // Include listing and binding the installed files, not just the first frame
+            device.wait(Until.hasObject(By.res(PACKAGE_NAME, "pid_list")), TIMEOUT_MS);
+            return Unit.INSTANCE;
+        });
+    }
+}
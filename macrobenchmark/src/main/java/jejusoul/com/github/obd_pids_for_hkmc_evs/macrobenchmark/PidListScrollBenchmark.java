@@ -0,0 +1,81 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.Direction;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import kotlin.Unit;
+
+/**
+ * Measures frame times while flinging the PID list of the bundled battery cell file (95 rows).
+ *
+ * Run with ./gradlew :macrobenchmark:connectedBenchmarkAndroidTest on a physical device.
+ * To compare a change, run the benchmark on the commit before it and after it and compare
+ * frameDurationCpuMs and frameOverrunMs in the results.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PidListScrollBenchmark {
+    private static final String PACKAGE_NAME = AppPermissions.PACKAGE_NAME;
+    private static final String CELL_FILE = "Kia_Soul_EV_Battery_Cell_data.csv";
+    private static final long TIMEOUT_MS = 10_000;
+    private static final int FLINGS = 3;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void scrollBatteryCellList() {
+        benchmarkRule.measureRepeated(
+                PACKAGE_NAME,
+                Collections.singletonList(new FrameTimingMetric()),
+                CompilationMode.DEFAULT,
+                StartupMode.WARM,
+                5,
+                scope -> {
+                    openCellList(scope);
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    UiObject2 list = scope.getDevice().findObject(By.res(PACKAGE_NAME, "pidDetailsRecyclerView"));
+                    // Leave a margin so the fling doesn't start on the system gesture area
+                    list.setGestureMargin(scope.getDevice().getDisplayWidth() / 5);
+                    for (int i = 0; i < FLINGS; i++) {
+                        list.fling(Direction.DOWN);
+                        list.fling(Direction.UP);
+                    }
+                    scope.getDevice().waitForIdle();
+                    return Unit.INSTANCE;
+                });
+    }
+
+    private static void openCellList(MacrobenchmarkScope scope) {
+        UiDevice device = scope.getDevice();
+        AppPermissions.grantAll(device);
+
+        scope.pressHome();
+        scope.startActivityAndWait();
+
+        UiObject2 file = device.wait(Until.findObject(By.textContains(CELL_FILE)), TIMEOUT_MS);
+        if (file == null) {
+            throw new AssertionError(CELL_FILE + " is not listed; were the bundled PID files seeded?");
+        }
+        file.click();
+        if (!device.wait(Until.hasObject(By.res(PACKAGE_NAME, "pidCheckbox")), TIMEOUT_MS)) {
+            throw new AssertionError("PID list of " + CELL_FILE + " did not load");
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package jejusoul.com.github.obd_pids_for_hkmc_evs.macrobenchmark;
+
+import android.content.Intent;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import kotlin.Unit;
+
+/**
+ * Measures cold and warm start of PluginActivity, both from the launcher and the way Torque
+ * opens it from its plugin menu, without AOT compilation and with the app's baseline profile.
+ *
+ * Run with ./gradlew :macrobenchmark:connectedBenchmarkAndroidTest on a physical device and
+ * compare timeToInitialDisplayMs between the NoCompilation and BaselineProfile runs. Each
+ * iteration leaves a Perfetto trace next to the results; the app's trace sections (e.g.
+ * "TorquePluginApplication.onCreate", "MainViewModel.init", "PluginActivity.onCreate") show
+ * which startup work is still on the main thread before the first frame.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    private static final String PACKAGE_NAME = AppPermissions.PACKAGE_NAME;
+    private static final String ACTION_TORQUE_PLUGIN = "org.prowl.torque.ACTIVITY_PLUGIN";
+    private static final int ITERATIONS = 10;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void coldStartNoCompilation() {
+        startFromLauncher(StartupMode.COLD, new CompilationMode.None());
+    }
+
+    @Test
+    public void coldStartBaselineProfile() {
+        startFromLauncher(StartupMode.COLD, baselineProfile());
+    }
+
+    @Test
+    public void warmStartNoCompilation() {
+        startFromLauncher(StartupMode.WARM, new CompilationMode.None());
+    }
+
+    @Test
+    public void warmStartBaselineProfile() {
+        startFromLauncher(StartupMode.WARM, baselineProfile());
+    }
+
+    @Test
+    public void coldStartFromTorqueBaselineProfile() {
+        startFromTorque(StartupMode.COLD, baselineProfile());
+    }
+
+    @Test
+    public void warmStartFromTorqueBaselineProfile() {
+        startFromTorque(StartupMode.WARM, baselineProfile());
+    }
+
+    private static CompilationMode baselineProfile() {
+        // Fails the run if the profile was not installed, rather than measuring without it
+        return new CompilationMode.Partial(BaselineProfileMode.Require, 0);
+    }
+
+    private void startFromLauncher(StartupMode startupMode, CompilationMode compilationMode) {
+        benchmarkRule.measureRepeated(
+                PACKAGE_NAME,
+                Collections.singletonList(new StartupTimingMetric()),
+                compilationMode,
+                startupMode,
+                ITERATIONS,
+                scope -> {
+                    AppPermissions.grantAll(scope.getDevice());
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    scope.startActivityAndWait();
+                    return Unit.INSTANCE;
+                });
+    }
+
+    private void startFromTorque(StartupMode startupMode, CompilationMode compilationMode) {
+        benchmarkRule.measureRepeated(
+                PACKAGE_NAME,
+                Collections.singletonList(new StartupTimingMetric()),
+                compilationMode,
+                startupMode,
+                ITERATIONS,
+                scope -> {
+                    AppPermissions.grantAll(scope.getDevice());
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    // The intent Torque sends when the plugin is picked from its menu
+                    Intent intent = new Intent(ACTION_TORQUE_PLUGIN);
+                    intent.addCategory(Intent.CATEGORY_DEFAULT);
+                    intent.setPackage(PACKAGE_NAME);
+                    scope.startActivityAndWait(intent);
+                    return Unit.INSTANCE;
+                });
+    }
+}